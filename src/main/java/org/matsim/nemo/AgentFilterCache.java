@@ -0,0 +1,140 @@
+package org.matsim.nemo;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.utils.collections.Tuple;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Stores for each home location whether it is inside of a shape as a bitset next to the shape file. The file name holds
+ * a hash of the shape file and of the person ids and home coordinates, so that a changed input never reads a stale
+ * result but simply misses the cache.
+ */
+class AgentFilterCache {
+
+	private static final Logger logger = Logger.getLogger(AgentFilterCache.class);
+
+	private static final int FORMAT_VERSION = 1;
+	private static final int KEY_BYTES = 16;
+
+	private final Path file;
+	private final int size;
+
+	AgentFilterCache(Path shapeFile, List<Tuple<Id<Person>, Coord>> homes) {
+		this.size = homes.size();
+		this.file = shapeFile.resolveSibling(shapeFile.getFileName() + "." + computeKey(shapeFile, homes) + ".agents");
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return for each home whether it is inside of the shape or null if there is no valid cache file
+	 */
+	boolean[] read() {
+
+		if (Files.notExists(file)) return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+			if (in.readInt() != FORMAT_VERSION || in.readInt() != size) {
+				logger.warn("Ignoring " + file + " since it was written for a different format or population.");
+				return null;
+			}
+			long[] words = new long[in.readInt()];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = in.readLong();
+			}
+
+			BitSet bits = BitSet.valueOf(words);
+			boolean[] inside = new boolean[size];
+			for (int i = bits.nextSetBit(0); i >= 0 && i < size; i = bits.nextSetBit(i + 1)) {
+				inside[i] = true;
+			}
+			return inside;
+		} catch (IOException e) {
+			logger.warn("Could not read " + file + ". The agents are classified again.", e);
+			return null;
+		}
+	}
+
+	void write(boolean[] inside) {
+
+		BitSet bits = new BitSet(inside.length);
+		for (int i = 0; i < inside.length; i++) {
+			if (inside[i]) bits.set(i);
+		}
+		long[] words = bits.toLongArray();
+
+		try {
+			// write into a temporary file first, so that a concurrent reader never sees a partial file
+			Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(inside.length);
+				out.writeInt(words.length);
+				for (long word : words) {
+					out.writeLong(word);
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// the cache only saves time, so a read only input directory is not an error
+			logger.warn("Could not write " + file + ". The agents will be classified again next time.", e);
+		}
+	}
+
+	private static String computeKey(Path shapeFile, List<Tuple<Id<Person>, Coord>> homes) {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+
+		// the geometries are stored in the .shp part of the shape file
+		try (InputStream in = new DigestInputStream(Files.newInputStream(shapeFile), digest)) {
+			in.transferTo(OutputStream.nullOutputStream());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest)))) {
+			for (Tuple<Id<Person>, Coord> home : homes) {
+				out.writeUTF(home.getFirst().toString());
+				out.writeDouble(home.getSecond().getX());
+				out.writeDouble(home.getSecond().getY());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		StringBuilder key = new StringBuilder();
+		byte[] hash = digest.digest();
+		for (int i = 0; i < KEY_BYTES; i++) {
+			key.append(String.format("%02x", hash[i]));
+		}
+		return key.toString();
+	}
+}
@@ -4,8 +4,8 @@ import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.PopulationWriter;
 import org.matsim.core.config.ConfigUtils;
-import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.nemo.util.NEMOUtils;
 
 public class DeregisterNetwork {
 
@@ -15,7 +15,7 @@ public class DeregisterNetwork {
     public static void main(String[] args) {
 
         var scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-        new PopulationReader(scenario).readFile(inputPopulation);
+        NEMOUtils.readPopulation(scenario, inputPopulation);
 
         scenario.getPopulation().getPersons().values().parallelStream()
                 .flatMap(person -> person.getPlans().stream())
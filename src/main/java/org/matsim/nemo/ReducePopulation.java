@@ -7,6 +7,7 @@ import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.population.io.StreamingPopulationReader;
 import org.matsim.core.population.io.StreamingPopulationWriter;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.nemo.util.NEMOUtils;
 
 public class ReducePopulation {
 
@@ -23,7 +24,7 @@ public class ReducePopulation {
 
         try {
             writer.startStreaming(input.outputFile);
-            reader.readFile(input.populationFile);
+            NEMOUtils.readPopulation(reader, input.populationFile);
         } finally {
             writer.closeStreaming();
         }
@@ -21,20 +21,24 @@ package org.matsim.nemo;
 
 
 import org.apache.log4j.Logger;
-import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.utils.collections.Tuple;
-import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.core.utils.gis.ShapeFileReader;
+import org.matsim.facilities.ActivityFacilities;
 import org.opengis.feature.simple.SimpleFeature;
 import playground.vsp.cadyts.marginals.AgentFilter;
 
+import java.nio.file.Paths;
 import java.util.Collection;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -44,41 +48,104 @@ import java.util.stream.Collectors;
 public class RuhrAgentsFilter implements AgentFilter {
 
     private static final Logger logger = Logger.getLogger(RuhrAgentsFilter.class);
-    private final Map<Id<Person>, Boolean> personIdMap;
+    private final Set<Id<Person>> insidePersons;
+    private final Supplier<ShapeClassifier> classifierSupplier;
+    private ShapeClassifier classifier;
 
     public RuhrAgentsFilter(Scenario scenario, Collection<SimpleFeature> shape) {
+        this(scenario, new ShapeClassifier(shape));
+    }
+
+    public RuhrAgentsFilter(Scenario scenario, ShapeClassifier classifier) {
+        this(scenario, () -> classifier, null);
+    }
+
+    private RuhrAgentsFilter(Scenario scenario, Supplier<ShapeClassifier> classifierSupplier, Function<List<Tuple<Id<Person>, Coord>>, AgentFilterCache> cacheFactory) {
+
+        this.classifierSupplier = classifierSupplier;
+        List<Tuple<Id<Person>, Coord>> homes = getHomes(scenario);
+        AgentFilterCache cache = cacheFactory == null ? null : cacheFactory.apply(homes);
+
+        boolean[] inside = cache == null ? null : cache.read();
+        if (inside == null) {
+            logger.info("testing for all agents whether they have their home coord within the supplied shape");
+            // classify all home coords at once, most of them are answered by the classifier's raster
+            inside = getClassifier().contains(toCoordinates(homes));
+            if (cache != null) cache.write(inside);
+        } else {
+            logger.info("read for all agents whether they have their home coord within the supplied shape from " + cache.getFile());
+        }
+
+        insidePersons = new HashSet<>();
+        for (int i = 0; i < inside.length; i++) {
+            if (inside[i]) insidePersons.add(homes.get(i).getFirst());
+        }
+    }
 
-        final Function<Activity, Coord> coordProvider = getCoordProvider(scenario);
+    /**
+     * Creates a filter for the shape in the given shape file. The result of the classification is cached next to the
+     * shape file and is reused as long as neither the home coordinates of the population nor the shape file change.
+     */
+    public static RuhrAgentsFilter create(Scenario scenario, String shapeFile) {
+        return new RuhrAgentsFilter(
+                scenario,
+                () -> new ShapeClassifier(ShapeFileReader.getAllFeatures(shapeFile)),
+                homes -> new AgentFilterCache(Paths.get(shapeFile), homes)
+        );
+    }
 
-        logger.info("testing for all agents whether they have their home coord within the supplied shape");
-        // go for the giant stream statement here, since the isInside shape test is expensive and we can parallelize this way
-        personIdMap = scenario.getPopulation().getPersons().values().parallelStream()
+    private static List<Tuple<Id<Person>, Coord>> getHomes(Scenario scenario) {
+
+        final Function<Activity, Coord> coordProvider = getCoordProvider(scenario.getActivityFacilities());
+        return scenario.getPopulation().getPersons().values().parallelStream()
                 .filter(person -> person.getSelectedPlan() != null)
                 .filter(person -> !person.getSelectedPlan().getPlanElements().isEmpty())
                 .filter(person -> (person.getSelectedPlan().getPlanElements().get(0) instanceof Activity))
                 .map(person -> Tuple.of(person.getId(), (Activity) person.getSelectedPlan().getPlanElements().get(0)))
                 .filter(personActivity -> personActivity.getSecond().getType().startsWith("home"))
-                .collect(Collectors.toMap(Tuple::getFirst, personActivity -> isActivityInside(coordProvider.apply(personActivity.getSecond()), shape)));
+                .map(personActivity -> Tuple.of(personActivity.getFirst(), coordProvider.apply(personActivity.getSecond())))
+                .collect(Collectors.toList());
     }
 
-    private static Function<Activity, Coord> getCoordProvider(Scenario scenario) {
+    private static double[] toCoordinates(List<Tuple<Id<Person>, Coord>> homes) {
 
-        if (scenario.getActivityFacilities().getFacilities().isEmpty()) {
+        double[] coordinates = new double[homes.size() * 2];
+        for (int i = 0; i < homes.size(); i++) {
+            coordinates[2 * i] = homes.get(i).getSecond().getX();
+            coordinates[2 * i + 1] = homes.get(i).getSecond().getY();
+        }
+        return coordinates;
+    }
+
+    /**
+     * Coordinates of activities, which are taken from their facility if there are any facilities
+     */
+    public static Function<Activity, Coord> getCoordProvider(ActivityFacilities facilities) {
+
+        if (facilities.getFacilities().isEmpty()) {
             return Activity::getCoord;
         } else {
-            return activity -> scenario.getActivityFacilities().getFacilities().get(activity.getFacilityId()).getCoord();
+            return activity -> facilities.getFacilities().get(activity.getFacilityId()).getCoord();
         }
     }
 
-    private static boolean isActivityInside(Coord coord, Collection<? extends SimpleFeature> features) {
+    /**
+     * Tests for many coordinates at once whether they are inside the shape of this filter
+     *
+     * @param coordinates x and y of each coordinate one after another
+     */
+    public boolean[] isInside(double[] coordinates) {
+        return getClassifier().contains(coordinates);
+    }
 
-        return features.stream()
-                .map(feature -> (Geometry) feature.getDefaultGeometry())
-                .anyMatch(geometry -> geometry.contains(MGC.coord2Point(coord)));
+    private synchronized ShapeClassifier getClassifier() {
+        // a filter read from the cache only loads the shape if it is actually needed
+        if (classifier == null) classifier = classifierSupplier.get();
+        return classifier;
     }
 
     @Override
     public boolean includeAgent(Id<Person> id) {
-        return personIdMap.getOrDefault(id, false);
+        return insidePersons.contains(id);
     }
 }
@@ -3,10 +3,10 @@ package org.matsim.nemo;
 import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.core.config.ConfigUtils;
-import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.population.io.PopulationWriter;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.gis.ShapeFileReader;
+import org.matsim.nemo.util.NEMOUtils;
 import org.opengis.feature.simple.SimpleFeature;
 
 import java.nio.file.Path;
@@ -26,9 +26,7 @@ public class RunCellRelocator {
 
         Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
 
-        PopulationReader reader = new PopulationReader(scenario);
-
-        reader.readFile(inputFile);
+        NEMOUtils.readPopulation(scenario, inputFile);
 
         CellRelocator cellRelocator = new CellRelocator(relocationData, scenario.getPopulation(), outer);
         cellRelocator.reassignHome(cellRelocator.cells);
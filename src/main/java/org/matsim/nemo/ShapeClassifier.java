@@ -0,0 +1,196 @@
+package org.matsim.nemo;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Tests whether points are inside the geometries of a shape. This gives the same results as
+ * {@code geometry.contains(point)} for any of the geometries, but is built once per shape and is meant for classifying
+ * many points. The geometries are numbered in the order of the features, and {@link #getGeometryNumber(double, double)}
+ * finds the geometry of a point, which is what {@link ZoneIndex} is built on.
+ * <p>
+ * The bounding box of the shape is covered with a raster. Each cell is classified once as entirely inside of a
+ * geometry, entirely outside of all geometries or on a boundary. Only points in boundary cells are tested exactly,
+ * against the prepared geometries whose bounding boxes contain the point, which are looked up in an STR-tree.
+ */
+public class ShapeClassifier {
+
+	public static final int NO_GEOMETRY = -1;
+
+	private static final int DEFAULT_RASTER_SIZE = 256;
+	private static final int BOUNDARY = -2;
+
+	private final GeometryFactory geometryFactory = new GeometryFactory();
+	private final STRtree index = new STRtree();
+
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+	private final double cellWidth;
+	private final double cellHeight;
+	private final int rasterSize;
+	// the number of the geometry which contains the whole cell, NO_GEOMETRY or BOUNDARY
+	private final int[] cells;
+
+	public ShapeClassifier(Collection<? extends SimpleFeature> features) {
+		this(features, DEFAULT_RASTER_SIZE);
+	}
+
+	/**
+	 * @param rasterSize number of raster cells along each side of the shape's bounding box
+	 */
+	public ShapeClassifier(Collection<? extends SimpleFeature> features, int rasterSize) {
+
+		Envelope bounds = new Envelope();
+		int number = 0;
+		for (SimpleFeature feature : features) {
+			Geometry geometry = (Geometry) feature.getDefaultGeometry();
+			index.insert(geometry.getEnvelopeInternal(), new NumberedGeometry(number++, PreparedGeometryFactory.prepare(geometry)));
+			bounds.expandToInclude(geometry.getEnvelopeInternal());
+		}
+		index.build();
+
+		this.rasterSize = rasterSize;
+		this.minX = bounds.isNull() ? 0 : bounds.getMinX();
+		this.minY = bounds.isNull() ? 0 : bounds.getMinY();
+		this.maxX = bounds.isNull() ? 0 : bounds.getMaxX();
+		this.maxY = bounds.isNull() ? 0 : bounds.getMaxY();
+		this.cellWidth = bounds.isNull() ? 0 : bounds.getWidth() / rasterSize;
+		this.cellHeight = bounds.isNull() ? 0 : bounds.getHeight() / rasterSize;
+		this.cells = new int[rasterSize * rasterSize];
+
+		if (bounds.isNull()) {
+			Arrays.fill(cells, NO_GEOMETRY);
+		} else {
+			IntStream.range(0, cells.length).parallel().forEach(cell -> cells[cell] = classifyCell(cell % rasterSize, cell / rasterSize));
+		}
+	}
+
+	public boolean contains(double x, double y) {
+
+		// points on the bounding box can't be in the interior of any geometry
+		if (!(minX < x && x < maxX && minY < y && y < maxY)) return false;
+
+		int state = getConclusiveCell(x, y);
+		if (state != BOUNDARY) return state != NO_GEOMETRY;
+
+		return containsExactly(x, y);
+	}
+
+	/**
+	 * Classifies many points at once
+	 *
+	 * @param coordinates x and y of each point one after another
+	 * @return for each point whether it is inside of the shape
+	 */
+	public boolean[] contains(double[] coordinates) {
+
+		if (coordinates.length % 2 != 0)
+			throw new IllegalArgumentException("coordinates must hold pairs of x and y but has an odd length of " + coordinates.length);
+
+		boolean[] result = new boolean[coordinates.length / 2];
+		IntStream.range(0, result.length).parallel()
+				.forEach(i -> result[i] = contains(coordinates[2 * i], coordinates[2 * i + 1]));
+		return result;
+	}
+
+	/**
+	 * Unlike {@link #contains(double, double)} this includes the boundaries of the geometries, which must not overlap.
+	 * A point on the border between geometries is assigned to the geometry with the lowest number.
+	 *
+	 * @return the number of the geometry which covers the point, counting the features from 0, or {@link #NO_GEOMETRY}
+	 */
+	public int getGeometryNumber(double x, double y) {
+
+		if (!(minX <= x && x <= maxX && minY <= y && y <= maxY)) return NO_GEOMETRY;
+
+		int state = getConclusiveCell(x, y);
+		if (state != BOUNDARY) return state;
+
+		return getGeometryNumberExactly(x, y);
+	}
+
+	/**
+	 * @return the state of the raster cell of the point, or BOUNDARY if the point has to be tested exactly
+	 */
+	private int getConclusiveCell(double x, double y) {
+
+		int column = Math.min(rasterSize - 1, (int) ((x - minX) / cellWidth));
+		int row = Math.min(rasterSize - 1, (int) ((y - minY) / cellHeight));
+
+		// the cell is only conclusive if rounding hasn't put the point into a neighbouring cell
+		int state = cells[row * rasterSize + column];
+		return isInCell(column, row, x, y) ? state : BOUNDARY;
+	}
+
+	private int classifyCell(int column, int row) {
+
+		Envelope envelope = getCellEnvelope(column, row);
+		Geometry cell = geometryFactory.toGeometry(envelope);
+		List<?> candidates = index.query(envelope);
+
+		boolean intersects = false;
+		for (Object candidate : candidates) {
+			NumberedGeometry geometry = (NumberedGeometry) candidate;
+			// the whole closed cell is in the interior, so each point of the cell is contained. As long as the geometries
+			// don't overlap, this is also the geometry of each point of the cell.
+			if (geometry.geometry.containsProperly(cell)) return geometry.number;
+			if (geometry.geometry.intersects(cell)) intersects = true;
+		}
+		return intersects ? BOUNDARY : NO_GEOMETRY;
+	}
+
+	private boolean containsExactly(double x, double y) {
+
+		Geometry point = geometryFactory.createPoint(new Coordinate(x, y));
+		List<?> candidates = index.query(new Envelope(x, x, y, y));
+
+		for (Object candidate : candidates) {
+			if (((NumberedGeometry) candidate).geometry.contains(point)) return true;
+		}
+		return false;
+	}
+
+	private int getGeometryNumberExactly(double x, double y) {
+
+		Geometry point = geometryFactory.createPoint(new Coordinate(x, y));
+		int result = NO_GEOMETRY;
+		for (Object candidate : index.query(new Envelope(x, x, y, y))) {
+			NumberedGeometry geometry = (NumberedGeometry) candidate;
+			if ((result == NO_GEOMETRY || geometry.number < result) && geometry.geometry.covers(point)) result = geometry.number;
+		}
+		return result;
+	}
+
+	private boolean isInCell(int column, int row, double x, double y) {
+		return minX + column * cellWidth <= x && x <= minX + (column + 1) * cellWidth
+				&& minY + row * cellHeight <= y && y <= minY + (row + 1) * cellHeight;
+	}
+
+	private Envelope getCellEnvelope(int column, int row) {
+		return new Envelope(minX + column * cellWidth, minX + (column + 1) * cellWidth, minY + row * cellHeight, minY + (row + 1) * cellHeight);
+	}
+
+	private static class NumberedGeometry {
+
+		private final int number;
+		private final PreparedGeometry geometry;
+
+		private NumberedGeometry(int number, PreparedGeometry geometry) {
+			this.number = number;
+			this.geometry = geometry;
+		}
+	}
+}
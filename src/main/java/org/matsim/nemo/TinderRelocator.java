@@ -19,13 +19,13 @@ import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.PopulationWriter;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.gbl.MatsimRandom;
-import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.router.MainModeIdentifier;
 import org.matsim.core.router.StageActivityTypeIdentifier;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.collections.QuadTree;
 import org.matsim.core.utils.gis.ShapeFileReader;
 import org.matsim.nemo.runners.NemoModeLocationChoiceMainModeIdentifier;
+import org.matsim.nemo.util.NEMOUtils;
 import org.opengis.feature.simple.SimpleFeature;
 
 import java.io.FileReader;
@@ -81,7 +81,7 @@ public class TinderRelocator {
 		final Path runsSvnPath = Paths.get(runsSvn);
 
 		scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-		new PopulationReader(scenario).readFile(runsSvnPath.resolve(SOURCE_POPULATION).toString());
+		NEMOUtils.readPopulation(scenario, runsSvnPath.resolve(SOURCE_POPULATION).toString());
 
 		// get the feature source of the murmo grid, to extract bounds from it
 		SimpleFeatureSource featureSource = ShapeFileReader.readDataFile(sharedSvnPath.resolve(MURMO_SHAPE_FILE).toString());
@@ -0,0 +1,61 @@
+package org.matsim.nemo;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the zone of points, e.g. the cells of the MURMO grid or municipalities. Zones are numbered in the order of the
+ * features, their ids are taken from an attribute of the features.
+ * <p>
+ * The zones are looked up with a {@link ShapeClassifier} over all zones, so a point on the border between zones is
+ * assigned to the zone with the lowest number.
+ */
+public class ZoneIndex {
+
+	public static final int NO_ZONE = ShapeClassifier.NO_GEOMETRY;
+
+	private static final int DEFAULT_RASTER_SIZE = 512;
+
+	private final List<String> zoneIds = new ArrayList<>();
+	private final ShapeClassifier classifier;
+
+	public ZoneIndex(Collection<? extends SimpleFeature> features, String idAttribute) {
+		this(features, idAttribute, DEFAULT_RASTER_SIZE);
+	}
+
+	/**
+	 * @param idAttribute the attribute of the features which holds the id of the zone
+	 * @param rasterSize  number of raster cells along each side of the zones' bounding box
+	 */
+	public ZoneIndex(Collection<? extends SimpleFeature> features, String idAttribute, int rasterSize) {
+
+		for (SimpleFeature feature : features) {
+			Object id = feature.getAttribute(idAttribute);
+			if (id == null) throw new IllegalArgumentException("Feature " + feature.getID() + " has no attribute " + idAttribute);
+			zoneIds.add(id.toString());
+		}
+		this.classifier = new ShapeClassifier(features, rasterSize);
+	}
+
+	/**
+	 * @return the number of the zone which covers the point or {@link #NO_ZONE}
+	 */
+	public int getZone(double x, double y) {
+		return classifier.getGeometryNumber(x, y);
+	}
+
+	/**
+	 * @return the ids of the zones by zone number
+	 */
+	public List<String> getZoneIds() {
+		return Collections.unmodifiableList(zoneIds);
+	}
+
+	public String getZoneId(int zone) {
+		return zone == NO_ZONE ? null : zoneIds.get(zone);
+	}
+}
@@ -0,0 +1,206 @@
+package org.matsim.nemo.analysis;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.nemo.RuhrAgentsFilter;
+import org.matsim.nemo.runners.NemoModeLocationChoiceMainModeIdentifier;
+import org.matsim.nemo.util.NEMOUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Runs an {@link ApproximateTripAnalysis} on several events files in parallel and writes the merged result: distinct
+ * agents per link or grid cell, travel time quantiles per main mode and departure hour and the links with the highest
+ * volumes. Memory doesn't grow with the number of agents, so that also 100% runs can be analysed.
+ */
+public class ApproximateAnalysis {
+
+	private static final Logger logger = Logger.getLogger(ApproximateAnalysis.class);
+
+	private static final double[] RANKS = {0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99};
+
+	@Parameter(names = {"-eventFile", "-ef"}, required = true)
+	private List<String> eventFiles = new ArrayList<>();
+
+	@Parameter(names = {"-outputDirectory", "-od"}, required = true)
+	private String outputDirectory = "";
+
+	@Parameter(names = {"-populationFile", "-pf"}, description = "Required by -ruhrShape")
+	private String populationFile;
+
+	@Parameter(names = {"-ruhrShape", "-rs"}, description = "Only analyses agents living inside the shape")
+	private String ruhrShapeFile;
+
+	@Parameter(names = {"-networkFile", "-nf"}, description = "Required by -gridSize")
+	private String networkFile;
+
+	@Parameter(names = {"-gridSize", "-gs"}, description = "Counts distinct agents per square grid cell of this size instead of per link")
+	private double gridSize = 0;
+
+	@Parameter(names = {"-scalingFactor", "-sf"})
+	private double scalingFactor = 100;
+
+	@Parameter(names = {"-concurrentRuns", "-cr"}, description = "Number of event files which are parsed at the same time")
+	private int concurrentRuns = Runtime.getRuntime().availableProcessors();
+
+	public static void main(String[] args) {
+
+		ApproximateAnalysis analysis = new ApproximateAnalysis();
+		JCommander.newBuilder().addObject(analysis).build().parse(args);
+		analysis.run();
+	}
+
+	private void run() {
+
+		Predicate<Id<Person>> agentFilter = createAgentFilter();
+		Function<Id<Link>, String> linkKey = createLinkKey();
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrentRuns);
+		ApproximateTripAnalysis result = createAnalysis(agentFilter, linkKey);
+
+		try {
+			List<Future<ApproximateTripAnalysis>> runs = new ArrayList<>();
+			for (String file : eventFiles) {
+				runs.add(executor.submit(() -> parseEventFile(Paths.get(file), agentFilter, linkKey)));
+			}
+			for (Future<ApproximateTripAnalysis> run : runs) {
+				result.merge(run.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Path directory = Paths.get(outputDirectory);
+		writeDistinctAgents(result, directory.resolve("distinct-agents.csv"));
+		writeTravelTimes(result, directory.resolve("travel-time-quantiles.csv"));
+		writeHeavyHitterLinks(result, directory.resolve("heavy-hitter-links.csv"));
+	}
+
+	private static ApproximateTripAnalysis createAnalysis(Predicate<Id<Person>> agentFilter, Function<Id<Link>, String> linkKey) {
+		return new ApproximateTripAnalysis.Builder()
+				.agentFilter(agentFilter)
+				.linkKey(linkKey)
+				.build();
+	}
+
+	private static ApproximateTripAnalysis parseEventFile(Path file, Predicate<Id<Person>> agentFilter, Function<Id<Link>, String> linkKey) {
+
+		ApproximateTripAnalysis analysis = createAnalysis(agentFilter, linkKey);
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler(analysis.createTripEventHandler(new NemoModeLocationChoiceMainModeIdentifier()));
+		manager.addHandler(analysis);
+		BinaryEventsReader.readEvents(manager, file);
+
+		logger.info("Finished reading " + file);
+		return analysis;
+	}
+
+	private Predicate<Id<Person>> createAgentFilter() {
+
+		if (ruhrShapeFile == null) return id -> true;
+		if (populationFile == null) throw new IllegalArgumentException("-ruhrShape requires a -populationFile");
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		NEMOUtils.readPopulation(scenario, populationFile);
+		return RuhrAgentsFilter.create(scenario, ruhrShapeFile)::includeAgent;
+	}
+
+	private Function<Id<Link>, String> createLinkKey() {
+
+		if (gridSize <= 0) return Id::toString;
+		if (networkFile == null) throw new IllegalArgumentException("-gridSize requires a -networkFile");
+
+		// links are assigned to the cell of their to node, the lower left corner of the cell is its key
+		Network network = NetworkUtils.readNetwork(networkFile);
+		return linkId -> {
+			Coord coord = network.getLinks().get(linkId).getToNode().getCoord();
+			return (long) Math.floor(coord.getX() / gridSize) * gridSize + "_" + (long) Math.floor(coord.getY() / gridSize) * gridSize;
+		};
+	}
+
+	private void writeDistinctAgents(ApproximateTripAnalysis analysis, Path file) {
+
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file), CSVFormat.DEFAULT)) {
+			printer.printRecord("key", "agents");
+			for (Map.Entry<String, Double> entry : analysis.getDistinctAgents().entrySet()) {
+				printer.printRecord(entry.getKey(), entry.getValue() * scalingFactor);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeTravelTimes(ApproximateTripAnalysis analysis, Path file) {
+
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file), CSVFormat.DEFAULT)) {
+
+			List<Object> header = new ArrayList<>(List.of("mode", "hour", "trips", "min"));
+			for (double rank : RANKS) {
+				header.add("p" + Math.round(rank * 100));
+			}
+			header.add("max");
+			printer.printRecord(header);
+
+			for (String mode : analysis.getModes()) {
+				for (int hour = 0; hour < analysis.getNumberOfHours(mode); hour++) {
+
+					QuantileSketch travelTimes = analysis.getTravelTimes(mode, hour);
+					if (travelTimes.getCount() == 0) continue;
+
+					List<Object> record = new ArrayList<>(List.of(mode, hour, travelTimes.getCount() * scalingFactor, travelTimes.getMin()));
+					for (double rank : RANKS) {
+						record.add(travelTimes.getQuantile(rank));
+					}
+					record.add(travelTimes.getMax());
+					printer.printRecord(record);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeHeavyHitterLinks(ApproximateTripAnalysis analysis, Path file) {
+
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file), CSVFormat.DEFAULT)) {
+			printer.printRecord("link", "volume");
+			for (Map.Entry<String, Long> entry : analysis.getHeavyHitterLinks().entrySet()) {
+				printer.printRecord(entry.getKey(), entry.getValue() * scalingFactor);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleLeavesTrafficEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.MainModeIdentifier;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Approximate counterpart of {@link TripAnalysis} for large runs. Instead of recording each trip it keeps sketches with
+ * a fixed memory per key:
+ * <ul>
+ * <li>a {@link HyperLogLog} of the distinct drivers per link or per any other key of a link, e.g. a grid cell</li>
+ * <li>a {@link QuantileSketch} of the travel times per main mode and departure hour</li>
+ * <li>a {@link CountMinSketch} of the link volumes, which keeps the links with the highest volumes</li>
+ * </ul>
+ * Trips are received from a {@link TripEventHandler}, see {@link #createTripEventHandler(MainModeIdentifier)}, link
+ * events are handled directly. Analyses of different threads or runs can be merged, if they were built with the same
+ * settings.
+ */
+public class ApproximateTripAnalysis implements TripEventHandler.TripListener, LinkEnterEventHandler, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
+
+	private final Predicate<Id<Person>> agentFilter;
+	private final Function<Id<Link>, String> linkKey;
+	private final int distinctAgentsPrecision;
+	private final int quantileAccuracy;
+
+	private final Map<String, HyperLogLog> distinctAgents = new HashMap<>();
+	private final Map<String, List<QuantileSketch>> travelTimes = new TreeMap<>();
+	private final CountMinSketch linkVolumes;
+
+	// hash of the driver of each vehicle in traffic, if the driver is accepted by the agent filter
+	private final Map<Id<Vehicle>, Long> driverHashes = new HashMap<>();
+
+	private ApproximateTripAnalysis(Builder builder) {
+		this.agentFilter = builder.agentFilter;
+		this.linkKey = builder.linkKey;
+		this.distinctAgentsPrecision = builder.distinctAgentsPrecision;
+		this.quantileAccuracy = builder.quantileAccuracy;
+		this.linkVolumes = new CountMinSketch(builder.countMinDepth, builder.countMinWidth, builder.numberOfHeavyHitters);
+	}
+
+	/**
+	 * @return a handler which passes the trips of the agents accepted by the agent filter to this analysis
+	 */
+	public TripEventHandler createTripEventHandler(MainModeIdentifier mainModeIdentifier) {
+		return new TripEventHandler(mainModeIdentifier, agentFilter, this);
+	}
+
+	@Override
+	public void handleTrip(Id<Person> personId, TripEventHandler.Trip trip) {
+
+		int hour = (int) (trip.getDepartureTime() / 3600);
+		List<QuantileSketch> hours = travelTimes.computeIfAbsent(trip.getMainMode(), mode -> new ArrayList<>());
+		while (hours.size() <= hour) {
+			hours.add(new QuantileSketch(quantileAccuracy));
+		}
+		hours.get(hour).add(trip.getArrivalTime() - trip.getDepartureTime());
+	}
+
+	@Override
+	public void handleEvent(VehicleEntersTrafficEvent event) {
+		if (agentFilter.test(event.getPersonId()))
+			driverHashes.put(event.getVehicleId(), Sketches.hash(event.getPersonId().toString()));
+	}
+
+	@Override
+	public void handleEvent(VehicleLeavesTrafficEvent event) {
+		driverHashes.remove(event.getVehicleId());
+	}
+
+	@Override
+	public void handleEvent(LinkEnterEvent event) {
+
+		Long driverHash = driverHashes.get(event.getVehicleId());
+		if (driverHash == null) return;
+
+		distinctAgents.computeIfAbsent(linkKey.apply(event.getLinkId()), key -> new HyperLogLog(distinctAgentsPrecision)).add(driverHash);
+		linkVolumes.add(event.getLinkId().toString(), 1);
+	}
+
+	@Override
+	public void reset(int iteration) {
+		driverHashes.clear();
+	}
+
+	public void merge(ApproximateTripAnalysis other) {
+
+		other.distinctAgents.forEach((key, sketch) ->
+				distinctAgents.computeIfAbsent(key, k -> new HyperLogLog(distinctAgentsPrecision)).merge(sketch));
+
+		other.travelTimes.forEach((mode, otherHours) -> {
+			List<QuantileSketch> hours = travelTimes.computeIfAbsent(mode, m -> new ArrayList<>());
+			for (int hour = 0; hour < otherHours.size(); hour++) {
+				if (hour == hours.size()) hours.add(new QuantileSketch(quantileAccuracy));
+				hours.get(hour).merge(otherHours.get(hour));
+			}
+		});
+
+		linkVolumes.merge(other.linkVolumes);
+	}
+
+	/**
+	 * @return the estimated number of distinct agents by key of the link
+	 */
+	public Map<String, Double> getDistinctAgents() {
+
+		Map<String, Double> result = new TreeMap<>();
+		distinctAgents.forEach((key, sketch) -> result.put(key, sketch.estimate()));
+		return result;
+	}
+
+	public Set<String> getModes() {
+		return Collections.unmodifiableSet(travelTimes.keySet());
+	}
+
+	public int getNumberOfHours(String mode) {
+		return travelTimes.getOrDefault(mode, Collections.emptyList()).size();
+	}
+
+	/**
+	 * @return the travel times of the trips with the main mode which departed in the hour, starting with 0
+	 */
+	public QuantileSketch getTravelTimes(String mode, int hour) {
+
+		List<QuantileSketch> hours = travelTimes.getOrDefault(mode, Collections.emptyList());
+		return hour < hours.size() ? hours.get(hour) : new QuantileSketch(quantileAccuracy);
+	}
+
+	/**
+	 * @return the links with the highest number of vehicles of accepted drivers and their estimated volumes
+	 */
+	public Map<String, Long> getHeavyHitterLinks() {
+		return linkVolumes.getHeavyHitters();
+	}
+
+	public static class Builder {
+
+		private Predicate<Id<Person>> agentFilter = id -> true;
+		private Function<Id<Link>, String> linkKey = Id::toString;
+		private int distinctAgentsPrecision = 8;
+		private int quantileAccuracy = 200;
+		private int countMinDepth = 4;
+		private int countMinWidth = 1 << 16;
+		private int numberOfHeavyHitters = 100;
+
+		public Builder agentFilter(Predicate<Id<Person>> agentFilter) {
+			this.agentFilter = agentFilter;
+			return this;
+		}
+
+		/**
+		 * Distinct agents are counted per key of the link, e.g. a grid cell. Defaults to the link id.
+		 */
+		public Builder linkKey(Function<Id<Link>, String> linkKey) {
+			this.linkKey = linkKey;
+			return this;
+		}
+
+		/**
+		 * Each key takes 2^precision bytes, the relative error is about 1.04 / sqrt(2^precision). Defaults to 8.
+		 */
+		public Builder distinctAgentsPrecision(int distinctAgentsPrecision) {
+			this.distinctAgentsPrecision = distinctAgentsPrecision;
+			return this;
+		}
+
+		/**
+		 * Each mode and hour keeps about 3 times this number of travel times. Defaults to 200.
+		 */
+		public Builder quantileAccuracy(int quantileAccuracy) {
+			this.quantileAccuracy = quantileAccuracy;
+			return this;
+		}
+
+		public Builder countMinDepth(int countMinDepth) {
+			this.countMinDepth = countMinDepth;
+			return this;
+		}
+
+		public Builder countMinWidth(int countMinWidth) {
+			this.countMinWidth = countMinWidth;
+			return this;
+		}
+
+		public Builder numberOfHeavyHitters(int numberOfHeavyHitters) {
+			this.numberOfHeavyHitters = numberOfHeavyHitters;
+			return this;
+		}
+
+		public ApproximateTripAnalysis build() {
+			return new ApproximateTripAnalysis(this);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.matsim.nemo.analysis;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Layout of the binary events files written by {@link BinaryEventsWriter} and read by {@link BinaryEventsReader}.
+ * <p>
+ * A file starts with {@link #MAGIC} and {@link #VERSION}, followed by blocks. Each block starts with its length in
+ * bytes and holds complete records only. A record starts with its type and is followed by its fields. Strings (ids,
+ * activity types and modes) are dictionary encoded: the first occurrence of a string is written as a {@link #STRING}
+ * record which assigns the next index to it, all later references use that index. A missing value is written as
+ * {@link #NO_STRING}.
+ */
+final class BinaryEventsFormat {
+
+	static final int MAGIC = 0x4e454d42; // "NEMB"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int BLOCK_SIZE = 1 << 20;
+	static final int NO_STRING = -1;
+
+	// record types
+	static final byte STRING = 0;
+	static final byte ACTIVITY_END = 1;
+	static final byte ACTIVITY_START = 2;
+	static final byte PERSON_DEPARTURE = 3;
+	static final byte PERSON_ARRIVAL = 4;
+	static final byte PERSON_STUCK = 5;
+	static final byte TRANSIT_DRIVER_STARTS = 6;
+	static final byte LINK_ENTER = 7;
+	static final byte LINK_LEAVE = 8;
+	static final byte VEHICLE_ENTERS_TRAFFIC = 9;
+	static final byte VEHICLE_LEAVES_TRAFFIC = 10;
+	static final byte PERSON_ENTERS_VEHICLE = 11;
+	static final byte PERSON_LEAVES_VEHICLE = 12;
+
+	private BinaryEventsFormat() {
+	}
+
+	/**
+	 * Tests whether the file starts with the magic number of the binary format.
+	 */
+	static boolean isBinaryEventsFile(Path file) {
+
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+			return in.readInt() == MAGIC;
+		} catch (EOFException e) {
+			return false;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
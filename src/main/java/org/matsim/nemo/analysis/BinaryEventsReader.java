@@ -0,0 +1,225 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.utils.io.MatsimXmlParser;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.nemo.util.BlockGzipInputStream;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads binary events files written by {@link BinaryEventsWriter} and passes the events to an {@link EventsManager}.
+ * The file is memory mapped in windows of whole blocks. Ids are created once per dictionary entry and reused for all
+ * subsequent events.
+ */
+public class BinaryEventsReader {
+
+	private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+	private final EventsManager manager;
+
+	private String[] strings = new String[1024];
+	private int stringCount = 0;
+
+	private final IdCache<Person> personIds = new IdCache<>(Person.class);
+	private final IdCache<Link> linkIds = new IdCache<>(Link.class);
+	private final IdCache<ActivityFacility> facilityIds = new IdCache<>(ActivityFacility.class);
+	private final IdCache<Vehicle> vehicleIds = new IdCache<>(Vehicle.class);
+
+	public BinaryEventsReader(EventsManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Reads the file with this reader if it is a binary events file and with a {@link MatsimEventsReader} otherwise.
+	 * Block compressed xml files are inflated on several threads while they are parsed.
+	 */
+	static void readEvents(EventsManager manager, Path file) {
+
+		if (BinaryEventsFormat.isBinaryEventsFile(file)) {
+			new BinaryEventsReader(manager).readFile(file);
+		} else if (BlockGzipInputStream.isBlockGzipFile(file)) {
+			try (InputStream in = new BlockGzipInputStream(file, Runtime.getRuntime().availableProcessors())) {
+				new MatsimEventsReader(manager).readStream(in, MatsimXmlParser.ValidationType.NO_VALIDATION);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
+			new MatsimEventsReader(manager).readFile(file.toString());
+		}
+	}
+
+	public void readFile(Path file) {
+
+		// the dictionary is local to a file
+		stringCount = 0;
+		personIds.clear();
+		linkIds.clear();
+		facilityIds.clear();
+		vehicleIds.clear();
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			long size = channel.size();
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryEventsFormat.HEADER_SIZE);
+			if (header.getInt() != BinaryEventsFormat.MAGIC)
+				throw new IllegalArgumentException(file + " is not a binary events file.");
+			int version = header.getInt();
+			if (version != BinaryEventsFormat.VERSION)
+				throw new IllegalArgumentException(file + " has version " + version + " but only version " + BinaryEventsFormat.VERSION + " is supported.");
+
+			long position = BinaryEventsFormat.HEADER_SIZE;
+			while (position < size) {
+
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, MAX_WINDOW_SIZE));
+				readBlocks(window);
+
+				if (window.position() == 0) throw new IllegalStateException(file + " ends with an incomplete block.");
+				position += window.position();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads all blocks which are completely contained in the window. Afterwards the position of the window points to
+	 * the first byte which was not read.
+	 */
+	private void readBlocks(MappedByteBuffer window) {
+
+		while (window.remaining() >= 4) {
+
+			int start = window.position();
+			int length = window.getInt(start);
+			if (window.remaining() - 4 < length) return;
+
+			int end = start + 4 + length;
+			window.position(start + 4);
+			while (window.position() < end) {
+				readRecord(window);
+			}
+		}
+	}
+
+	private void readRecord(MappedByteBuffer buffer) {
+
+		byte type = buffer.get();
+		if (type == BinaryEventsFormat.STRING) {
+			readString(buffer);
+			return;
+		}
+
+		double time = buffer.getDouble();
+
+		switch (type) {
+			case BinaryEventsFormat.ACTIVITY_END:
+				manager.processEvent(new ActivityEndEvent(time, personIds.get(buffer.getInt()), linkIds.get(buffer.getInt()), facilityIds.get(buffer.getInt()), string(buffer.getInt())));
+				break;
+			case BinaryEventsFormat.ACTIVITY_START:
+				manager.processEvent(new ActivityStartEvent(time, personIds.get(buffer.getInt()), linkIds.get(buffer.getInt()), facilityIds.get(buffer.getInt()), string(buffer.getInt())));
+				break;
+			case BinaryEventsFormat.PERSON_DEPARTURE:
+				manager.processEvent(new PersonDepartureEvent(time, personIds.get(buffer.getInt()), linkIds.get(buffer.getInt()), string(buffer.getInt())));
+				break;
+			case BinaryEventsFormat.PERSON_ARRIVAL:
+				manager.processEvent(new PersonArrivalEvent(time, personIds.get(buffer.getInt()), linkIds.get(buffer.getInt()), string(buffer.getInt())));
+				break;
+			case BinaryEventsFormat.PERSON_STUCK:
+				manager.processEvent(new PersonStuckEvent(time, personIds.get(buffer.getInt()), linkIds.get(buffer.getInt()), string(buffer.getInt())));
+				break;
+			case BinaryEventsFormat.TRANSIT_DRIVER_STARTS:
+				manager.processEvent(new TransitDriverStartsEvent(time, personIds.get(buffer.getInt()), vehicleIds.get(buffer.getInt()),
+						id(buffer.getInt(), TransitLine.class), id(buffer.getInt(), TransitRoute.class), id(buffer.getInt(), Departure.class)));
+				break;
+			case BinaryEventsFormat.LINK_ENTER:
+				manager.processEvent(new LinkEnterEvent(time, vehicleIds.get(buffer.getInt()), linkIds.get(buffer.getInt())));
+				break;
+			case BinaryEventsFormat.LINK_LEAVE:
+				manager.processEvent(new LinkLeaveEvent(time, vehicleIds.get(buffer.getInt()), linkIds.get(buffer.getInt())));
+				break;
+			case BinaryEventsFormat.VEHICLE_ENTERS_TRAFFIC:
+				manager.processEvent(new VehicleEntersTrafficEvent(time, personIds.get(buffer.getInt()), linkIds.get(buffer.getInt()),
+						vehicleIds.get(buffer.getInt()), string(buffer.getInt()), buffer.getDouble()));
+				break;
+			case BinaryEventsFormat.VEHICLE_LEAVES_TRAFFIC:
+				manager.processEvent(new VehicleLeavesTrafficEvent(time, personIds.get(buffer.getInt()), linkIds.get(buffer.getInt()),
+						vehicleIds.get(buffer.getInt()), string(buffer.getInt()), buffer.getDouble()));
+				break;
+			case BinaryEventsFormat.PERSON_ENTERS_VEHICLE:
+				manager.processEvent(new PersonEntersVehicleEvent(time, personIds.get(buffer.getInt()), vehicleIds.get(buffer.getInt())));
+				break;
+			case BinaryEventsFormat.PERSON_LEAVES_VEHICLE:
+				manager.processEvent(new PersonLeavesVehicleEvent(time, personIds.get(buffer.getInt()), vehicleIds.get(buffer.getInt())));
+				break;
+			default:
+				throw new IllegalStateException("Unknown record type " + type + " at position " + (buffer.position() - 9));
+		}
+	}
+
+	private void readString(MappedByteBuffer buffer) {
+
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+
+		if (stringCount == strings.length) strings = Arrays.copyOf(strings, strings.length * 2);
+		strings[stringCount++] = new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private String string(int index) {
+		return index == BinaryEventsFormat.NO_STRING ? null : strings[index];
+	}
+
+	private <T> Id<T> id(int index, Class<T> type) {
+		return index == BinaryEventsFormat.NO_STRING ? null : Id.create(strings[index], type);
+	}
+
+	/**
+	 * Ids of one type by dictionary index, so that each id is only looked up once
+	 */
+	private class IdCache<T> {
+
+		private final Class<T> type;
+		private Id<T>[] ids;
+
+		@SuppressWarnings("unchecked")
+		private IdCache(Class<T> type) {
+			this.type = type;
+			this.ids = new Id[1024];
+		}
+
+		private Id<T> get(int index) {
+
+			if (index == BinaryEventsFormat.NO_STRING) return null;
+			if (index >= ids.length) ids = Arrays.copyOf(ids, Math.max(index + 1, ids.length * 2));
+
+			Id<T> id = ids[index];
+			if (id == null) {
+				id = Id.create(strings[index], type);
+				ids[index] = id;
+			}
+			return id;
+		}
+
+		private void clear() {
+			Arrays.fill(ids, null);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package org.matsim.nemo.analysis;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Converts events into the binary format described in {@link BinaryEventsFormat}, so that repeated analyses of the
+ * same run can use {@link BinaryEventsReader} instead of parsing the xml events file again. Event types which are not
+ * supported by the format are skipped and reported when the writer is closed.
+ */
+public class BinaryEventsWriter implements BasicEventHandler, Closeable {
+
+	private static final Logger logger = Logger.getLogger(BinaryEventsWriter.class);
+
+	// large enough for the largest record, which is a vehicle traffic event
+	private static final int MAX_RECORD_SIZE = 64;
+
+	private final FileChannel channel;
+	private final ByteBuffer block = ByteBuffer.allocate(BinaryEventsFormat.BLOCK_SIZE);
+	private final Map<String, Integer> dictionary = new HashMap<>();
+	private final Map<String, Integer> skippedEvents = new TreeMap<>();
+
+	public BinaryEventsWriter(Path file) {
+
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			ByteBuffer header = ByteBuffer.allocate(BinaryEventsFormat.HEADER_SIZE);
+			header.putInt(BinaryEventsFormat.MAGIC).putInt(BinaryEventsFormat.VERSION).flip();
+			channel.write(header);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		startBlock();
+	}
+
+	public static void main(String[] args) {
+
+		Args arguments = new Args();
+		JCommander.newBuilder().addObject(arguments).build().parse(args);
+
+		EventsManager manager = EventsUtils.createEventsManager();
+		try (BinaryEventsWriter writer = new BinaryEventsWriter(Paths.get(arguments.outputFile))) {
+			manager.addHandler(writer);
+			BinaryEventsReader.readEvents(manager, Paths.get(arguments.eventFile));
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+
+		if (event instanceof ActivityEndEvent) {
+			ActivityEndEvent e = (ActivityEndEvent) event;
+			writeRecord(BinaryEventsFormat.ACTIVITY_END, e.getTime(), index(e.getPersonId()), index(e.getLinkId()), index(e.getFacilityId()), index(e.getActType()));
+		} else if (event instanceof ActivityStartEvent) {
+			ActivityStartEvent e = (ActivityStartEvent) event;
+			writeRecord(BinaryEventsFormat.ACTIVITY_START, e.getTime(), index(e.getPersonId()), index(e.getLinkId()), index(e.getFacilityId()), index(e.getActType()));
+		} else if (event instanceof PersonDepartureEvent) {
+			PersonDepartureEvent e = (PersonDepartureEvent) event;
+			writeRecord(BinaryEventsFormat.PERSON_DEPARTURE, e.getTime(), index(e.getPersonId()), index(e.getLinkId()), index(e.getLegMode()));
+		} else if (event instanceof PersonArrivalEvent) {
+			PersonArrivalEvent e = (PersonArrivalEvent) event;
+			writeRecord(BinaryEventsFormat.PERSON_ARRIVAL, e.getTime(), index(e.getPersonId()), index(e.getLinkId()), index(e.getLegMode()));
+		} else if (event instanceof PersonStuckEvent) {
+			PersonStuckEvent e = (PersonStuckEvent) event;
+			writeRecord(BinaryEventsFormat.PERSON_STUCK, e.getTime(), index(e.getPersonId()), index(e.getLinkId()), index(e.getLegMode()));
+		} else if (event instanceof TransitDriverStartsEvent) {
+			TransitDriverStartsEvent e = (TransitDriverStartsEvent) event;
+			writeRecord(BinaryEventsFormat.TRANSIT_DRIVER_STARTS, e.getTime(), index(e.getDriverId()), index(e.getVehicleId()),
+					index(e.getTransitLineId()), index(e.getTransitRouteId()), index(e.getDepartureId()));
+		} else if (event instanceof LinkEnterEvent) {
+			LinkEnterEvent e = (LinkEnterEvent) event;
+			writeRecord(BinaryEventsFormat.LINK_ENTER, e.getTime(), index(e.getVehicleId()), index(e.getLinkId()));
+		} else if (event instanceof LinkLeaveEvent) {
+			LinkLeaveEvent e = (LinkLeaveEvent) event;
+			writeRecord(BinaryEventsFormat.LINK_LEAVE, e.getTime(), index(e.getVehicleId()), index(e.getLinkId()));
+		} else if (event instanceof VehicleEntersTrafficEvent) {
+			VehicleEntersTrafficEvent e = (VehicleEntersTrafficEvent) event;
+			writeRecord(BinaryEventsFormat.VEHICLE_ENTERS_TRAFFIC, e.getTime(), index(e.getPersonId()), index(e.getLinkId()), index(e.getVehicleId()), index(e.getNetworkMode()));
+			block.putDouble(e.getRelativePositionOnLink());
+		} else if (event instanceof VehicleLeavesTrafficEvent) {
+			VehicleLeavesTrafficEvent e = (VehicleLeavesTrafficEvent) event;
+			writeRecord(BinaryEventsFormat.VEHICLE_LEAVES_TRAFFIC, e.getTime(), index(e.getPersonId()), index(e.getLinkId()), index(e.getVehicleId()), index(e.getNetworkMode()));
+			block.putDouble(e.getRelativePositionOnLink());
+		} else if (event instanceof PersonEntersVehicleEvent) {
+			PersonEntersVehicleEvent e = (PersonEntersVehicleEvent) event;
+			writeRecord(BinaryEventsFormat.PERSON_ENTERS_VEHICLE, e.getTime(), index(e.getPersonId()), index(e.getVehicleId()));
+		} else if (event instanceof PersonLeavesVehicleEvent) {
+			PersonLeavesVehicleEvent e = (PersonLeavesVehicleEvent) event;
+			writeRecord(BinaryEventsFormat.PERSON_LEAVES_VEHICLE, e.getTime(), index(e.getPersonId()), index(e.getVehicleId()));
+		} else {
+			skippedEvents.merge(event.getEventType(), 1, Integer::sum);
+		}
+	}
+
+	@Override
+	public void close() {
+
+		try {
+			writeBlock();
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		skippedEvents.forEach((type, count) -> logger.warn("Skipped " + count + " events of unsupported type '" + type + "'"));
+	}
+
+	/**
+	 * Returns the dictionary index of the value and writes a string record if the value is new.
+	 */
+	private int index(Object value) {
+
+		if (value == null) return BinaryEventsFormat.NO_STRING;
+
+		String string = value instanceof Id ? value.toString() : (String) value;
+		Integer index = dictionary.get(string);
+		if (index == null) {
+			index = dictionary.size();
+			dictionary.put(string, index);
+
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			ensureSpace(1 + 4 + bytes.length);
+			block.put(BinaryEventsFormat.STRING).putInt(bytes.length).put(bytes);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes type, time and the string indices of a record. The string records have to be written before this
+	 * method is called, which the evaluation order of the arguments takes care of.
+	 */
+	private void writeRecord(byte type, double time, int... strings) {
+
+		ensureSpace(MAX_RECORD_SIZE);
+		block.put(type).putDouble(time);
+		for (int string : strings) {
+			block.putInt(string);
+		}
+	}
+
+	private void ensureSpace(int bytes) {
+
+		if (bytes > block.capacity() - 4)
+			throw new IllegalArgumentException("Record of " + bytes + " bytes does not fit into a block.");
+
+		if (block.remaining() < bytes) {
+			try {
+				writeBlock();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			startBlock();
+		}
+	}
+
+	private void startBlock() {
+		block.clear();
+		// leave space for the length of the block
+		block.position(4);
+	}
+
+	private void writeBlock() throws IOException {
+
+		if (block.position() == 4) return;
+
+		block.putInt(0, block.position() - 4);
+		block.flip();
+		while (block.hasRemaining()) {
+			channel.write(block);
+		}
+	}
+
+	private static class Args {
+
+		@Parameter(names = {"-eventFile", "-ef"}, required = true)
+		private String eventFile = "";
+
+		@Parameter(names = {"-outputFile", "-of"}, required = true)
+		private String outputFile = "";
+	}
+}
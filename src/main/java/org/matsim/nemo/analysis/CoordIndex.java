@@ -0,0 +1,141 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.router.StageActivityTypeIdentifier;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves the coordinate of a trip end in constant time. The coordinates are taken from
+ * <ol>
+ * <li>the scenario's facility with the trip end's facility id</li>
+ * <li>the first main activity of the person's selected plan with the trip end's facility id</li>
+ * <li>the link of the trip end, which is less accurate and counted as a fallback</li>
+ * </ol>
+ * Facility and activity coordinates are collected once and stored in primitive arrays which are keyed by facility
+ * index, or by person and facility index respectively. The index is immutable and can be used by several threads.
+ */
+class CoordIndex {
+
+	private static final long EMPTY = -1;
+
+	private final Network network;
+	private final ValueIndex<Id<ActivityFacility>> facilities = new ValueIndex<>();
+	private final ValueIndex<Id<Person>> persons = new ValueIndex<>();
+
+	// scenario facilities by facility index
+	private final double[] facilityX;
+	private final double[] facilityY;
+
+	// activity coordinates in an open addressing table keyed by person and facility index. Activities without
+	// coordinate are stored as NaN, so that they end up in the link fallback as before.
+	private final long[] activityKeys;
+	private final double[] activityX;
+	private final double[] activityY;
+
+	private final AtomicLong fallbacks = new AtomicLong();
+
+	CoordIndex(Scenario scenario, Network network) {
+
+		this.network = network;
+
+		scenario.getActivityFacilities().getFacilities().keySet().forEach(facilities::getOrAdd);
+		int numberOfScenarioFacilities = facilities.size();
+		facilityX = new double[numberOfScenarioFacilities];
+		facilityY = new double[numberOfScenarioFacilities];
+		for (ActivityFacility facility : scenario.getActivityFacilities().getFacilities().values()) {
+			int index = facilities.getIndex(facility.getId());
+			facilityX[index] = facility.getCoord().getX();
+			facilityY[index] = facility.getCoord().getY();
+		}
+
+		int numberOfActivities = 0;
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			for (PlanElement element : person.getSelectedPlan().getPlanElements()) {
+				if (isIndexedActivity(element)) numberOfActivities++;
+			}
+		}
+
+		int capacity = Integer.highestOneBit(Math.max(1, numberOfActivities) * 2 - 1) << 1;
+		activityKeys = new long[capacity];
+		activityX = new double[capacity];
+		activityY = new double[capacity];
+		Arrays.fill(activityKeys, EMPTY);
+
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			int personIndex = persons.getOrAdd(person.getId());
+			for (PlanElement element : person.getSelectedPlan().getPlanElements()) {
+
+				if (!isIndexedActivity(element)) continue;
+
+				Activity activity = (Activity) element;
+				long key = key(personIndex, facilities.getOrAdd(activity.getFacilityId()));
+				int slot = findSlot(key);
+
+				// only the first activity with a facility id counts
+				if (activityKeys[slot] == EMPTY) {
+					activityKeys[slot] = key;
+					activityX[slot] = activity.getCoord() == null ? Double.NaN : activity.getCoord().getX();
+					activityY[slot] = activity.getCoord() == null ? Double.NaN : activity.getCoord().getY();
+				}
+			}
+		}
+	}
+
+	Coord getCoord(Id<Person> personId, Id<ActivityFacility> facilityId, Id<Link> linkId) {
+
+		int facility = facilities.getIndex(facilityId);
+
+		if (facility != ValueIndex.NO_INDEX && facility < facilityX.length) {
+			return new Coord(facilityX[facility], facilityY[facility]);
+		}
+
+		int person = persons.getIndex(personId);
+		if (facility != ValueIndex.NO_INDEX && person != ValueIndex.NO_INDEX) {
+			int slot = findSlot(key(person, facility));
+			if (activityKeys[slot] != EMPTY && !Double.isNaN(activityX[slot])) {
+				return new Coord(activityX[slot], activityY[slot]);
+			}
+		}
+
+		fallbacks.incrementAndGet();
+		return network.getLinks().get(linkId).getCoord();
+	}
+
+	/**
+	 * Number of coordinates which were taken from links, since neither a facility nor an activity was found
+	 */
+	long getNumberOfFallbacks() {
+		return fallbacks.get();
+	}
+
+	private int findSlot(long key) {
+
+		int mask = activityKeys.length - 1;
+		int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+		while (activityKeys[slot] != EMPTY && activityKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static long key(int person, int facility) {
+		return ((long) person << 32) | facility;
+	}
+
+	private static boolean isIndexedActivity(PlanElement element) {
+
+		if (!(element instanceof Activity)) return false;
+		Activity activity = (Activity) element;
+		return !StageActivityTypeIdentifier.isStageActivity(activity.getType()) && activity.getFacilityId() != null;
+	}
+}
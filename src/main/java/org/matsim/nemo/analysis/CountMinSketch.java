@@ -0,0 +1,130 @@
+package org.matsim.nemo.analysis;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estimates counts of many keys in a fixed table of depth x width counters and keeps the keys with the highest
+ * estimates as heavy hitters. Estimates are never too low and too high by at most 2/width of the total count in
+ * 1 - (1/2)^depth of the cases. Sketches with the same dimensions can be merged.
+ */
+public class CountMinSketch {
+
+	private final int depth;
+	private final int width;
+	private final long[][] counters;
+	private final int numberOfHeavyHitters;
+
+	// the current heavy hitter candidates with their estimates
+	private final Map<String, Long> heavyHitters = new HashMap<>();
+	private long minHeavyHitter;
+
+	private long total;
+
+	/**
+	 * @param numberOfHeavyHitters number of keys with the highest estimates which are kept
+	 */
+	public CountMinSketch(int depth, int width, int numberOfHeavyHitters) {
+
+		if (depth < 1 || width < 1)
+			throw new IllegalArgumentException("depth and width must be positive but were " + depth + " and " + width);
+
+		this.depth = depth;
+		this.width = width;
+		this.counters = new long[depth][width];
+		this.numberOfHeavyHitters = numberOfHeavyHitters;
+	}
+
+	public void add(String key, long count) {
+
+		long hash = Sketches.hash(key);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			int column = getColumn(hash, row);
+			counters[row][column] += count;
+			estimate = Math.min(estimate, counters[row][column]);
+		}
+		total += count;
+		offerHeavyHitter(key, estimate);
+	}
+
+	public long estimate(String key) {
+
+		long hash = Sketches.hash(key);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counters[row][getColumn(hash, row)]);
+		}
+		return estimate;
+	}
+
+	public void merge(CountMinSketch other) {
+
+		if (other.depth != depth || other.width != width)
+			throw new IllegalArgumentException("Sketches of different dimensions can't be merged.");
+
+		for (int row = 0; row < depth; row++) {
+			for (int column = 0; column < width; column++) {
+				counters[row][column] += other.counters[row][column];
+			}
+		}
+		total += other.total;
+
+		// the estimates of all candidates have changed, so they are collected anew
+		Map<String, Long> candidates = new HashMap<>(heavyHitters);
+		candidates.putAll(other.heavyHitters);
+		heavyHitters.clear();
+		minHeavyHitter = 0;
+		candidates.keySet().forEach(key -> offerHeavyHitter(key, estimate(key)));
+	}
+
+	/**
+	 * @return the heavy hitters with their estimated counts, the highest first
+	 */
+	public Map<String, Long> getHeavyHitters() {
+
+		Map<String, Long> estimates = new HashMap<>();
+		heavyHitters.keySet().forEach(key -> estimates.put(key, estimate(key)));
+
+		Map<String, Long> result = new LinkedHashMap<>();
+		estimates.entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+				.forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+		return result;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	private int getColumn(long hash, int row) {
+		// derives the hash of each row from two independent hashes
+		long rowHash = hash + row * Sketches.mix(hash ^ 0x9e3779b97f4a7c15L);
+		return (int) Math.floorMod(rowHash, (long) width);
+	}
+
+	private void offerHeavyHitter(String key, long estimate) {
+
+		if (numberOfHeavyHitters <= 0) return;
+
+		if (heavyHitters.containsKey(key) || heavyHitters.size() < numberOfHeavyHitters) {
+			heavyHitters.put(key, estimate);
+			return;
+		}
+
+		// estimates only grow, so the remembered minimum is a lower bound and the actual minimum is only looked up if
+		// the key might replace it
+		if (estimate <= minHeavyHitter) return;
+
+		Map.Entry<String, Long> min = null;
+		for (Map.Entry<String, Long> entry : heavyHitters.entrySet()) {
+			if (min == null || entry.getValue() < min.getValue()) min = entry;
+		}
+		minHeavyHitter = min.getValue();
+		if (estimate > minHeavyHitter) {
+			heavyHitters.remove(min.getKey());
+			heavyHitters.put(key, estimate);
+		}
+	}
+}
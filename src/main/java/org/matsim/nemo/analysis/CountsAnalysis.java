@@ -0,0 +1,99 @@
+package org.matsim.nemo.analysis;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.counts.Counts;
+import org.matsim.counts.MatsimCountsReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the link volumes of several runs with a counts file, e.g. the combined counts written by
+ * {@link org.matsim.nemo.counts.CombinedCountsWriter}. Writes a table with observed and simulated volume and GEH for each
+ * station and hour and a table with RMSE, bias and GEH summaries for each station.
+ */
+public class CountsAnalysis {
+
+	private static final double GEH_LIMIT = 5;
+
+	@Parameter(names = {"-eventFile", "-ef"}, required = true)
+	private List<String> eventFiles = new ArrayList<>();
+
+	@Parameter(names = {"-countsFile", "-cf"}, required = true)
+	private String countsFile = "";
+
+	@Parameter(names = {"-scalingFactor", "-sf"})
+	private double scalingFactor = 100;
+
+	@Parameter(names = {"-outputDirectory", "-od"}, required = true)
+	private String outputDirectory = "";
+
+	@Parameter(names = {"-concurrentRuns", "-cr"}, description = "Number of event files which are parsed at the same time")
+	private int concurrentRuns = Runtime.getRuntime().availableProcessors();
+
+	public static void main(String[] args) {
+
+		CountsAnalysis analysis = new CountsAnalysis();
+		JCommander.newBuilder().addObject(analysis).build().parse(args);
+		analysis.run();
+	}
+
+	private void run() {
+
+		Counts<Link> counts = new Counts<>();
+		new MatsimCountsReader(counts).readFile(countsFile);
+
+		List<Path> files = eventFiles.stream().map(Paths::get).collect(Collectors.toList());
+		Map<String, List<StationComparison>> result = new CountsComparison(counts, scalingFactor).compare(files, concurrentRuns);
+
+		Path directory = Paths.get(outputDirectory);
+		writeHourly(result, directory.resolve("counts-comparison-hourly.csv"));
+		writeStations(result, directory.resolve("counts-comparison-stations.csv"));
+	}
+
+	private static void writeHourly(Map<String, List<StationComparison>> result, Path file) {
+
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file), CSVFormat.DEFAULT)) {
+			printer.printRecord("run", "station", "link", "hour", "observed", "simulated", "geh");
+			for (Map.Entry<String, List<StationComparison>> run : result.entrySet()) {
+				for (StationComparison station : run.getValue()) {
+					for (int hour = 0; hour < LinkVolumeHandler.HOURS; hour++) {
+						if (!station.hasObserved(hour)) continue;
+						printer.printRecord(run.getKey(), station.getStation(), station.getLinkId(), hour + 1,
+								station.getObserved(hour), station.getSimulated(hour), station.getGeh(hour));
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeStations(Map<String, List<StationComparison>> result, Path file) {
+
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file), CSVFormat.DEFAULT)) {
+			printer.printRecord("run", "station", "link", "hours", "rmse", "bias", "meanGeh", "shareGehBelow" + (int) GEH_LIMIT);
+			for (Map.Entry<String, List<StationComparison>> run : result.entrySet()) {
+				for (StationComparison station : run.getValue()) {
+					if (station.getNumberOfHours() == 0) continue;
+					printer.printRecord(run.getKey(), station.getStation(), station.getLinkId(), station.getNumberOfHours(),
+							station.getRootMeanSquareError(), station.getBias(), station.getMeanGeh(),
+							station.getShareOfHoursWithGehBelow(GEH_LIMIT));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package org.matsim.nemo.analysis;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.counts.Count;
+import org.matsim.counts.Counts;
+import org.matsim.counts.Volume;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares simulated link volumes with counts, e.g. the ones created by the
+ * {@link org.matsim.nemo.counts.LongTermCountsCreator} and {@link org.matsim.nemo.counts.ShortTermCountsCreator}.
+ * Only the counted links are indexed, so that the volumes of an events file fit into a small array and many events
+ * files can be read at the same time.
+ */
+public class CountsComparison {
+
+	private static final Logger logger = Logger.getLogger(CountsComparison.class);
+
+	private final ValueIndex<Id<Link>> countedLinks = new ValueIndex<>();
+	private final List<Count<Link>> counts = new ArrayList<>();
+	private final double scalingFactor;
+
+	/**
+	 * @param scalingFactor simulated volumes are multiplied by this factor, e.g. 100 for a 1% sample
+	 */
+	public CountsComparison(Counts<Link> counts, double scalingFactor) {
+
+		for (Count<Link> count : counts.getCounts().values()) {
+			countedLinks.getOrAdd(count.getId());
+			this.counts.add(count);
+		}
+		this.scalingFactor = scalingFactor;
+	}
+
+	/**
+	 * Reads the events files in parallel.
+	 *
+	 * @return the comparison of each events file by run id, in the order of the files
+	 */
+	public Map<String, List<StationComparison>> compare(List<Path> eventFiles, int concurrentRuns) {
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrentRuns);
+		try {
+			List<Future<List<StationComparison>>> runs = new ArrayList<>();
+			for (Path file : eventFiles) {
+				runs.add(executor.submit(() -> compare(readVolumes(file))));
+			}
+
+			Map<String, List<StationComparison>> result = new LinkedHashMap<>();
+			for (int i = 0; i < eventFiles.size(); i++) {
+				String runId = eventFiles.get(i).getFileName().toString().split("[.]")[0];
+				result.put(runId, runs.get(i).get());
+				logger.info("Run: " + runId + " was compared with " + counts.size() + " count stations.");
+			}
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the unscaled volumes of the counted links by link index and hour of the day
+	 */
+	int[][] readVolumes(Path eventFile) {
+
+		EventsManager manager = EventsUtils.createEventsManager();
+		LinkVolumeHandler handler = createHandler();
+		manager.addHandler(handler);
+		BinaryEventsReader.readEvents(manager, eventFile);
+		return handler.getVolumes();
+	}
+
+	LinkVolumeHandler createHandler() {
+		return new LinkVolumeHandler(countedLinks);
+	}
+
+	List<StationComparison> compare(int[][] volumes) {
+
+		List<StationComparison> result = new ArrayList<>(counts.size());
+		for (int link = 0; link < counts.size(); link++) {
+
+			Count<Link> count = counts.get(link);
+			double[] observed = new double[LinkVolumeHandler.HOURS];
+			double[] simulated = new double[LinkVolumeHandler.HOURS];
+			Arrays.fill(observed, Double.NaN);
+
+			for (int hour = 0; hour < LinkVolumeHandler.HOURS; hour++) {
+				// counts start with hour 1 for the volume between midnight and 1am
+				Volume volume = count.getVolume(hour + 1);
+				if (volume != null) observed[hour] = volume.getValue();
+				simulated[hour] = volumes[link][hour] * scalingFactor;
+			}
+			result.add(new StationComparison(count.getCsLabel(), count.getId(), observed, simulated));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,166 @@
+package org.matsim.nemo.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of distance bins, optionally grouped by a key such as the main mode. The bins of each key are sorted by
+ * their limits, so that the bin of a distance is found with a binary search. Counting is done in {@link Counts}, which
+ * are plain primitive arrays. Each thread should use its own counts, which are merged afterwards, e.g.:
+ * <pre>
+ * trips.parallelStream().collect(histogram::newCounts, (counts, trip) -> counts.increment(mode, distance), Counts::merge)
+ * </pre>
+ * Bins include both of their limits. If two adjacent bins share a limit, a distance equal to that limit is counted in
+ * the lower bin.
+ */
+public class DistanceHistogram {
+
+	/**
+	 * Key of bins which are not grouped
+	 */
+	public static final String NO_KEY = "";
+
+	private static final int NO_BIN = -1;
+
+	private final Map<String, Integer> keyIndex = new HashMap<>();
+
+	// by key index: limits sorted ascending and the bin numbers in the order in which the bins were added
+	private final double[][] lowerLimits;
+	private final double[][] upperLimits;
+	private final int[][] binNumbers;
+	private final int numberOfBins;
+
+	private DistanceHistogram(List<String> keys, List<double[]> bins) {
+
+		List<List<Integer>> binsByKey = new ArrayList<>();
+		for (int bin = 0; bin < bins.size(); bin++) {
+			int key = keyIndex.computeIfAbsent(keys.get(bin), k -> keyIndex.size());
+			if (key == binsByKey.size()) binsByKey.add(new ArrayList<>());
+			binsByKey.get(key).add(bin);
+		}
+
+		lowerLimits = new double[binsByKey.size()][];
+		upperLimits = new double[binsByKey.size()][];
+		binNumbers = new int[binsByKey.size()][];
+
+		for (int key = 0; key < binsByKey.size(); key++) {
+
+			int[] sorted = binsByKey.get(key).stream()
+					.sorted((a, b) -> Double.compare(bins.get(a)[0], bins.get(b)[0]))
+					.mapToInt(Integer::intValue)
+					.toArray();
+
+			lowerLimits[key] = new double[sorted.length];
+			upperLimits[key] = new double[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				lowerLimits[key][i] = bins.get(sorted[i])[0];
+				upperLimits[key][i] = bins.get(sorted[i])[1];
+				if (i > 0 && lowerLimits[key][i] < upperLimits[key][i - 1])
+					throw new IllegalArgumentException("Bins of key '" + keys.get(sorted[i]) + "' overlap at " + lowerLimits[key][i]);
+			}
+			binNumbers[key] = sorted;
+		}
+		numberOfBins = bins.size();
+	}
+
+	public int getNumberOfBins() {
+		return numberOfBins;
+	}
+
+	public Counts newCounts() {
+		return new Counts();
+	}
+
+	/**
+	 * Returns the number of the bin which contains the distance, or -1 if there is no such bin.
+	 */
+	public int getBin(String key, double distance) {
+
+		Integer index = keyIndex.get(key);
+		if (index == null) return NO_BIN;
+
+		double[] upper = upperLimits[index];
+		int position = Arrays.binarySearch(upper, distance);
+
+		// find the first bin whose upper limit is not smaller than the distance
+		if (position < 0) position = -position - 1;
+		else while (position > 0 && upper[position - 1] == distance) position--;
+
+		if (position == upper.length || lowerLimits[index][position] > distance) return NO_BIN;
+		return binNumbers[index][position];
+	}
+
+	/**
+	 * Per thread counts of a histogram
+	 */
+	public class Counts {
+
+		private final long[] values = new long[numberOfBins];
+
+		private Counts() {
+		}
+
+		public void increment(double distance) {
+			increment(NO_KEY, distance);
+		}
+
+		public void increment(String key, double distance) {
+
+			int bin = getBin(key, distance);
+			if (bin == NO_BIN)
+				throw new IllegalArgumentException("no bin for key: '" + key + "' and distance of: " + distance + " was found");
+			values[bin]++;
+		}
+
+		public long get(int bin) {
+			return values[bin];
+		}
+
+		void add(int bin, long count) {
+			values[bin] += count;
+		}
+
+		/**
+		 * Adds the other counts to these counts. Both must belong to the same histogram.
+		 */
+		public void merge(Counts other) {
+
+			if (other.values.length != values.length)
+				throw new IllegalArgumentException("Counts of different histograms can't be merged.");
+
+			for (int i = 0; i < values.length; i++) {
+				values[i] += other.values[i];
+			}
+		}
+	}
+
+	public static class Builder {
+
+		private final List<String> keys = new ArrayList<>();
+		private final List<double[]> bins = new ArrayList<>();
+
+		/**
+		 * Adds a bin and returns its number. Bins are numbered in the order in which they are added.
+		 */
+		public int addBin(String key, double lowerLimit, double upperLimit) {
+
+			if (lowerLimit > upperLimit)
+				throw new IllegalArgumentException("lower limit " + lowerLimit + " is greater than upper limit " + upperLimit);
+
+			keys.add(key);
+			bins.add(new double[]{lowerLimit, upperLimit});
+			return bins.size() - 1;
+		}
+
+		public int addBin(double lowerLimit, double upperLimit) {
+			return addBin(NO_KEY, lowerLimit, upperLimit);
+		}
+
+		public DistanceHistogram build() {
+			return new DistanceHistogram(keys, bins);
+		}
+	}
+}
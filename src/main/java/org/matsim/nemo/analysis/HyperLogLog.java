@@ -0,0 +1,67 @@
+package org.matsim.nemo.analysis;
+
+/**
+ * Estimates the number of distinct values added to it, with a fixed memory of one byte per register. The relative
+ * error is about 1.04 / sqrt(2^precision), e.g. 6.5% with a precision of 8, which takes 256 bytes. Sketches of the same
+ * precision can be merged, which gives the same result as adding all values to one sketch.
+ * <p>
+ * Values are added as 64 bit hashes, see {@link Sketches#hash(CharSequence)}.
+ */
+public class HyperLogLog {
+
+	private final int precision;
+	private final byte[] registers;
+
+	/**
+	 * @param precision the number of hash bits which select the register, between 4 and 16
+	 */
+	public HyperLogLog(int precision) {
+
+		if (precision < 4 || precision > 16)
+			throw new IllegalArgumentException("precision must be between 4 and 16 but was " + precision);
+
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	public void add(long hash) {
+
+		int register = (int) (hash >>> (64 - precision));
+		// the guard bit limits the rank if all remaining bits are zero
+		long remainder = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(remainder) + 1);
+		if (rank > registers[register]) registers[register] = rank;
+	}
+
+	public void merge(HyperLogLog other) {
+
+		if (other.precision != precision)
+			throw new IllegalArgumentException("Sketches of precision " + precision + " and " + other.precision + " can't be merged.");
+
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+		}
+	}
+
+	public double estimate() {
+
+		int m = registers.length;
+		double sum = 0;
+		int emptyRegisters = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) emptyRegisters++;
+		}
+
+		double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+
+		// small numbers are estimated more precisely from the share of empty registers
+		if (estimate <= 2.5 * m && emptyRegisters > 0) return m * Math.log((double) m / emptyRegisters);
+		return estimate;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+}
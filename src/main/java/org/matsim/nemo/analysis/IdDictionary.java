@@ -0,0 +1,46 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.function.Predicate;
+
+/**
+ * Person, link and facility ids of a scenario, indexed once and shared by the {@link TripStore}s of several runs. The
+ * dictionary is immutable. Ids which are not contained, e.g. those of transit drivers, are indexed by each store.
+ */
+class IdDictionary {
+
+	private final ValueIndex<Id<Person>> persons = new ValueIndex<>();
+	private final ValueIndex<Id<Link>> links = new ValueIndex<>();
+	private final ValueIndex<Id<ActivityFacility>> facilities = new ValueIndex<>();
+
+	/**
+	 * @param includePerson only persons accepted by this filter are indexed, since the stores allocate per person
+	 *                      columns for every indexed person
+	 */
+	IdDictionary(Scenario scenario, Network network, Predicate<Id<Person>> includePerson) {
+
+		scenario.getPopulation().getPersons().keySet().stream()
+				.filter(includePerson)
+				.forEach(persons::getOrAdd);
+		network.getLinks().keySet().forEach(links::getOrAdd);
+		scenario.getActivityFacilities().getFacilities().keySet().forEach(facilities::getOrAdd);
+	}
+
+	ValueIndex<Id<Person>> getPersons() {
+		return persons;
+	}
+
+	ValueIndex<Id<Link>> getLinks() {
+		return links;
+	}
+
+	ValueIndex<Id<ActivityFacility>> getFacilities() {
+		return facilities;
+	}
+}
@@ -0,0 +1,81 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.TransitDriverStartsEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Counts the cars entering a fixed set of links per hour of the day. Volumes are kept in a flat array per link,
+ * links which are not part of the index are ignored. Vehicles entering a link after the end of the day are not counted,
+ * same as with hourly counts.
+ * <p>
+ * Only vehicles which entered traffic as car are counted, since the counts are car counts. Transit vehicles are
+ * skipped, although their drivers enter traffic as car as well.
+ */
+class LinkVolumeHandler implements LinkEnterEventHandler, VehicleEntersTrafficEventHandler, TransitDriverStartsEventHandler {
+
+	static final int HOURS = 24;
+
+	private final ValueIndex<Id<Link>> links;
+	private final int[][] volumes;
+
+	private final Set<Id<Vehicle>> transitVehicles = new HashSet<>();
+	private final Set<Id<Vehicle>> cars = new HashSet<>();
+
+	/**
+	 * @param links the counted links. The index is only read and may be shared by several handlers.
+	 */
+	LinkVolumeHandler(ValueIndex<Id<Link>> links) {
+		this.links = links;
+		this.volumes = new int[links.size()][HOURS];
+	}
+
+	@Override
+	public void handleEvent(TransitDriverStartsEvent event) {
+		transitVehicles.add(event.getVehicleId());
+		cars.remove(event.getVehicleId());
+	}
+
+	@Override
+	public void handleEvent(VehicleEntersTrafficEvent event) {
+		if (TransportMode.car.equals(event.getNetworkMode()) && !transitVehicles.contains(event.getVehicleId()))
+			cars.add(event.getVehicleId());
+	}
+
+	@Override
+	public void handleEvent(LinkEnterEvent event) {
+
+		int link = links.getIndex(event.getLinkId());
+		if (link == ValueIndex.NO_INDEX || !cars.contains(event.getVehicleId())) return;
+
+		int hour = (int) (event.getTime() / 3600);
+		if (hour < HOURS) volumes[link][hour]++;
+	}
+
+	@Override
+	public void reset(int iteration) {
+		for (int[] linkVolumes : volumes) {
+			Arrays.fill(linkVolumes, 0);
+		}
+		transitVehicles.clear();
+		cars.clear();
+	}
+
+	/**
+	 * @return the volumes by index of the link and hour of the day, starting with 0
+	 */
+	int[][] getVolumes() {
+		return volumes;
+	}
+}
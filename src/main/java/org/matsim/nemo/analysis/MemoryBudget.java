@@ -0,0 +1,32 @@
+package org.matsim.nemo.analysis;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Limits the estimated memory of concurrently running tasks. A task waits until enough of the budget is free for its
+ * estimate. Estimates above the budget are capped, so that such a task runs once it has the whole budget on its own.
+ */
+class MemoryBudget {
+
+	private static final long MEGABYTE = 1024 * 1024;
+
+	private final Semaphore megabytes;
+	private final int totalMegabytes;
+
+	MemoryBudget(long bytes) {
+		this.totalMegabytes = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / MEGABYTE));
+		this.megabytes = new Semaphore(totalMegabytes, true);
+	}
+
+	<T> T run(long estimatedBytes, Supplier<T> task) {
+
+		int permits = (int) Math.max(1, Math.min(totalMegabytes, (estimatedBytes + MEGABYTE - 1) / MEGABYTE));
+		megabytes.acquireUninterruptibly(permits);
+		try {
+			return task.get();
+		} finally {
+			megabytes.release(permits);
+		}
+	}
+}
@@ -3,38 +3,50 @@ package org.matsim.nemo.analysis;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
-import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.events.EventsUtils;
-import org.matsim.core.events.MatsimEventsReader;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
-import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.collections.Tuple;
-import org.matsim.core.utils.geometry.CoordUtils;
-import org.matsim.core.utils.gis.ShapeFileReader;
-import org.matsim.facilities.ActivityFacility;
 import org.matsim.nemo.RuhrAgentsFilter;
 import org.matsim.nemo.runners.NemoModeLocationChoiceMainModeIdentifier;
 import org.matsim.nemo.util.ExpectedDistanceDistribution;
 import org.matsim.nemo.util.ExpectedModalDistanceDistribution;
 import org.matsim.nemo.util.ExpectedModalShare;
+import org.matsim.nemo.util.NEMOUtils;
 import playground.vsp.cadyts.marginals.DistanceDistribution;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class ModalDistanceAnalysis {
 
 	private static Logger logger = Logger.getLogger(ModalDistanceAnalysis.class);
 
+	// recorded trips and the parser's buffers take roughly twice the size of a compressed events file
+	private static final double ESTIMATED_MEMORY_PER_FILE_BYTE = 2;
+
 	@Parameter(names = {"-eventFile", "-ef"}, required = true)
 	private List<String> eventFiles = new ArrayList<>();
 
@@ -53,8 +65,27 @@ public class ModalDistanceAnalysis {
 	@Parameter(names = {"-outputFile", "-of"})
 	private String outputFile;
 
+	@Parameter(names = {"-pipelined", "-pl"})
+	private boolean pipelined = false;
+
+	@Parameter(names = {"-shards"})
+	private int shards = 4;
+
+	@Parameter(names = {"-queueCapacity"})
+	private int queueCapacity = 64;
+
+	@Parameter(names = {"-streamingExcel", "-se"})
+	private boolean streamingExcel = false;
+
+	@Parameter(names = {"-concurrentRuns", "-cr"}, description = "Number of event files which are parsed at the same time")
+	private int concurrentRuns = Runtime.getRuntime().availableProcessors();
+
+	@Parameter(names = {"-memoryBudget", "-mb"}, description = "Memory in MB which runs that are parsed at the same time may use together. Defaults to half of the max heap")
+	private long memoryBudget = Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024);
+
 	private Scenario scenario;
 	private Network network;
+	private IdDictionary idDictionary;
 
 	public static void main(String[] args) {
 
@@ -66,22 +97,46 @@ public class ModalDistanceAnalysis {
 	private void run() {
 
 		scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-		new PopulationReader(scenario).readFile(populationFile);
-		RuhrAgentsFilter agentsFilter = new RuhrAgentsFilter(this.scenario, ShapeFileReader.getAllFeatures(this.ruhrShapeFile));
+		NEMOUtils.readPopulation(scenario, populationFile);
+		RuhrAgentsFilter agentsFilter = RuhrAgentsFilter.create(this.scenario, this.ruhrShapeFile);
 
 		network = NetworkUtils.createNetwork();
 		new MatsimNetworkReader(network).readFile(networkFile);
 
-		DistanceDistribution expectedDistanceDistribution = ExpectedModalDistanceDistribution.create();
-
-		List<Tuple<String, TripAnalysis>> result = eventFiles.parallelStream()
-				.map(eventFile -> parseEventFile(Paths.get(eventFile), expectedDistanceDistribution, agentsFilter))
-				.collect(Collectors.toList());
+		// the ids of population and network are indexed once for all runs
+		idDictionary = new IdDictionary(scenario, network, agentsFilter::includeAgent);
 
+		DistanceDistribution expectedDistanceDistribution = ExpectedModalDistanceDistribution.create();
+		double[] distanceLimits = TripAnalysisExcelWriter.getDistanceLimits(expectedDistanceDistribution, ExpectedDistanceDistribution.create());
+
+		MemoryBudget budget = new MemoryBudget(memoryBudget * 1024 * 1024);
+		ExecutorService executor = Executors.newFixedThreadPool(concurrentRuns);
+		List<Tuple<String, TripAnalysis>> result;
+
+		try {
+			List<Future<Tuple<String, TripAnalysis>>> runs = eventFiles.stream()
+					.map(Paths::get)
+					.map(file -> executor.submit(() -> budget.run(estimateMemory(file),
+							() -> parseEventFile(file, expectedDistanceDistribution, distanceLimits, agentsFilter))))
+					.collect(Collectors.toList());
+
+			result = new ArrayList<>();
+			for (Future<Tuple<String, TripAnalysis>> run : runs) {
+				result.add(run.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
 
 		new TripAnalysisExcelWriter.Builder()
 				.filePath(Paths.get(outputFile))
 				.scalingFactor(scalingFactor)
+				.streaming(streamingExcel)
 				.tripAnalysises(result)
 				.addExpectedModalShare(ExpectedModalShare.create())
 				.addExpectedDistanceDistribution(ExpectedDistanceDistribution.create())
@@ -90,45 +145,60 @@ public class ModalDistanceAnalysis {
 				.write();
 	}
 
-	private Tuple<String, TripAnalysis> parseEventFile(Path file, DistanceDistribution expectedDistribution, RuhrAgentsFilter agentsFilter) {
-
-		EventsManager manager = EventsUtils.createEventsManager();
+	/**
+	 * A rough estimate of the memory needed while the trips of an events file are recorded
+	 */
+	private static long estimateMemory(Path file) {
+		try {
+			return (long) (Files.size(file) * ESTIMATED_MEMORY_PER_FILE_BYTE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 
-		TripEventHandler tripEventHandler = new TripEventHandler(new NemoModeLocationChoiceMainModeIdentifier(), agentsFilter::includeAgent);
+	private Tuple<String, TripAnalysis> parseEventFile(Path file, DistanceDistribution expectedDistribution, double[] distanceLimits, RuhrAgentsFilter agentsFilter) {
 
-		manager.addHandler(tripEventHandler);
-		new MatsimEventsReader(manager).readFile(file.toString());
+		List<TripEventHandler> handlers = readEventFile(file, agentsFilter);
 
-		DistanceDistribution simulatedDistribution = expectedDistribution.copyWithEmptyBins();
+		// the shards hold disjoint sets of persons, so the trips can simply be combined
+		Map<Id<Person>, List<TripEventHandler.Trip>> trips = new HashMap<>();
+		Set<Id<Person>> stuckPersons = new HashSet<>();
+		TimeProfile timeProfile = new TimeProfile();
+		for (TripEventHandler handler : handlers) {
+			trips.putAll(handler.getTrips());
+			stuckPersons.addAll(handler.getStuckPersons());
+			timeProfile.merge(handler.getTimeProfile());
+		}
 
-		tripEventHandler.getTrips().entrySet().parallelStream().flatMap(entry -> entry.getValue().stream())
-				.forEach(trip -> {
-					double distance = calculateBeelineDistance(trip);
-					simulatedDistribution.increaseCountByOne(trip.getMainMode(), distance);
-				});
+		TripAnalysis analysis = new TripAnalysis(trips, scenario, network, timeProfile);
 
-		TripAnalysis analysis = new TripAnalysis(tripEventHandler.getTrips(), scenario, network);
+		// fails early if a trip doesn't fit into any of the expected bins
+		analysis.calculateModalDistanceDistribution(expectedDistribution);
 		String runId = file.getFileName().toString().split("[.]")[0];
 
-		if (tripEventHandler.getStuckPersons().size() > 0) {
-			logger.warn("Run: " + runId + " had " + tripEventHandler.getStuckPersons().size() + " stuck agents.");
+		// only the aggregate is needed for the comparison, so the trips of the run are released right away
+		TripAggregate aggregate = analysis.reduce(distanceLimits);
+		logger.info("Run: " + runId + " was reduced to an aggregate of " + aggregate.getNumberOfTrips() + " trips.");
+
+		if (stuckPersons.size() > 0) {
+			logger.warn("Run: " + runId + " had " + stuckPersons.size() + " stuck agents.");
 		}
 
 		return Tuple.of(runId, analysis);
 	}
 
-	private double calculateBeelineDistance(TripEventHandler.Trip trip) {
-
-        if (scenario.getActivityFacilities().getFacilities().containsKey(trip.getDepartureFacility()) ||
-                scenario.getActivityFacilities().getFacilities().containsKey(trip.getArrivalFacility())
-		) {
-            ActivityFacility departureFacility = scenario.getActivityFacilities().getFacilities().get(trip.getDepartureFacility());
-            ActivityFacility arrivalFacility = scenario.getActivityFacilities().getFacilities().get(trip.getArrivalFacility());
-			return CoordUtils.calcEuclideanDistance(departureFacility.getCoord(), arrivalFacility.getCoord());
-		} else {
-            Link departureLink = network.getLinks().get(trip.getDepartureLink());
-            Link arrivalLink = network.getLinks().get(trip.getArrivalLink());
-			return CoordUtils.calcEuclideanDistance(departureLink.getToNode().getCoord(), arrivalLink.getToNode().getCoord());
+	private List<TripEventHandler> readEventFile(Path file, RuhrAgentsFilter agentsFilter) {
+
+		// the pipelined reader parses xml, so binary events files are always read with the binary reader
+		if (pipelined && !BinaryEventsFormat.isBinaryEventsFile(file)) {
+			return new PipelinedEventsReader(shards, queueCapacity).readFile(file,
+					() -> new TripEventHandler(new NemoModeLocationChoiceMainModeIdentifier(), agentsFilter::includeAgent, idDictionary));
 		}
+
+		EventsManager manager = EventsUtils.createEventsManager();
+		TripEventHandler tripEventHandler = new TripEventHandler(new NemoModeLocationChoiceMainModeIdentifier(), agentsFilter::includeAgent, idDictionary);
+		manager.addHandler(tripEventHandler);
+		BinaryEventsReader.readEvents(manager, file);
+		return Collections.singletonList(tripEventHandler);
 	}
 }
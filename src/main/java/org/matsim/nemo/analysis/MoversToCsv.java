@@ -6,12 +6,14 @@ import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.ConfigUtils;
-import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.gis.ShapeFileReader;
+import org.matsim.nemo.util.ColumnarTableWriter;
+import org.matsim.nemo.util.NEMOUtils;
 import org.opengis.feature.simple.SimpleFeature;
 
 import java.io.IOException;
@@ -19,7 +21,9 @@ import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Comparator;
+import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class MoversToCsv {
 
@@ -36,6 +40,15 @@ public class MoversToCsv {
     @Parameter(names = {"-shared-svn"})
     private String sharedSvn = "";
 
+    @Parameter(names = {"-columnar"})
+    private boolean columnar = false;
+
+    @Parameter(names = {"-compress"})
+    private boolean compress = false;
+
+    @Parameter(names = {"-threads"})
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
     public static void main(String[] args) throws IOException {
 
         var analysis = new MoversToCsv();
@@ -46,7 +59,7 @@ public class MoversToCsv {
     private void run() throws IOException {
 
         var scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-        new PopulationReader(scenario).readFile(inputFile);
+        NEMOUtils.readPopulation(scenario, inputFile);
 
         var sharedSvnPath = Paths.get(sharedSvn);
         // read in murmo transition raster
@@ -55,6 +68,25 @@ public class MoversToCsv {
                 .map(feature -> (Geometry) feature.getDefaultGeometry())
                 .collect(Collectors.toList());
 
+        if (columnar) {
+            new ColumnarTableWriter.Builder<MoverRow>()
+                    .stringColumn("id", row -> row.id)
+                    .longColumn("fromId", row -> row.sourceFeatureIndex)
+                    .doubleColumn("fromLat", row -> row.fromCoord.getY())
+                    .doubleColumn("fromLon", row -> row.fromCoord.getX())
+                    .longColumn("toId", row -> row.destinationFeatureIndex)
+                    .doubleColumn("toLat", row -> row.toCoord.getY())
+                    .doubleColumn("toLon", row -> row.toCoord.getX())
+                    .booleanColumn("moved", row -> row.moved)
+                    .booleanColumn("moved_all_acts", row -> row.movedAllActivities)
+                    .compression(compress)
+                    .numberOfThreads(numberOfThreads)
+                    .build()
+                    .write(Paths.get(outputFile), scenario.getPopulation().getPersons().values(), person -> isMover(person)
+                            ? Stream.of(new MoverRow(person, murmoFeatures))
+                            : Stream.empty());
+            return;
+        }
 
         try (Writer writer = Files.newBufferedWriter(Paths.get(outputFile))) {
             try (CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
@@ -63,29 +95,43 @@ public class MoversToCsv {
                 printer.printRecord("id", "fromId", "fromLat", "fromLon", "toId", "toLat", "toLon", "moved", "moved_all_acts");
 
                 //print moving relations of all persons
-                scenario.getPopulation().getPersons().values().stream()
-                        .filter(person -> person.getAttributes().getAttribute("was_moved") != null)
-                        .forEach(person -> {
-
-                            long sourceFeatureIndex = (long) person.getAttributes().getAttribute("source-feature");
-                            long destinationFeatureIndex = (long) person.getAttributes().getAttribute("destination-feature");
-                            boolean moved = person.getAttributes().getAttribute("was_moved") != null;
-                            boolean movedAllActivities = person.getAttributes().getAttribute("moved_all_activities") != null;
-                            var sourceFeature = murmoFeatures.get((int) sourceFeatureIndex);
-                            var destinationFeature = murmoFeatures.get((int) destinationFeatureIndex);
-
-                            var fromCoord = transformation.transform(new Coord(sourceFeature.getCentroid().getX(), sourceFeature.getCentroid().getY()));
-                            var toCoord = transformation.transform(new Coord(destinationFeature.getCentroid().getX(), destinationFeature.getCentroid().getY()));
-
-                            // iih, this is ugly
-                            try {
-                                printer.printRecord(person.getId(), sourceFeatureIndex, fromCoord.getY(), fromCoord.getX(),
-                                        destinationFeatureIndex, toCoord.getY(), toCoord.getX(), moved, movedAllActivities);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        });
+                for (Person person : scenario.getPopulation().getPersons().values()) {
+                    if (!isMover(person)) continue;
+
+                    var row = new MoverRow(person, murmoFeatures);
+                    printer.printRecord(row.id, row.sourceFeatureIndex, row.fromCoord.getY(), row.fromCoord.getX(),
+                            row.destinationFeatureIndex, row.toCoord.getY(), row.toCoord.getX(), row.moved, row.movedAllActivities);
+                }
             }
         }
     }
+
+    private static boolean isMover(Person person) {
+        return person.getAttributes().getAttribute("was_moved") != null;
+    }
+
+    private static class MoverRow {
+
+        private final String id;
+        private final long sourceFeatureIndex;
+        private final long destinationFeatureIndex;
+        private final Coord fromCoord;
+        private final Coord toCoord;
+        private final boolean moved;
+        private final boolean movedAllActivities;
+
+        private MoverRow(Person person, List<Geometry> murmoFeatures) {
+
+            this.id = person.getId().toString();
+            this.sourceFeatureIndex = (long) person.getAttributes().getAttribute("source-feature");
+            this.destinationFeatureIndex = (long) person.getAttributes().getAttribute("destination-feature");
+            this.moved = person.getAttributes().getAttribute("was_moved") != null;
+            this.movedAllActivities = person.getAttributes().getAttribute("moved_all_activities") != null;
+
+            var sourceFeature = murmoFeatures.get((int) sourceFeatureIndex);
+            var destinationFeature = murmoFeatures.get((int) destinationFeatureIndex);
+            this.fromCoord = transformation.transform(new Coord(sourceFeature.getCentroid().getX(), sourceFeature.getCentroid().getY()));
+            this.toCoord = transformation.transform(new Coord(destinationFeature.getCentroid().getX(), destinationFeature.getCentroid().getY()));
+        }
+    }
 }
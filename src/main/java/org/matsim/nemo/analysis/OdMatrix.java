@@ -0,0 +1,106 @@
+package org.matsim.nemo.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Sparse origin-destination matrix of trip counts between zones which are numbered from 0. The relations are stored in
+ * an open addressing table with the origin and destination packed into one long key, so that no objects are created
+ * per relation. Only relations with at least one trip take up space.
+ */
+public class OdMatrix {
+
+	private static final long EMPTY = -1;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	private long[] keys = createKeys(INITIAL_CAPACITY);
+	private long[] counts = new long[INITIAL_CAPACITY];
+	private int size;
+
+	public void increment(int from, int to) {
+		add(from, to, 1);
+	}
+
+	public void add(int from, int to, long count) {
+
+		if (from < 0 || to < 0) throw new IllegalArgumentException("Zones must not be negative but were " + from + " and " + to);
+
+		long key = key(from, to);
+		int slot = findSlot(key);
+		if (keys[slot] == EMPTY) {
+			keys[slot] = key;
+			size++;
+		}
+		counts[slot] += count;
+
+		// keep the table at most half full, so that probe sequences stay short
+		if (size * 2 > keys.length) grow();
+	}
+
+	public long get(int from, int to) {
+
+		int slot = findSlot(key(from, to));
+		return keys[slot] == EMPTY ? 0 : counts[slot];
+	}
+
+	public void merge(OdMatrix other) {
+		other.forEach(this::add);
+	}
+
+	/**
+	 * @return the number of relations with trips
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Passes all relations with trips to the consumer, in no particular order
+	 */
+	public void forEach(RelationConsumer consumer) {
+
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != EMPTY) consumer.accept((int) (keys[slot] >>> 32), (int) keys[slot], counts[slot]);
+		}
+	}
+
+	private int findSlot(long key) {
+
+		int mask = keys.length - 1;
+		int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+
+		long[] oldKeys = keys;
+		long[] oldCounts = counts;
+		keys = createKeys(oldKeys.length * 2);
+		counts = new long[oldKeys.length * 2];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == EMPTY) continue;
+			int slot = findSlot(oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			counts[slot] = oldCounts[i];
+		}
+	}
+
+	private static long[] createKeys(int capacity) {
+		long[] keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		return keys;
+	}
+
+	private static long key(int from, int to) {
+		return ((long) from << 32) | to;
+	}
+
+	@FunctionalInterface
+	public interface RelationConsumer {
+
+		void accept(int from, int to, long count);
+	}
+}
@@ -0,0 +1,202 @@
+package org.matsim.nemo.analysis;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.gis.ShapeFileReader;
+import org.matsim.nemo.RuhrAgentsFilter;
+import org.matsim.nemo.ZoneIndex;
+import org.matsim.nemo.runners.NemoModeLocationChoiceMainModeIdentifier;
+import org.matsim.nemo.util.ColumnarTableWriter;
+import org.matsim.nemo.util.NEMOUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Writes origin-destination matrices per main mode between the zones of a shape file, e.g. the cells of the MURMO
+ * Ruhr_Grid_1km or the municipalities of dvg2gem_nw. Trip ends are located like in {@link TripAnalysisToCsv} and
+ * assigned to zones with a {@link ZoneIndex}. The events file is read once, with -pipelined each shard of the
+ * {@link PipelinedEventsReader} fills its own matrices, which are merged afterwards.
+ * <p>
+ * The output has one row per mode and relation with at least one trip. It is written as csv or, with -columnar, in
+ * the binary format of {@link ColumnarTableWriter}.
+ */
+public class OdMatrixAnalysis {
+
+	private static final Logger logger = Logger.getLogger(OdMatrixAnalysis.class);
+
+	@Parameter(names = {"-eventFile", "-ef"}, required = true)
+	private String eventFile = "";
+
+	@Parameter(names = {"-networkFile", "-nf"}, required = true)
+	private String networkFile = "";
+
+	@Parameter(names = {"-populationFile", "-pf"}, required = true)
+	private String populationFile = "";
+
+	@Parameter(names = {"-zoneShape", "-zs"}, required = true)
+	private String zoneShapeFile = "";
+
+	@Parameter(names = {"-zoneIdAttribute", "-za"}, description = "ID_Gitter_ for the MURMO grid, KN for the dvg2gem_nw municipalities")
+	private String zoneIdAttribute = "ID_Gitter_";
+
+	@Parameter(names = {"-outputFile", "-of"}, required = true)
+	private String outputFile = "";
+
+	@Parameter(names = {"-ruhrShape", "-rs"})
+	private String ruhrShapeFile;
+
+	@Parameter(names = {"-scalingFactor", "-sf"})
+	private double scalingFactor = 100;
+
+	@Parameter(names = {"-pipelined", "-pl"})
+	private boolean pipelined = false;
+
+	@Parameter(names = {"-shards"})
+	private int shards = 4;
+
+	@Parameter(names = {"-queueCapacity"})
+	private int queueCapacity = 64;
+
+	@Parameter(names = {"-columnar"})
+	private boolean columnar = false;
+
+	@Parameter(names = {"-compress"})
+	private boolean compress = false;
+
+	public static void main(String[] args) {
+
+		OdMatrixAnalysis analysis = new OdMatrixAnalysis();
+		JCommander.newBuilder().addObject(analysis).build().parse(args);
+		analysis.run();
+	}
+
+	private void run() {
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		NEMOUtils.readPopulation(scenario, populationFile);
+		Predicate<Id<Person>> agentFilter = createAgentFilter(scenario);
+		Network network = NetworkUtils.readNetwork(networkFile);
+
+		CoordIndex coordIndex = new CoordIndex(scenario, network);
+		ZoneIndex zoneIndex = new ZoneIndex(ShapeFileReader.getAllFeatures(zoneShapeFile), zoneIdAttribute);
+		logger.info("Read " + zoneIndex.getZoneIds().size() + " zones from " + zoneShapeFile);
+
+		OdMatrixBuilder result = new OdMatrixBuilder(coordIndex, zoneIndex);
+		for (OdMatrixBuilder builder : readEventFile(Paths.get(eventFile), coordIndex, zoneIndex, agentFilter)) {
+			result.merge(builder);
+		}
+
+		if (result.getNumberOfTripsOutsideZones() > 0) {
+			logger.warn(result.getNumberOfTripsOutsideZones() + " trips started or ended outside of all zones and were skipped.");
+		}
+		if (coordIndex.getNumberOfFallbacks() > 0) {
+			logger.warn("Fell back to link coords for " + coordIndex.getNumberOfFallbacks() + " trip ends. This is not as accurate as Facility or Activity coordinates");
+		}
+
+		List<OdRow> rows = createRows(result, zoneIndex);
+		if (columnar) writeColumnar(rows, Paths.get(outputFile));
+		else writeCsv(rows, Paths.get(outputFile));
+	}
+
+	private Predicate<Id<Person>> createAgentFilter(Scenario scenario) {
+
+		// without a shape, the trips of all agents are counted
+		if (ruhrShapeFile == null) return id -> true;
+		return RuhrAgentsFilter.create(scenario, ruhrShapeFile)::includeAgent;
+	}
+
+	private List<OdMatrixBuilder> readEventFile(Path file, CoordIndex coordIndex, ZoneIndex zoneIndex, Predicate<Id<Person>> agentFilter) {
+
+		// the pipelined reader parses xml, so binary events files are always read with the binary reader
+		if (pipelined && !BinaryEventsFormat.isBinaryEventsFile(file)) {
+			List<OdMatrixBuilder> builders = Collections.synchronizedList(new ArrayList<>());
+			new PipelinedEventsReader(shards, queueCapacity).readFile(file, () -> {
+				OdMatrixBuilder builder = new OdMatrixBuilder(coordIndex, zoneIndex);
+				builders.add(builder);
+				return builder.createTripEventHandler(new NemoModeLocationChoiceMainModeIdentifier(), agentFilter);
+			});
+			return builders;
+		}
+
+		OdMatrixBuilder builder = new OdMatrixBuilder(coordIndex, zoneIndex);
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler(builder.createTripEventHandler(new NemoModeLocationChoiceMainModeIdentifier(), agentFilter));
+		BinaryEventsReader.readEvents(manager, file);
+		return Collections.singletonList(builder);
+	}
+
+	private List<OdRow> createRows(OdMatrixBuilder builder, ZoneIndex zoneIndex) {
+
+		List<OdRow> rows = new ArrayList<>();
+		builder.getMatrices().forEach((mode, matrix) -> {
+			List<OdRow> modeRows = new ArrayList<>(matrix.size());
+			matrix.forEach((from, to, count) -> modeRows.add(new OdRow(mode, from, to, zoneIndex, count * scalingFactor)));
+			modeRows.sort(Comparator.comparingInt((OdRow row) -> row.from).thenComparingInt(row -> row.to));
+			rows.addAll(modeRows);
+		});
+		return rows;
+	}
+
+	private void writeColumnar(List<OdRow> rows, Path file) {
+		new ColumnarTableWriter.Builder<OdRow>()
+				.stringColumn("mode", row -> row.mode)
+				.stringColumn("from", row -> row.fromId)
+				.stringColumn("to", row -> row.toId)
+				.doubleColumn("trips", row -> row.trips)
+				.compression(compress)
+				.build()
+				.write(file, rows);
+	}
+
+	private void writeCsv(List<OdRow> rows, Path file) {
+
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file), CSVFormat.DEFAULT)) {
+			printer.printRecord("mode", "from", "to", "trips");
+			for (OdRow row : rows) {
+				printer.printRecord(row.mode, row.fromId, row.toId, row.trips);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static class OdRow {
+
+		private final String mode;
+		private final int from;
+		private final int to;
+		private final String fromId;
+		private final String toId;
+		private final double trips;
+
+		private OdRow(String mode, int from, int to, ZoneIndex zoneIndex, double trips) {
+			this.mode = mode;
+			this.from = from;
+			this.to = to;
+			this.fromId = zoneIndex.getZoneId(from);
+			this.toId = zoneIndex.getZoneId(to);
+			this.trips = trips;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.MainModeIdentifier;
+import org.matsim.nemo.ZoneIndex;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Counts trips per main mode between the zones of their departure and arrival coordinates. Trips are received from a
+ * {@link TripEventHandler}, see {@link #createTripEventHandler(MainModeIdentifier, Predicate)}. Trips which start or
+ * end outside of all zones are only counted as such. Builders of different shards or runs can be merged, if they use
+ * the same zones.
+ */
+class OdMatrixBuilder implements TripEventHandler.TripListener {
+
+	private final CoordIndex coordIndex;
+	private final ZoneIndex zoneIndex;
+
+	private final Map<String, OdMatrix> matrices = new TreeMap<>();
+	private long tripsOutsideZones;
+
+	OdMatrixBuilder(CoordIndex coordIndex, ZoneIndex zoneIndex) {
+		this.coordIndex = coordIndex;
+		this.zoneIndex = zoneIndex;
+	}
+
+	TripEventHandler createTripEventHandler(MainModeIdentifier mainModeIdentifier, Predicate<Id<Person>> agentFilter) {
+		return new TripEventHandler(mainModeIdentifier, agentFilter, this);
+	}
+
+	@Override
+	public void handleTrip(Id<Person> personId, TripEventHandler.Trip trip) {
+
+		Coord from = coordIndex.getCoord(personId, trip.getDepartureFacility(), trip.getDepartureLink());
+		Coord to = coordIndex.getCoord(personId, trip.getArrivalFacility(), trip.getArrivalLink());
+		int fromZone = zoneIndex.getZone(from.getX(), from.getY());
+		int toZone = zoneIndex.getZone(to.getX(), to.getY());
+
+		if (fromZone == ZoneIndex.NO_ZONE || toZone == ZoneIndex.NO_ZONE) {
+			tripsOutsideZones++;
+			return;
+		}
+		matrices.computeIfAbsent(trip.getMainMode(), mode -> new OdMatrix()).increment(fromZone, toZone);
+	}
+
+	void merge(OdMatrixBuilder other) {
+
+		other.matrices.forEach((mode, matrix) -> matrices.computeIfAbsent(mode, m -> new OdMatrix()).merge(matrix));
+		tripsOutsideZones += other.tripsOutsideZones;
+	}
+
+	/**
+	 * @return the matrices by main mode
+	 */
+	Map<String, OdMatrix> getMatrices() {
+		return Collections.unmodifiableMap(matrices);
+	}
+
+	long getNumberOfTripsOutsideZones() {
+		return tripsOutsideZones;
+	}
+}
@@ -0,0 +1,151 @@
+package org.matsim.nemo.analysis;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.nemo.RuhrAgentsFilter;
+import org.matsim.nemo.runners.NemoModeLocationChoiceMainModeIdentifier;
+import org.matsim.nemo.util.ExpectedModalDistanceDistribution;
+import org.matsim.nemo.util.ExpectedModalShare;
+import playground.vsp.cadyts.marginals.DistanceDistribution;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+
+/**
+ * Attaches a {@link TripEventHandler} to the events of each analysed iteration. At the end of the iteration the trips
+ * are reduced to a {@link TripAggregate} and modal split and modal distance distribution are written into the
+ * iteration directory. Both are also appended to files in the output directory, which hold the values of all analysed
+ * iterations.
+ */
+class OnlineTripAnalysis implements BeforeMobsimListener, IterationEndsListener {
+
+	private static final Logger logger = Logger.getLogger(OnlineTripAnalysis.class);
+
+	private final Scenario scenario;
+	private final EventsManager eventsManager;
+	private final OutputDirectoryHierarchy outputDirectory;
+	private final TripAnalysisConfigGroup configGroup;
+	private final RuhrAgentsFilter agentsFilter;
+	private final IdDictionary idDictionary;
+
+	private final DistanceDistribution expectedModalDistanceDistribution = ExpectedModalDistanceDistribution.create();
+	private final Map<String, Long> expectedModalShare = ExpectedModalShare.create();
+	private final double[] distanceLimits;
+
+	private TripEventHandler handler;
+
+	@Inject
+	OnlineTripAnalysis(Scenario scenario, EventsManager eventsManager, OutputDirectoryHierarchy outputDirectory) {
+
+		this.scenario = scenario;
+		this.eventsManager = eventsManager;
+		this.outputDirectory = outputDirectory;
+		this.configGroup = ConfigUtils.addOrGetModule(scenario.getConfig(), TripAnalysisConfigGroup.class);
+		this.agentsFilter = RuhrAgentsFilter.create(scenario, configGroup.getRuhrShapeFile());
+		this.idDictionary = new IdDictionary(scenario, scenario.getNetwork(), agentsFilter::includeAgent);
+		this.distanceLimits = expectedModalDistanceDistribution.getDistanceBins().stream()
+				.flatMapToDouble(bin -> DoubleStream.of(bin.getDistanceRange().getLowerLimit(), bin.getDistanceRange().getUpperLimit()))
+				.toArray();
+	}
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+
+		if (configGroup.getWriteInterval() <= 0 || event.getIteration() % configGroup.getWriteInterval() != 0) return;
+
+		handler = new TripEventHandler(new NemoModeLocationChoiceMainModeIdentifier(), agentsFilter::includeAgent, idDictionary);
+		eventsManager.addHandler(handler);
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+
+		if (handler == null) return;
+
+		eventsManager.removeHandler(handler);
+		TripAnalysis analysis = new TripAnalysis(handler.getTrips(), scenario, scenario.getNetwork(), handler.getTimeProfile());
+		handler = null;
+
+		// only the counts are kept, the trips of the iteration are released
+		TripAggregate aggregate = analysis.reduce(distanceLimits);
+		logger.info("Iteration " + event.getIteration() + " had " + aggregate.getNumberOfTrips() + " trips of agents inside the ruhr area.");
+
+		writeModalSplit(event.getIteration(), aggregate);
+		writeModalDistanceDistribution(event.getIteration(), aggregate);
+	}
+
+	private void writeModalSplit(int iteration, TripAggregate aggregate) {
+
+		Map<String, Long> modalSplit = aggregate.getModalSplit();
+		TreeSet<String> modes = new TreeSet<>(expectedModalShare.keySet());
+		modes.addAll(modalSplit.keySet());
+
+		try (CSVPrinter iterationPrinter = createPrinter(Paths.get(outputDirectory.getIterationFilename(iteration, "modal-split.csv")), "mode", "expected", "simulated");
+			 CSVPrinter summaryPrinter = createAppendingPrinter(Paths.get(outputDirectory.getOutputFilename("modal-split.csv")), "iteration", "mode", "expected", "simulated")) {
+
+			for (String mode : modes) {
+				long expected = expectedModalShare.getOrDefault(mode, 0L);
+				double simulated = modalSplit.getOrDefault(mode, 0L) * configGroup.getScalingFactor();
+				iterationPrinter.printRecord(mode, expected, simulated);
+				summaryPrinter.printRecord(iteration, mode, expected, simulated);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeModalDistanceDistribution(int iteration, TripAggregate aggregate) {
+
+		List<DistanceDistribution.DistanceBin> bins = expectedModalDistanceDistribution.getDistanceBins().stream()
+				.sorted(Comparator.comparing(DistanceDistribution.DistanceBin::getMode).thenComparingDouble(bin -> bin.getDistanceRange().getLowerLimit()))
+				.collect(Collectors.toList());
+
+		try (CSVPrinter iterationPrinter = createPrinter(Paths.get(outputDirectory.getIterationFilename(iteration, "modal-distance-distribution.csv")), "mode", "lowerLimit", "upperLimit", "expected", "simulated");
+			 CSVPrinter summaryPrinter = createAppendingPrinter(Paths.get(outputDirectory.getOutputFilename("modal-distance-distribution.csv")), "iteration", "mode", "lowerLimit", "upperLimit", "expected", "simulated")) {
+
+			for (DistanceDistribution.DistanceBin bin : bins) {
+				double lowerLimit = bin.getDistanceRange().getLowerLimit();
+				double upperLimit = bin.getDistanceRange().getUpperLimit();
+				double simulated = aggregate.count(bin.getMode(), lowerLimit, upperLimit) * configGroup.getScalingFactor();
+				iterationPrinter.printRecord(bin.getMode(), lowerLimit, upperLimit, bin.getValue(), simulated);
+				summaryPrinter.printRecord(iteration, bin.getMode(), lowerLimit, upperLimit, bin.getValue(), simulated);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static CSVPrinter createPrinter(Path file, String... header) throws IOException {
+		CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file), CSVFormat.DEFAULT);
+		printer.printRecord((Object[]) header);
+		return printer;
+	}
+
+	private static CSVPrinter createAppendingPrinter(Path file, String... header) throws IOException {
+
+		boolean isNew = Files.notExists(file);
+		CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), CSVFormat.DEFAULT);
+		if (isNew) printer.printRecord((Object[]) header);
+		return printer;
+	}
+}
@@ -0,0 +1,82 @@
+package org.matsim.nemo.analysis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Formats chunks of text on worker threads and writes them in the order in which they were submitted. The number of
+ * pending chunks is limited, so that a slow writer blocks the submitting thread instead of filling up the memory.
+ */
+class OrderedParallelWriter implements Closeable {
+
+	private final Writer writer;
+	private final ExecutorService executor;
+	private final Queue<Future<String>> pending = new ArrayDeque<>();
+	private final int maxPending;
+
+	OrderedParallelWriter(Writer writer, int numberOfThreads) {
+		this.writer = writer;
+		this.executor = Executors.newFixedThreadPool(numberOfThreads);
+		this.maxPending = numberOfThreads * 4;
+	}
+
+	void submit(Callable<String> chunk) {
+
+		pending.add(executor.submit(chunk));
+		while (pending.size() > maxPending || (!pending.isEmpty() && pending.peek().isDone())) {
+			writeNext();
+		}
+	}
+
+	/**
+	 * Writes all pending chunks and shuts down the worker threads. The underlying writer is flushed but not closed.
+	 */
+	@Override
+	public void close() {
+
+		try {
+			while (!pending.isEmpty()) {
+				writeNext();
+			}
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void writeNext() {
+
+		try {
+			writer.write(pending.remove().get());
+		} catch (IOException e) {
+			discardPending();
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			discardPending();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			discardPending();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Drops the chunks after a failed one, so that close doesn't write them with a gap in the output
+	 */
+	private void discardPending() {
+		pending.forEach(future -> future.cancel(true));
+		pending.clear();
+	}
+}
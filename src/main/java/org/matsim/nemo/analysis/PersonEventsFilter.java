@@ -0,0 +1,207 @@
+package org.matsim.nemo.analysis;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.HasPersonId;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.nemo.RuhrAgentsFilter;
+import org.matsim.nemo.util.BlockGzipOutputStream;
+import org.matsim.nemo.util.NEMOUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Passes on only the events of persons accepted by a predicate. Link events carry a vehicle instead of a person, so
+ * the vehicles of accepted drivers are tracked from entering until leaving traffic and their link events are passed on
+ * as well. All other events, e.g. those of transit vehicles, are dropped.
+ * <p>
+ * The main method writes the events of a subset of the population, e.g. the agents living in the ruhr area, into a
+ * much smaller events file, so that analyses of the subset don't have to read the full events file again.
+ */
+public class PersonEventsFilter implements BasicEventHandler {
+
+	private static final Logger logger = Logger.getLogger(PersonEventsFilter.class);
+
+	private final Predicate<Id<Person>> includePerson;
+	private final BasicEventHandler delegate;
+	private final Map<Id<Vehicle>, Id<Person>> drivers = new HashMap<>();
+
+	private long events;
+	private long keptEvents;
+
+	public PersonEventsFilter(Predicate<Id<Person>> includePerson, BasicEventHandler delegate) {
+		this.includePerson = includePerson;
+		this.delegate = delegate;
+	}
+
+	public static void main(String[] args) {
+
+		Args arguments = new Args();
+		JCommander.newBuilder().addObject(arguments).build().parse(args);
+
+		Predicate<Id<Person>> includePerson = arguments.createPredicate();
+		Path outputFile = Paths.get(arguments.outputFile);
+		EventsManager manager = EventsUtils.createEventsManager();
+
+		// xml is written if asked for by the file name, everything else is written in the more compact binary format
+		if (outputFile.getFileName().toString().matches(".*[.]xml([.]gz)?")) {
+			EventWriterXML writer = outputFile.toString().endsWith(".gz") ?
+					new EventWriterXML(createBlockGzipStream(outputFile)) :
+					new EventWriterXML(outputFile.toString());
+			PersonEventsFilter filter = new PersonEventsFilter(includePerson, writer);
+			manager.addHandler(filter);
+			BinaryEventsReader.readEvents(manager, Paths.get(arguments.eventFile));
+			writer.closeFile();
+			filter.logSummary();
+		} else {
+			try (BinaryEventsWriter writer = new BinaryEventsWriter(outputFile)) {
+				PersonEventsFilter filter = new PersonEventsFilter(includePerson, writer);
+				manager.addHandler(filter);
+				BinaryEventsReader.readEvents(manager, Paths.get(arguments.eventFile));
+				filter.logSummary();
+			}
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+
+		events++;
+		if (include(event)) {
+			keptEvents++;
+			delegate.handleEvent(event);
+		}
+	}
+
+	@Override
+	public void reset(int iteration) {
+		drivers.clear();
+		delegate.reset(iteration);
+	}
+
+	private boolean include(Event event) {
+
+		if (event instanceof LinkEnterEvent) {
+			return drivers.containsKey(((LinkEnterEvent) event).getVehicleId());
+		} else if (event instanceof LinkLeaveEvent) {
+			return drivers.containsKey(((LinkLeaveEvent) event).getVehicleId());
+		} else if (event instanceof VehicleEntersTrafficEvent) {
+			VehicleEntersTrafficEvent e = (VehicleEntersTrafficEvent) event;
+			if (!includePerson.test(e.getPersonId())) return false;
+			drivers.put(e.getVehicleId(), e.getPersonId());
+			return true;
+		} else if (event instanceof VehicleLeavesTrafficEvent) {
+			return drivers.remove(((VehicleLeavesTrafficEvent) event).getVehicleId()) != null;
+		} else if (event instanceof TransitDriverStartsEvent) {
+			return includePerson.test(((TransitDriverStartsEvent) event).getDriverId());
+		} else if (event instanceof HasPersonId) {
+			return includePerson.test(((HasPersonId) event).getPersonId());
+		}
+		return false;
+	}
+
+	private static OutputStream createBlockGzipStream(Path file) {
+		try {
+			return new BlockGzipOutputStream(file, Runtime.getRuntime().availableProcessors());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void logSummary() {
+		logger.info("Kept " + keptEvents + " of " + events + " events.");
+		if (!drivers.isEmpty()) logger.warn(drivers.size() + " vehicles of kept drivers didn't leave traffic.");
+	}
+
+	private static class Args {
+
+		@Parameter(names = {"-eventFile", "-ef"}, required = true)
+		private String eventFile = "";
+
+		@Parameter(names = {"-outputFile", "-of"}, required = true, description = "Events are written as xml if the file ends with .xml or .xml.gz and in the binary format otherwise. Compressed xml is written in blocks, which can be inflated in parallel.")
+		private String outputFile = "";
+
+		@Parameter(names = {"-populationFile", "-pf"}, description = "Required by -ruhrShape and -onlyMovedAgents")
+		private String populationFile;
+
+		@Parameter(names = {"-ruhrShape", "-rs"}, description = "Only keeps persons living inside the shape")
+		private String ruhrShapeFile;
+
+		@Parameter(names = {"-onlyMovedAgents", "-om"}, description = "Only keeps persons which were moved by murmo")
+		private boolean onlyMovedAgents = false;
+
+		@Parameter(names = {"-personIds", "-pi"}, description = "Only keeps the persons listed in the file, one id per line")
+		private String personIdsFile;
+
+		/**
+		 * All given conditions must hold for a person to be kept
+		 */
+		private Predicate<Id<Person>> createPredicate() {
+
+			Predicate<Id<Person>> result = id -> true;
+
+			if (ruhrShapeFile != null || onlyMovedAgents) {
+
+				if (populationFile == null)
+					throw new IllegalArgumentException("-ruhrShape and -onlyMovedAgents require a -populationFile");
+
+				Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+				NEMOUtils.readPopulation(scenario, populationFile);
+
+				if (ruhrShapeFile != null) {
+					RuhrAgentsFilter agentsFilter = RuhrAgentsFilter.create(scenario, ruhrShapeFile);
+					result = result.and(agentsFilter::includeAgent);
+				}
+				if (onlyMovedAgents) {
+					// persons which are not part of the population, e.g. transit drivers, are never moved
+					Set<Id<Person>> movedPersons = scenario.getPopulation().getPersons().values().stream()
+							.filter(person -> person.getAttributes().getAttribute(TripAnalysisToCsv.WAS_MOVED_KEY) != null)
+							.map(Person::getId)
+							.collect(Collectors.toSet());
+					result = result.and(movedPersons::contains);
+				}
+			}
+
+			if (personIdsFile != null) {
+				try (Stream<String> lines = Files.lines(Paths.get(personIdsFile))) {
+					Set<Id<Person>> personIds = lines
+							.map(String::trim)
+							.filter(line -> !line.isEmpty())
+							.map(Id::createPersonId)
+							.collect(Collectors.toSet());
+					result = result.and(personIds::contains);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return result;
+		}
+	}
+}
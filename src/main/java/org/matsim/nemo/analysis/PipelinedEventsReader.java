@@ -0,0 +1,334 @@
+package org.matsim.nemo.analysis;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.nemo.util.BlockGzipInputStream;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.vehicles.Vehicle;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Reads an events file with several threads. Decompression, SAX parsing and the construction of event objects run on
+ * separate threads which are joined by bounded queues. The events are then dispatched onto a number of shards. Each
+ * shard has its own handler and its own thread. Events are assigned to shards by person id, so that a handler sees
+ * all events of the persons of its shard in the original order. Events without a person, such as
+ * {@link TransitDriverStartsEvent}, are passed to all shards.
+ * <p>
+ * Only the event types which are needed to record trips are constructed: activity start and end, departure, arrival,
+ * stuck and transit driver starts. All other events are skipped, which means that this reader is meant for handlers
+ * like {@link TripEventHandler} and not as a general replacement for MatsimEventsReader.
+ */
+public class PipelinedEventsReader {
+
+	private static final Logger logger = Logger.getLogger(PipelinedEventsReader.class);
+
+	private static final int BATCH_SIZE = 1024;
+	private static final int PIPE_SIZE = 1 << 20;
+
+	private final int numberOfShards;
+	private final int queueCapacity;
+
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	/**
+	 * @param numberOfShards number of handler instances, each running on its own thread
+	 * @param queueCapacity  number of batches each queue between two stages may hold
+	 */
+	public PipelinedEventsReader(int numberOfShards, int queueCapacity) {
+
+		if (numberOfShards < 1 || queueCapacity < 1)
+			throw new IllegalArgumentException("number of shards and queue capacity must be at least 1");
+
+		this.numberOfShards = numberOfShards;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Reads the file and returns one handler per shard. The handlers are created with the supplied factory.
+	 */
+	public <T extends EventHandler> List<T> readFile(Path file, Supplier<T> handlerFactory) {
+
+		failure.set(null);
+
+		BlockingQueue<List<Map<String, String>>> parsedQueue = new ArrayBlockingQueue<>(queueCapacity);
+		List<BlockingQueue<List<Event>>> shardQueues = new ArrayList<>();
+		List<T> handlers = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+
+		PipedInputStream pipeIn = new PipedInputStream(PIPE_SIZE);
+		PipedOutputStream pipeOut;
+		try {
+			pipeOut = new PipedOutputStream(pipeIn);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		threads.add(new Thread(() -> decompress(file, pipeOut), "events-decompression"));
+		threads.add(new Thread(() -> parse(pipeIn, parsedQueue), "events-parsing"));
+		threads.add(new Thread(() -> createEvents(parsedQueue, shardQueues), "events-construction"));
+
+		for (int i = 0; i < numberOfShards; i++) {
+			BlockingQueue<List<Event>> queue = new ArrayBlockingQueue<>(queueCapacity);
+			T handler = handlerFactory.get();
+			shardQueues.add(queue);
+			handlers.add(handler);
+			threads.add(new Thread(() -> dispatch(queue, handler), "events-shard-" + i));
+		}
+
+		logger.info("Start reading " + file + " with " + numberOfShards + " shards.");
+		threads.forEach(Thread::start);
+
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+
+		if (failure.get() != null) throw new RuntimeException("Failed to read " + file, failure.get());
+
+		logger.info("Finished reading " + file);
+		return handlers;
+	}
+
+	private void decompress(Path file, OutputStream out) {
+
+		try (OutputStream pipe = out; InputStream in = BlockGzipInputStream.open(file, Runtime.getRuntime().availableProcessors())) {
+			byte[] buffer = new byte[1 << 16];
+			int read;
+			while ((read = in.read(buffer)) != -1 && failure.get() == null) {
+				pipe.write(buffer, 0, read);
+			}
+		} catch (Throwable e) {
+			fail(e);
+		}
+	}
+
+	private void parse(InputStream in, BlockingQueue<List<Map<String, String>>> out) {
+
+		try (InputStream pipe = in) {
+
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setValidating(false);
+			SAXParser parser = factory.newSAXParser();
+
+			parser.parse(pipe, new DefaultHandler() {
+
+				private List<Map<String, String>> batch = new ArrayList<>(BATCH_SIZE);
+
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+
+					if (!"event".equals(qName)) return;
+
+					// the parser reuses the attributes object, so we have to copy the values
+					Map<String, String> copy = new HashMap<>();
+					for (int i = 0; i < attributes.getLength(); i++) {
+						copy.put(attributes.getQName(i), attributes.getValue(i));
+					}
+					batch.add(copy);
+
+					if (batch.size() == BATCH_SIZE) {
+						put(out, batch);
+						batch = new ArrayList<>(BATCH_SIZE);
+					}
+				}
+
+				@Override
+				public void endDocument() {
+					put(out, batch);
+				}
+			});
+		} catch (Throwable e) {
+			fail(e);
+		} finally {
+			putEndOfStream(out);
+		}
+	}
+
+	private void createEvents(BlockingQueue<List<Map<String, String>>> in, List<BlockingQueue<List<Event>>> out) {
+
+		try {
+			List<List<Event>> batches = createBatches();
+			List<Map<String, String>> parsed;
+
+			while (!(parsed = take(in)).isEmpty()) {
+				for (Map<String, String> attributes : parsed) {
+
+					Event event = createEvent(attributes);
+					if (event == null) continue;
+
+					String personId = getPersonId(attributes);
+					if (personId == null) {
+						// events without a person are passed to every shard
+						for (List<Event> batch : batches) batch.add(event);
+					} else {
+						batches.get(Math.floorMod(personId.hashCode(), numberOfShards)).add(event);
+					}
+				}
+
+				for (int i = 0; i < numberOfShards; i++) {
+					if (batches.get(i).size() >= BATCH_SIZE) {
+						put(out.get(i), batches.get(i));
+						batches.set(i, new ArrayList<>(BATCH_SIZE));
+					}
+				}
+			}
+
+			for (int i = 0; i < numberOfShards; i++) {
+				put(out.get(i), batches.get(i));
+			}
+		} catch (Throwable e) {
+			fail(e);
+		} finally {
+			out.forEach(this::putEndOfStream);
+		}
+	}
+
+	private void dispatch(BlockingQueue<List<Event>> in, EventHandler handler) {
+
+		try {
+			EventsManager manager = EventsUtils.createEventsManager();
+			manager.addHandler(handler);
+
+			List<Event> batch;
+			while (!(batch = take(in)).isEmpty()) {
+				for (Event event : batch) {
+					manager.processEvent(event);
+				}
+			}
+		} catch (Throwable e) {
+			fail(e);
+		}
+	}
+
+	private List<List<Event>> createBatches() {
+
+		List<List<Event>> result = new ArrayList<>();
+		for (int i = 0; i < numberOfShards; i++) {
+			result.add(new ArrayList<>(BATCH_SIZE));
+		}
+		return result;
+	}
+
+	private <E> void put(BlockingQueue<List<E>> queue, List<E> batch) {
+
+		// an empty batch marks the end of the stream
+		if (batch.isEmpty()) return;
+		offer(queue, batch);
+	}
+
+	private <E> void putEndOfStream(BlockingQueue<List<E>> queue) {
+		offer(queue, new ArrayList<>());
+	}
+
+	private <E> void offer(BlockingQueue<List<E>> queue, List<E> batch) {
+
+		try {
+			// don't block forever if the consuming stage has failed
+			while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+				if (failure.get() != null) return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+		}
+	}
+
+	private <E> List<E> take(BlockingQueue<List<E>> queue) {
+
+		try {
+			List<E> batch;
+			while ((batch = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+				if (failure.get() != null) return new ArrayList<>();
+			}
+			return batch;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+			return new ArrayList<>();
+		}
+	}
+
+	private void fail(Throwable e) {
+		if (failure.compareAndSet(null, e)) logger.error("Reading events failed.", e);
+	}
+
+	private static String getPersonId(Map<String, String> attributes) {
+
+		// all events we construct, except transit driver starts, store the person in this attribute
+		return attributes.get("person");
+	}
+
+	private static Event createEvent(Map<String, String> attributes) {
+
+		double time = Double.parseDouble(attributes.get("time"));
+
+		switch (attributes.get("type")) {
+			case ActivityEndEvent.EVENT_TYPE:
+				return new ActivityEndEvent(time, personId(attributes), linkId(attributes), facilityId(attributes), attributes.get("actType"));
+			case ActivityStartEvent.EVENT_TYPE:
+				return new ActivityStartEvent(time, personId(attributes), linkId(attributes), facilityId(attributes), attributes.get("actType"));
+			case PersonDepartureEvent.EVENT_TYPE:
+				return new PersonDepartureEvent(time, personId(attributes), linkId(attributes), attributes.get("legMode"));
+			case PersonArrivalEvent.EVENT_TYPE:
+				return new PersonArrivalEvent(time, personId(attributes), linkId(attributes), attributes.get("legMode"));
+			case PersonStuckEvent.EVENT_TYPE:
+				return new PersonStuckEvent(time, personId(attributes), linkId(attributes), attributes.get("legMode"));
+			case TransitDriverStartsEvent.EVENT_TYPE:
+				return new TransitDriverStartsEvent(time,
+						Id.createPersonId(attributes.get("driverId")),
+						Id.create(attributes.get("vehicleId"), Vehicle.class),
+						Id.create(attributes.get("transitLineId"), TransitLine.class),
+						Id.create(attributes.get("transitRouteId"), TransitRoute.class),
+						Id.create(attributes.get("departureId"), Departure.class));
+			default:
+				return null;
+		}
+	}
+
+	private static Id<Person> personId(Map<String, String> attributes) {
+		return Id.createPersonId(attributes.get("person"));
+	}
+
+	private static Id<Link> linkId(Map<String, String> attributes) {
+		String value = attributes.get("link");
+		return value == null ? null : Id.createLinkId(value);
+	}
+
+	private static Id<ActivityFacility> facilityId(Map<String, String> attributes) {
+		String value = attributes.get("facility");
+		return value == null ? null : Id.create(value, ActivityFacility.class);
+	}
+}
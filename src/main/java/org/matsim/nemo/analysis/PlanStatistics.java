@@ -0,0 +1,105 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.router.MainModeIdentifier;
+import org.matsim.core.router.StageActivityTypeIdentifier;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts of the selected plans of a group of persons. Each instance is meant to be filled by a single thread, partial
+ * results of several threads are combined with {@link #merge(PlanStatistics)}. All counts are aggregates, so the memory
+ * does not grow with the number of persons.
+ */
+class PlanStatistics {
+
+	private long numberOfPersons;
+	private long numberOfPersonsWithoutPlan;
+	private long numberOfTrips;
+	private long numberOfTripsFromActivities;
+
+	private final Map<String, Long> activityTypes = new TreeMap<>();
+	private final Map<String, Long> mainModes = new TreeMap<>();
+	private final Map<Integer, Long> tripsPerPlan = new TreeMap<>();
+
+	void add(Plan plan, MainModeIdentifier mainModeIdentifier) {
+
+		numberOfPersons++;
+		if (plan == null) {
+			numberOfPersonsWithoutPlan++;
+			return;
+		}
+
+		List<TripStructureUtils.Trip> trips = TripStructureUtils.getTrips(plan);
+		numberOfTrips += trips.size();
+		tripsPerPlan.merge(trips.size(), 1L, Long::sum);
+
+		for (TripStructureUtils.Trip trip : trips) {
+			mainModes.merge(mainModeIdentifier.identifyMainMode(trip.getTripElements()), 1L, Long::sum);
+		}
+
+		// each activity but the first one of a plan is the destination of a trip
+		long numberOfActivities = 0;
+		for (PlanElement element : plan.getPlanElements()) {
+			if (element instanceof Activity && !StageActivityTypeIdentifier.isStageActivity(((Activity) element).getType())) {
+				numberOfActivities++;
+				activityTypes.merge(((Activity) element).getType(), 1L, Long::sum);
+			}
+		}
+		numberOfTripsFromActivities += Math.max(0, numberOfActivities - 1);
+	}
+
+	void merge(PlanStatistics other) {
+
+		numberOfPersons += other.numberOfPersons;
+		numberOfPersonsWithoutPlan += other.numberOfPersonsWithoutPlan;
+		numberOfTrips += other.numberOfTrips;
+		numberOfTripsFromActivities += other.numberOfTripsFromActivities;
+		other.activityTypes.forEach((type, count) -> activityTypes.merge(type, count, Long::sum));
+		other.mainModes.forEach((mode, count) -> mainModes.merge(mode, count, Long::sum));
+		other.tripsPerPlan.forEach((trips, count) -> tripsPerPlan.merge(trips, count, Long::sum));
+	}
+
+	long getNumberOfPersons() {
+		return numberOfPersons;
+	}
+
+	long getNumberOfPersonsWithoutPlan() {
+		return numberOfPersonsWithoutPlan;
+	}
+
+	/**
+	 * @return number of trips as found by {@link TripStructureUtils#getTrips(Plan)}
+	 */
+	long getNumberOfTrips() {
+		return numberOfTrips;
+	}
+
+	/**
+	 * @return number of trips counted as the activities after the first one of each plan, stage activities excluded
+	 */
+	long getNumberOfTripsFromActivities() {
+		return numberOfTripsFromActivities;
+	}
+
+	Map<String, Long> getActivityTypes() {
+		return Collections.unmodifiableMap(activityTypes);
+	}
+
+	Map<String, Long> getMainModes() {
+		return Collections.unmodifiableMap(mainModes);
+	}
+
+	/**
+	 * @return number of plans by their number of trips
+	 */
+	Map<Integer, Long> getTripsPerPlan() {
+		return Collections.unmodifiableMap(tripsPerPlan);
+	}
+}
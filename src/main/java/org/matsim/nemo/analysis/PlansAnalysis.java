@@ -2,29 +2,53 @@ package org.matsim.nemo.analysis;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.population.Activity;
-import org.matsim.api.core.v01.population.HasPlansAndId;
-import org.matsim.core.config.Config;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.core.config.ConfigUtils;
-import org.matsim.core.population.io.PopulationReader;
-import org.matsim.core.router.StageActivityTypeIdentifier;
-import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.gis.ShapeFileReader;
+import org.matsim.facilities.MatsimFacilitiesReader;
 import org.matsim.nemo.RuhrAgentsFilter;
+import org.matsim.nemo.ShapeClassifier;
+import org.matsim.nemo.runners.NemoModeLocationChoiceMainModeIdentifier;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.function.Function;
 
+/**
+ * Prints statistics of the selected plans of a plans file. The file is streamed, so that also 100% plans files can be
+ * analysed with little memory. If a shape file is supplied, persons whose home is inside the shape are counted
+ * separately from all others. With a facilities file, the home is located at the facility of the home activity.
+ */
 public class PlansAnalysis {
 
     @Parameter(names = "-pf", required = true)
     private String plansFile = "";
 
-    @Parameter(names = "-sf", required = true)
-    private String shapeFile = "";
+    @Parameter(names = "-sf")
+    private String shapeFile;
 
-    public static void main(String[] args) {
+    @Parameter(names = {"-facilitiesFile", "-ff"})
+    private String facilitiesFile;
+
+    @Parameter(names = {"-outputFile", "-of"})
+    private String outputFile;
+
+    @Parameter(names = {"-threads"})
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+    public static void main(String[] args) throws IOException {
 
         PlansAnalysis plansAnalysis = new PlansAnalysis();
         JCommander.newBuilder().addObject(plansAnalysis).build().parse(args);
@@ -32,32 +56,65 @@ public class PlansAnalysis {
         plansAnalysis.run();
     }
 
-    private void run() {
+    private void run() throws IOException {
+
+        StreamingPlanStatistics planStatistics = new StreamingPlanStatistics(numberOfThreads, createSubsetProvider(), NemoModeLocationChoiceMainModeIdentifier::new);
+        Map<String, PlanStatistics> statistics = planStatistics.read(Paths.get(plansFile).toString());
+
+        Writer writer = outputFile == null ? new OutputStreamWriter(System.out) : Files.newBufferedWriter(Paths.get(outputFile));
+        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
+        printer.printRecord("subset", "statistic", "key", "value");
+
+        for (Map.Entry<String, PlanStatistics> entry : statistics.entrySet()) {
+
+            String subset = entry.getKey();
+            PlanStatistics subsetStatistics = entry.getValue();
 
-        Config config = ConfigUtils.createConfig();
-        Scenario scenario = ScenarioUtils.createScenario(config);
+            printer.printRecord(subset, "persons", "", subsetStatistics.getNumberOfPersons());
+            printer.printRecord(subset, "personsWithoutPlan", "", subsetStatistics.getNumberOfPersonsWithoutPlan());
+            printer.printRecord(subset, "trips", "", subsetStatistics.getNumberOfTrips());
+            printer.printRecord(subset, "tripsFromActivities", "", subsetStatistics.getNumberOfTripsFromActivities());
 
-        new PopulationReader(scenario).readFile(Paths.get(plansFile).toString());
-        var filter = new RuhrAgentsFilter(scenario, ShapeFileReader.getAllFeatures(Paths.get(shapeFile).toString()));
+            for (Map.Entry<Integer, Long> tripsPerPlan : subsetStatistics.getTripsPerPlan().entrySet()) {
+                printer.printRecord(subset, "tripsPerPlan", tripsPerPlan.getKey(), tripsPerPlan.getValue());
+            }
+            for (Map.Entry<String, Long> activityType : subsetStatistics.getActivityTypes().entrySet()) {
+                printer.printRecord(subset, "activityType", activityType.getKey(), activityType.getValue());
+            }
+            for (Map.Entry<String, Long> mainMode : subsetStatistics.getMainModes().entrySet()) {
+                printer.printRecord(subset, "mainMode", mainMode.getKey(), mainMode.getValue());
+                printer.printRecord(subset, "modeShare", mainMode.getKey(), (double) mainMode.getValue() / subsetStatistics.getNumberOfTrips());
+            }
+        }
 
+        // don't close System.out
+        if (outputFile == null) printer.flush();
+        else printer.close();
+    }
+
+    private Function<Person, String> createSubsetProvider() {
+
+        if (shapeFile == null) return person -> "all";
+
+        // home coords are taken from the facilities, like in the RuhrAgentsFilter, if there are any
+        Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+        if (facilitiesFile != null) new MatsimFacilitiesReader(scenario).readFile(facilitiesFile);
+        Function<Activity, Coord> coordProvider = RuhrAgentsFilter.getCoordProvider(scenario.getActivityFacilities());
+
+        // the whole population is never loaded, so the home locations are classified person by person
+        ShapeClassifier classifier = new ShapeClassifier(ShapeFileReader.getAllFeatures(Paths.get(shapeFile).toString()));
+        return person -> {
+            Coord home = getHomeCoord(person.getSelectedPlan(), coordProvider);
+            return home != null && classifier.contains(home.getX(), home.getY()) ? "inside" : "outside";
+        };
+    }
 
-        long numberOfLegs = scenario.getPopulation().getPersons().values().parallelStream()
-                .filter(person -> filter.includeAgent(person.getId()))
-                .map(HasPlansAndId::getSelectedPlan)
-                .flatMap(plan -> plan.getPlanElements().stream())
-                .filter(element -> element instanceof Activity)
-                .map(element -> (Activity) element)
-                .skip(1)
-                .filter(activity -> !StageActivityTypeIdentifier.isStageActivity(activity.getType()))
-                .count();
+    private static Coord getHomeCoord(Plan plan, Function<Activity, Coord> coordProvider) {
 
-        long numberOfLegsFromTripStructureUtils = scenario.getPopulation().getPersons().values().parallelStream()
-                .filter(person -> filter.includeAgent(person.getId()))
-                .map(HasPlansAndId::getSelectedPlan)
-                .mapToLong(plan -> TripStructureUtils.getTrips(plan).size())
-                .sum();
+        if (plan == null || plan.getPlanElements().isEmpty()) return null;
 
-        System.out.println(numberOfLegs);
-        System.out.println(numberOfLegsFromTripStructureUtils);
+        PlanElement first = plan.getPlanElements().get(0);
+        if (first instanceof Activity && ((Activity) first).getType().startsWith("home")) return coordProvider.apply((Activity) first);
+        return null;
     }
 }
@@ -4,10 +4,13 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.ConfigUtils;
-import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.nemo.util.ColumnarTableWriter;
+import org.matsim.nemo.util.NEMOUtils;
 import org.opengis.feature.simple.SimpleFeature;
 
 import java.io.IOException;
@@ -15,6 +18,7 @@ import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Comparator;
+import java.util.stream.Stream;
 
 public class PopulationToCsv {
 
@@ -27,6 +31,15 @@ public class PopulationToCsv {
     @Parameter(names = {"-output"})
     private String outputFile = "";
 
+    @Parameter(names = {"-columnar"})
+    private boolean columnar = false;
+
+    @Parameter(names = {"-compress"})
+    private boolean compress = false;
+
+    @Parameter(names = {"-threads"})
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
     public static void main(String[] args) throws IOException {
 
         var analysis = new PopulationToCsv();
@@ -37,8 +50,21 @@ public class PopulationToCsv {
     private void run() throws IOException {
 
         var scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-        new PopulationReader(scenario).readFile(inputFile);
-
+        NEMOUtils.readPopulation(scenario, inputFile);
+
+        if (columnar) {
+            new ColumnarTableWriter.Builder<PersonRow>()
+                    .stringColumn("id", row -> row.id)
+                    .doubleColumn("x", row -> row.homeCoord.getX())
+                    .doubleColumn("y", row -> row.homeCoord.getY())
+                    .booleanColumn("moved", row -> row.moved)
+                    .booleanColumn("moved_all_acts", row -> row.movedAllActivities)
+                    .compression(compress)
+                    .numberOfThreads(numberOfThreads)
+                    .build()
+                    .write(Paths.get(outputFile), scenario.getPopulation().getPersons().values(), person -> Stream.of(new PersonRow(person)));
+            return;
+        }
 
         try (Writer writer = Files.newBufferedWriter(Paths.get(outputFile))) {
             try (CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
@@ -47,30 +73,30 @@ public class PopulationToCsv {
                 printer.printRecord("id", "x", "y", "moved", "moved_all_acts");
 
                 //print moving relations of all persons
-                scenario.getPopulation().getPersons().values()
-                        //.filter(person -> person.getAttributes().getAttribute("was_moved") != null)
-                        .forEach(person -> {
-
-
-                            var id = person.getId();
-                            var homeCoord = person.getSelectedPlan().getPlanElements().stream()
-                                    .filter(el -> el instanceof Activity)
-                                    .map(el -> (Activity) el)
-                                    .filter(act -> act.getType().startsWith("home"))
-                                    .findAny().get().getCoord();
-                            boolean moved = person.getAttributes().getAttribute("was_moved") != null;
-                            boolean movedAllActivities = person.getAttributes().getAttribute("moved_all_activities") != null;
-
-
-                            // iih, this is ugly
-                            try {
-                                printer.printRecord(person.getId(), homeCoord.getX(), homeCoord.getY(), moved, movedAllActivities);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        });
+                for (Person person : scenario.getPopulation().getPersons().values()) {
+                    var row = new PersonRow(person);
+                    printer.printRecord(row.id, row.homeCoord.getX(), row.homeCoord.getY(), row.moved, row.movedAllActivities);
+                }
             }
         }
     }
-}
 
+    private static class PersonRow {
+
+        private final String id;
+        private final Coord homeCoord;
+        private final boolean moved;
+        private final boolean movedAllActivities;
+
+        private PersonRow(Person person) {
+            this.id = person.getId().toString();
+            this.homeCoord = person.getSelectedPlan().getPlanElements().stream()
+                    .filter(el -> el instanceof Activity)
+                    .map(el -> (Activity) el)
+                    .filter(act -> act.getType().startsWith("home"))
+                    .findAny().get().getCoord();
+            this.moved = person.getAttributes().getAttribute("was_moved") != null;
+            this.movedAllActivities = person.getAttributes().getAttribute("moved_all_activities") != null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.matsim.nemo.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Estimates quantiles of a stream of values with bounded memory, following the KLL sketch. Values are kept in levels,
+ * a value on level i stands for 2^i values. When a level is full it is sorted and every second value is promoted to
+ * the next level. The capacity of the levels decreases by 2/3 from the top level downwards, so that the sketch holds
+ * at most about 3k values. The rank error is in the order of 1/k.
+ * <p>
+ * Sketches with the same k can be merged. Compaction alternates between keeping the odd and even values instead of
+ * tossing a coin, so that results are reproducible.
+ */
+public class QuantileSketch {
+
+	private static final double DECAY = 2.0 / 3.0;
+	private static final int MIN_CAPACITY = 2;
+
+	private final int k;
+
+	private double[][] levels = {new double[MIN_CAPACITY]};
+	private int[] sizes = {0};
+	private long count;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private boolean keepOdd;
+
+	/**
+	 * @param k the capacity of the top level, which determines accuracy and memory
+	 */
+	public QuantileSketch(int k) {
+
+		if (k < MIN_CAPACITY) throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY + " but was " + k);
+		this.k = k;
+	}
+
+	public void add(double value) {
+
+		append(0, value);
+		count++;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		compress();
+	}
+
+	public void merge(QuantileSketch other) {
+
+		if (other.k != k) throw new IllegalArgumentException("Sketches with k " + k + " and " + other.k + " can't be merged.");
+
+		for (int level = 0; level < other.levels.length; level++) {
+			for (int i = 0; i < other.sizes[level]; i++) {
+				append(level, other.levels[level][i]);
+			}
+		}
+		count += other.count;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		compress();
+	}
+
+	/**
+	 * @param rank between 0 and 1, e.g. 0.5 for the median
+	 * @return the estimated value at the rank, or NaN if no value was added
+	 */
+	public double getQuantile(double rank) {
+
+		if (rank < 0 || rank > 1) throw new IllegalArgumentException("rank must be between 0 and 1 but was " + rank);
+		if (count == 0) return Double.NaN;
+		if (rank == 0) return min;
+		if (rank == 1) return max;
+
+		int numberOfValues = Arrays.stream(sizes).sum();
+		double[] values = new double[numberOfValues];
+		long[] weights = new long[numberOfValues];
+		int position = 0;
+		for (int level = 0; level < levels.length; level++) {
+			for (int i = 0; i < sizes[level]; i++) {
+				values[position] = levels[level][i];
+				weights[position] = 1L << level;
+				position++;
+			}
+		}
+
+		Integer[] order = new Integer[numberOfValues];
+		for (int i = 0; i < numberOfValues; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+		// the weights add up to the number of added values, since compaction keeps an odd value on its level
+		double target = rank * count;
+		long cumulativeWeight = 0;
+		for (int i : order) {
+			cumulativeWeight += weights[i];
+			if (cumulativeWeight >= target) return values[i];
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	private void append(int level, double value) {
+
+		if (level >= levels.length) {
+			int numberOfLevels = levels.length;
+			levels = Arrays.copyOf(levels, level + 1);
+			sizes = Arrays.copyOf(sizes, level + 1);
+			for (int i = numberOfLevels; i <= level; i++) {
+				levels[i] = new double[MIN_CAPACITY];
+			}
+		}
+		if (sizes[level] == levels[level].length) levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+		levels[level][sizes[level]++] = value;
+	}
+
+	private int getCapacity(int level) {
+		int depth = levels.length - 1 - level;
+		return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(DECAY, depth)));
+	}
+
+	private void compress() {
+
+		// compacting a level may add a new top level, which lowers the capacity of all levels below
+		boolean compacted;
+		do {
+			compacted = false;
+			for (int level = 0; level < levels.length; level++) {
+				if (sizes[level] >= getCapacity(level)) {
+					compact(level);
+					compacted = true;
+					break;
+				}
+			}
+		} while (compacted);
+	}
+
+	private void compact(int level) {
+
+		double[] values = levels[level];
+		int size = sizes[level];
+		Arrays.sort(values, 0, size);
+
+		// with an odd number of values the largest one stays on this level, so that no weight gets lost
+		int compacted = size - size % 2;
+		int offset = keepOdd ? 1 : 0;
+		keepOdd = !keepOdd;
+
+		double remaining = values[size - 1];
+		sizes[level] = 0;
+		for (int i = offset; i < compacted; i += 2) {
+			append(level + 1, values[i]);
+		}
+		if (compacted < size) append(level, remaining);
+	}
+}
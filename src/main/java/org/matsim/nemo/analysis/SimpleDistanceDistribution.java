@@ -4,22 +4,42 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
+/**
+ * Distance bins with counts. The bins are looked up with a {@link DistanceHistogram}, whose bin numbers are the indices
+ * of {@link #getDistanceBins()}. Use {@link #addCounts(DistanceHistogram.Counts)} to fill the distribution from
+ * several threads.
+ */
 public class SimpleDistanceDistribution {
 
 	private final List<SimpleDistanceBin> bins = new ArrayList<>();
+	private final DistanceHistogram.Builder histogramBuilder = new DistanceHistogram.Builder();
+	private DistanceHistogram histogram = histogramBuilder.build();
 
 	public void add(double lowerLimit, double upperLimit, int value) {
 		bins.add(new SimpleDistanceBin(lowerLimit, upperLimit, value));
+		histogramBuilder.addBin(lowerLimit, upperLimit);
+		histogram = histogramBuilder.build();
 	}
 
 	public void increaseCountByOne(double distance) {
 
-		SimpleDistanceBin binForDistance = bins.stream()
-				.filter(bin -> bin.distanceRange.isWithinRange(distance))
-				.findAny()
-				.orElseThrow(() -> new IllegalArgumentException("no bin for distance of: " + distance + " was found"));
+		int bin = histogram.getBin(DistanceHistogram.NO_KEY, distance);
+		if (bin < 0) throw new IllegalArgumentException("no bin for distance of: " + distance + " was found");
 
-		binForDistance.increaseCountByOne();
+		bins.get(bin).increaseCountByOne();
+	}
+
+	public DistanceHistogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * Adds counts of this distribution's histogram to the values of the bins
+	 */
+	public void addCounts(DistanceHistogram.Counts counts) {
+		for (int i = 0; i < bins.size(); i++) {
+			bins.get(i).addToValue(counts.get(i));
+		}
 	}
 
 	public List<SimpleDistanceBin> getDistanceBins() {
@@ -48,6 +68,10 @@ public class SimpleDistanceDistribution {
 			this.value++;
 		}
 
+		synchronized void addToValue(long count) {
+			this.value = Math.addExact(this.value, Math.toIntExact(count));
+		}
+
 		SimpleDistanceRange getDistanceRange() {
 			return this.distanceRange;
 		}
@@ -0,0 +1,32 @@
+package org.matsim.nemo.analysis;
+
+/**
+ * Hashing shared by the sketches. The hash of a value only depends on its string, not on the jvm or on the order in
+ * which ids were created, so that sketches of different runs can be merged.
+ */
+final class Sketches {
+
+	private Sketches() {
+	}
+
+	static long hash(CharSequence value) {
+
+		// FNV-1a over the chars, followed by the finalizer of murmur3 to spread the bits
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	static long mix(long hash) {
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
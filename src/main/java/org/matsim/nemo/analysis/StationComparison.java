@@ -0,0 +1,112 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * Hourly observed and simulated volumes of a single count station. Hours without an observed value are NaN and are
+ * left out of all measures.
+ */
+public class StationComparison {
+
+	private final String station;
+	private final Id<Link> linkId;
+	private final double[] observed;
+	private final double[] simulated;
+
+	StationComparison(String station, Id<Link> linkId, double[] observed, double[] simulated) {
+		this.station = station;
+		this.linkId = linkId;
+		this.observed = observed;
+		this.simulated = simulated;
+	}
+
+	public String getStation() {
+		return station;
+	}
+
+	public Id<Link> getLinkId() {
+		return linkId;
+	}
+
+	/**
+	 * @param hour hour of the day, starting with 0
+	 */
+	public double getObserved(int hour) {
+		return observed[hour];
+	}
+
+	/**
+	 * @param hour hour of the day, starting with 0
+	 */
+	public double getSimulated(int hour) {
+		return simulated[hour];
+	}
+
+	public boolean hasObserved(int hour) {
+		return !Double.isNaN(observed[hour]);
+	}
+
+	/**
+	 * @return the GEH statistic of the hour, or NaN if there is no observed value
+	 */
+	public double getGeh(int hour) {
+
+		if (!hasObserved(hour)) return Double.NaN;
+		double sum = simulated[hour] + observed[hour];
+		if (sum == 0) return 0;
+		double difference = simulated[hour] - observed[hour];
+		return Math.sqrt(2 * difference * difference / sum);
+	}
+
+	public int getNumberOfHours() {
+
+		int result = 0;
+		for (int hour = 0; hour < observed.length; hour++) {
+			if (hasObserved(hour)) result++;
+		}
+		return result;
+	}
+
+	public double getRootMeanSquareError() {
+
+		double sum = 0;
+		for (int hour = 0; hour < observed.length; hour++) {
+			if (hasObserved(hour)) sum += (simulated[hour] - observed[hour]) * (simulated[hour] - observed[hour]);
+		}
+		return Math.sqrt(sum / getNumberOfHours());
+	}
+
+	/**
+	 * @return the mean of simulated minus observed volume. Positive values mean that the simulation has too much traffic.
+	 */
+	public double getBias() {
+
+		double sum = 0;
+		for (int hour = 0; hour < observed.length; hour++) {
+			if (hasObserved(hour)) sum += simulated[hour] - observed[hour];
+		}
+		return sum / getNumberOfHours();
+	}
+
+	public double getMeanGeh() {
+
+		double sum = 0;
+		for (int hour = 0; hour < observed.length; hour++) {
+			if (hasObserved(hour)) sum += getGeh(hour);
+		}
+		return sum / getNumberOfHours();
+	}
+
+	/**
+	 * @return the share of hours with a GEH below the limit, e.g. the common target of 85% of all hours below 5
+	 */
+	public double getShareOfHoursWithGehBelow(double limit) {
+
+		int result = 0;
+		for (int hour = 0; hour < observed.length; hour++) {
+			if (hasObserved(hour) && getGeh(hour) < limit) result++;
+		}
+		return (double) result / getNumberOfHours();
+	}
+}
@@ -0,0 +1,182 @@
+package org.matsim.nemo.analysis;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.router.MainModeIdentifier;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.nemo.util.NEMOUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Computes {@link PlanStatistics} of a plans file in one pass. The file is read with a {@link StreamingPopulationReader}
+ * and the persons are handed to worker threads in batches through a bounded queue, so that only a few batches of
+ * persons are held in memory at any time. Each worker keeps its own statistics per subset of persons, which are
+ * merged once the file is read.
+ */
+class StreamingPlanStatistics {
+
+	private static final Logger logger = Logger.getLogger(StreamingPlanStatistics.class);
+
+	private static final int BATCH_SIZE = 256;
+
+	private final int numberOfThreads;
+	private final Function<Person, String> subsetProvider;
+	private final Supplier<MainModeIdentifier> mainModeIdentifierFactory;
+
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	/**
+	 * @param subsetProvider            assigns each person to the subset it is counted in
+	 * @param mainModeIdentifierFactory creates a main mode identifier for each worker thread
+	 */
+	StreamingPlanStatistics(int numberOfThreads, Function<Person, String> subsetProvider, Supplier<MainModeIdentifier> mainModeIdentifierFactory) {
+
+		if (numberOfThreads < 1) throw new IllegalArgumentException("number of threads must be at least 1");
+
+		this.numberOfThreads = numberOfThreads;
+		this.subsetProvider = subsetProvider;
+		this.mainModeIdentifierFactory = mainModeIdentifierFactory;
+	}
+
+	/**
+	 * @return statistics of the selected plans by subset
+	 */
+	Map<String, PlanStatistics> read(String plansFile) {
+
+		failure.set(null);
+		BlockingQueue<List<Person>> queue = new ArrayBlockingQueue<>(numberOfThreads * 2);
+		List<Map<String, PlanStatistics>> results = new ArrayList<>();
+		List<Thread> workers = new ArrayList<>();
+
+		for (int i = 0; i < numberOfThreads; i++) {
+			Map<String, PlanStatistics> result = new HashMap<>();
+			results.add(result);
+			workers.add(new Thread(() -> work(queue, result), "plans-statistics-" + i));
+		}
+		workers.forEach(Thread::start);
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		StreamingPopulationReader reader = new StreamingPopulationReader(scenario);
+		PersonBatches batches = new PersonBatches(queue);
+		reader.addAlgorithm(batches);
+
+		try {
+			NEMOUtils.readPopulation(reader, plansFile);
+			batches.flush();
+		} catch (Throwable e) {
+			fail(e);
+		} finally {
+			// an empty batch tells each worker that the file is read
+			for (int i = 0; i < numberOfThreads; i++) {
+				offer(queue, new ArrayList<>());
+			}
+		}
+
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail(e);
+			}
+		}
+
+		if (failure.get() != null) throw new RuntimeException("Failed to analyse " + plansFile, failure.get());
+
+		Map<String, PlanStatistics> statistics = new TreeMap<>();
+		for (Map<String, PlanStatistics> result : results) {
+			result.forEach((subset, partial) -> statistics.computeIfAbsent(subset, s -> new PlanStatistics()).merge(partial));
+		}
+		return statistics;
+	}
+
+	private void work(BlockingQueue<List<Person>> queue, Map<String, PlanStatistics> result) {
+
+		try {
+			MainModeIdentifier mainModeIdentifier = mainModeIdentifierFactory.get();
+			List<Person> batch;
+			while (!(batch = take(queue)).isEmpty()) {
+				for (Person person : batch) {
+					result.computeIfAbsent(subsetProvider.apply(person), subset -> new PlanStatistics())
+							.add(person.getSelectedPlan(), mainModeIdentifier);
+				}
+			}
+		} catch (Throwable e) {
+			fail(e);
+		}
+	}
+
+	private void offer(BlockingQueue<List<Person>> queue, List<Person> batch) {
+
+		try {
+			// don't block forever if the workers have failed
+			while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+				if (failure.get() != null) return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+		}
+	}
+
+	private List<Person> take(BlockingQueue<List<Person>> queue) {
+
+		try {
+			List<Person> batch;
+			while ((batch = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+				if (failure.get() != null) return new ArrayList<>();
+			}
+			return batch;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+			return new ArrayList<>();
+		}
+	}
+
+	private class PersonBatches implements PersonAlgorithm {
+
+		private final BlockingQueue<List<Person>> queue;
+		private List<Person> batch = new ArrayList<>(BATCH_SIZE);
+
+		private PersonBatches(BlockingQueue<List<Person>> queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void run(Person person) {
+
+			// stop parsing the rest of the file
+			if (failure.get() != null) throw new RuntimeException("A worker has failed.");
+
+			batch.add(person);
+			if (batch.size() == BATCH_SIZE) flush();
+		}
+
+		private void flush() {
+
+			if (batch.isEmpty()) return;
+			offer(queue, batch);
+			batch = new ArrayList<>(BATCH_SIZE);
+		}
+	}
+
+	private void fail(Throwable e) {
+		if (failure.compareAndSet(null, e)) logger.error("Analysing plans failed.", e);
+	}
+}
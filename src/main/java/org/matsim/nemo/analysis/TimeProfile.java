@@ -0,0 +1,128 @@
+package org.matsim.nemo.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of departures and arrivals of trips by main mode and time bin. The number of bins is fixed, trips after the
+ * end of the profile are counted in the last bin. The counts are kept in one array per mode, so a profile takes a few
+ * kilobytes regardless of the number of trips and can be filled while the trips are recorded.
+ */
+public class TimeProfile {
+
+	public static final double DEFAULT_BIN_SIZE = 900;
+	public static final double DEFAULT_END_TIME = 36 * 3600;
+
+	private final double binSize;
+	private final int numberOfBins;
+	private final List<String> modes = new ArrayList<>();
+	private final Map<String, Integer> modeIndex = new HashMap<>();
+
+	// [mode][bin]
+	private long[][] departures = new long[0][];
+	private long[][] arrivals = new long[0][];
+
+	public TimeProfile() {
+		this(DEFAULT_BIN_SIZE, DEFAULT_END_TIME);
+	}
+
+	/**
+	 * @param binSize in seconds
+	 * @param endTime in seconds, trips after the end time are counted in an extra last bin
+	 */
+	public TimeProfile(double binSize, double endTime) {
+
+		if (binSize <= 0 || endTime <= 0) throw new IllegalArgumentException("bin size and end time must be positive");
+
+		this.binSize = binSize;
+		this.numberOfBins = (int) Math.ceil(endTime / binSize) + 1;
+	}
+
+	void addTrip(String mode, double departureTime, double arrivalTime) {
+		add(mode, departureTime, arrivalTime, 1);
+	}
+
+	void removeTrip(String mode, double departureTime, double arrivalTime) {
+		add(mode, departureTime, arrivalTime, -1);
+	}
+
+	void merge(TimeProfile other) {
+
+		if (other.binSize != binSize || other.numberOfBins != numberOfBins)
+			throw new IllegalArgumentException("Only profiles with the same bins can be merged.");
+
+		for (int otherMode = 0; otherMode < other.modes.size(); otherMode++) {
+			int mode = getOrAddMode(other.modes.get(otherMode));
+			for (int bin = 0; bin < numberOfBins; bin++) {
+				departures[mode][bin] += other.departures[otherMode][bin];
+				arrivals[mode][bin] += other.arrivals[otherMode][bin];
+			}
+		}
+	}
+
+	void clear() {
+		modes.clear();
+		modeIndex.clear();
+		departures = new long[0][];
+		arrivals = new long[0][];
+	}
+
+	public double getBinSize() {
+		return binSize;
+	}
+
+	public int getNumberOfBins() {
+		return numberOfBins;
+	}
+
+	public List<String> getModes() {
+		return Collections.unmodifiableList(modes);
+	}
+
+	/**
+	 * @return the number of departures in each bin, all zero for a mode without trips
+	 */
+	public long[] getDepartures(String mode) {
+		Integer index = modeIndex.get(mode);
+		return index == null ? new long[numberOfBins] : departures[index].clone();
+	}
+
+	/**
+	 * @return the number of arrivals in each bin, all zero for a mode without trips
+	 */
+	public long[] getArrivals(String mode) {
+		Integer index = modeIndex.get(mode);
+		return index == null ? new long[numberOfBins] : arrivals[index].clone();
+	}
+
+	int getBin(double time) {
+		// undefined times are counted in the first bin
+		if (!(time > 0)) return 0;
+		return (int) Math.min(numberOfBins - 1, time / binSize);
+	}
+
+	private void add(String mode, double departureTime, double arrivalTime, int count) {
+
+		int index = getOrAddMode(mode);
+		departures[index][getBin(departureTime)] += count;
+		arrivals[index][getBin(arrivalTime)] += count;
+	}
+
+	private int getOrAddMode(String mode) {
+
+		Integer index = modeIndex.get(mode);
+		if (index != null) return index;
+
+		modes.add(mode);
+		modeIndex.put(mode, modes.size() - 1);
+		departures = Arrays.copyOf(departures, modes.size());
+		arrivals = Arrays.copyOf(arrivals, modes.size());
+		departures[modes.size() - 1] = new long[numberOfBins];
+		arrivals[modes.size() - 1] = new long[numberOfBins];
+		return modes.size() - 1;
+	}
+}
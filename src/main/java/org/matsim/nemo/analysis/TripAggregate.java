@@ -0,0 +1,166 @@
+package org.matsim.nemo.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Number of trips by main mode, distance bin and departure hour. The distance bins lie between adjacent distance
+ * limits and follow the conventions of {@link DistanceHistogram}. Trips whose distance is outside of all bins are
+ * counted in an extra bin, so that the aggregate always contains all trips.
+ * <p>
+ * Any distance range whose limits are contained in the distance limits of the aggregate can be answered by summing
+ * up the bins in between, which is how the distributions of {@link TripAnalysis} are served.
+ */
+public class TripAggregate {
+
+	private final double[] distanceLimits;
+	private final DistanceHistogram distanceBins;
+	private final int numberOfBins;
+	private final int numberOfHours;
+	private final List<String> modes = new ArrayList<>();
+	private final Map<String, Integer> modeIndex = new HashMap<>();
+
+	// flattened [mode][bin][hour]
+	private final long[] counts;
+
+	/**
+	 * @param distanceLimits sorted distance limits without duplicates
+	 * @param tripModes      main mode by trip
+	 * @param tripDistances  distance by trip
+	 * @param tripHours      departure hour by trip
+	 */
+	TripAggregate(double[] distanceLimits, String[] tripModes, double[] tripDistances, int[] tripHours) {
+
+		this.distanceLimits = distanceLimits.clone();
+
+		DistanceHistogram.Builder builder = new DistanceHistogram.Builder();
+		for (int i = 1; i < distanceLimits.length; i++) {
+			builder.addBin(distanceLimits[i - 1], distanceLimits[i]);
+		}
+		this.distanceBins = builder.build();
+		// the last bin holds the trips outside of the limits
+		this.numberOfBins = distanceBins.getNumberOfBins() + 1;
+
+		int[] tripModeIndex = new int[tripModes.length];
+		int maxHour = 0;
+		for (int trip = 0; trip < tripModes.length; trip++) {
+			tripModeIndex[trip] = modeIndex.computeIfAbsent(tripModes[trip], mode -> {
+				modes.add(mode);
+				return modes.size() - 1;
+			});
+			maxHour = Math.max(maxHour, tripHours[trip]);
+		}
+		this.numberOfHours = maxHour + 1;
+
+		int size = modes.size() * numberOfBins * numberOfHours;
+		this.counts = IntStream.range(0, tripModes.length).parallel()
+				.collect(() -> new long[size],
+						(result, trip) -> result[index(tripModeIndex[trip], getBin(tripDistances[trip]), tripHours[trip])]++,
+						(result, other) -> {
+							for (int i = 0; i < size; i++) result[i] += other[i];
+						});
+	}
+
+	public double[] getDistanceLimits() {
+		return distanceLimits.clone();
+	}
+
+	public List<String> getModes() {
+		return Collections.unmodifiableList(modes);
+	}
+
+	public int getNumberOfHours() {
+		return numberOfHours;
+	}
+
+	/**
+	 * Tests whether every one of the given limits is one of the distance limits of this aggregate
+	 */
+	public boolean containsLimits(double... limits) {
+		return Arrays.stream(limits).allMatch(limit -> Arrays.binarySearch(distanceLimits, limit) >= 0);
+	}
+
+	/**
+	 * Number of trips of a mode within the distance range. The limits must be distance limits of this aggregate.
+	 */
+	public long count(String mode, double lowerLimit, double upperLimit) {
+
+		Integer index = modeIndex.get(mode);
+		if (index == null) return 0;
+
+		int firstBin = getLimitIndex(lowerLimit);
+		int lastBin = getLimitIndex(upperLimit);
+
+		long result = 0;
+		for (int bin = firstBin; bin < lastBin; bin++) {
+			for (int hour = 0; hour < numberOfHours; hour++) {
+				result += counts[index(index, bin, hour)];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Number of trips of all modes within the distance range. The limits must be distance limits of this aggregate.
+	 */
+	public long count(double lowerLimit, double upperLimit) {
+		return modes.stream().mapToLong(mode -> count(mode, lowerLimit, upperLimit)).sum();
+	}
+
+	/**
+	 * Number of trips of a mode which depart in the hour, regardless of their distance
+	 */
+	public long countDepartures(String mode, int hour) {
+
+		Integer index = modeIndex.get(mode);
+		if (index == null || hour < 0 || hour >= numberOfHours) return 0;
+
+		long result = 0;
+		for (int bin = 0; bin < numberOfBins; bin++) {
+			result += counts[index(index, bin, hour)];
+		}
+		return result;
+	}
+
+	/**
+	 * Number of trips by main mode, sorted by mode
+	 */
+	public Map<String, Long> getModalSplit() {
+
+		Map<String, Long> result = new TreeMap<>();
+		for (String mode : modes) {
+			long sum = 0;
+			for (int hour = 0; hour < numberOfHours; hour++) {
+				sum += countDepartures(mode, hour);
+			}
+			result.put(mode, sum);
+		}
+		return result;
+	}
+
+	public long getNumberOfTrips() {
+		return Arrays.stream(counts).sum();
+	}
+
+	private int getLimitIndex(double limit) {
+
+		int index = Arrays.binarySearch(distanceLimits, limit);
+		if (index < 0) throw new IllegalArgumentException(limit + " is not a distance limit of this aggregate");
+		return index;
+	}
+
+	private int getBin(double distance) {
+		int bin = distanceBins.getBin(DistanceHistogram.NO_KEY, distance);
+		return bin < 0 ? numberOfBins - 1 : bin;
+	}
+
+	private int index(int mode, int bin, int hour) {
+		return (mode * numberOfBins + bin) * numberOfHours + hour;
+	}
+}
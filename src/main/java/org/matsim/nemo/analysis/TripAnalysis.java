@@ -9,50 +9,221 @@ import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.facilities.ActivityFacility;
 import playground.vsp.cadyts.marginals.DistanceDistribution;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
+/**
+ * Calculates modal split and distance distributions of recorded trips. Main mode, beeline distance and departure hour
+ * of each trip are computed once. The distributions are then served from a {@link TripAggregate}, which is built in
+ * one pass over these values and is rebuilt only if distance limits are requested which it doesn't contain yet.
+ */
 public class TripAnalysis {
 
 	private final Scenario scenario;
 	private final Network network;
-	private final Map<Id<Person>, List<TripEventHandler.Trip>> personTrips;
+	private Map<Id<Person>, List<TripEventHandler.Trip>> personTrips;
+
+	// by trip, computed on first use
+	private String[] tripModes;
+	private double[] tripDistances;
+	private int[] tripHours;
+
+	private TripAggregate aggregate;
+	private TimeProfile timeProfile;
 
 	public TripAnalysis(Map<Id<Person>, List<TripEventHandler.Trip>> personTrips, Scenario scenario, Network network) {
+		this(personTrips, scenario, network, null);
+	}
+
+	/**
+	 * @param timeProfile departures and arrivals of the trips as recorded by {@link TripEventHandler#getTimeProfile()}.
+	 *                    If it is null, the profile is counted from the trips on first use.
+	 */
+	public TripAnalysis(Map<Id<Person>, List<TripEventHandler.Trip>> personTrips, Scenario scenario, Network network, TimeProfile timeProfile) {
 		this.scenario = scenario;
 		this.network = network;
 		this.personTrips = personTrips;
+		this.timeProfile = timeProfile;
+	}
+
+	/**
+	 * Returns an aggregate of all trips which contains at least the given distance limits
+	 */
+	public synchronized TripAggregate getAggregate(double... distanceLimits) {
+
+		if (isReduced()) {
+			if (!aggregate.containsLimits(distanceLimits))
+				throw new IllegalStateException("The trips were released. The aggregate can't be rebuilt with the distance limits: " + Arrays.toString(distanceLimits));
+			return aggregate;
+		}
+
+		cacheTrips();
+
+		if (aggregate == null || !aggregate.containsLimits(distanceLimits)) {
+			double[] limits = DoubleStream.concat(
+					aggregate == null ? DoubleStream.empty() : Arrays.stream(aggregate.getDistanceLimits()),
+					Arrays.stream(distanceLimits)
+			).sorted().distinct().toArray();
+			aggregate = new TripAggregate(limits, tripModes, tripDistances, tripHours);
+		}
+		return aggregate;
+	}
+
+	/**
+	 * Builds the aggregate with the given distance limits and releases the trips, so that only the aggregate is kept in
+	 * memory. Afterwards, only distributions whose limits are contained in the aggregate can be calculated.
+	 */
+	public synchronized TripAggregate reduce(double... distanceLimits) {
+
+		TripAggregate result = getAggregate(distanceLimits);
+		getTimeProfile();
+		personTrips = null;
+		tripModes = null;
+		tripDistances = null;
+		tripHours = null;
+		return result;
+	}
+
+	public synchronized boolean isReduced() {
+		return personTrips == null;
+	}
+
+	/**
+	 * Departures and arrivals of the ended trips by main mode. The profile is kept when the analysis is reduced.
+	 */
+	public synchronized TimeProfile getTimeProfile() {
+
+		if (timeProfile == null) {
+			timeProfile = new TimeProfile();
+			personTrips.values().stream()
+					.flatMap(Collection::stream)
+					// trips which are still open at the end of the events have no arrival
+					.filter(trip -> trip.getArrivalLink() != null)
+					.forEach(trip -> timeProfile.addTrip(trip.getMainMode(), trip.getDepartureTime(), trip.getArrivalTime()));
+		}
+		return timeProfile;
 	}
 
 	public DistanceDistribution calculateModalDistanceDistribution(DistanceDistribution expectedDistribution) {
 
-		DistanceDistribution simulatedDistribution = expectedDistribution.copyWithEmptyBins();
-		personTrips.entrySet().parallelStream().flatMap(entry -> entry.getValue().stream())
-				.forEach(trip -> {
-					double distance = calculateBeelineDistance(trip);
-					simulatedDistribution.increaseCountByOne(trip.getMainMode(), distance);
-				});
+		List<DistanceDistribution.DistanceBin> expectedBins = new ArrayList<>(expectedDistribution.getDistanceBins());
+		DistanceHistogram.Counts counts = countTrips(expectedBins.stream().map(DistanceDistribution.DistanceBin::getMode).toArray(String[]::new),
+				expectedBins.stream().mapToDouble(bin -> bin.getDistanceRange().getLowerLimit()).toArray(),
+				expectedBins.stream().mapToDouble(bin -> bin.getDistanceRange().getUpperLimit()).toArray());
+
+		DistanceDistribution simulatedDistribution = new DistanceDistribution();
+		for (int i = 0; i < expectedBins.size(); i++) {
+			DistanceDistribution.DistanceBin bin = expectedBins.get(i);
+			simulatedDistribution.add(bin.getMode(), bin.getDistanceRange().getLowerLimit(), bin.getDistanceRange().getUpperLimit(),
+					bin.getStdDev(), counts.get(i));
+		}
 		return simulatedDistribution;
 	}
 
 	public SimpleDistanceDistribution calculateDistanceDistribution(SimpleDistanceDistribution expectedDistribution) {
+
 		SimpleDistanceDistribution simulatedDistribution = expectedDistribution.copyWithEmptyBins();
-		personTrips.entrySet().parallelStream().
-				flatMap(entry -> entry.getValue().stream())
-				.forEach(trip -> {
-					double distance = calculateBeelineDistance(trip);
-					simulatedDistribution.increaseCountByOne(distance);
-				});
+		List<SimpleDistanceDistribution.SimpleDistanceBin> bins = simulatedDistribution.getDistanceBins();
+
+		String[] keys = new String[bins.size()];
+		Arrays.fill(keys, DistanceHistogram.NO_KEY);
+		DistanceHistogram.Counts counts = countTrips(keys,
+				bins.stream().mapToDouble(bin -> bin.getDistanceRange().getLowerLimit()).toArray(),
+				bins.stream().mapToDouble(bin -> bin.getDistanceRange().getUpperLimit()).toArray());
+
+		simulatedDistribution.addCounts(counts);
 		return simulatedDistribution;
 	}
 
 	public Map<String, Long> calculateModalSplit() {
+		return getAggregate().getModalSplit();
+	}
+
+	/**
+	 * Counts the trips per bin. The bins are either keyed by mode or all use {@link DistanceHistogram#NO_KEY}. Every
+	 * trip must fit into one of the bins.
+	 */
+	private DistanceHistogram.Counts countTrips(String[] keys, double[] lowerLimits, double[] upperLimits) {
+
+		boolean byMode = Arrays.stream(keys).noneMatch(DistanceHistogram.NO_KEY::equals);
+
+		// building the histogram also validates the bins
+		DistanceHistogram.Builder builder = new DistanceHistogram.Builder();
+		for (int i = 0; i < keys.length; i++) {
+			builder.addBin(keys[i], lowerLimits[i], upperLimits[i]);
+		}
+		DistanceHistogram histogram = builder.build();
+		DistanceHistogram.Counts counts;
+
+		TripAggregate aggregate = getAggregate(DoubleStream.concat(Arrays.stream(lowerLimits), Arrays.stream(upperLimits)).toArray());
+
+		if (isServedByAggregate(aggregate, keys, lowerLimits, upperLimits)) {
+			counts = histogram.newCounts();
+			for (int i = 0; i < keys.length; i++) {
+				counts.add(i, byMode ? aggregate.count(keys[i], lowerLimits[i], upperLimits[i]) : aggregate.count(lowerLimits[i], upperLimits[i]));
+			}
+			long counted = IntStream.range(0, keys.length).mapToLong(counts::get).sum();
+			if (counted != aggregate.getNumberOfTrips())
+				throw new IllegalArgumentException((aggregate.getNumberOfTrips() - counted) + " trips don't fit into any of the distance bins");
+		} else if (isReduced()) {
+			throw new IllegalStateException("The trips were released and the distance bins can't be served from the aggregate.");
+		} else {
+			// count trip by trip, which throws for trips without a bin
+			counts = IntStream.range(0, tripModes.length).parallel()
+					.collect(histogram::newCounts,
+							(result, trip) -> result.increment(byMode ? tripModes[trip] : DistanceHistogram.NO_KEY, tripDistances[trip]),
+							DistanceHistogram.Counts::merge);
+		}
+		return counts;
+	}
 
-		return personTrips.values().parallelStream()
+	/**
+	 * The sums of aggregate bins equal the bin counts, unless a bin's lower limit is neither the lowest limit of the
+	 * aggregate nor the upper limit of another bin of the same key. Then, distances equal to that lower limit are
+	 * counted in the bin but in the aggregate they are part of the bin below.
+	 */
+	private static boolean isServedByAggregate(TripAggregate aggregate, String[] keys, double[] lowerLimits, double[] upperLimits) {
+
+		if (keys.length == 0) return true;
+
+		double lowestLimit = aggregate.getDistanceLimits()[0];
+		for (int i = 0; i < keys.length; i++) {
+
+			if (lowerLimits[i] == lowestLimit) continue;
+
+			boolean hasLowerNeighbour = false;
+			for (int j = 0; j < keys.length; j++) {
+				if (keys[i].equals(keys[j]) && upperLimits[j] == lowerLimits[i]) hasLowerNeighbour = true;
+			}
+			if (!hasLowerNeighbour) return false;
+		}
+		return true;
+	}
+
+	private synchronized void cacheTrips() {
+
+		if (tripModes != null) return;
+
+		List<TripEventHandler.Trip> trips = personTrips.values().stream()
 				.flatMap(Collection::stream)
-				.collect(Collectors.groupingBy(TripEventHandler.Trip::getMainMode, Collectors.counting()));
+				.collect(Collectors.toList());
+
+		tripModes = new String[trips.size()];
+		tripDistances = new double[trips.size()];
+		tripHours = new int[trips.size()];
+
+		IntStream.range(0, trips.size()).parallel().forEach(i -> {
+			TripEventHandler.Trip trip = trips.get(i);
+			tripModes[i] = trip.getMainMode();
+			tripDistances[i] = calculateBeelineDistance(trip);
+			tripHours[i] = (int) Math.max(0, trip.getDepartureTime() / 3600);
+		});
 	}
 
 	private double calculateBeelineDistance(TripEventHandler.Trip trip) {
@@ -0,0 +1,62 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.core.config.ReflectiveConfigGroup;
+
+/**
+ * Settings of the {@link TripAnalysisModule}, which analyses the trips of the simulated iterations
+ */
+public class TripAnalysisConfigGroup extends ReflectiveConfigGroup {
+
+	public static final String GROUP_NAME = "nemoTripAnalysis";
+
+	private static final String RUHR_SHAPE_FILE = "ruhrShapeFile";
+	private static final String SCALING_FACTOR = "scalingFactor";
+	private static final String WRITE_INTERVAL = "writeInterval";
+
+	private String ruhrShapeFile;
+	private double scalingFactor = 1.0;
+	private int writeInterval = 1;
+
+	public TripAnalysisConfigGroup() {
+		super(GROUP_NAME);
+	}
+
+	@StringGetter(RUHR_SHAPE_FILE)
+	public String getRuhrShapeFile() {
+		return ruhrShapeFile;
+	}
+
+	/**
+	 * Only trips of agents whose home is inside the shape are analysed. The analysis is only installed if this is set.
+	 */
+	@StringSetter(RUHR_SHAPE_FILE)
+	public void setRuhrShapeFile(String ruhrShapeFile) {
+		this.ruhrShapeFile = ruhrShapeFile;
+	}
+
+	@StringGetter(SCALING_FACTOR)
+	public double getScalingFactor() {
+		return scalingFactor;
+	}
+
+	/**
+	 * Simulated trip counts are multiplied by this factor before they are compared with the expected counts
+	 */
+	@StringSetter(SCALING_FACTOR)
+	public void setScalingFactor(double scalingFactor) {
+		this.scalingFactor = scalingFactor;
+	}
+
+	@StringGetter(WRITE_INTERVAL)
+	public int getWriteInterval() {
+		return writeInterval;
+	}
+
+	/**
+	 * Every n-th iteration is analysed. 0 disables the analysis.
+	 */
+	@StringSetter(WRITE_INTERVAL)
+	public void setWriteInterval(int writeInterval) {
+		this.writeInterval = writeInterval;
+	}
+}
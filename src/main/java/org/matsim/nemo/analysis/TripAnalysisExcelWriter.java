@@ -2,6 +2,8 @@ package org.matsim.nemo.analysis;
 
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.matsim.core.utils.collections.Tuple;
 import playground.vsp.cadyts.marginals.DistanceDistribution;
@@ -13,7 +15,9 @@ import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
 
 public class TripAnalysisExcelWriter {
 
@@ -23,6 +27,8 @@ public class TripAnalysisExcelWriter {
 	private DistanceDistribution expectedModalDistanceDistribution;
 	private SimpleDistanceDistribution expectedDistanceDistribution;
 	private Map<String, Long> expectedModalShare;
+	private boolean streaming;
+	private int rowWindow = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
 
 	public TripAnalysisExcelWriter(List<Tuple<String, TripAnalysis>> analyses, Path file, DistanceDistribution expectedModalDistanceDistribution, SimpleDistanceDistribution expectedDistanceDistribution, Map<String, Long> expectedModalShare, double scalingFactor) {
 		this.analyses = analyses;
@@ -33,52 +39,64 @@ public class TripAnalysisExcelWriter {
 		this.scalingFactor = scalingFactor;
 	}
 
+	/**
+	 * Writes the sheets row by row in ascending order, which is what streaming workbooks require. The columns of the
+	 * runs are calculated in parallel before each sheet is written. In streaming mode only the last 'rowWindow' rows of
+	 * each sheet are kept in memory and the other rows are spilled into temporary files.
+	 */
 	public void write() {
 
-		XSSFWorkbook wb = new XSSFWorkbook();
+		// build the aggregate of each run with all distance limits up front, so that every sheet is served from it
+		double[] distanceLimits = getDistanceLimits(expectedModalDistanceDistribution, expectedDistanceDistribution);
+		analyses.parallelStream().forEach(analysis -> analysis.getSecond().getAggregate(distanceLimits));
 
-		Sheet sheet = wb.createSheet("modal-distance-distribution");
-		addModalDistanceDistributionHeader(sheet);
-		addExpectedModalDistanceDistribution(sheet, expectedModalDistanceDistribution);
-		addModalDistanceValues(sheet, expectedModalDistanceDistribution, scalingFactor);
+		Workbook wb = streaming ? new SXSSFWorkbook(rowWindow) : new XSSFWorkbook();
 
-		Sheet modalSplitSheet = wb.createSheet("modal-split");
-		addModalSplitHeader(modalSplitSheet);
-		addExpectedModalSplit(modalSplitSheet, expectedModalShare);
-		addModalSplitValues(modalSplitSheet, scalingFactor);
+		try (OutputStream fileOut = new FileOutputStream(file.toFile())) {
 
-		Sheet distanceDistributionSheet = wb.createSheet("distance-distribution");
-		addDistanceDistributionHeader(distanceDistributionSheet);
-		addExpectedDistanceDistribution(distanceDistributionSheet, expectedDistanceDistribution);
-		addDistanceDistributionValues(distanceDistributionSheet, expectedDistanceDistribution, scalingFactor);
+			if (streaming) ((SXSSFWorkbook) wb).setCompressTempFiles(true);
+
+			writeModalDistanceDistribution(wb.createSheet("modal-distance-distribution"));
+			writeModalSplit(wb.createSheet("modal-split"));
+			writeDistanceDistribution(wb.createSheet("distance-distribution"));
+			writeTimeProfile(wb.createSheet("time-profile"));
 
-		try (OutputStream fileOut = new FileOutputStream(file.toFile())) {
 			wb.write(fileOut);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
+		} finally {
+			// removes the temporary files of the streamed rows
+			if (streaming) ((SXSSFWorkbook) wb).dispose();
 		}
 	}
 
-	private void addModalDistanceDistributionHeader(Sheet sheet) {
-		Row titleRow = sheet.createRow(0);
-		titleRow.createCell(0).setCellValue("mode");
-		titleRow.createCell(1).setCellValue("lower limit");
-		titleRow.createCell(2).setCellValue("upper limit");
-		titleRow.createCell(3).setCellValue("expected");
-
-		int cellIndex = 4;
-
-		for (Tuple<String, TripAnalysis> analysis : analyses) {
-			titleRow.createCell(cellIndex).setCellValue(analysis.getFirst());
-			cellIndex++;
-		}
+	/**
+	 * All distance limits of the expected distributions, which are needed to serve every sheet from the trip aggregates
+	 */
+	static double[] getDistanceLimits(DistanceDistribution expectedModalDistanceDistribution, SimpleDistanceDistribution expectedDistanceDistribution) {
+		return DoubleStream.concat(
+				expectedModalDistanceDistribution.getDistanceBins().stream()
+						.flatMapToDouble(bin -> DoubleStream.of(bin.getDistanceRange().getLowerLimit(), bin.getDistanceRange().getUpperLimit())),
+				expectedDistanceDistribution.getDistanceBins().stream()
+						.flatMapToDouble(bin -> DoubleStream.of(bin.getDistanceRange().getLowerLimit(), bin.getDistanceRange().getUpperLimit()))
+		).toArray();
 	}
 
-	private void addExpectedModalDistanceDistribution(Sheet sheet, DistanceDistribution distanceDistribution) {
+	private void writeModalDistanceDistribution(Sheet sheet) {
 
-		List<DistanceDistribution.DistanceBin> expectedBins = distanceDistribution.getDistanceBins().stream()
+		List<DistanceDistribution.DistanceBin> expectedBins = expectedModalDistanceDistribution.getDistanceBins().stream()
 				.sorted(this::compareBinsByModeAndDistanceRange)
 				.collect(Collectors.toList());
+		List<Column> columns = analyses.parallelStream()
+				.map(analysis -> createModalDistanceColumn(analysis.getSecond()))
+				.collect(Collectors.toList());
+
+		Row titleRow = sheet.createRow(0);
+		titleRow.createCell(0).setCellValue("mode");
+		titleRow.createCell(1).setCellValue("lower limit");
+		titleRow.createCell(2).setCellValue("upper limit");
+		titleRow.createCell(3).setCellValue("expected");
+		addAnalysisNames(titleRow, 4);
 
 		int rowIndex = 1; // start with one, since we used 0 for header
 		int expectedSum = 0;
@@ -90,178 +108,246 @@ public class TripAnalysisExcelWriter {
 			row.createCell(2).setCellValue(expectedBin.getDistanceRange().getUpperLimit());
 			row.createCell(3).setCellValue(expectedBin.getValue());
 			expectedSum += expectedBin.getValue();
+			addValues(row, 4, columns, rowIndex - 1);
 			rowIndex++;
 		}
-		Row expectedSumRow = sheet.createRow(rowIndex);
-		expectedSumRow.createCell(0).setCellValue("sum");
-		expectedSumRow.createCell(3).setCellValue(expectedSum);
+		Row sumRow = sheet.createRow(rowIndex);
+		sumRow.createCell(0).setCellValue("sum");
+		sumRow.createCell(3).setCellValue(expectedSum);
+		addSums(sumRow, 4, columns);
 
 		Row errorRow = sheet.createRow(rowIndex + 1);
 		errorRow.createCell(0).setCellValue("error");
 		errorRow.createCell(3).setCellValue(0);
+		addErrors(errorRow, 4, columns);
 	}
 
-	private void addModalDistanceValues(Sheet sheet, DistanceDistribution expectedModalDistanceDistribution, double scalingFactor) {
-
-		int rowIndex = 1;
-		int cellIndex = 4;
-
-		for (Tuple<String, TripAnalysis> analysis : analyses) {
-
-			List<DistanceDistribution.DistanceBin> bins = analysis.getSecond().calculateModalDistanceDistribution(expectedModalDistanceDistribution).getDistanceBins().stream()
-					.sorted(this::compareBinsByModeAndDistanceRange)
-					.collect(Collectors.toList());
-
-			int distributionSum = 0;
-			int errorSum = 0;
-			for (DistanceDistribution.DistanceBin bin : bins) {
-
-				double value = bin.getValue() * scalingFactor;
-				sheet.getRow(rowIndex).createCell(cellIndex).setCellValue(value);
-				distributionSum += value;
-
-				DistanceDistribution.DistanceBin xBin = expectedModalDistanceDistribution.getBin(bin.getId());
-				errorSum += (value - xBin.getValue()) * (value - xBin.getValue());
-				rowIndex++;
-			}
-			sheet.getRow(rowIndex).createCell(cellIndex).setCellValue(distributionSum);
-			sheet.getRow(rowIndex + 1).createCell(cellIndex).setCellValue(errorSum);
+	private Column createModalDistanceColumn(TripAnalysis analysis) {
 
-			rowIndex = 1;
-			cellIndex++;
-		}
-	}
+		List<DistanceDistribution.DistanceBin> bins = analysis.calculateModalDistanceDistribution(expectedModalDistanceDistribution).getDistanceBins().stream()
+				.sorted(this::compareBinsByModeAndDistanceRange)
+				.collect(Collectors.toList());
 
-	private void addModalSplitHeader(Sheet sheet) {
-		Row modalTitleRow = sheet.createRow(0);
-		modalTitleRow.createCell(0).setCellValue("mode");
-		modalTitleRow.createCell(1).setCellValue("expected count");
+		Column column = new Column(bins.size());
+		int distributionSum = 0;
+		int errorSum = 0;
+		for (int i = 0; i < bins.size(); i++) {
 
-		int cellIndex = 2;
+			DistanceDistribution.DistanceBin bin = bins.get(i);
+			double value = bin.getValue() * scalingFactor;
+			column.values[i] = value;
+			distributionSum += value;
 
-		for (Tuple<String, TripAnalysis> analysis : analyses) {
-			modalTitleRow.createCell(cellIndex).setCellValue(analysis.getFirst());
-			cellIndex++;
+			DistanceDistribution.DistanceBin xBin = expectedModalDistanceDistribution.getBin(bin.getId());
+			errorSum += (value - xBin.getValue()) * (value - xBin.getValue());
 		}
+		column.sum = distributionSum;
+		column.error = errorSum;
+		return column;
 	}
 
-	private void addExpectedModalSplit(Sheet sheet, Map<String, Long> expectedModalShare) {
+	private void writeModalSplit(Sheet sheet) {
 
 		List<Map.Entry<String, Long>> sorted = expectedModalShare.entrySet().stream()
 				.sorted(Map.Entry.comparingByKey())
 				.collect(Collectors.toList());
+		List<Column> columns = analyses.parallelStream()
+				.map(analysis -> createModalSplitColumn(analysis.getSecond()))
+				.collect(Collectors.toList());
+
+		Row titleRow = sheet.createRow(0);
+		titleRow.createCell(0).setCellValue("mode");
+		titleRow.createCell(1).setCellValue("expected count");
+		addAnalysisNames(titleRow, 2);
 
 		int rowIndex = 1;
 		int expectedSum = 0;
 
 		for (Map.Entry<String, Long> share : sorted) {
+
 			Row row = sheet.createRow(rowIndex);
 			row.createCell(0).setCellValue(share.getKey());
 			row.createCell(1).setCellValue(share.getValue());
 			expectedSum += share.getValue();
+			addValues(row, 2, columns, rowIndex - 1);
 			rowIndex++;
 		}
-		sheet.createRow(rowIndex).createCell(0).setCellValue("sum");
-		sheet.getRow(rowIndex).createCell(1).setCellValue(expectedSum);
-		sheet.createRow(rowIndex + 1).createCell(0).setCellValue("error-squared");
-		sheet.getRow(rowIndex + 1).createCell(1).setCellValue(0);
-	}
-
-	private void addModalSplitValues(Sheet sheet, double scalingFactor) {
-
-		int rowIndex = 1;
-		int celIndex = 2;
+		Row sumRow = sheet.createRow(rowIndex);
+		sumRow.createCell(0).setCellValue("sum");
+		sumRow.createCell(1).setCellValue(expectedSum);
+		addSums(sumRow, 2, columns);
 
-
-		for (Tuple<String, TripAnalysis> analysis : analyses) {
-			int sum = 0;
-			double errorSum = 0;
-
-			List<Map.Entry<String, Long>> modalSplit = analysis.getSecond().calculateModalSplit().entrySet().stream()
-					.sorted(Map.Entry.comparingByKey())
-					.collect(Collectors.toList());
-
-			for (Map.Entry<String, Long> split : modalSplit) {
-				double value = split.getValue() * scalingFactor;
-				sheet.getRow(rowIndex).createCell(celIndex).setCellValue(value);
-				sum += value;
-				errorSum = (expectedModalShare.get(split.getKey()) - value) * (expectedModalShare.get(split.getKey()) - value);
-				rowIndex++;
-			}
-			sheet.getRow(rowIndex).createCell(celIndex).setCellValue(sum);
-			sheet.getRow(rowIndex + 1).createCell(celIndex).setCellValue(errorSum);
-			celIndex++;
-			rowIndex = 1;
-		}
+		Row errorRow = sheet.createRow(rowIndex + 1);
+		errorRow.createCell(0).setCellValue("error-squared");
+		errorRow.createCell(1).setCellValue(0);
+		addErrors(errorRow, 2, columns);
 	}
 
-	private void addDistanceDistributionHeader(Sheet sheet) {
+	private Column createModalSplitColumn(TripAnalysis analysis) {
 
-		Row titleRow = sheet.createRow(0);
-		titleRow.createCell(0).setCellValue("lower-limit");
-		titleRow.createCell(1).setCellValue("upper-limit");
-		titleRow.createCell(2).setCellValue("expected");
-
-		int cellIndex = 3;
+		List<Map.Entry<String, Long>> modalSplit = analysis.calculateModalSplit().entrySet().stream()
+				.sorted(Map.Entry.comparingByKey())
+				.collect(Collectors.toList());
 
-		for (Tuple<String, TripAnalysis> analysis : analyses) {
-			titleRow.createCell(cellIndex).setCellValue(analysis.getFirst());
-			cellIndex++;
+		Column column = new Column(modalSplit.size());
+		int sum = 0;
+		double errorSum = 0;
+		for (int i = 0; i < modalSplit.size(); i++) {
+
+			Map.Entry<String, Long> split = modalSplit.get(i);
+			double value = split.getValue() * scalingFactor;
+			column.values[i] = value;
+			sum += value;
+			errorSum = (expectedModalShare.get(split.getKey()) - value) * (expectedModalShare.get(split.getKey()) - value);
 		}
+		column.sum = sum;
+		column.error = errorSum;
+		return column;
 	}
 
-	private void addExpectedDistanceDistribution(Sheet sheet, SimpleDistanceDistribution expectedDistanceDistribution) {
+	private void writeDistanceDistribution(Sheet sheet) {
 
 		List<SimpleDistanceDistribution.SimpleDistanceBin> sorted = expectedDistanceDistribution.getDistanceBins().stream()
 				.sorted(Comparator.comparingDouble(b -> b.getDistanceRange().getLowerLimit()))
 				.collect(Collectors.toList());
+		List<Column> columns = analyses.parallelStream()
+				.map(analysis -> createDistanceDistributionColumn(analysis.getSecond()))
+				.collect(Collectors.toList());
+
+		Row titleRow = sheet.createRow(0);
+		titleRow.createCell(0).setCellValue("lower-limit");
+		titleRow.createCell(1).setCellValue("upper-limit");
+		titleRow.createCell(2).setCellValue("expected");
+		addAnalysisNames(titleRow, 3);
 
 		int rowIndex = 1;
 		int sum = 0;
 
 		for (SimpleDistanceDistribution.SimpleDistanceBin bin : sorted) {
+
 			Row row = sheet.createRow(rowIndex);
 			row.createCell(0).setCellValue(bin.getDistanceRange().getLowerLimit());
 			row.createCell(1).setCellValue(bin.getDistanceRange().getUpperLimit());
 			row.createCell(2).setCellValue(bin.getValue());
 			sum += bin.getValue();
+			addValues(row, 3, columns, rowIndex - 1);
 			rowIndex++;
 		}
 
-		sheet.createRow(rowIndex).createCell(2).setCellValue(sum);
-		sheet.createRow(rowIndex + 1).createCell(2).setCellValue(0);
+		Row sumRow = sheet.createRow(rowIndex);
+		sumRow.createCell(2).setCellValue(sum);
+		addSums(sumRow, 3, columns);
+
+		Row errorRow = sheet.createRow(rowIndex + 1);
+		errorRow.createCell(2).setCellValue(0);
+		addErrors(errorRow, 3, columns);
 	}
 
-	private void addDistanceDistributionValues(Sheet sheet, SimpleDistanceDistribution expectedDistanceDistribution, double scalingFactor) {
+	private Column createDistanceDistributionColumn(TripAnalysis analysis) {
 
-		int rowIndex = 1;
-		int cellIndex = 3;
+		List<SimpleDistanceDistribution.SimpleDistanceBin> sorted = analysis.calculateDistanceDistribution(expectedDistanceDistribution).getDistanceBins().stream()
+				.sorted(Comparator.comparingDouble(b -> b.getDistanceRange().getLowerLimit()))
+				.collect(Collectors.toList());
 
+		Column column = new Column(sorted.size());
+		int sum = 0;
+		double errorSum = 0;
+		for (int i = 0; i < sorted.size(); i++) {
+
+			SimpleDistanceDistribution.SimpleDistanceBin bin = sorted.get(i);
+			SimpleDistanceDistribution.SimpleDistanceBin expectedBin = expectedDistanceDistribution.getDistanceBins().stream()
+					.filter(xbin -> xbin.getDistanceRange().getLowerLimit() == bin.getDistanceRange().getLowerLimit())
+					.findFirst().orElseThrow(() -> new RuntimeException("couldn't find bin"));
+			double value = bin.getValue() * scalingFactor;
+			column.values[i] = value;
+			sum += value;
+			errorSum = (value - expectedBin.getValue()) * (value - expectedBin.getValue());
+		}
+		column.sum = sum;
+		column.error = errorSum;
+		return column;
+	}
+
+	private void writeTimeProfile(Sheet sheet) {
 
+		Row titleRow = sheet.createRow(0);
+		titleRow.createCell(0).setCellValue("mode");
+		titleRow.createCell(1).setCellValue("from [h]");
+		titleRow.createCell(2).setCellValue("to [h]");
+
+		int cellIndex = 3;
 		for (Tuple<String, TripAnalysis> analysis : analyses) {
+			titleRow.createCell(cellIndex).setCellValue(analysis.getFirst() + " departures");
+			titleRow.createCell(cellIndex + 1).setCellValue(analysis.getFirst() + " arrivals");
+			cellIndex += 2;
+		}
+
+		List<TimeProfile> profiles = analyses.stream()
+				.map(analysis -> analysis.getSecond().getTimeProfile())
+				.collect(Collectors.toList());
+
+		if (profiles.isEmpty()) return;
+
+		TimeProfile first = profiles.get(0);
+		for (TimeProfile profile : profiles) {
+			if (profile.getBinSize() != first.getBinSize() || profile.getNumberOfBins() != first.getNumberOfBins())
+				throw new IllegalArgumentException("The time profiles of all analyses must have the same bins.");
+		}
+
+		TreeSet<String> modes = new TreeSet<>();
+		profiles.forEach(profile -> modes.addAll(profile.getModes()));
 
-			int sum = 0;
-			double errorSum = 0;
-			List<SimpleDistanceDistribution.SimpleDistanceBin> sorted = analysis.getSecond().calculateDistanceDistribution(expectedDistanceDistribution).getDistanceBins().stream()
-					.sorted(Comparator.comparingDouble(b -> b.getDistanceRange().getLowerLimit()))
-					.collect(Collectors.toList());
-
-			for (SimpleDistanceDistribution.SimpleDistanceBin bin : sorted) {
-
-				SimpleDistanceDistribution.SimpleDistanceBin expectedBin = expectedDistanceDistribution.getDistanceBins().stream()
-						.filter(xbin -> xbin.getDistanceRange().getLowerLimit() == bin.getDistanceRange().getLowerLimit())
-						.findFirst().orElseThrow(() -> new RuntimeException("couldn't find bin"));
-				double value = bin.getValue() * scalingFactor;
-				sheet.getRow(rowIndex).createCell(cellIndex).setCellValue(value);
-				sum += value;
-				errorSum = (value - expectedBin.getValue()) * (value - expectedBin.getValue());
+		int rowIndex = 1;
+		for (String mode : modes) {
+
+			List<long[]> departures = profiles.stream().map(profile -> profile.getDepartures(mode)).collect(Collectors.toList());
+			List<long[]> arrivals = profiles.stream().map(profile -> profile.getArrivals(mode)).collect(Collectors.toList());
+
+			for (int bin = 0; bin < first.getNumberOfBins(); bin++) {
+
+				Row row = sheet.createRow(rowIndex);
+				row.createCell(0).setCellValue(mode);
+				row.createCell(1).setCellValue(bin * first.getBinSize() / 3600);
+				// the last bin also holds all later trips and has no upper limit
+				if (bin < first.getNumberOfBins() - 1) row.createCell(2).setCellValue((bin + 1) * first.getBinSize() / 3600);
+
+				cellIndex = 3;
+				for (int i = 0; i < profiles.size(); i++) {
+					row.createCell(cellIndex).setCellValue(departures.get(i)[bin] * scalingFactor);
+					row.createCell(cellIndex + 1).setCellValue(arrivals.get(i)[bin] * scalingFactor);
+					cellIndex += 2;
+				}
 				rowIndex++;
 			}
+		}
+	}
+
+	private void addAnalysisNames(Row titleRow, int firstCellIndex) {
 
-			sheet.getRow(rowIndex).createCell(cellIndex).setCellValue(sum);
-			sheet.getRow(rowIndex + 1).createCell(cellIndex).setCellValue(errorSum);
+		int cellIndex = firstCellIndex;
+		for (Tuple<String, TripAnalysis> analysis : analyses) {
+			titleRow.createCell(cellIndex).setCellValue(analysis.getFirst());
 			cellIndex++;
-			rowIndex = 1;
+		}
+	}
+
+	private static void addValues(Row row, int firstCellIndex, List<Column> columns, int valueIndex) {
+		for (int i = 0; i < columns.size(); i++) {
+			double[] values = columns.get(i).values;
+			// runs without a value for the row leave the cell empty
+			if (valueIndex < values.length) row.createCell(firstCellIndex + i).setCellValue(values[valueIndex]);
+		}
+	}
+
+	private static void addSums(Row row, int firstCellIndex, List<Column> columns) {
+		for (int i = 0; i < columns.size(); i++) {
+			row.createCell(firstCellIndex + i).setCellValue(columns.get(i).sum);
+		}
+	}
+
+	private static void addErrors(Row row, int firstCellIndex, List<Column> columns) {
+		for (int i = 0; i < columns.size(); i++) {
+			row.createCell(firstCellIndex + i).setCellValue(columns.get(i).error);
 		}
 	}
 
@@ -270,6 +356,20 @@ public class TripAnalysisExcelWriter {
 		return (mode == 0) ? Double.compare(bin1.getDistanceRange().getLowerLimit(), bin2.getDistanceRange().getLowerLimit()) : mode;
 	}
 
+	/**
+	 * Values of one run in a sheet, with its sum and error rows
+	 */
+	private static class Column {
+
+		private final double[] values;
+		private double sum;
+		private double error;
+
+		private Column(int size) {
+			this.values = new double[size];
+		}
+	}
+
 	public static class Builder {
 
 		private DistanceDistribution expectedModalDistanceDistribution;
@@ -278,6 +378,8 @@ public class TripAnalysisExcelWriter {
 		private List<Tuple<String, TripAnalysis>> analyses;
 		private Path file;
 		private double scalingFactor = 1.0;
+		private boolean streaming = false;
+		private int rowWindow = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
 
 		public Builder addExpectedModalDistanceDistribution(DistanceDistribution expected) {
 			this.expectedModalDistanceDistribution = expected;
@@ -309,13 +411,26 @@ public class TripAnalysisExcelWriter {
 			return this;
 		}
 
+		public Builder streaming(boolean streaming) {
+			this.streaming = streaming;
+			return this;
+		}
+
+		public Builder rowWindow(int rowWindow) {
+			this.rowWindow = rowWindow;
+			return this;
+		}
+
 		public TripAnalysisExcelWriter build() {
 
 			if (file == null || analyses == null) {
 				throw new IllegalArgumentException("file path and analysises are required");
 			}
 
-			return new TripAnalysisExcelWriter(analyses, file, expectedModalDistanceDistribution, expectedDistanceDistribution, expectedModalShare, scalingFactor);
+			TripAnalysisExcelWriter writer = new TripAnalysisExcelWriter(analyses, file, expectedModalDistanceDistribution, expectedDistanceDistribution, expectedModalShare, scalingFactor);
+			writer.streaming = streaming;
+			writer.rowWindow = rowWindow;
+			return writer;
 		}
 	}
 }
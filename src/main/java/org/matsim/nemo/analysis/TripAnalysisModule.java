@@ -0,0 +1,16 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.core.controler.AbstractModule;
+
+/**
+ * Records the trips of the simulated iterations from the live events stream and writes modal split and modal distance
+ * distribution of each analysed iteration, so that no events file has to be read afterwards. Configured by the
+ * {@link TripAnalysisConfigGroup}.
+ */
+public class TripAnalysisModule extends AbstractModule {
+
+	@Override
+	public void install() {
+		addControlerListenerBinding().to(OnlineTripAnalysis.class);
+	}
+}
@@ -5,33 +5,31 @@ import com.beust.jcommander.Parameter;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.log4j.Logger;
-import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
-import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.events.EventsUtils;
-import org.matsim.core.events.MatsimEventsReader;
 import org.matsim.core.network.NetworkUtils;
-import org.matsim.core.population.io.PopulationReader;
-import org.matsim.core.router.StageActivityTypeIdentifier;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.geometry.CoordUtils;
-import org.matsim.core.utils.gis.ShapeFileReader;
 import org.matsim.facilities.ActivityFacility;
 import org.matsim.nemo.RuhrAgentsFilter;
 import org.matsim.nemo.runners.NemoModeLocationChoiceMainModeIdentifier;
+import org.matsim.nemo.util.NEMOUtils;
 
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
@@ -40,7 +38,8 @@ public class TripAnalysisToCsv {
 
 	private static final Logger logger = Logger.getLogger(TripAnalysisToCsv.class);
 	private static final String MOVED_ALL_ACTIVITIES = "moved_all_activities";
-	private static final String WAS_MOVED_KEY = "was_moved";
+	static final String WAS_MOVED_KEY = "was_moved";
+	private static final int ROWS_PER_CHUNK = 10000;
 
 	@Parameter(names = {"-eventFile", "-ef"}, required = true)
 	private String eventFile = "";
@@ -63,8 +62,17 @@ public class TripAnalysisToCsv {
 	@Parameter(names = {"onlyMovedAgents", "-om"})
 	private boolean onlyMovedAgentsByMurmo = false;
 
+	// streamed trips are written as soon as they end, so agents which get stuck keep the trips they finished before,
+	// while all their trips are dropped without streaming
+	@Parameter(names = {"-streaming", "-st"})
+	private boolean streaming = false;
+
+	@Parameter(names = {"-threads"})
+	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
 	private Network network;
 	private Scenario scenario;
+	private CoordIndex coordIndex;
 
 	public static void main(String[] args) throws IOException {
 
@@ -76,8 +84,8 @@ public class TripAnalysisToCsv {
 	private void run() throws IOException {
 
 		scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-		new PopulationReader(scenario).readFile(populationFile);
-		RuhrAgentsFilter agentsFilter = new RuhrAgentsFilter(this.scenario, ShapeFileReader.getAllFeatures(this.ruhrShapeFile));
+		NEMOUtils.readPopulation(scenario, populationFile);
+		RuhrAgentsFilter agentsFilter = RuhrAgentsFilter.create(this.scenario, this.ruhrShapeFile);
 
 		network = NetworkUtils.readNetwork(networkFile);
 
@@ -92,79 +100,133 @@ public class TripAnalysisToCsv {
 
 	private void parseEventsFile(Path file, Path output, Predicate<Id<Person>> includePerson) throws IOException {
 
-		EventsManager manager = EventsUtils.createEventsManager();
-		TripEventHandler handler = new TripEventHandler(new NemoModeLocationChoiceMainModeIdentifier(), includePerson);
-		manager.addHandler(handler);
-		new MatsimEventsReader(manager).readFile(file.toString());
-
-		var testPerson = handler.getTrips().get(Id.createPersonId("1016010401"));
-
 		logger.info("Writing files to: " + output.toString());
 
-		try (Writer writer = Files.newBufferedWriter(output)) {
-			try (CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
-				printer.printRecord("personId", "tripNo", "fromX", "fromY", "toX", "toY", "startTime", "endTime", "distance", "mainMode");
+		coordIndex = new CoordIndex(scenario, network);
 
-				for (Map.Entry<Id<Person>, List<TripEventHandler.Trip>> tripWithId : handler.getTrips().entrySet()) {
-
-					var person = scenario.getPopulation().getPersons().get(tripWithId.getKey());
-					var selectedPlan = person.getSelectedPlan();
+		try (Writer writer = Files.newBufferedWriter(output); OrderedParallelWriter parallelWriter = new OrderedParallelWriter(writer, numberOfThreads)) {
 
+			parallelWriter.submit(() -> format(Collections.singletonList(
+					Arrays.asList("personId", "tripNo", "fromX", "fromY", "toX", "toY", "startTime", "endTime", "distance", "mainMode"))));
+			TripRows rows = new TripRows(parallelWriter);
 
-					for (int i = 0; i < tripWithId.getValue().size(); i++) {
+			EventsManager manager = EventsUtils.createEventsManager();
 
+			if (streaming) {
+				logger.info("Streaming mode: trips are written as soon as they end.");
+				TripEventHandler handler = new TripEventHandler(new NemoModeLocationChoiceMainModeIdentifier(), includePerson, rows);
+				manager.addHandler(handler);
+				BinaryEventsReader.readEvents(manager, file);
+			} else {
+				TripEventHandler handler = new TripEventHandler(new NemoModeLocationChoiceMainModeIdentifier(), includePerson);
+				manager.addHandler(handler);
+				BinaryEventsReader.readEvents(manager, file);
 
-						var trip = tripWithId.getValue().get(i);
-
-						var departureCoord = getCoord(selectedPlan, trip.getDepartureFacility(), trip.getDepartureLink());
-						var arrivalCoord = getCoord(selectedPlan, trip.getArrivalFacility(), trip.getArrivalLink());
-						var distance = CoordUtils.calcEuclideanDistance(departureCoord, arrivalCoord);
-
-						printer.printRecord(
-								tripWithId.getKey().toString(), // person id
-								i, // trip index in combination with person id results in distinct index. This is important for joining results from different runs
-								departureCoord.getX(),
-								departureCoord.getY(),
-								arrivalCoord.getX(),
-								arrivalCoord.getY(),
-								trip.getDepartureTime(),
-								trip.getArrivalTime(),
-								distance,
-								trip.getMainMode()
-						);
+				for (Map.Entry<Id<Person>, List<TripEventHandler.Trip>> tripWithId : handler.getTrips().entrySet()) {
+					for (int i = 0; i < tripWithId.getValue().size(); i++) {
+						rows.add(tripWithId.getKey(), i, tripWithId.getValue().get(i));
 					}
 				}
-				printer.flush();
 			}
+			rows.submitChunk();
+		}
+
+		if (coordIndex.getNumberOfFallbacks() > 0) {
+			logger.warn("Fell back to link coords for " + coordIndex.getNumberOfFallbacks() + " trip ends. This is not as accurate as Facility or Activity coordinates");
+		}
+	}
+
+	private List<List<Object>> toRecords(List<TripRow> chunk) {
+
+		List<List<Object>> result = new ArrayList<>(chunk.size());
+		for (TripRow row : chunk) {
+
+			var departureCoord = coordIndex.getCoord(row.personId, row.departureFacility, row.departureLink);
+			var arrivalCoord = coordIndex.getCoord(row.personId, row.arrivalFacility, row.arrivalLink);
+			var distance = CoordUtils.calcEuclideanDistance(departureCoord, arrivalCoord);
+
+			result.add(Arrays.asList(
+					row.personId.toString(), // person id
+					row.tripNumber, // trip index in combination with person id results in distinct index. This is important for joining results from different runs
+					departureCoord.getX(),
+					departureCoord.getY(),
+					arrivalCoord.getX(),
+					arrivalCoord.getY(),
+					row.departureTime,
+					row.arrivalTime,
+					distance,
+					row.mainMode
+			));
 		}
+		return result;
+	}
+
+	private static String format(List<List<Object>> records) throws IOException {
+
+		StringBuilder result = new StringBuilder();
+		CSVPrinter printer = new CSVPrinter(result, CSVFormat.DEFAULT);
+		printer.printRecords(records);
+		return result.toString();
 	}
 
 	/**
-	 * 1. Tries to get the coordinate from the scenario's facility which has the supplied facilityId
-	 * 2. If the facility can't be found within the scenario the activity from the plan with the corresponding facilityId
-	 * is retrieved and the coordinate of the activity is returned
-	 * 3. If no activity is found or no coordinate is set on the activity the coordinate of the supplied link is taken
-	 * from the network as a fallback - this is less accurate than the facility or activity id
+	 * Collects the values of finished trips into chunks and hands each full chunk to the parallel writer. The values
+	 * are copied, since trips passed to a {@link TripEventHandler.TripListener} are only valid during the callback.
+	 * Streamed trips are numbered in the order in which they end, which is their index in the person's trip list.
 	 */
-	private Coord getCoord(Plan plan, Id<ActivityFacility> facilityId, Id<Link> linkId) {
+	private class TripRows implements TripEventHandler.TripListener {
+
+		private final OrderedParallelWriter writer;
+		private final Map<Id<Person>, Integer> tripNumbers = new HashMap<>();
+		private List<TripRow> chunk = new ArrayList<>(ROWS_PER_CHUNK);
+
+		private TripRows(OrderedParallelWriter writer) {
+			this.writer = writer;
+		}
 
-		if (scenario.getActivityFacilities().getFacilities().size() > 0 || scenario.getActivityFacilities().getFacilities().containsKey(facilityId)) {
-			return scenario.getActivityFacilities().getFacilities().get(facilityId).getCoord();
+		@Override
+		public void handleTrip(Id<Person> personId, TripEventHandler.Trip trip) {
+			add(personId, tripNumbers.merge(personId, 1, Integer::sum) - 1, trip);
 		}
 
-		var optionalActivity = plan.getPlanElements().stream()
-				.filter(element -> element instanceof Activity)
-				.map(element -> (Activity) element)
-				.filter(activity -> !StageActivityTypeIdentifier.isStageActivity(activity.getType()))
-				.filter(activity -> activity.getFacilityId() != null)
-				.filter(activity -> activity.getFacilityId().equals(facilityId))
-				.findAny();
+		private void add(Id<Person> personId, int tripNumber, TripEventHandler.Trip trip) {
 
-		if (optionalActivity.isPresent() && optionalActivity.get().getCoord() != null) {
-			return optionalActivity.get().getCoord();
+			chunk.add(new TripRow(personId, tripNumber, trip));
+			if (chunk.size() == ROWS_PER_CHUNK) submitChunk();
 		}
 
-		logger.warn("Falling back to link coord. This is not as accurate as Facility or Activity coordinates");
-		return network.getLinks().get(linkId).getCoord();
+		private void submitChunk() {
+
+			if (chunk.isEmpty()) return;
+
+			List<TripRow> rows = chunk;
+			writer.submit(() -> format(toRecords(rows)));
+			chunk = new ArrayList<>(ROWS_PER_CHUNK);
+		}
+	}
+
+	private static class TripRow {
+
+		private final Id<Person> personId;
+		private final int tripNumber;
+		private final Id<ActivityFacility> departureFacility;
+		private final Id<Link> departureLink;
+		private final Id<ActivityFacility> arrivalFacility;
+		private final Id<Link> arrivalLink;
+		private final double departureTime;
+		private final double arrivalTime;
+		private final String mainMode;
+
+		private TripRow(Id<Person> personId, int tripNumber, TripEventHandler.Trip trip) {
+			this.personId = personId;
+			this.tripNumber = tripNumber;
+			this.departureFacility = trip.getDepartureFacility();
+			this.departureLink = trip.getDepartureLink();
+			this.arrivalFacility = trip.getArrivalFacility();
+			this.arrivalLink = trip.getArrivalLink();
+			this.departureTime = trip.getDepartureTime();
+			this.arrivalTime = trip.getArrivalTime();
+			this.mainMode = trip.getMainMode();
+		}
 	}
 }
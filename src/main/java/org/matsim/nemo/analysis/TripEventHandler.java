@@ -7,7 +7,6 @@ import org.matsim.api.core.v01.events.handler.*;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.router.MainModeIdentifier;
 import org.matsim.core.router.StageActivityTypeIdentifier;
 import org.matsim.facilities.ActivityFacility;
@@ -15,22 +14,63 @@ import org.matsim.facilities.ActivityFacility;
 import java.util.*;
 import java.util.function.Predicate;
 
+/**
+ * Records the trips of all agents accepted by the agent filter. The trips are kept in a column based {@link TripStore}
+ * so that large events files can be analysed without holding an object per trip and leg.
+ * <p>
+ * If a {@link TripListener} is supplied, the handler streams: each trip is passed to the listener as soon as it ends
+ * and is dropped afterwards, together with the person, so that only persons with open trips are held. {@link #getTrips()}
+ * then only contains the currently open trips.
+ * <p>
+ * Without streaming, all trips of agents which get stuck are dropped, as they always were. With streaming, the trips
+ * an agent has finished before it gets stuck were already passed to the listener, so only the trip during which it
+ * gets stuck is dropped.
+ */
 public class TripEventHandler implements ActivityEndEventHandler, ActivityStartEventHandler, PersonDepartureEventHandler, PersonArrivalEventHandler, PersonStuckEventHandler, TransitDriverStartsEventHandler {
 
 	private final Set<Id<Person>> drivers = new HashSet<>();
-	private final Map<Id<Person>, List<TripEventHandler.Trip>> tripToPerson = new HashMap<>();
+	private final TripStore tripStore;
 	private final MainModeIdentifier mainModeIdentifier;
 	private final Predicate<Id<Person>> agentFilter;
+	private final TripListener tripListener;
+	private final TimeProfile timeProfile = new TimeProfile();
     private Set<Id<Person>> stuck = new HashSet<>();
 
 	public TripEventHandler(MainModeIdentifier mainModeIdentifier, Predicate<Id<Person>> agentFilter) {
+		this(mainModeIdentifier, agentFilter, (TripListener) null);
+	}
+
+	public TripEventHandler(MainModeIdentifier mainModeIdentifier, Predicate<Id<Person>> agentFilter, TripListener tripListener) {
 
 		this.mainModeIdentifier = mainModeIdentifier;
 		this.agentFilter = agentFilter;
+		this.tripListener = tripListener;
+		this.tripStore = new TripStore();
 	}
 
+	/**
+	 * Creates a handler whose trip store shares the ids of the dictionary with other handlers
+	 */
+	TripEventHandler(MainModeIdentifier mainModeIdentifier, Predicate<Id<Person>> agentFilter, IdDictionary dictionary) {
+
+		this.mainModeIdentifier = mainModeIdentifier;
+		this.agentFilter = agentFilter;
+		this.tripListener = null;
+		this.tripStore = new TripStore(dictionary);
+	}
+
+	/**
+	 * @return a new map of the recorded trips. The trip lists are views on the underlying trip store and are not copied.
+	 */
 	public Map<Id<Person>, List<TripEventHandler.Trip>> getTrips() {
-		return new HashMap<>(tripToPerson);
+		return tripStore.toTripMap();
+	}
+
+	/**
+	 * @return departures and arrivals of the ended trips by main mode
+	 */
+	public TimeProfile getTimeProfile() {
+		return timeProfile;
 	}
 
     public Set<Id<Person>> getStuckPersons() {
@@ -50,124 +90,124 @@ public class TripEventHandler implements ActivityEndEventHandler, ActivityStartE
 
 		// maybe handle drt? Drt drivers have their own activities
 
-		if (!tripToPerson.containsKey(event.getPersonId())) {
-			List<TripEventHandler.Trip> trips = new ArrayList<>();
-			tripToPerson.put(event.getPersonId(), trips);
-		}
-
 		// we have to put in the trip here, since the activity end lets us know whether we have a main activity or a
 		// staging acitivity
-		TripEventHandler.Trip trip = new TripEventHandler.Trip();
-		trip.departureTime = event.getTime();
-		trip.departureLink = event.getLinkId();
-		trip.departureFacility = event.getFacilityId();
-
-		tripToPerson.get(event.getPersonId()).add(trip);
+		tripStore.startTrip(event.getPersonId(), event.getTime(), event.getLinkId(), event.getFacilityId());
 	}
 
 	@Override
 	public void handleEvent(ActivityStartEvent event) {
 
 		// Don't end the trip until we have a real activity
-		if (StageActivityTypeIdentifier.isStageActivity(event.getActType()) || !tripToPerson.containsKey(event.getPersonId()))
+		if (StageActivityTypeIdentifier.isStageActivity(event.getActType()) || !tripStore.hasTrips(event.getPersonId()))
 			return;
 
-		TripEventHandler.Trip trip = getCurrentTrip(event.getPersonId());
-		trip.arrivalLink = event.getLinkId();
-		trip.arrivalTime = event.getTime();
-		trip.arrivalFacility = event.getFacilityId();
+		int trip = tripStore.getCurrentTrip(event.getPersonId());
+		tripStore.endTrip(trip, event.getTime(), event.getLinkId(), event.getFacilityId());
 
 		try {
-			trip.mainMode = mainModeIdentifier.identifyMainMode(trip.legs);
+			tripStore.setMainMode(trip, mainModeIdentifier.identifyMainMode(tripStore.createLegs(trip)));
 		} catch (Exception e) {
 			// the default main mode identifier can't handle non-network-walk only
-			trip.mainMode = TransportMode.non_network_walk;
+			tripStore.setMainMode(trip, TransportMode.non_network_walk);
+		}
+		timeProfile.addTrip(tripStore.getMainMode(trip), tripStore.getDepartureTime(trip), event.getTime());
+
+		if (tripListener != null) {
+			tripListener.handleTrip(event.getPersonId(), new Trip(tripStore, trip));
+			tripStore.removeTrips(event.getPersonId());
+			tripStore.releasePerson(event.getPersonId());
 		}
 	}
 
 	@Override
 	public void handleEvent(PersonArrivalEvent event) {
 
-		if (!tripToPerson.containsKey(event.getPersonId())) return;
+		if (!tripStore.hasTrips(event.getPersonId())) return;
 
-		TripEventHandler.Trip trip = getCurrentTrip(event.getPersonId());
-		Leg leg = trip.legs.get(trip.legs.size() - 1);
-		leg.setTravelTime(event.getTime() - leg.getDepartureTime());
+		tripStore.endLastLeg(tripStore.getCurrentTrip(event.getPersonId()), event.getTime());
 	}
 
 	@Override
 	public void handleEvent(PersonDepartureEvent event) {
 
-		if (!tripToPerson.containsKey(event.getPersonId())) return;
+		if (!tripStore.hasTrips(event.getPersonId())) return;
 
 		// a new leg is started
-		Leg leg = PopulationUtils.createLeg(event.getLegMode());
-		leg.setDepartureTime(event.getTime());
-		leg.setMode(event.getLegMode());
-		TripEventHandler.Trip trip = getCurrentTrip(event.getPersonId());
-		trip.legs.add(leg);
+		tripStore.addLeg(tripStore.getCurrentTrip(event.getPersonId()), event.getLegMode(), event.getTime());
 	}
 
 	@Override
 	public void handleEvent(PersonStuckEvent event) {
 
-		tripToPerson.remove(event.getPersonId());
+		if (tripListener == null) {
+			tripStore.removeTrips(event.getPersonId());
+		} else {
+			// the finished trips were streamed already, and the open trip was never counted in the profile
+			tripStore.removeOpenTrip(event.getPersonId());
+			tripStore.releasePerson(event.getPersonId());
+		}
         stuck.add(event.getPersonId());
 	}
 
 	@Override
 	public void reset(final int iteration) {
-		tripToPerson.clear();
+		tripStore.clear();
+		timeProfile.clear();
 	}
 
-	private TripEventHandler.Trip getCurrentTrip(Id<Person> personId) {
+	/**
+	 * Receives trips as soon as they end, in the order of the events. The trip is only valid during the call.
+	 */
+	@FunctionalInterface
+	public interface TripListener {
 
-		List<TripEventHandler.Trip> trips = tripToPerson.get(personId);
-		return trips.get(trips.size() - 1);
+		void handleTrip(Id<Person> personId, Trip trip);
 	}
 
+	/**
+	 * Lightweight view on one row of a {@link TripStore}
+	 */
 	public static class Trip {
-		private Id<Link> departureLink;
-		private Id<Link> arrivalLink;
-		private double departureTime;
-		private double arrivalTime;
-		private Id<ActivityFacility> departureFacility;
-		private Id<ActivityFacility> arrivalFacility;
-		private String mainMode = TransportMode.other;
 
-		private List<Leg> legs = new ArrayList<>();
+		private final TripStore store;
+		private final int row;
+
+		Trip(TripStore store, int row) {
+			this.store = store;
+			this.row = row;
+		}
 
 		public Id<Link> getDepartureLink() {
-			return departureLink;
+			return store.getDepartureLink(row);
 		}
 
 		public Id<Link> getArrivalLink() {
-			return arrivalLink;
+			return store.getArrivalLink(row);
 		}
 
 		public double getDepartureTime() {
-			return departureTime;
+			return store.getDepartureTime(row);
 		}
 
 		public double getArrivalTime() {
-			return arrivalTime;
+			return store.getArrivalTime(row);
 		}
 
 		public Id<ActivityFacility> getDepartureFacility() {
-			return departureFacility;
+			return store.getDepartureFacility(row);
 		}
 
 		public Id<ActivityFacility> getArrivalFacility() {
-			return arrivalFacility;
+			return store.getArrivalFacility(row);
 		}
 
 		public String getMainMode() {
-			return mainMode;
+			return store.getMainMode(row);
 		}
 
 		public List<Leg> getLegs() {
-			return new ArrayList<>(legs);
+			return store.createLegs(row);
 		}
 	}
 }
-
@@ -0,0 +1,395 @@
+package org.matsim.nemo.analysis;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps recorded trips in growable primitive columns instead of one object per trip and leg. Ids and modes are
+ * dictionary encoded via {@link ValueIndex}.
+ * <p>
+ * Since events of different persons are interleaved, the trips of a person and the legs of a trip are not stored in
+ * consecutive rows. Instead each row holds the offset of the next row of the same person or trip. Rows of removed trips
+ * are kept in free lists and are reused for new trips, so that memory only grows with the number of trips held.
+ */
+class TripStore {
+
+	private static final int NO_ROW = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final ValueIndex<Id<Person>> persons;
+	private final ValueIndex<Id<Link>> links;
+	private final ValueIndex<Id<ActivityFacility>> facilities;
+	private final ValueIndex<String> modes = new ValueIndex<>();
+
+	// columns by person index
+	private int[] firstTrip = new int[INITIAL_CAPACITY];
+	private int[] lastTrip = new int[INITIAL_CAPACITY];
+
+	// columns by trip row
+	private int tripCount = 0;
+	private int[] tripPerson = new int[INITIAL_CAPACITY];
+	private int[] nextTrip = new int[INITIAL_CAPACITY];
+	private int[] departureLink = new int[INITIAL_CAPACITY];
+	private int[] arrivalLink = new int[INITIAL_CAPACITY];
+	private int[] departureFacility = new int[INITIAL_CAPACITY];
+	private int[] arrivalFacility = new int[INITIAL_CAPACITY];
+	private double[] departureTime = new double[INITIAL_CAPACITY];
+	private double[] arrivalTime = new double[INITIAL_CAPACITY];
+	private byte[] mainMode = new byte[INITIAL_CAPACITY];
+	private int[] firstLeg = new int[INITIAL_CAPACITY];
+	private int[] lastLeg = new int[INITIAL_CAPACITY];
+
+	// head of the removed trip rows, which are chained via nextTrip
+	private int freeTrip = NO_ROW;
+
+	// columns by leg row
+	private int legCount = 0;
+	private byte[] legMode = new byte[INITIAL_CAPACITY];
+	private double[] legDepartureTime = new double[INITIAL_CAPACITY];
+	private double[] legTravelTime = new double[INITIAL_CAPACITY];
+	private int[] nextLeg = new int[INITIAL_CAPACITY];
+
+	// head of the removed leg rows, which are chained via nextLeg
+	private int freeLeg = NO_ROW;
+
+	TripStore() {
+		persons = new ValueIndex<>();
+		links = new ValueIndex<>();
+		facilities = new ValueIndex<>();
+	}
+
+	/**
+	 * Creates a store whose ids extend the shared dictionary, so that the ids of the dictionary aren't indexed again
+	 */
+	TripStore(IdDictionary dictionary) {
+		persons = new ValueIndex<>(dictionary.getPersons());
+		links = new ValueIndex<>(dictionary.getLinks());
+		facilities = new ValueIndex<>(dictionary.getFacilities());
+
+		int capacity = Math.max(INITIAL_CAPACITY, persons.size());
+		firstTrip = new int[capacity];
+		lastTrip = new int[capacity];
+		Arrays.fill(firstTrip, NO_ROW);
+		Arrays.fill(lastTrip, NO_ROW);
+	}
+
+	/**
+	 * Appends a new trip for the person and returns its row
+	 */
+	int startTrip(Id<Person> personId, double time, Id<Link> linkId, Id<ActivityFacility> facilityId) {
+
+		int person = getOrAddPerson(personId);
+		int trip = newTripRow();
+		tripPerson[trip] = person;
+		nextTrip[trip] = NO_ROW;
+		departureTime[trip] = time;
+		departureLink[trip] = links.getOrAdd(linkId);
+		departureFacility[trip] = facilities.getOrAdd(facilityId);
+		arrivalTime[trip] = 0;
+		arrivalLink[trip] = ValueIndex.NO_INDEX;
+		arrivalFacility[trip] = ValueIndex.NO_INDEX;
+		mainMode[trip] = encodeMode(TransportMode.other);
+		firstLeg[trip] = NO_ROW;
+		lastLeg[trip] = NO_ROW;
+
+		if (lastTrip[person] == NO_ROW) firstTrip[person] = trip;
+		else nextTrip[lastTrip[person]] = trip;
+		lastTrip[person] = trip;
+
+		return trip;
+	}
+
+	void endTrip(int trip, double time, Id<Link> linkId, Id<ActivityFacility> facilityId) {
+		arrivalTime[trip] = time;
+		arrivalLink[trip] = links.getOrAdd(linkId);
+		arrivalFacility[trip] = facilities.getOrAdd(facilityId);
+	}
+
+	void setMainMode(int trip, String mode) {
+		mainMode[trip] = encodeMode(mode);
+	}
+
+	void addLeg(int trip, String mode, double time) {
+
+		int leg = newLegRow();
+		legMode[leg] = encodeMode(mode);
+		legDepartureTime[leg] = time;
+		legTravelTime[leg] = Double.NaN;
+		nextLeg[leg] = NO_ROW;
+
+		if (lastLeg[trip] == NO_ROW) firstLeg[trip] = leg;
+		else nextLeg[lastLeg[trip]] = leg;
+		lastLeg[trip] = leg;
+	}
+
+	void endLastLeg(int trip, double time) {
+
+		int leg = lastLeg[trip];
+		if (leg == NO_ROW) return;
+		legTravelTime[leg] = time - legDepartureTime[leg];
+	}
+
+	/**
+	 * Returns the row of the last trip of the person or {@link #NO_ROW} if no trips are recorded for the person
+	 */
+	int getCurrentTrip(Id<Person> personId) {
+
+		int person = persons.getIndex(personId);
+		return person == ValueIndex.NO_INDEX ? NO_ROW : lastTrip[person];
+	}
+
+	boolean hasTrips(Id<Person> personId) {
+		return getCurrentTrip(personId) != NO_ROW;
+	}
+
+	/**
+	 * Forgets the last trip of the person if it hasn't ended yet. The ended trips of the person are kept.
+	 */
+	void removeOpenTrip(Id<Person> personId) {
+
+		int person = persons.getIndex(personId);
+		if (person == ValueIndex.NO_INDEX) return;
+
+		int trip = lastTrip[person];
+		if (trip == NO_ROW || arrivalLink[trip] != ValueIndex.NO_INDEX) return;
+
+		int previous = NO_ROW;
+		for (int row = firstTrip[person]; row != trip; row = nextTrip[row]) previous = row;
+
+		if (previous == NO_ROW) firstTrip[person] = NO_ROW;
+		else nextTrip[previous] = NO_ROW;
+		lastTrip[person] = previous;
+
+		if (firstLeg[trip] != NO_ROW) {
+			nextLeg[lastLeg[trip]] = freeLeg;
+			freeLeg = firstLeg[trip];
+		}
+		nextTrip[trip] = freeTrip;
+		freeTrip = trip;
+	}
+
+	/**
+	 * Frees the index of a person without trips, so that the store only holds persons with recorded trips
+	 */
+	void releasePerson(Id<Person> personId) {
+		if (!hasTrips(personId)) persons.remove(personId);
+	}
+
+	/**
+	 * Forgets all trips of the person. Their rows are reused for subsequent trips, which means that trip views of the
+	 * removed trips must not be used afterwards.
+	 */
+	void removeTrips(Id<Person> personId) {
+
+		int person = persons.getIndex(personId);
+		if (person == ValueIndex.NO_INDEX || firstTrip[person] == NO_ROW) return;
+
+		for (int trip = firstTrip[person]; trip != NO_ROW; trip = nextTrip[trip]) {
+			if (firstLeg[trip] != NO_ROW) {
+				nextLeg[lastLeg[trip]] = freeLeg;
+				freeLeg = firstLeg[trip];
+			}
+		}
+		nextTrip[lastTrip[person]] = freeTrip;
+		freeTrip = firstTrip[person];
+
+		firstTrip[person] = NO_ROW;
+		lastTrip[person] = NO_ROW;
+	}
+
+	void clear() {
+		persons.clear();
+		links.clear();
+		facilities.clear();
+		modes.clear();
+		// persons of a shared dictionary remain indexed
+		Arrays.fill(firstTrip, 0, persons.size(), NO_ROW);
+		Arrays.fill(lastTrip, 0, persons.size(), NO_ROW);
+		tripCount = 0;
+		legCount = 0;
+		freeTrip = NO_ROW;
+		freeLeg = NO_ROW;
+	}
+
+	/**
+	 * Creates a map of lightweight trip views. The views read from the columns of this store, no trip data is copied.
+	 */
+	Map<Id<Person>, List<TripEventHandler.Trip>> toTripMap() {
+
+		Map<Id<Person>, List<TripEventHandler.Trip>> result = new HashMap<>();
+		for (int person = 0; person < persons.size(); person++) {
+
+			if (firstTrip[person] == NO_ROW) continue;
+
+			int size = 0;
+			for (int trip = firstTrip[person]; trip != NO_ROW; trip = nextTrip[trip]) size++;
+
+			int[] rows = new int[size];
+			int i = 0;
+			for (int trip = firstTrip[person]; trip != NO_ROW; trip = nextTrip[trip]) rows[i++] = trip;
+
+			result.put(persons.getValue(person), new TripList(rows));
+		}
+		return result;
+	}
+
+	Id<Person> getPerson(int trip) {
+		return persons.getValue(tripPerson[trip]);
+	}
+
+	Id<Link> getDepartureLink(int trip) {
+		return links.getValue(departureLink[trip]);
+	}
+
+	Id<Link> getArrivalLink(int trip) {
+		return links.getValue(arrivalLink[trip]);
+	}
+
+	double getDepartureTime(int trip) {
+		return departureTime[trip];
+	}
+
+	double getArrivalTime(int trip) {
+		return arrivalTime[trip];
+	}
+
+	Id<ActivityFacility> getDepartureFacility(int trip) {
+		return facilities.getValue(departureFacility[trip]);
+	}
+
+	Id<ActivityFacility> getArrivalFacility(int trip) {
+		return facilities.getValue(arrivalFacility[trip]);
+	}
+
+	String getMainMode(int trip) {
+		return modes.getValue(Byte.toUnsignedInt(mainMode[trip]));
+	}
+
+	/**
+	 * Creates new leg objects for the recorded legs of a trip. The legs only carry mode, departure time and travel time
+	 */
+	List<Leg> createLegs(int trip) {
+
+		List<Leg> result = new ArrayList<>();
+		for (int row = firstLeg[trip]; row != NO_ROW; row = nextLeg[row]) {
+			Leg leg = PopulationUtils.createLeg(modes.getValue(Byte.toUnsignedInt(legMode[row])));
+			leg.setDepartureTime(legDepartureTime[row]);
+			if (!Double.isNaN(legTravelTime[row])) leg.setTravelTime(legTravelTime[row]);
+			result.add(leg);
+		}
+		return result;
+	}
+
+	private int getOrAddPerson(Id<Person> personId) {
+
+		int knownPersons = persons.size();
+		int person = persons.getOrAdd(personId);
+
+		if (person < knownPersons) return person;
+
+		if (person >= firstTrip.length) {
+			int newCapacity = grownCapacity(firstTrip.length, person + 1);
+			firstTrip = Arrays.copyOf(firstTrip, newCapacity);
+			lastTrip = Arrays.copyOf(lastTrip, newCapacity);
+		}
+		firstTrip[person] = NO_ROW;
+		lastTrip[person] = NO_ROW;
+		return person;
+	}
+
+	private int newTripRow() {
+
+		if (freeTrip != NO_ROW) {
+			int trip = freeTrip;
+			freeTrip = nextTrip[trip];
+			return trip;
+		}
+		ensureTripCapacity(tripCount + 1);
+		return tripCount++;
+	}
+
+	private int newLegRow() {
+
+		if (freeLeg != NO_ROW) {
+			int leg = freeLeg;
+			freeLeg = nextLeg[leg];
+			return leg;
+		}
+		ensureLegCapacity(legCount + 1);
+		return legCount++;
+	}
+
+	private byte encodeMode(String mode) {
+
+		int code = modes.getOrAdd(mode);
+		if (code > 255) throw new IllegalStateException("Only 256 different modes are supported.");
+		return (byte) code;
+	}
+
+	private void ensureTripCapacity(int capacity) {
+
+		if (capacity <= tripPerson.length) return;
+
+		int newCapacity = grownCapacity(tripPerson.length, capacity);
+		tripPerson = Arrays.copyOf(tripPerson, newCapacity);
+		nextTrip = Arrays.copyOf(nextTrip, newCapacity);
+		departureLink = Arrays.copyOf(departureLink, newCapacity);
+		arrivalLink = Arrays.copyOf(arrivalLink, newCapacity);
+		departureFacility = Arrays.copyOf(departureFacility, newCapacity);
+		arrivalFacility = Arrays.copyOf(arrivalFacility, newCapacity);
+		departureTime = Arrays.copyOf(departureTime, newCapacity);
+		arrivalTime = Arrays.copyOf(arrivalTime, newCapacity);
+		mainMode = Arrays.copyOf(mainMode, newCapacity);
+		firstLeg = Arrays.copyOf(firstLeg, newCapacity);
+		lastLeg = Arrays.copyOf(lastLeg, newCapacity);
+	}
+
+	private void ensureLegCapacity(int capacity) {
+
+		if (capacity <= legMode.length) return;
+
+		int newCapacity = grownCapacity(legMode.length, capacity);
+		legMode = Arrays.copyOf(legMode, newCapacity);
+		legDepartureTime = Arrays.copyOf(legDepartureTime, newCapacity);
+		legTravelTime = Arrays.copyOf(legTravelTime, newCapacity);
+		nextLeg = Arrays.copyOf(nextLeg, newCapacity);
+	}
+
+	private static int grownCapacity(int current, int required) {
+		return Math.max(required, current + (current >> 1));
+	}
+
+	/**
+	 * Read only list of trip views for the trip rows of one person
+	 */
+	private class TripList extends AbstractList<TripEventHandler.Trip> {
+
+		private final int[] rows;
+
+		private TripList(int[] rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public TripEventHandler.Trip get(int index) {
+			return new TripEventHandler.Trip(TripStore.this, rows[index]);
+		}
+
+		@Override
+		public int size() {
+			return rows.length;
+		}
+	}
+}
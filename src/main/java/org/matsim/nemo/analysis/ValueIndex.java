@@ -0,0 +1,100 @@
+package org.matsim.nemo.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps values (usually ids or mode strings) onto dense int indices, so that they can be stored in primitive columns.
+ * Null values are mapped onto {@link #NO_INDEX} and vice versa.
+ * <p>
+ * An index may extend a parent index. The values of the parent keep their indices and new values are appended after
+ * them. The parent must not be changed afterwards, so that it can be shared by several indices and threads.
+ * <p>
+ * Removed values free their index, which is handed out again for the next new value.
+ */
+class ValueIndex<T> {
+
+	static final int NO_INDEX = -1;
+
+	private final ValueIndex<T> parent;
+	private final int offset;
+	private final Map<T, Integer> indices = new HashMap<>();
+	private final List<T> values = new ArrayList<>();
+	private final Deque<Integer> freeIndices = new ArrayDeque<>();
+
+	ValueIndex() {
+		this(null);
+	}
+
+	ValueIndex(ValueIndex<T> parent) {
+		this.parent = parent;
+		this.offset = parent == null ? 0 : parent.size();
+	}
+
+	int getOrAdd(T value) {
+
+		if (value == null) return NO_INDEX;
+
+		if (parent != null) {
+			int index = parent.getIndex(value);
+			if (index != NO_INDEX) return index;
+		}
+
+		Integer index = indices.get(value);
+		if (index == null) {
+			if (freeIndices.isEmpty()) {
+				index = offset + values.size();
+				values.add(value);
+			} else {
+				index = freeIndices.pop();
+				values.set(index - offset, value);
+			}
+			indices.put(value, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Frees the index of the value. Values of the parent index are not removed.
+	 */
+	void remove(T value) {
+
+		if (value == null) return;
+
+		Integer index = indices.remove(value);
+		if (index == null) return;
+		values.set(index - offset, null);
+		freeIndices.push(index);
+	}
+
+	int getIndex(T value) {
+
+		if (value == null) return NO_INDEX;
+
+		if (parent != null) {
+			int index = parent.getIndex(value);
+			if (index != NO_INDEX) return index;
+		}
+		return indices.getOrDefault(value, NO_INDEX);
+	}
+
+	T getValue(int index) {
+
+		if (index == NO_INDEX) return null;
+		return index < offset ? parent.getValue(index) : values.get(index - offset);
+	}
+
+	int size() {
+		return offset + values.size();
+	}
+
+	void clear() {
+		indices.clear();
+		values.clear();
+		freeIndices.clear();
+	}
+}
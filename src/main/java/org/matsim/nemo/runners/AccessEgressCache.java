@@ -0,0 +1,411 @@
+package org.matsim.nemo.runners;
+
+import ch.sbb.matsim.routing.pt.raptor.DefaultRaptorStopFinder;
+import ch.sbb.matsim.routing.pt.raptor.RaptorIntermodalAccessEgress;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStopFinder;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorRoutingModuleProvider;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.RoutingModule;
+import org.matsim.core.utils.misc.Time;
+import org.matsim.facilities.Facility;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the access and egress routes which the pt router requests for the stops of intermodal modes such as drt.
+ * A route is looked up by mode, stop, the grid cell of the other end of the route, the departure time bin and whether
+ * it leads to or away from the stop. The first route of such a combination is handed out as a copy for all later
+ * requests, with departure times shifted to the requested time.
+ * <p>
+ * A copy only serves the stop finder to compare the travel times and costs of the stops. The route starts or ends at
+ * the facility of the first request, so it is not passed on to plans: the pt routing module is wrapped as well, and it
+ * routes the access and egress of the chosen stops exactly for the actual facilities, in place of such copies. Requests
+ * outside of a pt route are always routed exactly.
+ * <p>
+ * The cache holds at most {@link Builder#maxSize(int)} routes and evicts the least recently used ones. It is cleared at
+ * the start of each iteration, since the travel times of drt are updated between iterations. Hits and misses are
+ * logged at the end of each iteration.
+ * <p>
+ * The cache is plugged into the pt router with the {@link StopFinderProvider}, which must be bound as
+ * {@link RaptorStopFinder}, and the {@link PtRoutingModuleProvider}, which must be bound as routing module of pt. The
+ * cache must be bound as instance and as controler listener.
+ */
+public class AccessEgressCache implements IterationStartsListener, IterationEndsListener {
+
+	private static final Logger logger = Logger.getLogger(AccessEgressCache.class);
+
+	private final Set<String> modes;
+	private final double cellSize;
+	private final double timeBinSize;
+	private final int maxSize;
+
+	private final Map<Key, CachedRoute> routes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	// legs of the copies which were handed out during the pt route that the current thread calculates
+	private final ThreadLocal<Map<Leg, Request>> copiedLegs = new ThreadLocal<>();
+
+	private AccessEgressCache(Builder builder) {
+
+		this.modes = new HashSet<>(builder.modes);
+		this.cellSize = builder.cellSize;
+		this.timeBinSize = builder.timeBinSize;
+		this.maxSize = builder.maxSize;
+		this.routes = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedRoute> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return a routing module which answers access and egress requests of the mode from this cache and passes all
+	 * other requests to the delegate
+	 */
+	public RoutingModule wrap(String mode, RoutingModule delegate) {
+		return (fromFacility, toFacility, departureTime, person) -> calcRoute(mode, delegate, fromFacility, toFacility, departureTime, person);
+	}
+
+	/**
+	 * @return a routing module which replaces the cached access and egress routes in the routes of the delegate with
+	 * exact routes
+	 */
+	public RoutingModule wrapPt(RoutingModule delegate) {
+		return (fromFacility, toFacility, departureTime, person) -> {
+
+			Map<Leg, Request> previous = copiedLegs.get();
+			Map<Leg, Request> legs = new IdentityHashMap<>();
+			copiedLegs.set(legs);
+
+			List<? extends PlanElement> route;
+			try {
+				route = delegate.calcRoute(fromFacility, toFacility, departureTime, person);
+			} finally {
+				copiedLegs.set(previous);
+			}
+			return route == null || legs.isEmpty() ? route : replaceCopies(route, legs);
+		};
+	}
+
+	public Set<String> getModes() {
+		return modes;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRate() {
+		long requests = hits.get() + misses.get();
+		return requests == 0 ? 0 : (double) hits.get() / requests;
+	}
+
+	public int size() {
+		synchronized (routes) {
+			return routes.size();
+		}
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+
+		synchronized (routes) {
+			routes.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		logger.info("Access and egress cache of iteration " + event.getIteration() + ": " + hits.get() + " hits, " + misses.get()
+				+ " misses, hit rate " + getHitRate() + ", " + size() + " cached routes");
+	}
+
+	private List<? extends PlanElement> calcRoute(String mode, RoutingModule delegate, Facility fromFacility, Facility toFacility, double departureTime, Person person) {
+
+		Map<Leg, Request> legs = copiedLegs.get();
+		Key key = legs == null ? null : createKey(mode, fromFacility, toFacility, departureTime);
+		if (key == null) return delegate.calcRoute(fromFacility, toFacility, departureTime, person);
+
+		CachedRoute cached;
+		synchronized (routes) {
+			cached = routes.get(key);
+		}
+		if (cached != null) {
+			hits.incrementAndGet();
+			List<PlanElement> copy = copy(cached.elements, departureTime - cached.departureTime);
+
+			// remembered, so that the copy can be replaced if the stop is chosen
+			Request request = new Request(delegate, fromFacility, toFacility, departureTime, person);
+			for (PlanElement element : copy) {
+				if (element instanceof Leg) legs.put((Leg) element, request);
+			}
+			return copy;
+		}
+
+		misses.incrementAndGet();
+		List<? extends PlanElement> route = delegate.calcRoute(fromFacility, toFacility, departureTime, person);
+
+		// the returned route ends up in a plan and may be changed there, so a copy is cached
+		if (route != null) {
+			CachedRoute copy = new CachedRoute(copy(route, 0), departureTime);
+			synchronized (routes) {
+				routes.putIfAbsent(key, copy);
+			}
+		}
+		return route;
+	}
+
+	/**
+	 * Replaces the elements of each copied route, from its first to its last leg, with an exact route of its request
+	 */
+	private static List<PlanElement> replaceCopies(List<? extends PlanElement> route, Map<Leg, Request> copiedLegs) {
+
+		List<PlanElement> result = new ArrayList<>(route.size());
+		int index = 0;
+		while (index < route.size()) {
+
+			PlanElement element = route.get(index);
+			Request request = element instanceof Leg ? copiedLegs.get(element) : null;
+			if (request == null) {
+				result.add(element);
+				index++;
+				continue;
+			}
+
+			int last = index;
+			for (int i = index + 1; i < route.size(); i++) {
+				if (route.get(i) instanceof Leg && copiedLegs.get(route.get(i)) == request) last = i;
+			}
+
+			List<? extends PlanElement> exact = request.calcRoute();
+			result.addAll(exact == null ? route.subList(index, last + 1) : exact);
+			index = last + 1;
+		}
+		return result;
+	}
+
+	private Key createKey(String mode, Facility fromFacility, Facility toFacility, double departureTime) {
+
+		boolean access = toFacility instanceof TransitStopFacility;
+		if (!access && !(fromFacility instanceof TransitStopFacility)) return null;
+
+		TransitStopFacility stop = (TransitStopFacility) (access ? toFacility : fromFacility);
+		Coord coord = (access ? fromFacility : toFacility).getCoord();
+		if (coord == null) return null;
+
+		return new Key(mode, stop.getId(), (long) Math.floor(coord.getX() / cellSize), (long) Math.floor(coord.getY() / cellSize),
+				(int) Math.floor(departureTime / timeBinSize), access);
+	}
+
+	private static List<PlanElement> copy(List<? extends PlanElement> elements, double timeShift) {
+
+		List<PlanElement> result = new ArrayList<>(elements.size());
+		for (PlanElement element : elements) {
+			if (element instanceof Leg) {
+				Leg leg = (Leg) element;
+				Leg copy = PopulationUtils.createLeg(leg.getMode());
+				PopulationUtils.copyFromTo(leg, copy);
+				if (Time.getUndefinedTime() != copy.getDepartureTime()) copy.setDepartureTime(copy.getDepartureTime() + timeShift);
+				result.add(copy);
+			} else if (element instanceof Activity) {
+				Activity copy = PopulationUtils.createActivity((Activity) element);
+				if (Time.getUndefinedTime() != copy.getStartTime()) copy.setStartTime(copy.getStartTime() + timeShift);
+				if (Time.getUndefinedTime() != copy.getEndTime()) copy.setEndTime(copy.getEndTime() + timeShift);
+				result.add(copy);
+			} else {
+				result.add(element);
+			}
+		}
+		return result;
+	}
+
+	private static class Key {
+
+		private final String mode;
+		private final Id<TransitStopFacility> stop;
+		private final long cellX;
+		private final long cellY;
+		private final int timeBin;
+		private final boolean access;
+
+		private Key(String mode, Id<TransitStopFacility> stop, long cellX, long cellY, int timeBin, boolean access) {
+			this.mode = mode;
+			this.stop = stop;
+			this.cellX = cellX;
+			this.cellY = cellY;
+			this.timeBin = timeBin;
+			this.access = access;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return cellX == key.cellX && cellY == key.cellY && timeBin == key.timeBin && access == key.access
+					&& mode.equals(key.mode) && stop.equals(key.stop);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mode, stop, cellX, cellY, timeBin, access);
+		}
+	}
+
+	private static class Request {
+
+		private final RoutingModule routingModule;
+		private final Facility fromFacility;
+		private final Facility toFacility;
+		private final double departureTime;
+		private final Person person;
+
+		private Request(RoutingModule routingModule, Facility fromFacility, Facility toFacility, double departureTime, Person person) {
+			this.routingModule = routingModule;
+			this.fromFacility = fromFacility;
+			this.toFacility = toFacility;
+			this.departureTime = departureTime;
+			this.person = person;
+		}
+
+		private List<? extends PlanElement> calcRoute() {
+			return routingModule.calcRoute(fromFacility, toFacility, departureTime, person);
+		}
+	}
+
+	private static class CachedRoute {
+
+		private final List<PlanElement> elements;
+		private final double departureTime;
+
+		private CachedRoute(List<PlanElement> elements, double departureTime) {
+			this.elements = elements;
+			this.departureTime = departureTime;
+		}
+	}
+
+	/**
+	 * Creates the default stop finder of the pt router, with the routing modules of the cached modes wrapped by the
+	 * cache.
+	 */
+	public static class StopFinderProvider implements Provider<RaptorStopFinder> {
+
+		@Inject
+		private Population population;
+
+		@Inject
+		private RaptorIntermodalAccessEgress intermodalAccessEgress;
+
+		@Inject
+		private Map<String, Provider<RoutingModule>> routingModuleProviders;
+
+		@Inject
+		private AccessEgressCache cache;
+
+		@Override
+		public RaptorStopFinder get() {
+
+			Map<String, Provider<RoutingModule>> providers = new HashMap<>(routingModuleProviders);
+			for (String mode : cache.getModes()) {
+				Provider<RoutingModule> provider = routingModuleProviders.get(mode);
+				if (provider == null) throw new IllegalStateException("No routing module is bound for mode " + mode);
+				providers.put(mode, () -> cache.wrap(mode, provider.get()));
+			}
+			return new DefaultRaptorStopFinder(population, intermodalAccessEgress, providers);
+		}
+	}
+
+	/**
+	 * Creates the pt routing module of the SwissRailRaptor, wrapped by the cache
+	 */
+	public static class PtRoutingModuleProvider implements Provider<RoutingModule> {
+
+		@Inject
+		private SwissRailRaptorRoutingModuleProvider delegate;
+
+		@Inject
+		private AccessEgressCache cache;
+
+		@Override
+		public RoutingModule get() {
+			return cache.wrapPt(delegate.get());
+		}
+	}
+
+	public static class Builder {
+
+		private final Set<String> modes = new HashSet<>();
+		private double cellSize = 500;
+		private double timeBinSize = 900;
+		private int maxSize = 100_000;
+
+		/**
+		 * Caches access and egress routes of the modes
+		 */
+		public Builder modes(String... modes) {
+			this.modes.addAll(List.of(modes));
+			return this;
+		}
+
+		/**
+		 * Routes from or to coordinates within the same square cell of this size share an entry. Defaults to 500m.
+		 */
+		public Builder cellSize(double cellSize) {
+			this.cellSize = cellSize;
+			return this;
+		}
+
+		/**
+		 * Routes departing within the same time bin of this size share an entry. Defaults to 900s.
+		 */
+		public Builder timeBinSize(double timeBinSize) {
+			this.timeBinSize = timeBinSize;
+			return this;
+		}
+
+		/**
+		 * Maximum number of cached routes. Defaults to 100,000.
+		 */
+		public Builder maxSize(int maxSize) {
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		public AccessEgressCache build() {
+			return new AccessEgressCache(this);
+		}
+	}
+}
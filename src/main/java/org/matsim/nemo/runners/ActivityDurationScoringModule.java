@@ -0,0 +1,25 @@
+package org.matsim.nemo.runners;
+
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+
+import javax.inject.Singleton;
+
+/**
+ * Scores the {@link ActivityDurationTypes} of the plans without activity params for each of them in the config. The
+ * runners used to add those params with NEMOUtils.createTypicalDurations, which are several hundreds per config.
+ */
+public class ActivityDurationScoringModule extends AbstractModule {
+
+	private final ActivityDurationTypes durationTypes;
+
+	public ActivityDurationScoringModule(ActivityDurationTypes durationTypes) {
+		this.durationTypes = durationTypes;
+	}
+
+	@Override
+	public void install() {
+		bind(ActivityDurationTypes.class).toInstance(durationTypes);
+		bind(ScoringParametersForPerson.class).to(ActivityDurationScoringParameters.class).in(Singleton.class);
+	}
+}
@@ -0,0 +1,129 @@
+package org.matsim.nemo.runners;
+
+import com.google.inject.Inject;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ActivityParams;
+import org.matsim.core.scoring.functions.ActivityUtilityParameters;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+import org.matsim.pt.PtConstants;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Scoring parameters per subpopulation, like the default SubpopulationScoringParameters, plus the parameters of the
+ * {@link ActivityDurationTypes} which occur in the population. Those aren't part of the config, which keeps the config
+ * small. The activity types of all plans are resolved when the parameters are created. Plans which show up later on,
+ * e.g. of persons which are added during the run, are resolved once, when the parameters of their person are requested
+ * first. If they hold new types, the parameters of all subpopulations are created again with them. The activity types
+ * of a plan which was resolved must not change afterwards, replanning creates new plans for that.
+ */
+public class ActivityDurationScoringParameters implements ScoringParametersForPerson {
+
+	private static final Logger logger = Logger.getLogger(ActivityDurationScoringParameters.class);
+
+	private final Config config;
+	private final ActivityDurationTypes durationTypes;
+	private final Map<String, ActivityParams> durationTypeParams = new ConcurrentHashMap<>();
+	private final Set<String> otherTypes = new HashSet<>();
+
+	// plans don't override equals, so they are compared by identity. Removed plans are dropped with their weak entries.
+	private final Set<Plan> resolvedPlans = Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+
+	// parameters of the default subpopulation and of the other subpopulations, replaced once new types are resolved
+	private volatile ScoringParameters defaultParameters;
+	private volatile Map<String, ScoringParameters> parametersPerSubpopulation = new ConcurrentHashMap<>();
+
+	@Inject
+	ActivityDurationScoringParameters(Scenario scenario, ActivityDurationTypes durationTypes) {
+		this.config = scenario.getConfig();
+		this.durationTypes = durationTypes;
+
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			for (Plan plan : person.getPlans()) {
+				resolveDurationTypes(plan);
+				resolvedPlans.add(plan);
+			}
+		}
+		logger.info("Resolved " + durationTypeParams.size() + " of " + durationTypes.getNumberOfTypes() + " activity duration types from the population");
+		this.defaultParameters = createParameters(null);
+	}
+
+	@Override
+	public ScoringParameters getScoringParameters(Person person) {
+
+		for (Plan plan : person.getPlans()) {
+			if (!resolvedPlans.contains(plan)) resolveNewPlan(person, plan);
+		}
+
+		Object attr = person.getAttributes().getAttribute("subpopulation");
+		return attr == null ? defaultParameters : parametersPerSubpopulation.computeIfAbsent(attr.toString(), this::createParameters);
+	}
+
+	private ScoringParameters createParameters(String subpopulation) {
+
+		ScoringParameters.Builder builder = new ScoringParameters.Builder(config.planCalcScore(), config.planCalcScore().getScoringParameters(subpopulation), config.scenario());
+
+		// same as in the default implementation
+		if (config.transit().isUseTransit()) {
+			ActivityParams transitActivityParams = new ActivityParams(PtConstants.TRANSIT_ACTIVITY_TYPE);
+			transitActivityParams.setTypicalDuration(120.0);
+			transitActivityParams.setOpeningTime(0.);
+			transitActivityParams.setClosingTime(0.);
+			ActivityUtilityParameters.Builder modeParamsBuilder = new ActivityUtilityParameters.Builder(transitActivityParams);
+			modeParamsBuilder.setScoreAtAll(false);
+			builder.setActivityParameters(PtConstants.TRANSIT_ACTIVITY_TYPE, modeParamsBuilder);
+		}
+
+		for (Map.Entry<String, ActivityParams> params : durationTypeParams.entrySet()) {
+			builder.setActivityParameters(params.getKey(), new ActivityUtilityParameters.Builder(params.getValue()));
+		}
+		return builder.build();
+	}
+
+	private synchronized void resolveNewPlan(Person person, Plan plan) {
+
+		if (resolvedPlans.contains(plan)) return;
+
+		if (resolveDurationTypes(plan)) {
+			logger.info("Resolved new activity duration types of person " + person.getId() + ". Creating the scoring parameters again.");
+			parametersPerSubpopulation = new ConcurrentHashMap<>();
+			defaultParameters = createParameters(null);
+		}
+		resolvedPlans.add(plan);
+	}
+
+	/**
+	 * @return whether any duration type of the plan wasn't resolved before
+	 */
+	private boolean resolveDurationTypes(Plan plan) {
+
+		boolean resolved = false;
+		for (PlanElement element : plan.getPlanElements()) {
+			if (!(element instanceof Activity)) continue;
+
+			String type = ((Activity) element).getType();
+			if (durationTypeParams.containsKey(type) || otherTypes.contains(type)) continue;
+
+			ActivityParams params = durationTypes.createActivityParams(type);
+			if (params == null) {
+				otherTypes.add(type);
+			} else {
+				durationTypeParams.put(type, params);
+				resolved = true;
+			}
+		}
+		return resolved;
+	}
+}
@@ -0,0 +1,120 @@
+package org.matsim.nemo.runners;
+
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ActivityParams;
+import org.matsim.nemo.util.NEMOUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Activity types which carry their typical duration in their name, e.g. home_3600.0. Instead of one set of activity
+ * params per type and duration in the config, only the durations which are allowed for each base type are kept. The
+ * activity params of a type are created from its name with {@link NEMOUtils#createTypicalDuration(String, long)}, so
+ * that they are the same as the ones {@link NEMOUtils#createTypicalDurations(String, long, long, long)} generates.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public class ActivityDurationTypes {
+
+	public static final long NO_DURATION = -1;
+
+	/**
+	 * The activity types of the nemo plans, with durations from 10 minutes to 27 hours in steps of 10 minutes
+	 */
+	public static final ActivityDurationTypes NEMO = new ActivityDurationTypes.Builder()
+			.durations(600, 3600 * 27, 600, "home", "work", "education", "leisure", "shopping", "other")
+			.build();
+
+	private final Map<String, Durations> durationsPerBaseType;
+
+	private ActivityDurationTypes(Map<String, Durations> durationsPerBaseType) {
+		this.durationsPerBaseType = durationsPerBaseType;
+	}
+
+	/**
+	 * @return the typical duration in the name of the activity type, or {@link #NO_DURATION} if the type is not one of
+	 * the duration types, including names like home_3600 which the generated activity params never had
+	 */
+	public long getDuration(String type) {
+
+		int separator = type.lastIndexOf('_');
+		if (separator < 0) return NO_DURATION;
+
+		Durations durations = durationsPerBaseType.get(type.substring(0, separator));
+		if (durations == null) return NO_DURATION;
+
+		// the suffix is always the duration in whole seconds followed by .0
+		if (!type.endsWith(".0")) return NO_DURATION;
+		long duration;
+		try {
+			duration = Long.parseLong(type.substring(separator + 1, type.length() - 2));
+		} catch (NumberFormatException e) {
+			return NO_DURATION;
+		}
+		if (!durations.contains(duration)) return NO_DURATION;
+
+		// rejects leading zeros and signs, so that each duration has exactly one name
+		if (type.length() - separator - 3 != Long.toString(duration).length()) return NO_DURATION;
+		return duration;
+	}
+
+	/**
+	 * @return the activity params of the type, or null if the type is not one of the duration types
+	 */
+	public ActivityParams createActivityParams(String type) {
+
+		long duration = getDuration(type);
+		if (duration == NO_DURATION) return null;
+		return NEMOUtils.createTypicalDuration(type.substring(0, type.lastIndexOf('_')), duration);
+	}
+
+	public int getNumberOfTypes() {
+		return durationsPerBaseType.values().stream().mapToInt(Durations::size).sum();
+	}
+
+	public static class Builder {
+
+		private final Map<String, Durations> durationsPerBaseType = new HashMap<>();
+
+		/**
+		 * Allows the durations from min to max, both inclusive, in steps of the difference for each of the base types
+		 */
+		public Builder durations(long minDurationInSeconds, long maxDurationInSeconds, long durationDifferenceInSeconds, String... baseTypes) {
+
+			if (minDurationInSeconds < 0 || maxDurationInSeconds < minDurationInSeconds || durationDifferenceInSeconds <= 0)
+				throw new IllegalArgumentException("Durations from " + minDurationInSeconds + " to " + maxDurationInSeconds + " in steps of " + durationDifferenceInSeconds + " are not valid.");
+
+			for (String baseType : baseTypes) {
+				if (durationsPerBaseType.containsKey(baseType))
+					throw new IllegalArgumentException("Durations of " + baseType + " were already added.");
+				durationsPerBaseType.put(baseType, new Durations(minDurationInSeconds, maxDurationInSeconds, durationDifferenceInSeconds));
+			}
+			return this;
+		}
+
+		public ActivityDurationTypes build() {
+			return new ActivityDurationTypes(new HashMap<>(durationsPerBaseType));
+		}
+	}
+
+	private static class Durations {
+
+		private final long min;
+		private final long max;
+		private final long difference;
+
+		private Durations(long min, long max, long difference) {
+			this.min = min;
+			this.max = max;
+			this.difference = difference;
+		}
+
+		private boolean contains(long duration) {
+			return duration >= min && duration <= max && (duration - min) % difference == 0;
+		}
+
+		private int size() {
+			return (int) ((max - min) / difference + 1);
+		}
+	}
+}
@@ -16,8 +16,6 @@ import org.matsim.core.config.groups.QSimConfigGroup;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
-import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.nemo.util.NEMOUtils;
 
 import java.nio.file.Paths;
 
@@ -80,12 +78,19 @@ public class BaseCaseCalibrationRunner {
         //
         Bicycles.addAsOverridingModule(controler);
 
+        // types like home_3600.0 are scored without listing them in the config
+        controler.addOverridingModule(new ActivityDurationScoringModule(ActivityDurationTypes.NEMO));
+
         return controler;
     }
 
     private Scenario prepareScenario(Config config) {
 
-        Scenario scenario = ScenarioUtils.loadScenario(config);
+        // network and population are prepared once and read from the snapshot afterwards, if a snapshot file is configured
+        return ScenarioSnapshot.load(config, BaseCaseCalibrationRunner::prepareNetworkAndPopulation);
+    }
+
+    private static void prepareNetworkAndPopulation(Scenario scenario) {
 
         // remove routes from legs, since we have different network modes than before
         // also generation of vehicleIds has changed
@@ -100,14 +105,13 @@ public class BaseCaseCalibrationRunner {
         scenario.getNetwork().getLinks().values().parallelStream()
                 .filter(link -> link.getAllowedModes().contains(TransportMode.bike))
                 .forEach(link -> link.getAttributes().putAttribute(BicycleUtils.BICYCLE_INFRASTRUCTURE_SPEED_FACTOR, 1.0));
-        return scenario;
     }
 
     Config prepareConfig() {
 
         BicycleConfigGroup bikeConfigGroup = new BicycleConfigGroup();
         bikeConfigGroup.setBicycleMode(TransportMode.bike);
-        Config config = ConfigUtils.loadConfig(Paths.get(inputDir).resolve("config.xml").toString(), bikeConfigGroup);
+        Config config = ConfigUtils.loadConfig(Paths.get(inputDir).resolve("config.xml").toString(), bikeConfigGroup, new ScenarioSnapshotConfigGroup());
 
         config.controler().setRunId(runId);
         config.controler().setOutputDirectory(outputDir);
@@ -123,16 +127,6 @@ public class BaseCaseCalibrationRunner {
         config.qsim().setUsePersonIdForMissingVehicleId(false);
         config.qsim().setLinkDynamics(QSimConfigGroup.LinkDynamics.PassingQ);
 
-        final long minDuration = 600;
-        final long maxDuration = 3600 * 27;
-        final long difference = 600;
-        NEMOUtils.createTypicalDurations("home", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("work", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("education", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("leisure", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("shopping", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("other", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-
         return config;
     }
 
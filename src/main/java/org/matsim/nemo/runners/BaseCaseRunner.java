@@ -13,8 +13,8 @@ import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.router.AnalysisMainModeIdentifier;
-import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.nemo.util.NEMOUtils;
+import org.matsim.nemo.analysis.TripAnalysisConfigGroup;
+import org.matsim.nemo.analysis.TripAnalysisModule;
 import org.matsim.vehicles.VehicleType;
 import org.matsim.vehicles.VehiclesFactory;
 
@@ -59,12 +59,33 @@ public class BaseCaseRunner {
 		// add bicycle module
 		Bicycles.addAsOverridingModule(controler);
 
+		// score the activity types with typical durations without activity params for each of them in the config
+		controler.addOverridingModule(new ActivityDurationScoringModule(ActivityDurationTypes.NEMO));
+
+		// analyse the trips of each iteration from the live events, if the area of the analysis is configured
+		if (ConfigUtils.addOrGetModule(scenario.getConfig(), TripAnalysisConfigGroup.class).getRuhrShapeFile() != null) {
+			controler.addOverridingModule(new TripAnalysisModule());
+		}
+
 		return controler;
 	}
 
 	static Scenario loadScenario(Config config) {
 
-		Scenario scenario = ScenarioUtils.loadScenario(config);
+		// network and population are prepared once and read from the snapshot afterwards, if a snapshot file is configured
+		Scenario scenario = ScenarioSnapshot.load(config, BaseCaseRunner::prepareNetwork);
+
+		// add mode vehicles from here, since I messed this up a thousand times already
+		var factory = scenario.getVehicles().getFactory();
+		scenario.getVehicles().addVehicleType(createVehicleType(TransportMode.car, 7.5, 36.111111, 1.0, factory));
+		scenario.getVehicles().addVehicleType(createVehicleType(TransportMode.ride, 7.5, 36.111111, 0.1, factory));
+
+		// use twice the speed of 3.42, so that max speed ~25km/h on bike links and ~12km/h on regular streets with speed-factor of 0.5
+		scenario.getVehicles().addVehicleType(createVehicleType(TransportMode.bike, 2.0, 6.84, 0.1, factory));
+		return scenario;
+	}
+
+	private static void prepareNetwork(Scenario scenario) {
 
 		// the scenario generation uses bike_speed_factor, but the bicycle module expects something else
 		// replace the attribute key with the bicycle contrib's key
@@ -81,15 +102,6 @@ public class BaseCaseRunner {
 				.filter(link -> link.getAllowedModes().contains(TransportMode.bike))
 				.filter(link -> link.getAttributes().getAttribute(BicycleUtils.BICYCLE_INFRASTRUCTURE_SPEED_FACTOR) == null)
 				.forEach(link -> link.getAttributes().putAttribute(BicycleUtils.BICYCLE_INFRASTRUCTURE_SPEED_FACTOR, 0.5));
-
-		// add mode vehicles from here, since I messed this up a thousand times already
-		var factory = scenario.getVehicles().getFactory();
-		scenario.getVehicles().addVehicleType(createVehicleType(TransportMode.car, 7.5, 36.111111, 1.0, factory));
-		scenario.getVehicles().addVehicleType(createVehicleType(TransportMode.ride, 7.5, 36.111111, 0.1, factory));
-
-		// use twice the speed of 3.42, so that max speed ~25km/h on bike links and ~12km/h on regular streets with speed-factor of 0.5
-		scenario.getVehicles().addVehicleType(createVehicleType(TransportMode.bike, 2.0, 6.84, 0.1, factory));
-		return scenario;
 	}
 
 	static Config loadConfig(String[] args, ConfigGroup... customModules) {
@@ -100,6 +112,8 @@ public class BaseCaseRunner {
 		//this feels a little messy, but I guess this is how var-args work
 		List<ConfigGroup> moduleList = new ArrayList<>(Arrays.asList(customModules));
 		moduleList.add(bikeConfigGroup);
+		moduleList.add(new TripAnalysisConfigGroup());
+		moduleList.add(new ScenarioSnapshotConfigGroup());
 		var moduleArray = moduleList.toArray(new ConfigGroup[0]);
 
 		var config = ConfigUtils.loadConfig(args, moduleArray);
@@ -112,16 +126,6 @@ public class BaseCaseRunner {
 		config.qsim().setUsingTravelTimeCheckInTeleportation(true);
 		config.qsim().setUsePersonIdForMissingVehicleId(false);
 
-		final long minDuration = 600;
-		final long maxDuration = 3600 * 27;
-		final long difference = 600;
-		NEMOUtils.createTypicalDurations("home", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-		NEMOUtils.createTypicalDurations("work", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-		NEMOUtils.createTypicalDurations("education", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-		NEMOUtils.createTypicalDurations("leisure", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-		NEMOUtils.createTypicalDurations("shopping", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-		NEMOUtils.createTypicalDurations("other", minDuration, maxDuration, difference).forEach(params -> config.planCalcScore().addActivityParams(params));
-
 		return config;
 	}
 
@@ -2,6 +2,7 @@ package org.matsim.nemo.runners;
 
 import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
 import ch.sbb.matsim.routing.pt.raptor.RaptorIntermodalAccessEgress;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStopFinder;
 import org.apache.log4j.Logger;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
@@ -87,10 +88,19 @@ public class DrtRunner {
         controler.addOverridingModule(new DrtSpeedUpModule());
         controler.configureQSimComponents(DvrpQSimComponents.activateModes(drtConfigGroup.getMode()));
 
+        // drt access and egress routes of the pt router are reused within an iteration
+        var accessEgressCache = new AccessEgressCache.Builder()
+                .modes(drtConfigGroup.getMode())
+                .build();
+
         controler.addOverridingModule(new AbstractModule() {
             @Override
             public void install() {
                 bind(RaptorIntermodalAccessEgress.class).to(NemoRaptorIntermodalAccessEgress.class);
+                bind(AccessEgressCache.class).toInstance(accessEgressCache);
+                addControlerListenerBinding().toInstance(accessEgressCache);
+                bind(RaptorStopFinder.class).toProvider(AccessEgressCache.StopFinderProvider.class);
+                addRoutingModuleBinding(TransportMode.pt).toProvider(AccessEgressCache.PtRoutingModuleProvider.class);
             }
         });
 
@@ -0,0 +1,88 @@
+package org.matsim.nemo.runners;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranks of modes for the identification of main modes. Modes are interned to their rank once, when the ranks are
+ * built, so that looking up a mode doesn't create any objects. A mode can have aliases, which get the rank of the mode
+ * and are reported as the mode, e.g. transit_walk as walk. Modes which are neither ranked nor aliased have
+ * {@link #UNRANKED}, which is below all ranked modes.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public class ModeRanks {
+
+	public static final int UNRANKED = -1;
+
+	private final Map<String, Integer> ranks;
+	private final String[] modes;
+
+	private ModeRanks(Map<String, Integer> ranks, String[] modes) {
+		this.ranks = ranks;
+		this.modes = modes;
+	}
+
+	/**
+	 * @return the rank of the mode or its alias, the highest rank being the most important mode, or {@link #UNRANKED}
+	 */
+	public int getRank(String mode) {
+		Integer rank = ranks.get(mode);
+		return rank == null ? UNRANKED : rank;
+	}
+
+	/**
+	 * @return the mode with the rank
+	 */
+	public String getMode(int rank) {
+		return modes[rank];
+	}
+
+	public int getNumberOfRanks() {
+		return modes.length;
+	}
+
+	public static class Builder {
+
+		private final List<String> modes = new ArrayList<>();
+		private final Map<String, String> aliases = new HashMap<>();
+
+		/**
+		 * Appends modes to the hierarchy, each of them ranks above all modes which were added before
+		 */
+		public Builder rank(String... modes) {
+			for (String mode : modes) {
+				if (this.modes.contains(mode)) throw new IllegalArgumentException("Mode " + mode + " was already ranked.");
+				this.modes.add(mode);
+			}
+			return this;
+		}
+
+		/**
+		 * Lets the aliases count as the mode
+		 */
+		public Builder alias(String mode, String... aliases) {
+			for (String alias : aliases) {
+				this.aliases.put(alias, mode);
+			}
+			return this;
+		}
+
+		public ModeRanks build() {
+
+			Map<String, Integer> ranks = new HashMap<>();
+			for (int rank = 0; rank < modes.size(); rank++) {
+				ranks.put(modes.get(rank), rank);
+			}
+			for (Map.Entry<String, String> alias : aliases.entrySet()) {
+				Integer rank = ranks.get(alias.getValue());
+				if (rank == null) throw new IllegalArgumentException("Alias " + alias.getKey() + " refers to mode " + alias.getValue() + " which isn't ranked.");
+				if (ranks.containsKey(alias.getKey())) throw new IllegalArgumentException("Alias " + alias.getKey() + " is a ranked mode itself.");
+				ranks.put(alias.getKey(), rank);
+			}
+			return new ModeRanks(ranks, modes.toArray(new String[0]));
+		}
+	}
+}
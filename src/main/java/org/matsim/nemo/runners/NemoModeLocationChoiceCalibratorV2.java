@@ -24,10 +24,8 @@ import org.matsim.core.scoring.ScoringFunction;
 import org.matsim.core.scoring.ScoringFunctionFactory;
 import org.matsim.core.scoring.SumScoringFunction;
 import org.matsim.core.scoring.functions.*;
-import org.matsim.core.utils.gis.ShapeFileReader;
 import org.matsim.nemo.RuhrAgentsFilter;
 import org.matsim.nemo.util.ExpectedModalDistanceDistribution;
-import org.matsim.nemo.util.NEMOUtils;
 import org.matsim.utils.objectattributes.attributable.AttributesUtils;
 import playground.vsp.cadyts.marginals.AgentFilter;
 import playground.vsp.cadyts.marginals.DistanceDistribution;
@@ -105,7 +103,7 @@ public class NemoModeLocationChoiceCalibratorV2 {
 
         // marginal cadyts
 		DistanceDistribution distanceDistribution = ExpectedModalDistanceDistribution.create();
-        RuhrAgentsFilter filter = new RuhrAgentsFilter(scenario, ShapeFileReader.getAllFeatures(inputDir + "/ruhrgebiet_boundary.shp"));
+        RuhrAgentsFilter filter = RuhrAgentsFilter.create(scenario, inputDir + "/ruhrgebiet_boundary.shp");
         controler.addOverridingModule(new AbstractModule() {
             @Override
             public void install() {
@@ -120,6 +118,9 @@ public class NemoModeLocationChoiceCalibratorV2 {
         // counts cadyts
         controler.addOverridingModule(new CadytsCarModule());
 
+        // the scoring parameters are injected into the scoring function below, they include the activity duration types
+        controler.addOverridingModule(new ActivityDurationScoringModule(ActivityDurationTypes.NEMO));
+
         final double cadytsCountsScoringWeight = cadytsCountsWeight * config.planCalcScore().getBrainExpBeta();
         final double cadytsMarginalsScoringWeight = cadytsMarginalsWeight * config.planCalcScore().getBrainExpBeta();
 
@@ -207,16 +208,6 @@ public class NemoModeLocationChoiceCalibratorV2 {
         //   result.facilities().setAssigningOpeningTime(false);
         result.facilities().setFacilitiesSource(FacilitiesConfigGroup.FacilitiesSource.onePerActivityLocationInPlansFile);
 
-        final long minDuration = 600;
-        final long maxDuration = 3600 * 27;
-        final long difference = 600;
-        NEMOUtils.createTypicalDurations("home", minDuration, maxDuration, difference).forEach(params -> result.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("work", minDuration, maxDuration, difference).forEach(params -> result.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("education", minDuration, maxDuration, difference).forEach(params -> result.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("leisure", minDuration, maxDuration, difference).forEach(params -> result.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("shopping", minDuration, maxDuration, difference).forEach(params -> result.planCalcScore().addActivityParams(params));
-        NEMOUtils.createTypicalDurations("other", minDuration, maxDuration, difference).forEach(params -> result.planCalcScore().addActivityParams(params));
-
         return result;
     }
 
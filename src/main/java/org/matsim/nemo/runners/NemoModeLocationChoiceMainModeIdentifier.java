@@ -13,28 +13,45 @@ import java.util.List;
  * <p>
  * Example: If a Trip consists of Three legs with modes: walk, pt, drt; the main mode of the trip is going to be pt, since
  * it is the highest ranking mode.
+ * <p>
+ * Other hierarchies can be passed as {@link ModeRanks}. Modes which aren't ranked only become the main mode if no leg
+ * has a ranked mode, in which case the first of them is chosen.
  */
 public class NemoModeLocationChoiceMainModeIdentifier implements AnalysisMainModeIdentifier {
 
-	private final List<String> modes = List.of(TransportMode.walk, TransportMode.bike, TransportMode.ride, TransportMode.car, TransportMode.drt, TransportMode.pt);
+	public static final ModeRanks MID_RANKS = new ModeRanks.Builder()
+			.rank(TransportMode.walk, TransportMode.bike, TransportMode.ride, TransportMode.car, TransportMode.drt, TransportMode.pt)
+			// all the weird walking stuff is considered walk in our case
+			.alias(TransportMode.walk, TransportMode.non_network_walk, TransportMode.transit_walk)
+			.build();
+
+	private final ModeRanks ranks;
+
+	public NemoModeLocationChoiceMainModeIdentifier() {
+		this(MID_RANKS);
+	}
+
+	public NemoModeLocationChoiceMainModeIdentifier(ModeRanks ranks) {
+		this.ranks = ranks;
+	}
 
 	@Override
 	public String identifyMainMode(List<? extends PlanElement> list) {
 
-		return list.stream()
-				.filter(element -> element instanceof Leg)
-				.map(element -> (Leg) element)
-				// all the weird walking stuff is considered walk in our case
-				.map(leg -> leg.getMode().equals(TransportMode.non_network_walk) || leg.getMode().equals(TransportMode.transit_walk) ? TransportMode.walk : leg.getMode())
-				.min(this::compareModes)
-				.orElse(TransportMode.other);
-	}
+		int mainRank = ModeRanks.UNRANKED;
+		String unrankedMode = null;
 
-	private int compareModes(String mode1, String mode2) {
+		for (int i = 0; i < list.size(); i++) {
+			PlanElement element = list.get(i);
+			if (!(element instanceof Leg)) continue;
 
-		int index1 = modes.indexOf(mode1);
-		int index2 = modes.indexOf(mode2);
+			String mode = ((Leg) element).getMode();
+			int rank = ranks.getRank(mode);
+			if (rank > mainRank) mainRank = rank;
+			else if (rank == ModeRanks.UNRANKED && unrankedMode == null) unrankedMode = mode;
+		}
 
-		return index2 - index1;
+		if (mainRank != ModeRanks.UNRANKED) return ranks.getMode(mainRank);
+		return unrankedMode == null ? TransportMode.other : unrankedMode;
 	}
 }
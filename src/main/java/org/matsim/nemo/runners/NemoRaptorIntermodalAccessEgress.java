@@ -14,16 +14,24 @@ import org.matsim.contrib.av.robotaxi.fares.drt.DrtFareConfigGroup;
 import org.matsim.contrib.av.robotaxi.fares.drt.DrtFaresConfigGroup;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ModeParams;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ScoringParameterSet;
 import org.matsim.core.gbl.MatsimRandom;
 import org.matsim.core.utils.misc.Time;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A default implementation of {@link RaptorIntermodalAccessEgress} returning a new RIntermodalAccessEgress,
  * which contains a list of legs (same as in the input), the associated travel time as well as the disutility.
+ * <p>
+ * The scoring parameters and drt fares are compiled into one set of coefficients per subpopulation and mode when the
+ * class is created, since this is called for every access and egress stop of every routing request.
  *
  * @author pmanser / SBB
  */
@@ -34,10 +42,19 @@ public class NemoRaptorIntermodalAccessEgress implements RaptorIntermodalAccessE
 
 	Random random = MatsimRandom.getLocalInstance();
 
+	// coefficients by mode, for the default subpopulation and the other subpopulations
+	private final Map<String, ModeCosts> defaultCosts;
+	private final Map<String, Map<String, ModeCosts>> costsPerSubpopulation = new ConcurrentHashMap<>();
+
 	@Inject
 	NemoRaptorIntermodalAccessEgress(Config config) {
 		this.config = config;
 		this.drtFaresConfigGroup = ConfigUtils.addOrGetModule(config, DrtFaresConfigGroup.class);
+
+		this.defaultCosts = compileCosts(null);
+		for (String subpopulation : config.planCalcScore().getScoringParametersPerSubpopulation().keySet()) {
+			if (subpopulation != null) costsPerSubpopulation.put(subpopulation, compileCosts(subpopulation));
+		}
 	}
 
 	@Override
@@ -49,47 +66,96 @@ public class NemoRaptorIntermodalAccessEgress implements RaptorIntermodalAccessE
 			subpopulationName = attr == null ? null : attr.toString();
 		}
 
-		ScoringParameterSet scoringParams = config.planCalcScore().getScoringParameters(subpopulationName);
+		Map<String, ModeCosts> costs = subpopulationName == null ? defaultCosts :
+				costsPerSubpopulation.computeIfAbsent(subpopulationName, this::compileCosts);
 
 		double utility = 0.0;
 		double tTime = 0.0;
-		for (PlanElement pe : legs) {
+		for (int i = 0; i < legs.size(); i++) {
+			PlanElement pe = legs.get(i);
 			if (pe instanceof Leg) {
-				String mode = ((Leg) pe).getMode();
-				double travelTime = ((Leg) pe).getTravelTime();
+				Leg leg = (Leg) pe;
+				ModeCosts modeCosts = costs.get(leg.getMode());
+				if (modeCosts == null) throw new IllegalStateException("No scoring parameters for mode " + leg.getMode() + " in subpopulation " + subpopulationName);
 
 				// overrides individual parameters per person; use default scoring parameters
+				double travelTime = leg.getTravelTime();
 				if (Time.getUndefinedTime() != travelTime) {
 					tTime += travelTime;
-					utility += travelTime * (scoringParams.getModes().get(mode).getMarginalUtilityOfTraveling() + (-1) * scoringParams.getPerforming_utils_hr()) / 3600;
+				} else {
+					travelTime = 0;
 				}
-				Double distance = ((Leg) pe).getRoute().getDistance();
-				if (distance != null && distance != 0.) {
-					utility += distance * scoringParams.getModes().get(mode).getMarginalUtilityOfDistance();
-					utility += distance * scoringParams.getModes().get(mode).getMonetaryDistanceRate() * scoringParams.getMarginalUtilityOfMoney();
-				}
-				utility += scoringParams.getModes().get(mode).getConstant();
+				Double distance = leg.getRoute().getDistance();
+				utility += modeCosts.calcUtility(travelTime, distance == null ? 0 : distance);
+			}
+		}
+		return new RIntermodalAccessEgress(legs, -utility, tTime);
+	}
+
+	private Map<String, ModeCosts> compileCosts(String subpopulation) {
+
+		ScoringParameterSet scoringParams = config.planCalcScore().getScoringParameters(subpopulation);
+		Map<String, ModeCosts> costs = new HashMap<>();
+		for (Map.Entry<String, ModeParams> modeParams : scoringParams.getModes().entrySet()) {
+			List<DrtFareConfigGroup> fares = new ArrayList<>();
+			for (DrtFareConfigGroup drtFareConfigGroup : drtFaresConfigGroup.getDrtFareConfigGroups()) {
+				if (drtFareConfigGroup.getMode().equals(modeParams.getKey())) fares.add(drtFareConfigGroup);
+			}
+			costs.put(modeParams.getKey(), new ModeCosts(modeParams.getValue(), scoringParams, fares));
+		}
+		return costs;
+	}
 
-				// account for drt fares
-				for (DrtFareConfigGroup drtFareConfigGroup : drtFaresConfigGroup.getDrtFareConfigGroups()) {
-					if (drtFareConfigGroup.getMode().equals(mode)) {
-						double fare = 0.;
-						if (distance != null && distance != 0.) {
-							fare += drtFareConfigGroup.getDistanceFare_m() * distance;
-						}
+	/**
+	 * Utility of a leg of one mode as a linear function of travel time and distance, plus the drt fares of the mode,
+	 * which are linear as well except for their minimum.
+	 */
+	private static class ModeCosts {
 
-						if (Time.getUndefinedTime() != travelTime) {
-							fare += drtFareConfigGroup.getTimeFare_h() * travelTime / 3600.;
+		private final double utilityPerSecond;
+		private final double utilityPerMeter;
+		private final double constant;
+		private final double marginalUtilityOfMoney;
 
-						}
+		private final double[] fareBase;
+		private final double[] farePerSecond;
+		private final double[] farePerMeter;
+		private final double[] minFare;
 
-						fare += drtFareConfigGroup.getBasefare();
-						fare = Math.max(fare, drtFareConfigGroup.getMinFarePerTrip());
-						utility += -1. * fare * scoringParams.getMarginalUtilityOfMoney();
-					}
-				}
+		private ModeCosts(ModeParams modeParams, ScoringParameterSet scoringParams, List<DrtFareConfigGroup> fares) {
+
+			this.utilityPerSecond = (modeParams.getMarginalUtilityOfTraveling() + (-1) * scoringParams.getPerforming_utils_hr()) / 3600;
+			this.utilityPerMeter = modeParams.getMarginalUtilityOfDistance()
+					+ modeParams.getMonetaryDistanceRate() * scoringParams.getMarginalUtilityOfMoney();
+			this.constant = modeParams.getConstant();
+			this.marginalUtilityOfMoney = scoringParams.getMarginalUtilityOfMoney();
+
+			this.fareBase = new double[fares.size()];
+			this.farePerSecond = new double[fares.size()];
+			this.farePerMeter = new double[fares.size()];
+			this.minFare = new double[fares.size()];
+			for (int i = 0; i < fares.size(); i++) {
+				fareBase[i] = fares.get(i).getBasefare();
+				farePerSecond[i] = fares.get(i).getTimeFare_h() / 3600.;
+				farePerMeter[i] = fares.get(i).getDistanceFare_m();
+				minFare[i] = fares.get(i).getMinFarePerTrip();
 			}
 		}
-		return new RIntermodalAccessEgress(legs, -utility, tTime);
+
+		/**
+		 * @param travelTime travel time in seconds, 0 if it is undefined
+		 * @param distance   distance in meters, 0 if it is undefined
+		 */
+		private double calcUtility(double travelTime, double distance) {
+
+			double utility = travelTime * utilityPerSecond + distance * utilityPerMeter + constant;
+
+			// account for drt fares
+			for (int i = 0; i < fareBase.length; i++) {
+				double fare = Math.max(fareBase[i] + travelTime * farePerSecond[i] + distance * farePerMeter[i], minFare[i]);
+				utility += -1. * fare * marginalUtilityOfMoney;
+			}
+			return utility;
+		}
 	}
 }
@@ -0,0 +1,597 @@
+package org.matsim.nemo.runners;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteFactories;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Stores the prepared network and population of a scenario in a binary file, so that the runners don't have to parse
+ * and prepare the xml files on every start. The snapshot is written the first time a scenario is loaded with a
+ * configured {@link ScenarioSnapshotConfigGroup#getSnapshotFile()} and read with memory mapped io afterwards.
+ * <p>
+ * A snapshot is stale and replaced as soon as the network file, the plans file, the class file or jar with the
+ * preparation or the jar of MATSim changes in path, size or modification time. It is stale as well if the MATSim
+ * version or one of the settings which change how network and plans are read, i.e. the coordinate systems, changes.
+ * Transit schedule, vehicles and all other inputs are small and are always loaded from xml.
+ * <p>
+ * Attributes may hold strings, doubles, integers, longs and booleans. If any other attribute is found, no snapshot is
+ * written and the scenario is loaded from xml on every start, as before.
+ */
+public class ScenarioSnapshot {
+
+	private static final Logger logger = Logger.getLogger(ScenarioSnapshot.class);
+
+	private static final int MAGIC = 0x4e534e50;
+	private static final int VERSION = 3;
+
+	private static final int STRING = 0;
+	private static final int DOUBLE = 1;
+	private static final int INTEGER = 2;
+	private static final int LONG = 3;
+	private static final int BOOLEAN = 4;
+
+	private static final int ACTIVITY = 0;
+	private static final int LEG = 1;
+
+	private ScenarioSnapshot() {
+	}
+
+	/**
+	 * Loads the scenario of the config with a prepared network and population, from the snapshot if it is up to date,
+	 * or from xml otherwise.
+	 *
+	 * @param preparation changes network and population after they were loaded from xml
+	 */
+	public static Scenario load(Config config, Consumer<Scenario> preparation) {
+
+		String snapshotFile = ConfigUtils.addOrGetModule(config, ScenarioSnapshotConfigGroup.class).getSnapshotFile();
+		if (snapshotFile == null) return loadFromXml(config, preparation);
+
+		List<InputFile> inputFiles = getInputFiles(config, preparation);
+		if (inputFiles == null) {
+			logger.warn("Scenario snapshots require local network and plans files and local class files or jars of the preparation and of MATSim. Loading the scenario from xml.");
+			return loadFromXml(config, preparation);
+		}
+		List<String> settings = getSettings(config);
+
+		Path file = Paths.get(snapshotFile);
+		if (isUpToDate(file, inputFiles, settings)) {
+			try {
+				logger.info("Loading network and population from snapshot " + file);
+				return read(file, config);
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Could not read snapshot " + file + ". Loading the scenario from xml.", e);
+			}
+		} else {
+			logger.info("Snapshot " + file + " is missing or stale. Loading the scenario from xml.");
+		}
+
+		Scenario scenario = loadFromXml(config, preparation);
+		try {
+			write(file, scenario, inputFiles, settings);
+			logger.info("Wrote snapshot " + file);
+		} catch (UnsupportedOperationException e) {
+			logger.warn("No snapshot was written: " + e.getMessage());
+		} catch (UncheckedIOException e) {
+			logger.warn("Could not write snapshot " + file, e);
+		}
+		return scenario;
+	}
+
+	private static Scenario loadFromXml(Config config, Consumer<Scenario> preparation) {
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+		preparation.accept(scenario);
+		return scenario;
+	}
+
+	/**
+	 * @return the network and plans files and the files with the preparation and with MATSim, or null if any of them
+	 * isn't a local file
+	 */
+	private static List<InputFile> getInputFiles(Config config, Consumer<Scenario> preparation) {
+
+		List<InputFile> result = new ArrayList<>();
+		for (String name : new String[]{config.network().getInputFile(), config.plans().getInputFile()}) {
+
+			if (name == null) {
+				result.add(new InputFile("", -1, -1));
+				continue;
+			}
+
+			InputFile inputFile = toInputFile(ConfigGroup.getInputFileURL(config.getContext(), name));
+			if (inputFile == null) return null;
+			result.add(inputFile);
+		}
+
+		// lambdas and method references are nestmates of the class which declares them
+		for (Class<?> declaringClass : new Class<?>[]{preparation.getClass().getNestHost(), Config.class}) {
+			InputFile classFile = getClassFile(declaringClass);
+			if (classFile == null) return null;
+			result.add(classFile);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the settings which change how network and plans are read, e.g. by projecting their coords
+	 */
+	private static List<String> getSettings(Config config) {
+		return Arrays.asList(
+				"matsimVersion=" + Config.class.getPackage().getImplementationVersion(),
+				"coordinateSystem=" + config.global().getCoordinateSystem(),
+				"networkInputCRS=" + config.network().getInputCRS(),
+				"plansInputCRS=" + config.plans().getInputCRS());
+	}
+
+	/**
+	 * @return the class file or jar in which the class was compiled, so that the snapshot gets stale whenever the class
+	 * is changed and compiled again
+	 */
+	private static InputFile getClassFile(Class<?> declaringClass) {
+
+		CodeSource codeSource = declaringClass.getProtectionDomain().getCodeSource();
+		if (codeSource == null || codeSource.getLocation() == null) return null;
+
+		URL url = codeSource.getLocation();
+		if ("file".equals(url.getProtocol()) && url.getPath().endsWith("/")) {
+			// a directory of class files, as in the ide
+			url = declaringClass.getResource(declaringClass.getSimpleName() + ".class");
+			if (url == null) return null;
+		}
+		return toInputFile(url);
+	}
+
+	private static InputFile toInputFile(URL url) {
+
+		if (!"file".equals(url.getProtocol())) return null;
+		try {
+			Path path = Paths.get(url.toURI());
+			return new InputFile(path.toAbsolutePath().toString(), Files.size(path), Files.getLastModifiedTime(path).toMillis());
+		} catch (URISyntaxException e) {
+			return null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static boolean isUpToDate(Path file, List<InputFile> inputFiles, List<String> settings) {
+
+		if (!Files.exists(file)) return false;
+
+		try (SnapshotInput in = new SnapshotInput(file)) {
+			return readHeader(in, inputFiles, settings);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Could not read the header of snapshot " + file, e);
+			return false;
+		}
+	}
+
+	private static boolean readHeader(SnapshotInput in, List<InputFile> inputFiles, List<String> settings) throws IOException {
+
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) return false;
+
+		int numberOfInputFiles = in.readInt();
+		if (numberOfInputFiles != inputFiles.size()) return false;
+		for (InputFile inputFile : inputFiles) {
+			if (!inputFile.equals(new InputFile(in.readString(), in.readLong(), in.readLong()))) return false;
+		}
+
+		int numberOfSettings = in.readInt();
+		if (numberOfSettings != settings.size()) return false;
+		for (String setting : settings) {
+			if (!setting.equals(in.readString())) return false;
+		}
+		return true;
+	}
+
+	private static Scenario read(Path file, Config config) throws IOException {
+
+		// all other inputs are loaded as usual
+		String networkFile = config.network().getInputFile();
+		String plansFile = config.plans().getInputFile();
+		Scenario scenario;
+		try {
+			config.network().setInputFile(null);
+			config.plans().setInputFile(null);
+			scenario = ScenarioUtils.loadScenario(config);
+		} finally {
+			config.network().setInputFile(networkFile);
+			config.plans().setInputFile(plansFile);
+		}
+
+		try (SnapshotInput in = new SnapshotInput(file)) {
+			in.readInt();
+			in.readInt();
+			int numberOfInputFiles = in.readInt();
+			for (int i = 0; i < numberOfInputFiles; i++) {
+				in.readString();
+				in.readLong();
+				in.readLong();
+			}
+			int numberOfSettings = in.readInt();
+			for (int i = 0; i < numberOfSettings; i++) {
+				in.readString();
+			}
+			readNetwork(in, scenario.getNetwork());
+			readPopulation(in, scenario.getPopulation());
+		}
+		return scenario;
+	}
+
+	private static void write(Path file, Scenario scenario, List<InputFile> inputFiles, List<String> settings) {
+
+		// the snapshot only replaces an old one once it is complete
+		Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (SnapshotOutput out = new SnapshotOutput(temporaryFile)) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(inputFiles.size());
+				for (InputFile inputFile : inputFiles) {
+					out.writeString(inputFile.path);
+					out.writeLong(inputFile.size);
+					out.writeLong(inputFile.lastModified);
+				}
+				out.writeInt(settings.size());
+				for (String setting : settings) {
+					out.writeString(setting);
+				}
+				writeNetwork(out, scenario.getNetwork());
+				writePopulation(out, scenario.getPopulation());
+			}
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			try {
+				Files.deleteIfExists(temporaryFile);
+			} catch (IOException e) {
+				logger.warn("Could not delete " + temporaryFile, e);
+			}
+		}
+	}
+
+	private static void writeNetwork(SnapshotOutput out, Network network) throws IOException {
+
+		out.writeDouble(network.getCapacityPeriod());
+		out.writeDouble(network.getEffectiveLaneWidth());
+		writeAttributes(out, network.getAttributes());
+
+		out.writeInt(network.getNodes().size());
+		for (Node node : network.getNodes().values()) {
+			out.writeString(node.getId().toString());
+			writeCoord(out, node.getCoord());
+			writeAttributes(out, node.getAttributes());
+		}
+
+		out.writeInt(network.getLinks().size());
+		for (Link link : network.getLinks().values()) {
+			out.writeString(link.getId().toString());
+			out.writeString(link.getFromNode().getId().toString());
+			out.writeString(link.getToNode().getId().toString());
+			out.writeDouble(link.getLength());
+			out.writeDouble(link.getFreespeed());
+			out.writeDouble(link.getCapacity());
+			out.writeDouble(link.getNumberOfLanes());
+			out.writeInt(link.getAllowedModes().size());
+			for (String mode : link.getAllowedModes()) {
+				out.writeString(mode);
+			}
+			writeAttributes(out, link.getAttributes());
+		}
+	}
+
+	private static void readNetwork(SnapshotInput in, Network network) throws IOException {
+
+		NetworkFactory factory = network.getFactory();
+		network.setCapacityPeriod(in.readDouble());
+		network.setEffectiveLaneWidth(in.readDouble());
+		readAttributes(in, network.getAttributes());
+
+		int numberOfNodes = in.readInt();
+		for (int i = 0; i < numberOfNodes; i++) {
+			Node node = factory.createNode(Id.createNodeId(in.readString()), readCoord(in));
+			readAttributes(in, node.getAttributes());
+			network.addNode(node);
+		}
+
+		// links with the same modes share one set, as they do when read from xml
+		Map<Set<String>, Set<String>> modeSets = new HashMap<>();
+
+		int numberOfLinks = in.readInt();
+		for (int i = 0; i < numberOfLinks; i++) {
+			Id<Link> id = Id.createLinkId(in.readString());
+			Node from = network.getNodes().get(Id.createNodeId(in.readString()));
+			Node to = network.getNodes().get(Id.createNodeId(in.readString()));
+			Link link = factory.createLink(id, from, to);
+			link.setLength(in.readDouble());
+			link.setFreespeed(in.readDouble());
+			link.setCapacity(in.readDouble());
+			link.setNumberOfLanes(in.readDouble());
+
+			int numberOfModes = in.readInt();
+			Set<String> modes = new HashSet<>();
+			for (int mode = 0; mode < numberOfModes; mode++) {
+				modes.add(in.readString());
+			}
+			link.setAllowedModes(modeSets.computeIfAbsent(modes, m -> m));
+
+			readAttributes(in, link.getAttributes());
+			network.addLink(link);
+		}
+	}
+
+	private static void writePopulation(SnapshotOutput out, Population population) throws IOException {
+
+		writeAttributes(out, population.getAttributes());
+
+		out.writeInt(population.getPersons().size());
+		for (Person person : population.getPersons().values()) {
+			out.writeString(person.getId().toString());
+			writeAttributes(out, person.getAttributes());
+
+			out.writeInt(person.getPlans().size());
+			out.writeInt(person.getPlans().indexOf(person.getSelectedPlan()));
+			for (Plan plan : person.getPlans()) {
+				out.writeString(plan.getType());
+				out.writeBoolean(plan.getScore() != null);
+				if (plan.getScore() != null) out.writeDouble(plan.getScore());
+				writeAttributes(out, plan.getAttributes());
+
+				out.writeInt(plan.getPlanElements().size());
+				for (PlanElement element : plan.getPlanElements()) {
+					if (element instanceof Activity) writeActivity(out, (Activity) element);
+					else writeLeg(out, (Leg) element);
+				}
+			}
+		}
+	}
+
+	private static void readPopulation(SnapshotInput in, Population population) throws IOException {
+
+		PopulationFactory factory = population.getFactory();
+		readAttributes(in, population.getAttributes());
+
+		int numberOfPersons = in.readInt();
+		for (int i = 0; i < numberOfPersons; i++) {
+			Person person = factory.createPerson(Id.createPersonId(in.readString()));
+			readAttributes(in, person.getAttributes());
+
+			int numberOfPlans = in.readInt();
+			int selectedPlan = in.readInt();
+			for (int planIndex = 0; planIndex < numberOfPlans; planIndex++) {
+				Plan plan = factory.createPlan();
+				plan.setType(in.readString());
+				if (in.readBoolean()) plan.setScore(in.readDouble());
+				readAttributes(in, plan.getAttributes());
+
+				int numberOfElements = in.readInt();
+				for (int element = 0; element < numberOfElements; element++) {
+					if (in.readInt() == ACTIVITY) plan.addActivity(readActivity(in, factory));
+					else plan.addLeg(readLeg(in, factory));
+				}
+
+				person.addPlan(plan);
+				if (planIndex == selectedPlan) person.setSelectedPlan(plan);
+			}
+			population.addPerson(person);
+		}
+	}
+
+	private static void writeActivity(SnapshotOutput out, Activity activity) throws IOException {
+
+		out.writeInt(ACTIVITY);
+		out.writeString(activity.getType());
+		out.writeBoolean(activity.getCoord() != null);
+		if (activity.getCoord() != null) writeCoord(out, activity.getCoord());
+		out.writeString(activity.getLinkId() == null ? null : activity.getLinkId().toString());
+		out.writeString(activity.getFacilityId() == null ? null : activity.getFacilityId().toString());
+		out.writeDouble(activity.getStartTime());
+		out.writeDouble(activity.getEndTime());
+		out.writeDouble(activity.getMaximumDuration());
+		writeAttributes(out, activity.getAttributes());
+	}
+
+	private static Activity readActivity(SnapshotInput in, PopulationFactory factory) throws IOException {
+
+		String type = in.readString();
+		Coord coord = in.readBoolean() ? readCoord(in) : null;
+		String linkId = in.readString();
+		String facilityId = in.readString();
+
+		Activity activity = coord != null ? factory.createActivityFromCoord(type, coord) : factory.createActivityFromLinkId(type, null);
+		if (linkId != null) activity.setLinkId(Id.createLinkId(linkId));
+		if (facilityId != null) activity.setFacilityId(Id.create(facilityId, ActivityFacility.class));
+		activity.setStartTime(in.readDouble());
+		activity.setEndTime(in.readDouble());
+		activity.setMaximumDuration(in.readDouble());
+		readAttributes(in, activity.getAttributes());
+		return activity;
+	}
+
+	private static void writeLeg(SnapshotOutput out, Leg leg) throws IOException {
+
+		out.writeInt(LEG);
+		out.writeString(leg.getMode());
+		out.writeDouble(leg.getDepartureTime());
+		out.writeDouble(leg.getTravelTime());
+		writeAttributes(out, leg.getAttributes());
+
+		Route route = leg.getRoute();
+		out.writeBoolean(route != null);
+		if (route == null) return;
+
+		// routes are restored from their description, like the population reader does
+		out.writeString(route.getRouteType());
+		out.writeString(route.getStartLinkId() == null ? null : route.getStartLinkId().toString());
+		out.writeString(route.getEndLinkId() == null ? null : route.getEndLinkId().toString());
+		out.writeDouble(route.getDistance());
+		out.writeDouble(route.getTravelTime());
+		out.writeString(route.getRouteDescription());
+		Id<?> vehicleId = route instanceof NetworkRoute ? ((NetworkRoute) route).getVehicleId() : null;
+		out.writeString(vehicleId == null ? null : vehicleId.toString());
+	}
+
+	private static Leg readLeg(SnapshotInput in, PopulationFactory factory) throws IOException {
+
+		Leg leg = factory.createLeg(in.readString());
+		leg.setDepartureTime(in.readDouble());
+		leg.setTravelTime(in.readDouble());
+		readAttributes(in, leg.getAttributes());
+
+		if (!in.readBoolean()) return leg;
+
+		RouteFactories routeFactories = factory.getRouteFactories();
+		Class<? extends Route> routeClass = routeFactories.getRouteClassForType(in.readString());
+		String startLinkId = in.readString();
+		String endLinkId = in.readString();
+		Route route = routeFactories.createRoute(routeClass,
+				startLinkId == null ? null : Id.createLinkId(startLinkId),
+				endLinkId == null ? null : Id.createLinkId(endLinkId));
+		route.setDistance(in.readDouble());
+		route.setTravelTime(in.readDouble());
+		String description = in.readString();
+		if (description != null) route.setRouteDescription(description);
+		String vehicleId = in.readString();
+		if (vehicleId != null && route instanceof NetworkRoute) ((NetworkRoute) route).setVehicleId(Id.createVehicleId(vehicleId));
+
+		leg.setRoute(route);
+		return leg;
+	}
+
+	private static void writeCoord(SnapshotOutput out, Coord coord) throws IOException {
+		out.writeDouble(coord.getX());
+		out.writeDouble(coord.getY());
+		out.writeBoolean(coord.hasZ());
+		if (coord.hasZ()) out.writeDouble(coord.getZ());
+	}
+
+	private static Coord readCoord(SnapshotInput in) throws IOException {
+		double x = in.readDouble();
+		double y = in.readDouble();
+		return in.readBoolean() ? new Coord(x, y, in.readDouble()) : new Coord(x, y);
+	}
+
+	private static void writeAttributes(SnapshotOutput out, Attributes attributes) throws IOException {
+
+		Map<String, Object> values = attributes.getAsMap();
+		out.writeInt(values.size());
+		for (Map.Entry<String, Object> entry : values.entrySet()) {
+
+			out.writeString(entry.getKey());
+			Object value = entry.getValue();
+			if (value instanceof String) {
+				out.writeInt(STRING);
+				out.writeString((String) value);
+			} else if (value instanceof Double) {
+				out.writeInt(DOUBLE);
+				out.writeDouble((Double) value);
+			} else if (value instanceof Integer) {
+				out.writeInt(INTEGER);
+				out.writeInt((Integer) value);
+			} else if (value instanceof Long) {
+				out.writeInt(LONG);
+				out.writeLong((Long) value);
+			} else if (value instanceof Boolean) {
+				out.writeInt(BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			} else {
+				throw new UnsupportedOperationException("Attribute " + entry.getKey() + " of type " + value.getClass().getName() + " can't be stored in a snapshot.");
+			}
+		}
+	}
+
+	private static void readAttributes(SnapshotInput in, Attributes attributes) throws IOException {
+
+		int numberOfAttributes = in.readInt();
+		for (int i = 0; i < numberOfAttributes; i++) {
+
+			String key = in.readString();
+			int type = in.readInt();
+			switch (type) {
+				case STRING:
+					attributes.putAttribute(key, in.readString());
+					break;
+				case DOUBLE:
+					attributes.putAttribute(key, in.readDouble());
+					break;
+				case INTEGER:
+					attributes.putAttribute(key, in.readInt());
+					break;
+				case LONG:
+					attributes.putAttribute(key, in.readLong());
+					break;
+				case BOOLEAN:
+					attributes.putAttribute(key, in.readBoolean());
+					break;
+				default:
+					throw new IOException("Unknown attribute type " + type);
+			}
+		}
+	}
+
+	private static class InputFile {
+
+		private final String path;
+		private final long size;
+		private final long lastModified;
+
+		private InputFile(String path, long size, long lastModified) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof InputFile)) return false;
+			InputFile other = (InputFile) o;
+			return size == other.size && lastModified == other.lastModified && path.equals(other.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode();
+		}
+	}
+}
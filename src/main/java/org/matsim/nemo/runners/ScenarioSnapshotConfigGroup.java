@@ -0,0 +1,34 @@
+package org.matsim.nemo.runners;
+
+import org.matsim.core.config.ReflectiveConfigGroup;
+
+/**
+ * Settings of the {@link ScenarioSnapshot}, which stores the prepared network and population of the runners
+ */
+public class ScenarioSnapshotConfigGroup extends ReflectiveConfigGroup {
+
+	public static final String GROUP_NAME = "nemoScenarioSnapshot";
+
+	private static final String SNAPSHOT_FILE = "snapshotFile";
+
+	private String snapshotFile;
+
+	public ScenarioSnapshotConfigGroup() {
+		super(GROUP_NAME);
+	}
+
+	@StringGetter(SNAPSHOT_FILE)
+	public String getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	/**
+	 * Network and population are loaded from this file as long as the network and plans files, their coordinate systems,
+	 * the preparation of the runner and MATSim haven't changed since it was written. Otherwise they are loaded from xml
+	 * and written to this file. Snapshots are disabled if this isn't set.
+	 */
+	@StringSetter(SNAPSHOT_FILE)
+	public void setSnapshotFile(String snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+}
@@ -0,0 +1,102 @@
+package org.matsim.nemo.runners;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.matsim.nemo.runners.SnapshotOutput.NEW_STRING;
+import static org.matsim.nemo.runners.SnapshotOutput.NULL_STRING;
+
+/**
+ * Reads the values written by {@link SnapshotOutput} from a memory mapped file. Files may be larger than what a single
+ * mapping can hold, so the file is mapped in windows, and the next window is mapped as soon as a value doesn't fit
+ * into the rest of the current one.
+ */
+class SnapshotInput implements Closeable {
+
+	private static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+	private final List<String> strings = new ArrayList<>();
+
+	private MappedByteBuffer window;
+	private long windowStart;
+
+	SnapshotInput(Path file) throws IOException {
+		this(file, DEFAULT_WINDOW_SIZE);
+	}
+
+	SnapshotInput(Path file, int windowSize) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.windowSize = windowSize;
+		map(0, 0);
+	}
+
+	String readString() throws IOException {
+
+		int index = readInt();
+		if (index == NULL_STRING) return null;
+		if (index != NEW_STRING) return strings.get(index);
+
+		byte[] bytes = new byte[readInt()];
+		int read = 0;
+		while (read < bytes.length) {
+			ensure(1);
+			int length = Math.min(bytes.length - read, window.remaining());
+			window.get(bytes, read, length);
+			read += length;
+		}
+
+		String value = new String(bytes, StandardCharsets.UTF_8);
+		strings.add(value);
+		return value;
+	}
+
+	int readInt() throws IOException {
+		ensure(Integer.BYTES);
+		return window.getInt();
+	}
+
+	long readLong() throws IOException {
+		ensure(Long.BYTES);
+		return window.getLong();
+	}
+
+	double readDouble() throws IOException {
+		ensure(Double.BYTES);
+		return window.getDouble();
+	}
+
+	boolean readBoolean() throws IOException {
+		ensure(1);
+		return window.get() != 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void ensure(int bytes) throws IOException {
+
+		if (window.remaining() >= bytes) return;
+
+		long position = windowStart + window.position();
+		if (position + bytes > size) throw new IOException("Unexpected end of snapshot at byte " + position);
+		map(position, bytes);
+	}
+
+	private void map(long position, int minimumSize) throws IOException {
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.max(windowSize, minimumSize), size - position));
+	}
+}
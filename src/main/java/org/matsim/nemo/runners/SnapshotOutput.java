@@ -0,0 +1,69 @@
+package org.matsim.nemo.runners;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the primitive values of a {@link ScenarioSnapshot}. Strings are written once and referenced by their number
+ * afterwards, since ids, modes and activity types repeat a lot.
+ */
+class SnapshotOutput implements Closeable {
+
+	static final int NULL_STRING = -1;
+	static final int NEW_STRING = -2;
+
+	private final DataOutputStream out;
+	private final Map<String, Integer> strings = new HashMap<>();
+
+	SnapshotOutput(Path file) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+	}
+
+	void writeString(String value) throws IOException {
+
+		if (value == null) {
+			out.writeInt(NULL_STRING);
+			return;
+		}
+
+		Integer index = strings.get(value);
+		if (index != null) {
+			out.writeInt(index);
+			return;
+		}
+
+		strings.put(value, strings.size());
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(NEW_STRING);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	void writeInt(int value) throws IOException {
+		out.writeInt(value);
+	}
+
+	void writeLong(long value) throws IOException {
+		out.writeLong(value);
+	}
+
+	void writeDouble(double value) throws IOException {
+		out.writeDouble(value);
+	}
+
+	void writeBoolean(boolean value) throws IOException {
+		out.writeBoolean(value);
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -22,10 +22,17 @@ package org.matsim.nemo.scenarioCreation.matsimPlans;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.population.*;
 import org.matsim.core.utils.io.IOUtils;
+import org.matsim.nemo.util.ColumnarTableWriter;
 import org.matsim.nemo.util.NEMOUtils;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Created by amit on 29.01.18.
@@ -34,13 +41,33 @@ import java.io.IOException;
 public class PersonActivityLocationWriter {
 
 
+    /**
+     * @param args optionally the plans file, the output file and the flags "-columnar" to write the columnar binary format
+     *             and "-uncompressed" to write its columns without compression
+     */
     public static void main(String[] args) {
 
-        String plansFile = "data/input/plans/2018_jan_24/plans_1pct_fullChoiceSet_coordsAssigned.xml.gz";
+        String plansFile = args.length > 0 ? args[0] : "data/input/plans/2018_jan_24/plans_1pct_fullChoiceSet_coordsAssigned.xml.gz";
 
         Population population = NEMOUtils.loadScenarioFromPlans(plansFile).getPopulation();
 
-        String outFile = "data/input/plans/2018_jan_24/plans_1pct_activityLocations.txt";
+        String outFile = args.length > 1 ? args[1] : "data/input/plans/2018_jan_24/plans_1pct_activityLocations.txt";
+
+        List<String> flags = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : Collections.emptyList();
+
+        if (flags.contains("-columnar")) {
+            new ColumnarTableWriter.Builder<ActivityRow>()
+                    .stringColumn("personId", row -> row.personId)
+                    .longColumn("planIndex", row -> row.planIndex)
+                    .longColumn("activityIndex", row -> row.activityIndex)
+                    .stringColumn("activityType", row -> row.activity.getType())
+                    .doubleColumn("locationX", row -> row.activity.getCoord().getX())
+                    .doubleColumn("locationY", row -> row.activity.getCoord().getY())
+                    .compression(!flags.contains("-uncompressed"))
+                    .build()
+                    .write(Paths.get(outFile), population.getPersons().values(), PersonActivityLocationWriter::getActivityRows);
+            return;
+        }
 
         BufferedWriter writer = IOUtils.getAppendingBufferedWriter(outFile);
         try {
@@ -68,4 +95,34 @@ public class PersonActivityLocationWriter {
         }
     }
 
+    /**
+     * Like the text output only the activities of the first plan are written
+     */
+    private static Stream<ActivityRow> getActivityRows(Person person) {
+
+        if (person.getPlans().isEmpty()) return Stream.empty();
+
+        List<ActivityRow> rows = new ArrayList<>();
+        for (PlanElement pe : person.getPlans().get(0).getPlanElements()) {
+            if (pe instanceof Activity) {
+                rows.add(new ActivityRow(person.getId().toString(), 0, rows.size(), (Activity) pe));
+            }
+        }
+        return rows.stream();
+    }
+
+    private static class ActivityRow {
+
+        private final String personId;
+        private final int planIndex;
+        private final int activityIndex;
+        private final Activity activity;
+
+        private ActivityRow(String personId, int planIndex, int activityIndex, Activity activity) {
+            this.personId = personId;
+            this.planIndex = planIndex;
+            this.activityIndex = activityIndex;
+            this.activity = activity;
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package org.matsim.nemo.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Layout of the block compressed files written by {@link BlockGzipOutputStream} and read by
+ * {@link BlockGzipInputStream}. This is the BGZF layout known from bioinformatics.
+ * <p>
+ * A file is a series of gzip members, each holding at most {@link #MAX_BLOCK_SIZE} bytes of the content. Since gzip
+ * allows several members in one file, plain gunzip and {@link java.util.zip.GZIPInputStream} read such a file like any
+ * other gzip file. The header of each member holds an extra field with the id 'BC' and the size of the compressed
+ * member minus 1, so that the offsets of all blocks can be found by reading only the headers. The file ends with an
+ * empty member.
+ */
+final class BlockGzipFormat {
+
+	// uncompressed bytes per block, small enough for the compressed block to fit into 64KB even if it doesn't compress
+	static final int MAX_BLOCK_SIZE = 0xff00;
+	static final int MAX_COMPRESSED_BLOCK_SIZE = 0x10000;
+
+	// the fixed header of a member with a single 'BC' extra field, followed by its two byte block size
+	static final int HEADER_SIZE = 18;
+	static final int TRAILER_SIZE = 8;
+
+	static final byte[] EMPTY_BLOCK = {
+			0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0,
+			3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+	};
+
+	private BlockGzipFormat() {
+	}
+
+	/**
+	 * @return whether the file starts with a gzip member holding the 'BC' extra field
+	 */
+	static boolean isBlockGzipFile(Path file) {
+
+		if (!Files.isRegularFile(file)) return false;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.size() >= HEADER_SIZE && getBlockSize(channel, 0) > 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads the header of the member at the offset
+	 *
+	 * @return the compressed size of the member or -1 if it is not a member with a 'BC' extra field
+	 */
+	static int getBlockSize(FileChannel channel, long offset) throws IOException {
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining()) {
+			if (channel.read(header, offset + header.position()) < 0) return -1;
+		}
+		header.flip();
+
+		// magic, deflate and only the extra field flag, so that the extra field directly follows the fixed header
+		if (header.get(0) != 0x1f || header.get(1) != (byte) 0x8b || header.get(2) != 8 || header.get(3) != 4)
+			return -1;
+		if (header.getShort(10) != 6 || header.get(12) != 'B' || header.get(13) != 'C' || header.getShort(14) != 2)
+			return -1;
+
+		return (header.getShort(16) & 0xffff) + 1;
+	}
+}
@@ -0,0 +1,193 @@
+package org.matsim.nemo.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.matsim.nemo.util.BlockGzipFormat.*;
+
+/**
+ * Reads files written by {@link BlockGzipOutputStream}. The offsets of all blocks are collected from their headers
+ * when the file is opened. Blocks are then inflated ahead of the reader on several threads and handed out in order,
+ * so that a record which spans two blocks is joined again. The consumer sees one continuous stream and the parsing
+ * of the content is no longer held back by decompressing on a single core.
+ */
+public class BlockGzipInputStream extends InputStream {
+
+	private final FileChannel channel;
+	private final long[] blockOffsets;
+	private final int numberOfThreads;
+	private final ExecutorService executor;
+	private final Queue<Future<byte[]>> pending = new ArrayDeque<>();
+
+	private int nextBlock;
+	private byte[] block = new byte[0];
+	private int position;
+
+	public BlockGzipInputStream(Path file, int numberOfThreads) throws IOException {
+
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.numberOfThreads = numberOfThreads;
+
+		try {
+			this.blockOffsets = readBlockOffsets(file);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		this.executor = Executors.newFixedThreadPool(numberOfThreads);
+	}
+
+	/**
+	 * Opens a file for reading. Block compressed files are inflated on several threads, other gzip files are inflated
+	 * by a {@link GZIPInputStream} and all other files are read as they are.
+	 */
+	public static InputStream open(Path file, int numberOfThreads) throws IOException {
+
+		if (BlockGzipFormat.isBlockGzipFile(file)) return new BlockGzipInputStream(file, numberOfThreads);
+
+		InputStream in = Files.newInputStream(file);
+		return file.toString().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : new BufferedInputStream(in, 1 << 16);
+	}
+
+	public static boolean isBlockGzipFile(Path file) {
+		return BlockGzipFormat.isBlockGzipFile(file);
+	}
+
+	@Override
+	public int read() throws IOException {
+
+		if (!fill()) return -1;
+		return block[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+
+		if (length == 0) return 0;
+		if (!fill()) return -1;
+
+		int copied = Math.min(length, block.length - position);
+		System.arraycopy(block, position, bytes, offset, copied);
+		position += copied;
+		return copied;
+	}
+
+	@Override
+	public int available() {
+		return block.length - position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		channel.close();
+	}
+
+	/**
+	 * Moves on to the next non empty block if the current one is used up
+	 *
+	 * @return false if the end of the file is reached
+	 */
+	private boolean fill() throws IOException {
+
+		while (position == block.length) {
+
+			// keep all threads busy with the blocks after the current one
+			while (nextBlock < blockOffsets.length - 1 && pending.size() < numberOfThreads * 2) {
+				long offset = blockOffsets[nextBlock];
+				int size = (int) (blockOffsets[nextBlock + 1] - offset);
+				pending.add(executor.submit(() -> inflate(offset, size)));
+				nextBlock++;
+			}
+			if (pending.isEmpty()) return false;
+
+			block = take();
+			position = 0;
+		}
+		return true;
+	}
+
+	private byte[] take() throws IOException {
+
+		try {
+			return pending.remove().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the offset of each block and the size of the file as last element
+	 */
+	private long[] readBlockOffsets(Path file) throws IOException {
+
+		List<Long> offsets = new ArrayList<>();
+		long offset = 0;
+		long size = channel.size();
+
+		while (offset < size) {
+			int blockSize = BlockGzipFormat.getBlockSize(channel, offset);
+			if (blockSize < HEADER_SIZE + TRAILER_SIZE || offset + blockSize > size)
+				throw new IOException(file + " has no valid block at offset " + offset);
+			offsets.add(offset);
+			offset += blockSize;
+		}
+		offsets.add(size);
+		return offsets.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	private byte[] inflate(long offset, int size) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("unexpected end of file");
+		}
+		int crc = buffer.getInt(size - TRAILER_SIZE);
+		int length = buffer.getInt(size - TRAILER_SIZE + 4);
+
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(buffer.array(), HEADER_SIZE, size - HEADER_SIZE - TRAILER_SIZE);
+			byte[] data = new byte[length];
+			int inflated = 0;
+			while (inflated < length) {
+				int read = inflater.inflate(data, inflated, length - inflated);
+				if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					throw new IOException("block at offset " + offset + " is truncated");
+				inflated += read;
+			}
+
+			CRC32 check = new CRC32();
+			check.update(data);
+			if ((int) check.getValue() != crc) throw new IOException("block at offset " + offset + " is corrupt");
+			return data;
+		} catch (DataFormatException e) {
+			throw new IOException("block at offset " + offset + " is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
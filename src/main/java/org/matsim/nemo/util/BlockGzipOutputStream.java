@@ -0,0 +1,196 @@
+package org.matsim.nemo.util;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static org.matsim.nemo.util.BlockGzipFormat.*;
+
+/**
+ * Writes gzip files in the block layout described in {@link BlockGzipFormat}. Blocks are compressed independently on
+ * several threads and written in order. The files can be read by any gzip reader, but {@link BlockGzipInputStream}
+ * can also inflate them on several threads.
+ * <p>
+ * The main method converts an existing events or plans file, compressed or not, into a block compressed file.
+ */
+public class BlockGzipOutputStream extends OutputStream {
+
+	private final OutputStream out;
+	private final int numberOfThreads;
+	private final ExecutorService executor;
+	private final Queue<Future<byte[]>> pending = new ArrayDeque<>();
+
+	private final byte[] block = new byte[MAX_BLOCK_SIZE];
+	private int blockLength;
+	private boolean closed;
+
+	public BlockGzipOutputStream(Path file, int numberOfThreads) throws IOException {
+		this(new BufferedOutputStream(Files.newOutputStream(file), MAX_COMPRESSED_BLOCK_SIZE), numberOfThreads);
+	}
+
+	public BlockGzipOutputStream(OutputStream out, int numberOfThreads) {
+		this.out = out;
+		this.numberOfThreads = numberOfThreads;
+		this.executor = Executors.newFixedThreadPool(numberOfThreads);
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		Args arguments = new Args();
+		JCommander.newBuilder().addObject(arguments).build().parse(args);
+
+		Path inputFile = Paths.get(arguments.inputFile);
+		try (InputStream in = BlockGzipInputStream.open(inputFile, arguments.numberOfThreads);
+			 OutputStream out = new BlockGzipOutputStream(Paths.get(arguments.outputFile), arguments.numberOfThreads)) {
+
+			byte[] buffer = new byte[MAX_BLOCK_SIZE];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+
+		block[blockLength++] = (byte) b;
+		if (blockLength == block.length) submitBlock();
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+
+		while (length > 0) {
+			int copied = Math.min(length, block.length - blockLength);
+			System.arraycopy(bytes, offset, block, blockLength, copied);
+			blockLength += copied;
+			offset += copied;
+			length -= copied;
+			if (blockLength == block.length) submitBlock();
+		}
+	}
+
+	/**
+	 * Writes all blocks which are already compressed. The block which is currently filled is not cut short, so that
+	 * flushing doesn't lead to small blocks.
+	 */
+	@Override
+	public void flush() throws IOException {
+
+		while (!pending.isEmpty() && pending.peek().isDone()) {
+			out.write(take());
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if (closed) return;
+		closed = true;
+
+		try {
+			if (blockLength > 0) submitBlock();
+			while (!pending.isEmpty()) {
+				out.write(take());
+			}
+			out.write(EMPTY_BLOCK);
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+	}
+
+	private void submitBlock() throws IOException {
+
+		byte[] full = Arrays.copyOf(block, blockLength);
+		pending.add(executor.submit(() -> compress(full)));
+		blockLength = 0;
+
+		while (pending.size() > numberOfThreads * 2 || (!pending.isEmpty() && pending.peek().isDone())) {
+			out.write(take());
+		}
+	}
+
+	private byte[] take() {
+
+		try {
+			return pending.remove().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private static byte[] compress(byte[] data) {
+
+		byte[] compressed = deflate(data, Deflater.DEFAULT_COMPRESSION);
+		// data which doesn't compress is stored, which adds only a few bytes and always fits into a block
+		if (HEADER_SIZE + compressed.length + TRAILER_SIZE > MAX_COMPRESSED_BLOCK_SIZE) {
+			compressed = deflate(data, Deflater.NO_COMPRESSION);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		int blockSize = HEADER_SIZE + compressed.length + TRAILER_SIZE;
+
+		ByteBuffer result = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+		result.put(EMPTY_BLOCK, 0, HEADER_SIZE - 2);
+		result.putShort((short) (blockSize - 1));
+		result.put(compressed);
+		result.putInt((int) crc.getValue());
+		result.putInt(data.length);
+		return result.array();
+	}
+
+	private static byte[] deflate(byte[] data, int level) {
+
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] buffer = new byte[data.length + 64];
+			int length = 0;
+			while (!deflater.finished()) {
+				if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				length += deflater.deflate(buffer, length, buffer.length - length);
+			}
+			return Arrays.copyOf(buffer, length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static class Args {
+
+		@Parameter(names = {"-inputFile", "-if"}, required = true)
+		private String inputFile = "";
+
+		@Parameter(names = {"-outputFile", "-of"}, required = true)
+		private String outputFile = "";
+
+		@Parameter(names = {"-threads"})
+		private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+	}
+}
@@ -0,0 +1,40 @@
+package org.matsim.nemo.util;
+
+/**
+ * Layout of the columnar table files written by {@link ColumnarTableWriter} and read by {@link ColumnarTableReader}.
+ * <p>
+ * A file starts with {@link #MAGIC} and {@link #VERSION}, followed by the row groups and the footer. A row group holds
+ * one chunk per column, each chunk holds the values of that column for all rows of the group. A chunk starts with its
+ * codec, its decoded length and its stored length in bytes, followed by the stored bytes.
+ * <ul>
+ * <li>long and double columns hold one 8 byte value per row</li>
+ * <li>boolean columns hold one bit per row</li>
+ * <li>string columns are dictionary encoded per row group: the number of distinct strings and the strings, followed by
+ * one index per row, {@link #NO_STRING} for a missing value</li>
+ * </ul>
+ * The footer holds the columns' names and types and, for each row group, its number of rows and the offsets of its
+ * chunks. The file ends with the offset of the footer and {@link #MAGIC}, so that a reader can find the footer and seek
+ * directly to the chunks it needs.
+ */
+final class ColumnarTableFormat {
+
+	static final int MAGIC = 0x4e454d54; // "NEMT"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int TRAILER_SIZE = 12;
+	static final int CHUNK_HEADER_SIZE = 9;
+	static final int NO_STRING = -1;
+
+	// column types
+	static final byte LONG = 0;
+	static final byte DOUBLE = 1;
+	static final byte BOOLEAN = 2;
+	static final byte STRING = 3;
+
+	// chunk codecs
+	static final byte UNCOMPRESSED = 0;
+	static final byte DEFLATE = 1;
+
+	private ColumnarTableFormat() {
+	}
+}
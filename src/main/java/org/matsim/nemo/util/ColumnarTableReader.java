@@ -0,0 +1,201 @@
+package org.matsim.nemo.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.matsim.nemo.util.ColumnarTableFormat.*;
+
+/**
+ * Reads files written by {@link ColumnarTableWriter}. Only the footer is read when the file is opened, columns of a
+ * row group are read on demand, so that reading a single column of a large table only touches the chunks of that
+ * column.
+ */
+public class ColumnarTableReader implements Closeable {
+
+	private final FileChannel channel;
+	private final List<String> columnNames = new ArrayList<>();
+	private final List<Byte> columnTypes = new ArrayList<>();
+	private final int[] rowCounts;
+	private final long[][] chunkOffsets;
+
+	public ColumnarTableReader(Path file) {
+
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+
+			ByteBuffer header = read(0, HEADER_SIZE);
+			if (header.getInt() != MAGIC) throw new IOException(file + " is not a columnar table file");
+			if (header.getInt() != VERSION) throw new IOException(file + " has an unsupported version");
+
+			ByteBuffer trailer = read(channel.size() - TRAILER_SIZE, TRAILER_SIZE);
+			long footerOffset = trailer.getLong();
+			if (trailer.getInt() != MAGIC) throw new IOException(file + " is incomplete");
+
+			ByteBuffer footerBuffer = read(footerOffset, (int) (channel.size() - TRAILER_SIZE - footerOffset));
+			DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerBuffer.array()));
+
+			int numberOfColumns = footer.readInt();
+			for (int i = 0; i < numberOfColumns; i++) {
+				columnNames.add(footer.readUTF());
+				columnTypes.add(footer.readByte());
+			}
+			int numberOfRowGroups = footer.readInt();
+			rowCounts = new int[numberOfRowGroups];
+			chunkOffsets = new long[numberOfRowGroups][numberOfColumns];
+			for (int i = 0; i < numberOfRowGroups; i++) {
+				rowCounts[i] = footer.readInt();
+				for (int j = 0; j < numberOfColumns; j++) {
+					chunkOffsets[i][j] = footer.readLong();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public List<String> getColumnNames() {
+		return Collections.unmodifiableList(columnNames);
+	}
+
+	public int getNumberOfRowGroups() {
+		return rowCounts.length;
+	}
+
+	public int getNumberOfRows(int rowGroup) {
+		return rowCounts[rowGroup];
+	}
+
+	public long getNumberOfRows() {
+
+		long result = 0;
+		for (int rowCount : rowCounts) {
+			result += rowCount;
+		}
+		return result;
+	}
+
+	public long[] readLongs(int rowGroup, String column) {
+
+		try (DataInputStream in = readChunk(rowGroup, column, LONG)) {
+			long[] result = new long[rowCounts[rowGroup]];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = in.readLong();
+			}
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public double[] readDoubles(int rowGroup, String column) {
+
+		try (DataInputStream in = readChunk(rowGroup, column, DOUBLE)) {
+			double[] result = new double[rowCounts[rowGroup]];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = in.readDouble();
+			}
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public boolean[] readBooleans(int rowGroup, String column) {
+
+		try (DataInputStream in = readChunk(rowGroup, column, BOOLEAN)) {
+			boolean[] result = new boolean[rowCounts[rowGroup]];
+			int bits = 0;
+			for (int i = 0; i < result.length; i++) {
+				if (i % 8 == 0) bits = in.readUnsignedByte();
+				result[i] = (bits & (1 << (i % 8))) != 0;
+			}
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public String[] readStrings(int rowGroup, String column) {
+
+		try (DataInputStream in = readChunk(rowGroup, column, STRING)) {
+			String[] dictionary = new String[in.readInt()];
+			for (int i = 0; i < dictionary.length; i++) {
+				dictionary[i] = in.readUTF();
+			}
+			String[] result = new String[rowCounts[rowGroup]];
+			for (int i = 0; i < result.length; i++) {
+				int index = in.readInt();
+				result[i] = index == NO_STRING ? null : dictionary[index];
+			}
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private DataInputStream readChunk(int rowGroup, String column, byte expectedType) throws IOException {
+
+		int columnIndex = columnNames.indexOf(column);
+		if (columnIndex < 0) throw new IllegalArgumentException("there is no column " + column);
+		if (columnTypes.get(columnIndex) != expectedType)
+			throw new IllegalArgumentException("column " + column + " has a different type");
+
+		long offset = chunkOffsets[rowGroup][columnIndex];
+		ByteBuffer header = read(offset, CHUNK_HEADER_SIZE);
+		byte codec = header.get();
+		int length = header.getInt();
+		int storedLength = header.getInt();
+		byte[] stored = read(offset + CHUNK_HEADER_SIZE, storedLength).array();
+
+		if (codec == UNCOMPRESSED) return new DataInputStream(new ByteArrayInputStream(stored));
+
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(stored);
+			byte[] data = new byte[length];
+			int inflated = 0;
+			while (inflated < length && !inflater.finished()) {
+				int read = inflater.inflate(data, inflated, length - inflated);
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IOException("column " + column + " of row group " + rowGroup + " is truncated");
+				inflated += read;
+			}
+			return new DataInputStream(new ByteArrayInputStream(data));
+		} catch (DataFormatException e) {
+			throw new IOException("column " + column + " of row group " + rowGroup + " is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("unexpected end of file");
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -0,0 +1,331 @@
+package org.matsim.nemo.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import static org.matsim.nemo.util.ColumnarTableFormat.*;
+
+/**
+ * Writes a table in the columnar binary format described in {@link ColumnarTableFormat}. The columns are defined once
+ * with the {@link Builder} by a name and a function which extracts the value from a row.
+ * <p>
+ * The input items are split into groups of {@link Builder#rowGroupSize(int)} items. Each group is turned into rows and
+ * encoded on a worker thread, the encoded row groups are written in the order of the input. The number of groups
+ * which are encoded but not yet written is limited, so that the memory doesn't grow with the size of the table.
+ *
+ * @param <T> type of the rows
+ */
+public class ColumnarTableWriter<T> {
+
+	private final List<Column<T>> columns;
+	private final boolean compression;
+	private final int rowGroupSize;
+	private final int numberOfThreads;
+
+	private ColumnarTableWriter(List<Column<T>> columns, boolean compression, int rowGroupSize, int numberOfThreads) {
+		this.columns = columns;
+		this.compression = compression;
+		this.rowGroupSize = rowGroupSize;
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	public void write(Path file, Iterable<? extends T> rows) {
+		write(file, rows, Stream::of);
+	}
+
+	/**
+	 * @param items  the input, for example the persons of a population
+	 * @param toRows turns one item into any number of rows
+	 */
+	public <S> void write(Path file, Iterable<? extends S> items, Function<? super S, ? extends Stream<? extends T>> toRows) {
+
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		Queue<Future<RowGroup>> pending = new ArrayDeque<>();
+		List<Integer> rowCounts = new ArrayList<>();
+		List<long[]> chunkOffsets = new ArrayList<>();
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			long position = HEADER_SIZE;
+
+			List<S> group = new ArrayList<>(rowGroupSize);
+			for (S item : items) {
+				group.add(item);
+				if (group.size() == rowGroupSize) {
+					List<S> full = group;
+					pending.add(executor.submit(() -> encode(full, toRows)));
+					group = new ArrayList<>(rowGroupSize);
+				}
+				while (pending.size() > numberOfThreads * 2 || (!pending.isEmpty() && pending.peek().isDone())) {
+					position = writeRowGroup(out, position, take(pending), rowCounts, chunkOffsets);
+				}
+			}
+			if (!group.isEmpty()) {
+				List<S> last = group;
+				pending.add(executor.submit(() -> encode(last, toRows)));
+			}
+			while (!pending.isEmpty()) {
+				position = writeRowGroup(out, position, take(pending), rowCounts, chunkOffsets);
+			}
+
+			writeFooter(out, position, rowCounts, chunkOffsets);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private <S> RowGroup encode(List<S> items, Function<? super S, ? extends Stream<? extends T>> toRows) throws IOException {
+
+		List<T> rows = items.stream().flatMap(toRows).collect(Collectors.toList());
+		byte[][] chunks = new byte[columns.size()][];
+		for (int i = 0; i < columns.size(); i++) {
+			chunks[i] = compress(columns.get(i).encode(rows));
+		}
+		return new RowGroup(rows.size(), chunks);
+	}
+
+	private byte[] compress(byte[] data) {
+
+		byte codec = UNCOMPRESSED;
+		byte[] stored = data;
+
+		if (compression) {
+			Deflater deflater = new Deflater();
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+			byte[] buffer = new byte[1 << 16];
+			while (!deflater.finished()) {
+				compressed.write(buffer, 0, deflater.deflate(buffer));
+			}
+			deflater.end();
+
+			// keep chunks which don't get smaller, such as random doubles, uncompressed
+			if (compressed.size() < data.length) {
+				codec = DEFLATE;
+				stored = compressed.toByteArray();
+			}
+		}
+
+		ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_HEADER_SIZE + stored.length);
+		try (DataOutputStream out = new DataOutputStream(chunk)) {
+			out.writeByte(codec);
+			out.writeInt(data.length);
+			out.writeInt(stored.length);
+			out.write(stored);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return chunk.toByteArray();
+	}
+
+	private long writeRowGroup(DataOutputStream out, long position, RowGroup rowGroup, List<Integer> rowCounts, List<long[]> chunkOffsets) throws IOException {
+
+		if (rowGroup.numberOfRows == 0) return position;
+
+		long[] offsets = new long[rowGroup.chunks.length];
+		for (int i = 0; i < rowGroup.chunks.length; i++) {
+			offsets[i] = position;
+			out.write(rowGroup.chunks[i]);
+			position += rowGroup.chunks[i].length;
+		}
+		rowCounts.add(rowGroup.numberOfRows);
+		chunkOffsets.add(offsets);
+		return position;
+	}
+
+	private void writeFooter(DataOutputStream out, long position, List<Integer> rowCounts, List<long[]> chunkOffsets) throws IOException {
+
+		out.writeInt(columns.size());
+		for (Column<T> column : columns) {
+			out.writeUTF(column.name);
+			out.writeByte(column.type);
+		}
+		out.writeInt(rowCounts.size());
+		for (int i = 0; i < rowCounts.size(); i++) {
+			out.writeInt(rowCounts.get(i));
+			for (long offset : chunkOffsets.get(i)) {
+				out.writeLong(offset);
+			}
+		}
+		out.writeLong(position);
+		out.writeInt(MAGIC);
+	}
+
+	private static RowGroup take(Queue<Future<RowGroup>> pending) {
+
+		try {
+			return pending.remove().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private static class RowGroup {
+
+		private final int numberOfRows;
+		private final byte[][] chunks;
+
+		private RowGroup(int numberOfRows, byte[][] chunks) {
+			this.numberOfRows = numberOfRows;
+			this.chunks = chunks;
+		}
+	}
+
+	private abstract static class Column<T> {
+
+		private final String name;
+		private final byte type;
+
+		private Column(String name, byte type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		byte[] encode(List<T> rows) throws IOException {
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows.size() * 8);
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				encode(rows, out);
+			}
+			return bytes.toByteArray();
+		}
+
+		abstract void encode(List<T> rows, DataOutputStream out) throws IOException;
+	}
+
+	public static class Builder<T> {
+
+		private final List<Column<T>> columns = new ArrayList<>();
+		private final Map<String, Column<T>> columnsByName = new HashMap<>();
+		private boolean compression = false;
+		private int rowGroupSize = 10000;
+		private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+		public Builder<T> longColumn(String name, ToLongFunction<? super T> value) {
+			return add(new Column<>(name, LONG) {
+				@Override
+				void encode(List<T> rows, DataOutputStream out) throws IOException {
+					for (T row : rows) out.writeLong(value.applyAsLong(row));
+				}
+			});
+		}
+
+		public Builder<T> doubleColumn(String name, ToDoubleFunction<? super T> value) {
+			return add(new Column<>(name, DOUBLE) {
+				@Override
+				void encode(List<T> rows, DataOutputStream out) throws IOException {
+					for (T row : rows) out.writeDouble(value.applyAsDouble(row));
+				}
+			});
+		}
+
+		public Builder<T> booleanColumn(String name, Predicate<? super T> value) {
+			return add(new Column<>(name, BOOLEAN) {
+				@Override
+				void encode(List<T> rows, DataOutputStream out) throws IOException {
+					int bits = 0;
+					for (int i = 0; i < rows.size(); i++) {
+						if (value.test(rows.get(i))) bits |= 1 << (i % 8);
+						if (i % 8 == 7) {
+							out.writeByte(bits);
+							bits = 0;
+						}
+					}
+					if (rows.size() % 8 != 0) out.writeByte(bits);
+				}
+			});
+		}
+
+		public Builder<T> stringColumn(String name, Function<? super T, String> value) {
+			return add(new Column<>(name, STRING) {
+				@Override
+				void encode(List<T> rows, DataOutputStream out) throws IOException {
+
+					Map<String, Integer> dictionary = new HashMap<>();
+					List<String> values = new ArrayList<>();
+					int[] indices = new int[rows.size()];
+					for (int i = 0; i < rows.size(); i++) {
+						String string = value.apply(rows.get(i));
+						indices[i] = string == null ? NO_STRING : dictionary.computeIfAbsent(string, s -> {
+							values.add(s);
+							return values.size() - 1;
+						});
+					}
+
+					out.writeInt(values.size());
+					for (String string : values) out.writeUTF(string);
+					for (int index : indices) out.writeInt(index);
+				}
+			});
+		}
+
+		/**
+		 * Whether column chunks are compressed with deflate. Off by default.
+		 */
+		public Builder<T> compression(boolean compression) {
+			this.compression = compression;
+			return this;
+		}
+
+		/**
+		 * Number of input items which are encoded together into one row group
+		 */
+		public Builder<T> rowGroupSize(int rowGroupSize) {
+			this.rowGroupSize = rowGroupSize;
+			return this;
+		}
+
+		public Builder<T> numberOfThreads(int numberOfThreads) {
+			this.numberOfThreads = numberOfThreads;
+			return this;
+		}
+
+		public ColumnarTableWriter<T> build() {
+
+			if (columns.isEmpty()) throw new IllegalStateException("at least one column must be defined");
+			if (rowGroupSize < 1 || numberOfThreads < 1)
+				throw new IllegalArgumentException("row group size and number of threads must be at least 1");
+
+			return new ColumnarTableWriter<>(new ArrayList<>(columns), compression, rowGroupSize, numberOfThreads);
+		}
+
+		private Builder<T> add(Column<T> column) {
+
+			if (columnsByName.put(column.name, column) != null)
+				throw new IllegalArgumentException("column " + column.name + " is defined twice");
+
+			columns.add(column);
+			return this;
+		}
+	}
+}
@@ -22,8 +22,15 @@ package org.matsim.nemo.util;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.population.io.StreamingPopulationReader;
 import org.matsim.core.scenario.ScenarioUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -48,14 +55,56 @@ public final class NEMOUtils {
         return ScenarioUtils.loadScenario(config);
     }
 
+    /**
+     * Reads a plans file into the scenario. Block compressed files are inflated on several threads.
+     */
+    public static void readPopulation(Scenario scenario, String plansFile) {
+
+        Path file = Paths.get(plansFile);
+        if (BlockGzipInputStream.isBlockGzipFile(file)) {
+            try (InputStream in = new BlockGzipInputStream(file, Runtime.getRuntime().availableProcessors())) {
+                new PopulationReader(scenario).parse(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            new PopulationReader(scenario).readFile(plansFile);
+        }
+    }
+
+    /**
+     * Streams a plans file through the reader's algorithms. Block compressed files are inflated on several threads.
+     */
+    public static void readPopulation(StreamingPopulationReader reader, String plansFile) {
+
+        Path file = Paths.get(plansFile);
+        if (BlockGzipInputStream.isBlockGzipFile(file)) {
+            try (InputStream in = new BlockGzipInputStream(file, Runtime.getRuntime().availableProcessors())) {
+                reader.parse(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            reader.readFile(plansFile);
+        }
+    }
+
     public static List<PlanCalcScoreConfigGroup.ActivityParams> createTypicalDurations(String type, long minDurationInSeconds, long maxDurationInSeconds, long durationDifferenceInSeconds) {
 
         List<PlanCalcScoreConfigGroup.ActivityParams> result = new ArrayList<>();
         for (long duration = minDurationInSeconds; duration <= maxDurationInSeconds; duration += durationDifferenceInSeconds) {
-            final PlanCalcScoreConfigGroup.ActivityParams params = new PlanCalcScoreConfigGroup.ActivityParams(type + "_" + duration + ".0");
-            params.setTypicalDuration(duration);
-            result.add(params);
+            result.add(createTypicalDuration(type, duration));
         }
         return result;
     }
+
+    /**
+     * Parameters of the activity type with the given typical duration, e.g. home_3600.0 for home and 3600
+     */
+    public static PlanCalcScoreConfigGroup.ActivityParams createTypicalDuration(String type, long durationInSeconds) {
+
+        final PlanCalcScoreConfigGroup.ActivityParams params = new PlanCalcScoreConfigGroup.ActivityParams(type + "_" + durationInSeconds + ".0");
+        params.setTypicalDuration(durationInSeconds);
+        return params;
+    }
 }
@@ -23,6 +23,7 @@ import org.opengis.feature.simple.SimpleFeatureType;
 
 import java.util.Collections;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -42,6 +43,16 @@ public class RuhrAgentsFilterTest {
         assertFalse(filter.includeAgent(Id.createPersonId("without-plan")));
     }
 
+    @Test
+    public void testCoordinates() {
+
+        RuhrAgentsFilter filter = new RuhrAgentsFilter(createScenario(), Collections.singletonList(createSquare()));
+
+        boolean[] inside = filter.isInside(new double[]{5, 5, 100, 100, 0.001, 9.999, 10, 5});
+
+        assertArrayEquals(new boolean[]{true, false, true, false}, inside);
+    }
+
     private SimpleFeature createSquare() {
         GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
         Coordinate[] coords = new Coordinate[]{
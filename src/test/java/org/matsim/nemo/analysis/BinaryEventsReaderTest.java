@@ -0,0 +1,60 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryEventsReaderTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void writeAndRead() {
+
+		Id<Person> person = Id.createPersonId("person");
+		Id<Vehicle> vehicle = Id.create("vehicle", Vehicle.class);
+		List<Event> events = Arrays.asList(
+				new ActivityEndEvent(10, person, Id.createLinkId("home"), null, "home_3600.0"),
+				new PersonDepartureEvent(10, person, Id.createLinkId("home"), TransportMode.car),
+				new VehicleEntersTrafficEvent(11, person, Id.createLinkId("home"), vehicle, TransportMode.car, 1.0),
+				new LinkEnterEvent(20, vehicle, Id.createLinkId("work")),
+				new PersonArrivalEvent(30, person, Id.createLinkId("work"), TransportMode.car),
+				new ActivityStartEvent(30, person, Id.createLinkId("work"), Id.create("office", ActivityFacility.class), "work_28800.0")
+		);
+
+		Path file = Paths.get(utils.getOutputDirectory(), "events.bin");
+		try (BinaryEventsWriter writer = new BinaryEventsWriter(file)) {
+			events.forEach(writer::handleEvent);
+		}
+		assertTrue(BinaryEventsFormat.isBinaryEventsFile(file));
+
+		List<Event> result = new ArrayList<>();
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler((BasicEventHandler) result::add);
+		new BinaryEventsReader(manager).readFile(file);
+
+		assertEquals(events.size(), result.size());
+		for (int i = 0; i < events.size(); i++) {
+			assertEquals(events.get(i).getAttributes(), result.get(i).getAttributes());
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.ActivityFacilitiesFactory;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CoordIndexTest {
+
+	@Test
+	public void resolutionOrder() {
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = createNetwork();
+		ActivityFacilitiesFactory facilitiesFactory = scenario.getActivityFacilities().getFactory();
+		scenario.getActivityFacilities().addActivityFacility(facilitiesFactory.createActivityFacility(
+				Id.create("scenario-facility", ActivityFacility.class), new Coord(1, 1)));
+
+		PopulationFactory factory = scenario.getPopulation().getFactory();
+		Person person = factory.createPerson(Id.createPersonId("person"));
+		Plan plan = factory.createPlan();
+		plan.addActivity(activity(factory, "home_3600.0", new Coord(2, 2), "scenario-facility"));
+		plan.addActivity(activity(factory, "work_3600.0", new Coord(3, 3), "work"));
+		// only the first activity with a facility counts
+		plan.addActivity(activity(factory, "work_3600.0", new Coord(4, 4), "work"));
+		plan.addActivity(activity(factory, "car interaction", new Coord(5, 5), "stage"));
+		plan.addActivity(activity(factory, "leisure_3600.0", null, "leisure"));
+		person.addPlan(plan);
+		person.setSelectedPlan(plan);
+		scenario.getPopulation().addPerson(person);
+
+		CoordIndex index = new CoordIndex(scenario, network);
+		Id<Person> personId = person.getId();
+		Id<Link> link = Id.createLinkId("1");
+
+		assertEquals(new Coord(1, 1), index.getCoord(personId, Id.create("scenario-facility", ActivityFacility.class), link));
+		assertEquals(new Coord(3, 3), index.getCoord(personId, Id.create("work", ActivityFacility.class), link));
+		assertEquals(0, index.getNumberOfFallbacks());
+
+		// stage activities, activities without coord, unknown facilities and unknown persons end up on the link
+		Coord linkCoord = network.getLinks().get(link).getCoord();
+		assertEquals(linkCoord, index.getCoord(personId, Id.create("stage", ActivityFacility.class), link));
+		assertEquals(linkCoord, index.getCoord(personId, Id.create("leisure", ActivityFacility.class), link));
+		assertEquals(linkCoord, index.getCoord(personId, Id.create("unknown", ActivityFacility.class), link));
+		assertEquals(linkCoord, index.getCoord(Id.createPersonId("unknown"), Id.create("work", ActivityFacility.class), link));
+		assertEquals(linkCoord, index.getCoord(personId, null, link));
+		assertEquals(5, index.getNumberOfFallbacks());
+	}
+
+	@Test
+	public void manyPersonsSharingFacilities() {
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = createNetwork();
+		PopulationFactory factory = scenario.getPopulation().getFactory();
+		Random random = new Random(4711);
+
+		// many persons with the same facility ids but their own coords fill up the table with collisions
+		for (int i = 0; i < 1000; i++) {
+			Person person = factory.createPerson(Id.createPersonId(i));
+			Plan plan = factory.createPlan();
+			for (int facility = 0; facility < 5; facility++) {
+				plan.addActivity(activity(factory, "other_600.0", new Coord(i, facility), "facility_" + random.nextInt(20)));
+			}
+			person.addPlan(plan);
+			person.setSelectedPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+
+		CoordIndex index = new CoordIndex(scenario, network);
+
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			for (int i = person.getSelectedPlan().getPlanElements().size() - 1; i >= 0; i--) {
+				Activity activity = (Activity) person.getSelectedPlan().getPlanElements().get(i);
+				assertEquals(expectedCoord(person, activity.getFacilityId()), index.getCoord(person.getId(), activity.getFacilityId(), Id.createLinkId("1")));
+			}
+		}
+		assertEquals(0, index.getNumberOfFallbacks());
+	}
+
+	private static Coord expectedCoord(Person person, Id<ActivityFacility> facilityId) {
+		return person.getSelectedPlan().getPlanElements().stream()
+				.map(element -> (Activity) element)
+				.filter(activity -> facilityId.equals(activity.getFacilityId()))
+				.findFirst()
+				.orElseThrow()
+				.getCoord();
+	}
+
+	private static Activity activity(PopulationFactory factory, String type, Coord coord, String facility) {
+
+		Activity activity = coord == null
+				? factory.createActivityFromLinkId(type, Id.createLinkId("1"))
+				: factory.createActivityFromCoord(type, coord);
+		activity.setFacilityId(Id.create(facility, ActivityFacility.class));
+		return activity;
+	}
+
+	private static Network createNetwork() {
+
+		Network network = NetworkUtils.createNetwork();
+		Node from = NetworkUtils.createAndAddNode(network, Id.createNodeId("from"), new Coord(0, 0));
+		Node to = NetworkUtils.createAndAddNode(network, Id.createNodeId("to"), new Coord(100, 0));
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("1"), from, to, 100, 10, 1000, 1);
+		return network;
+	}
+}
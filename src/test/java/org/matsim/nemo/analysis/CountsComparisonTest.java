@@ -0,0 +1,91 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.counts.Count;
+import org.matsim.counts.Counts;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CountsComparisonTest {
+
+	@Test
+	public void compareWithCounts() {
+
+		Counts<Link> counts = new Counts<>();
+		Count<Link> count = counts.createAndAddCount(Id.createLinkId("counted"), "station");
+		count.createVolume(1, 20);
+		count.createVolume(9, 100);
+
+		CountsComparison comparison = new CountsComparison(counts, 10);
+		LinkVolumeHandler handler = comparison.createHandler();
+
+		Id<Vehicle> vehicle = Id.createVehicleId("vehicle");
+		handler.handleEvent(new VehicleEntersTrafficEvent(5, Id.createPersonId("driver"), Id.createLinkId("other"), vehicle, TransportMode.car, 1.0));
+		handler.handleEvent(new LinkEnterEvent(10, vehicle, Id.createLinkId("counted")));
+		handler.handleEvent(new LinkEnterEvent(3599, vehicle, Id.createLinkId("counted")));
+		handler.handleEvent(new LinkEnterEvent(8 * 3600 + 1, vehicle, Id.createLinkId("counted")));
+		handler.handleEvent(new LinkEnterEvent(100, vehicle, Id.createLinkId("other")));
+		// events after the end of the day are not counted
+		handler.handleEvent(new LinkEnterEvent(25 * 3600, vehicle, Id.createLinkId("counted")));
+
+		List<StationComparison> result = comparison.compare(handler.getVolumes());
+		assertEquals(1, result.size());
+
+		StationComparison station = result.get(0);
+		assertEquals("station", station.getStation());
+		assertEquals(20, station.getSimulated(0), 0);
+		assertEquals(10, station.getSimulated(8), 0);
+		assertFalse(station.hasObserved(1));
+		assertEquals(2, station.getNumberOfHours());
+
+		assertEquals(0, station.getGeh(0), 0);
+		assertEquals(Math.sqrt(2 * 90 * 90 / 110.), station.getGeh(8), 1e-9);
+		assertEquals(Math.sqrt(90 * 90 / 2.), station.getRootMeanSquareError(), 1e-9);
+		assertEquals(-45, station.getBias(), 1e-9);
+		assertEquals(0.5, station.getShareOfHoursWithGehBelow(5), 0);
+	}
+
+	@Test
+	public void onlyCars() {
+
+		Counts<Link> counts = new Counts<>();
+		counts.createAndAddCount(Id.createLinkId("counted"), "station").createVolume(1, 10);
+
+		CountsComparison comparison = new CountsComparison(counts, 1);
+		LinkVolumeHandler handler = comparison.createHandler();
+		Id<Link> link = Id.createLinkId("counted");
+
+		Id<Vehicle> car = Id.createVehicleId("car");
+		handler.handleEvent(new VehicleEntersTrafficEvent(5, Id.createPersonId("driver"), link, car, TransportMode.car, 1.0));
+		handler.handleEvent(new LinkEnterEvent(10, car, link));
+
+		// transit drivers enter traffic as car, too
+		Id<Vehicle> bus = Id.createVehicleId("bus");
+		handler.handleEvent(new TransitDriverStartsEvent(5, Id.createPersonId("pt_driver"), bus,
+				Id.create("line", TransitLine.class), Id.create("route", TransitRoute.class), Id.create("departure", Departure.class)));
+		handler.handleEvent(new VehicleEntersTrafficEvent(5, Id.createPersonId("pt_driver"), link, bus, TransportMode.car, 1.0));
+		handler.handleEvent(new LinkEnterEvent(20, bus, link));
+
+		Id<Vehicle> bike = Id.createVehicleId("bike");
+		handler.handleEvent(new VehicleEntersTrafficEvent(5, Id.createPersonId("cyclist"), link, bike, TransportMode.bike, 1.0));
+		handler.handleEvent(new LinkEnterEvent(30, bike, link));
+
+		// vehicles which never entered traffic
+		handler.handleEvent(new LinkEnterEvent(40, Id.createVehicleId("unknown"), link));
+
+		assertEquals(1, handler.getVolumes()[0][0]);
+	}
+}
@@ -0,0 +1,57 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.TransportMode;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class DistanceHistogramTest {
+
+	@Test
+	public void binsAreFoundPerKey() {
+
+		DistanceHistogram.Builder builder = new DistanceHistogram.Builder();
+		// add the bins in mixed order
+		int carFar = builder.addBin(TransportMode.car, 1000, 5000);
+		int walkNear = builder.addBin(TransportMode.walk, 0, 1000);
+		int carNear = builder.addBin(TransportMode.car, 0, 1000);
+		DistanceHistogram histogram = builder.build();
+
+		assertEquals(carNear, histogram.getBin(TransportMode.car, 0));
+		assertEquals(carNear, histogram.getBin(TransportMode.car, 500));
+		// shared limits belong to the lower bin
+		assertEquals(carNear, histogram.getBin(TransportMode.car, 1000));
+		assertEquals(carFar, histogram.getBin(TransportMode.car, 1000.1));
+		assertEquals(carFar, histogram.getBin(TransportMode.car, 5000));
+		assertEquals(walkNear, histogram.getBin(TransportMode.walk, 1000));
+
+		assertEquals(-1, histogram.getBin(TransportMode.car, 5000.1));
+		assertEquals(-1, histogram.getBin(TransportMode.walk, 1500));
+		assertEquals(-1, histogram.getBin(TransportMode.pt, 500));
+	}
+
+	@Test
+	public void countsAreMerged() {
+
+		DistanceHistogram.Builder builder = new DistanceHistogram.Builder();
+		builder.addBin(0, 1000);
+		builder.addBin(1000, 3000);
+		DistanceHistogram histogram = builder.build();
+
+		DistanceHistogram.Counts counts = IntStream.range(0, 3000).parallel()
+				.collect(histogram::newCounts, DistanceHistogram.Counts::increment, DistanceHistogram.Counts::merge);
+
+		assertEquals(1001, counts.get(0));
+		assertEquals(1999, counts.get(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void distanceWithoutBin() {
+
+		DistanceHistogram.Builder builder = new DistanceHistogram.Builder();
+		builder.addBin(0, 1000);
+		builder.build().newCounts().increment(1001);
+	}
+}
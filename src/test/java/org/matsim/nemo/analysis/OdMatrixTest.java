@@ -0,0 +1,52 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class OdMatrixTest {
+
+	@Test
+	public void testIncrementAndGrow() {
+
+		OdMatrix matrix = new OdMatrix();
+		for (int from = 0; from < 100; from++) {
+			for (int to = 0; to < 100; to++) {
+				for (int trip = 0; trip <= (from + to) % 3; trip++) {
+					matrix.increment(from, to);
+				}
+			}
+		}
+
+		assertEquals(10000, matrix.size());
+		assertEquals(1, matrix.get(0, 0));
+		assertEquals(3, matrix.get(1, 1));
+		assertEquals(3, matrix.get(99, 98));
+		assertEquals(0, matrix.get(100, 0));
+	}
+
+	@Test
+	public void testMerge() {
+
+		OdMatrix matrix = new OdMatrix();
+		matrix.increment(1, 2);
+		matrix.increment(Integer.MAX_VALUE, 0);
+
+		OdMatrix other = new OdMatrix();
+		other.add(1, 2, 5);
+		other.increment(2, 1);
+
+		matrix.merge(other);
+
+		Map<String, Long> relations = new HashMap<>();
+		matrix.forEach((from, to, count) -> relations.put(from + "_" + to, count));
+
+		assertEquals(3, relations.size());
+		assertEquals(6, (long) relations.get("1_2"));
+		assertEquals(1, (long) relations.get("2_1"));
+		assertEquals(1, (long) relations.get(Integer.MAX_VALUE + "_0"));
+	}
+}
@@ -0,0 +1,72 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OrderedParallelWriterTest {
+
+	@Test
+	public void rowsInSubmissionOrder() {
+
+		int numberOfChunks = 2000;
+		int rowsPerChunk = 50;
+		StringWriter result = new StringWriter();
+		Random random = new Random(42);
+
+		try (OrderedParallelWriter writer = new OrderedParallelWriter(result, 8)) {
+			for (int chunk = 0; chunk < numberOfChunks; chunk++) {
+
+				int first = chunk * rowsPerChunk;
+				// chunks take different times, so that later chunks are often done before earlier ones
+				long delay = random.nextInt(3);
+				writer.submit(() -> {
+					Thread.sleep(delay);
+					StringBuilder rows = new StringBuilder();
+					for (int row = first; row < first + rowsPerChunk; row++) {
+						rows.append(row).append('\n');
+					}
+					return rows.toString();
+				});
+			}
+		}
+
+		String[] rows = result.toString().split("\n");
+		assertEquals(numberOfChunks * rowsPerChunk, rows.length);
+		for (int i = 0; i < rows.length; i++) {
+			assertEquals(Integer.toString(i), rows[i]);
+		}
+	}
+
+	@Test
+	public void failingChunk() {
+
+		StringWriter result = new StringWriter();
+		AtomicInteger formatted = new AtomicInteger();
+
+		try (OrderedParallelWriter writer = new OrderedParallelWriter(result, 4)) {
+			for (int chunk = 0; chunk < 100; chunk++) {
+				int number = chunk;
+				writer.submit(() -> {
+					if (number == 10) throw new IllegalStateException("chunk failed");
+					formatted.incrementAndGet();
+					return number + "\n";
+				});
+			}
+			fail("the exception of the chunk was swallowed");
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		// nothing after the failed chunk is written
+		String[] rows = result.toString().split("\n");
+		assertEquals(10, rows.length);
+		assertEquals("9", rows[9]);
+	}
+}
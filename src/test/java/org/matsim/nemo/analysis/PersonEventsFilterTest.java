@@ -0,0 +1,59 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PersonEventsFilterTest {
+
+	@Test
+	public void keepVehicleEventsOfKeptDrivers() {
+
+		Id<Person> kept = Id.createPersonId("kept");
+		Id<Person> dropped = Id.createPersonId("dropped");
+		Id<Vehicle> keptVehicle = Id.createVehicleId("kept");
+		Id<Vehicle> droppedVehicle = Id.createVehicleId("dropped");
+		Id<Link> link = Id.createLinkId("link");
+
+		List<Event> result = new ArrayList<>();
+		PersonEventsFilter filter = new PersonEventsFilter(kept::equals, result::add);
+
+		Event keptDeparture = new PersonDepartureEvent(1, kept, link, "car");
+		Event keptEntersTraffic = new VehicleEntersTrafficEvent(2, kept, link, keptVehicle, "car", 1);
+		Event keptLeave = new LinkLeaveEvent(3, keptVehicle, link);
+		Event keptEnter = new LinkEnterEvent(4, keptVehicle, link);
+		Event keptLeavesTraffic = new VehicleLeavesTrafficEvent(5, kept, link, keptVehicle, "car", 1);
+
+		List<Event> events = Arrays.asList(
+				keptDeparture,
+				new PersonDepartureEvent(1, dropped, link, "car"),
+				keptEntersTraffic,
+				new VehicleEntersTrafficEvent(2, dropped, link, droppedVehicle, "car", 1),
+				keptLeave,
+				new LinkLeaveEvent(3, droppedVehicle, link),
+				keptEnter,
+				new LinkEnterEvent(4, droppedVehicle, link),
+				keptLeavesTraffic,
+				new VehicleLeavesTrafficEvent(5, dropped, link, droppedVehicle, "car", 1),
+				// the vehicle has left traffic, so that later link events are not attributed to the driver anymore
+				new LinkEnterEvent(6, keptVehicle, link)
+		);
+		events.forEach(filter::handleEvent);
+
+		assertEquals(Arrays.asList(keptDeparture, keptEntersTraffic, keptLeave, keptEnter, keptLeavesTraffic), result);
+	}
+}
@@ -0,0 +1,167 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipelinedEventsReaderTest {
+
+	// the event types the pipelined reader constructs, all others are skipped
+	private static final Set<String> READ_TYPES = Set.of(ActivityEndEvent.EVENT_TYPE, ActivityStartEvent.EVENT_TYPE,
+			PersonDepartureEvent.EVENT_TYPE, PersonArrivalEvent.EVENT_TYPE, PersonStuckEvent.EVENT_TYPE, TransitDriverStartsEvent.EVENT_TYPE);
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void sameEventsAsMatsimEventsReader() {
+
+		Path file = writeEvents(Paths.get(utils.getOutputDirectory(), "output_events.xml.gz"));
+		List<Map<String, String>> expected = readWithMatsimEventsReader(file);
+
+		// with a single shard the order of all events is kept
+		List<RecordingHandler> handlers = new PipelinedEventsReader(1, 2).readFile(file, RecordingHandler::new);
+		assertEquals(1, handlers.size());
+		assertEquals(expected, handlers.get(0).events);
+	}
+
+	@Test
+	public void sameEventsPerShard() {
+
+		Path file = writeEvents(Paths.get(utils.getOutputDirectory(), "output_events.xml.gz"));
+		List<Map<String, String>> expected = readWithMatsimEventsReader(file);
+
+		List<RecordingHandler> handlers = new PipelinedEventsReader(4, 2).readFile(file, RecordingHandler::new);
+		assertEquals(4, handlers.size());
+
+		Set<String> allPersons = new HashSet<>();
+		for (RecordingHandler handler : handlers) {
+
+			Set<String> persons = handler.events.stream()
+					.map(attributes -> attributes.get("person"))
+					.filter(person -> person != null)
+					.collect(Collectors.toSet());
+			for (String person : persons) assertTrue("person " + person + " is in more than one shard", allPersons.add(person));
+
+			// each shard has all events of its persons and all events without a person, in the original order
+			List<Map<String, String>> expectedOfShard = expected.stream()
+					.filter(attributes -> attributes.get("person") == null || persons.contains(attributes.get("person")))
+					.collect(Collectors.toList());
+			assertEquals(expectedOfShard, handler.events);
+		}
+		assertEquals(expected.stream().map(attributes -> attributes.get("person")).filter(person -> person != null).collect(Collectors.toSet()), allPersons);
+	}
+
+	@Test(timeout = 60000)
+	public void failingHandler() {
+
+		Path file = writeEvents(Paths.get(utils.getOutputDirectory(), "output_events.xml.gz"));
+
+		try {
+			new PipelinedEventsReader(2, 1).readFile(file, FailingHandler::new);
+			fail("the exception of the handler was swallowed");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage().contains(file.toString()));
+			// the events manager may wrap the exception of the handler
+			Throwable cause = e.getCause();
+			while (cause != null && !(cause instanceof IllegalStateException)) cause = cause.getCause();
+			assertTrue(cause != null && "handler failed".equals(cause.getMessage()));
+		}
+	}
+
+	private static Path writeEvents(Path file) {
+
+		EventWriterXML writer = new EventWriterXML(file.toString());
+		Id<Link> home = Id.createLinkId("home");
+		Id<Link> work = Id.createLinkId("work");
+
+		// enough persons for several batches, interleaved like in the output of a simulation
+		for (int hour = 0; hour < 24; hour++) {
+			writer.handleEvent(new TransitDriverStartsEvent(hour * 3600, Id.createPersonId("pt_driver_" + hour),
+					Id.create("bus_" + hour, Vehicle.class), Id.create("line", TransitLine.class),
+					Id.create("route", TransitRoute.class), Id.create("departure_" + hour, Departure.class)));
+
+			for (int i = 0; i < 100; i++) {
+				Id<Person> person = Id.createPersonId("person_" + i);
+				double time = hour * 3600 + i;
+				Id<Link> from = hour % 2 == 0 ? home : work;
+				Id<Link> to = hour % 2 == 0 ? work : home;
+
+				writer.handleEvent(new ActivityEndEvent(time, person, from, Id.create(from.toString(), ActivityFacility.class), from + "_3600.0"));
+				writer.handleEvent(new PersonDepartureEvent(time, person, from, TransportMode.car));
+				// skipped by the pipelined reader
+				writer.handleEvent(new LinkEnterEvent(time + 60, Id.create(person.toString(), Vehicle.class), to));
+				if (hour == 23 && i % 10 == 0) {
+					writer.handleEvent(new PersonStuckEvent(time + 120, person, to, TransportMode.car));
+					continue;
+				}
+				writer.handleEvent(new PersonArrivalEvent(time + 120, person, to, TransportMode.car));
+				writer.handleEvent(new ActivityStartEvent(time + 120, person, to, null, to + "_3600.0"));
+			}
+		}
+		writer.closeFile();
+		return file;
+	}
+
+	private static List<Map<String, String>> readWithMatsimEventsReader(Path file) {
+
+		List<Map<String, String>> result = new ArrayList<>();
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler((BasicEventHandler) event -> {
+			if (READ_TYPES.contains(event.getEventType())) result.add(event.getAttributes());
+		});
+		new MatsimEventsReader(manager).readFile(file.toString());
+
+		assertFalse(result.isEmpty());
+		return result;
+	}
+
+	private static class RecordingHandler implements BasicEventHandler {
+
+		private final List<Map<String, String>> events = new ArrayList<>();
+
+		@Override
+		public void handleEvent(Event event) {
+			events.add(event.getAttributes());
+		}
+	}
+
+	private static class FailingHandler implements BasicEventHandler {
+
+		private int counter = 0;
+
+		@Override
+		public void handleEvent(Event event) {
+			if (++counter == 1000) throw new IllegalStateException("handler failed");
+		}
+	}
+}
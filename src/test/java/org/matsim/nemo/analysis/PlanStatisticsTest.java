@@ -0,0 +1,57 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.nemo.runners.NemoModeLocationChoiceMainModeIdentifier;
+
+import static org.junit.Assert.assertEquals;
+
+public class PlanStatisticsTest {
+
+	private final PopulationFactory factory = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
+
+	/**
+	 * Counting trips from activities must skip the first activity of each plan and not only the first activity of all
+	 * plans
+	 */
+	@Test
+	public void tripsAreCountedPerPlan() {
+
+		PlanStatistics first = new PlanStatistics();
+		first.add(createPlan(TransportMode.walk, TransportMode.pt), new NemoModeLocationChoiceMainModeIdentifier());
+		first.add(null, new NemoModeLocationChoiceMainModeIdentifier());
+
+		PlanStatistics second = new PlanStatistics();
+		second.add(createPlan(TransportMode.car), new NemoModeLocationChoiceMainModeIdentifier());
+
+		first.merge(second);
+
+		assertEquals(3, first.getNumberOfPersons());
+		assertEquals(1, first.getNumberOfPersonsWithoutPlan());
+		assertEquals(3, first.getNumberOfTrips());
+		assertEquals(3, first.getNumberOfTripsFromActivities());
+		assertEquals(1, (long) first.getTripsPerPlan().get(1));
+		assertEquals(1, (long) first.getTripsPerPlan().get(2));
+		assertEquals(4, (long) first.getActivityTypes().get("home"));
+		assertEquals(1, (long) first.getActivityTypes().get("work"));
+		assertEquals(1, (long) first.getMainModes().get(TransportMode.car));
+		assertEquals(1, (long) first.getMainModes().get(TransportMode.pt));
+		assertEquals(1, (long) first.getMainModes().get(TransportMode.walk));
+	}
+
+	private Plan createPlan(String... modes) {
+
+		Plan plan = factory.createPlan();
+		plan.addActivity(factory.createActivityFromCoord("home", new Coord(0, 0)));
+		for (int i = 0; i < modes.length; i++) {
+			plan.addLeg(factory.createLeg(modes[i]));
+			plan.addActivity(factory.createActivityFromCoord(i == modes.length - 1 ? "home" : "work", new Coord(0, 0)));
+		}
+		return plan;
+	}
+}
@@ -0,0 +1,79 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SketchesTest {
+
+	@Test
+	public void distinctValues() {
+
+		HyperLogLog first = new HyperLogLog(12);
+		HyperLogLog second = new HyperLogLog(12);
+		// both sketches see the values 50000 to 99999
+		for (int i = 0; i < 100000; i++) {
+			first.add(Sketches.hash("agent_" + i));
+			if (i >= 50000) second.add(Sketches.hash("agent_" + (i + 50000)));
+			if (i >= 50000) second.add(Sketches.hash("agent_" + i));
+		}
+		assertEquals(100000, first.estimate(), 100000 * 0.05);
+
+		first.merge(second);
+		assertEquals(150000, first.estimate(), 150000 * 0.05);
+
+		HyperLogLog small = new HyperLogLog(8);
+		for (int i = 0; i < 10; i++) {
+			small.add(Sketches.hash("agent_" + i % 5));
+		}
+		assertEquals(5, small.estimate(), 0.5);
+	}
+
+	@Test
+	public void quantiles() {
+
+		List<QuantileSketch> sketches = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			sketches.add(new QuantileSketch(200));
+		}
+		// the values 0 to 99999 shuffled across four sketches
+		for (int i = 0; i < 100000; i++) {
+			sketches.get(i % 4).add((i * 7919L) % 100000);
+		}
+		QuantileSketch merged = new QuantileSketch(200);
+		sketches.forEach(merged::merge);
+
+		assertEquals(100000, merged.getCount());
+		assertEquals(0, merged.getMin(), 0);
+		assertEquals(99999, merged.getMax(), 0);
+		for (double rank : Arrays.asList(0.1, 0.5, 0.9, 0.99)) {
+			assertEquals(rank * 100000, merged.getQuantile(rank), 100000 * 0.02);
+		}
+		assertTrue(Double.isNaN(new QuantileSketch(10).getQuantile(0.5)));
+	}
+
+	@Test
+	public void heavyHitters() {
+
+		CountMinSketch first = new CountMinSketch(4, 1024, 3);
+		CountMinSketch second = new CountMinSketch(4, 1024, 3);
+		for (int i = 0; i < 10000; i++) {
+			first.add("link_" + i % 1000, 1);
+			second.add("link_" + i % 500, 1);
+		}
+		first.add("busy", 500);
+		second.add("busy", 500);
+		second.add("second", 700);
+
+		first.merge(second);
+		assertEquals(20000 + 1700, first.getTotal());
+		assertEquals(Arrays.asList("busy", "second"), new ArrayList<>(first.getHeavyHitters().keySet()).subList(0, 2));
+		assertTrue(first.estimate("busy") >= 1000);
+		assertTrue(first.estimate("link_1") >= 30);
+	}
+}
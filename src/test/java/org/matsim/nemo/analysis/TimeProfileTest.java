@@ -0,0 +1,34 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TimeProfileTest {
+
+	@Test
+	public void countAndMerge() {
+
+		TimeProfile profile = new TimeProfile(3600, 3 * 3600);
+		assertEquals(4, profile.getNumberOfBins());
+
+		profile.addTrip("car", 0, 3599);
+		profile.addTrip("car", 3600, 2 * 3600 + 1);
+		// trips after the end time are counted in the last bin
+		profile.addTrip("car", 5 * 3600, 30 * 3600);
+		profile.addTrip("pt", 2 * 3600, 3 * 3600);
+		profile.removeTrip("pt", 2 * 3600, 3 * 3600);
+
+		TimeProfile other = new TimeProfile(3600, 3 * 3600);
+		other.addTrip("walk", 1800, 2000);
+		other.addTrip("car", 1800, 2000);
+		profile.merge(other);
+
+		assertArrayEquals(new long[]{2, 1, 0, 1}, profile.getDepartures("car"));
+		assertArrayEquals(new long[]{2, 0, 1, 1}, profile.getArrivals("car"));
+		assertArrayEquals(new long[]{0, 0, 0, 0}, profile.getDepartures("pt"));
+		assertArrayEquals(new long[]{1, 0, 0, 0}, profile.getArrivals("walk"));
+		assertArrayEquals(new long[]{0, 0, 0, 0}, profile.getDepartures("bike"));
+	}
+}
@@ -5,6 +5,13 @@ import org.junit.Test;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonStuckEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
@@ -20,12 +27,16 @@ import org.matsim.testcases.MatsimTestUtils;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class TripEventHandlerTest {
 
@@ -122,4 +133,71 @@ public class TripEventHandlerTest {
 		assertEquals(TransportMode.non_network_walk, tripsOfPerson102.get(2).getLegs().get(2).getMode());
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Feeds the same events to a recording and to a streaming handler. The recording handler drops all trips of an agent
+	 * which gets stuck on its second trip, the streaming handler has already passed on its finished first trip.
+	 */
+	@Test
+	public void stuckAgentsInRecordingAndStreaming() {
+
+		TripEventHandler recording = new TripEventHandler(legs -> ((Leg) legs.get(0)).getMode(), id -> true);
+
+		List<String> streamedRows = new ArrayList<>();
+		Map<Id<Person>, Integer> tripNumbers = new HashMap<>();
+		TripEventHandler streaming = new TripEventHandler(legs -> ((Leg) legs.get(0)).getMode(), id -> true,
+				(personId, trip) -> streamedRows.add(toRow(personId, tripNumbers.merge(personId, 1, Integer::sum) - 1, trip)));
+
+		for (TripEventHandler handler : List.of(recording, streaming)) {
+			playDay(handler, Id.createPersonId("regular"), false);
+			playDay(handler, Id.createPersonId("stuck"), true);
+		}
+
+		List<String> recordedRows = new ArrayList<>();
+		recording.getTrips().forEach((personId, trips) -> {
+			for (int i = 0; i < trips.size(); i++) {
+				recordedRows.add(toRow(personId, i, trips.get(i)));
+			}
+		});
+
+		Collections.sort(recordedRows);
+		Collections.sort(streamedRows);
+		assertEquals(List.of(
+				"regular,0,home,work,3600.0,4200.0,car",
+				"regular,1,work,home,30000.0,30600.0,car"), recordedRows);
+		assertEquals(List.of(
+				"regular,0,home,work,3600.0,4200.0,car",
+				"regular,1,work,home,30000.0,30600.0,car",
+				"stuck,0,home,work,3600.0,4200.0,car"), streamedRows);
+
+		assertEquals(recording.getStuckPersons(), streaming.getStuckPersons());
+		assertArrayEquals(recording.getTimeProfile().getDepartures(TransportMode.car), streaming.getTimeProfile().getDepartures(TransportMode.car));
+
+		// only open trips are held while streaming, and there are none left
+		assertTrue(streaming.getTrips().isEmpty());
+	}
+
+	private static void playDay(TripEventHandler handler, Id<Person> person, boolean getsStuck) {
+
+		Id<Link> home = Id.createLinkId("home");
+		Id<Link> work = Id.createLinkId("work");
+
+		handler.handleEvent(new ActivityEndEvent(3600, person, home, null, "home"));
+		handler.handleEvent(new PersonDepartureEvent(3600, person, home, TransportMode.car));
+		handler.handleEvent(new PersonArrivalEvent(4200, person, work, TransportMode.car));
+		handler.handleEvent(new ActivityStartEvent(4200, person, work, null, "work"));
+
+		handler.handleEvent(new ActivityEndEvent(30000, person, work, null, "work"));
+		handler.handleEvent(new PersonDepartureEvent(30000, person, work, TransportMode.car));
+		if (getsStuck) {
+			handler.handleEvent(new PersonStuckEvent(30300, person, work, TransportMode.car));
+			return;
+		}
+		handler.handleEvent(new PersonArrivalEvent(30600, person, home, TransportMode.car));
+		handler.handleEvent(new ActivityStartEvent(30600, person, home, null, "home"));
+	}
+
+	private static String toRow(Id<Person> personId, int tripNumber, TripEventHandler.Trip trip) {
+		return personId + "," + tripNumber + "," + trip.getDepartureLink() + "," + trip.getArrivalLink() + ","
+				+ trip.getDepartureTime() + "," + trip.getArrivalTime() + "," + trip.getMainMode();
+	}
+}
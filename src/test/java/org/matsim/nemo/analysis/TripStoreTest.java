@@ -0,0 +1,106 @@
+package org.matsim.nemo.analysis;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TripStoreTest {
+
+	@Test
+	public void interleavedTrips() {
+
+		Id<Person> person1 = Id.createPersonId("person-1");
+		Id<Person> person2 = Id.createPersonId("person-2");
+		TripStore store = new TripStore();
+
+		// start trips of both persons and interleave their legs
+		int trip1 = store.startTrip(person1, 10, Id.createLinkId("home-1"), null);
+		int trip2 = store.startTrip(person2, 20, Id.createLinkId("home-2"), Id.create("facility-2", ActivityFacility.class));
+		store.addLeg(trip1, TransportMode.walk, 10);
+		store.addLeg(trip2, TransportMode.car, 20);
+		store.endLastLeg(trip1, 15);
+		store.addLeg(trip1, TransportMode.pt, 15);
+		store.endLastLeg(trip2, 100);
+		store.endLastLeg(trip1, 50);
+		store.endTrip(trip1, 50, Id.createLinkId("work-1"), null);
+		store.setMainMode(trip1, TransportMode.pt);
+
+		// second trip of person 1 is still open
+		store.startTrip(person1, 60, Id.createLinkId("work-1"), null);
+
+		Map<Id<Person>, List<TripEventHandler.Trip>> trips = store.toTripMap();
+
+		assertEquals(2, trips.size());
+		assertEquals(2, trips.get(person1).size());
+		assertEquals(1, trips.get(person2).size());
+
+		TripEventHandler.Trip first = trips.get(person1).get(0);
+		assertEquals(Id.createLinkId("home-1"), first.getDepartureLink());
+		assertEquals(Id.createLinkId("work-1"), first.getArrivalLink());
+		assertNull(first.getDepartureFacility());
+		assertEquals(10, first.getDepartureTime(), 0.0);
+		assertEquals(50, first.getArrivalTime(), 0.0);
+		assertEquals(TransportMode.pt, first.getMainMode());
+		assertEquals(2, first.getLegs().size());
+		assertEquals(TransportMode.walk, first.getLegs().get(0).getMode());
+		assertEquals(5, first.getLegs().get(0).getTravelTime(), 0.0);
+		assertEquals(TransportMode.pt, first.getLegs().get(1).getMode());
+		assertEquals(35, first.getLegs().get(1).getTravelTime(), 0.0);
+
+		TripEventHandler.Trip open = trips.get(person1).get(1);
+		assertEquals(TransportMode.other, open.getMainMode());
+		assertTrue(open.getLegs().isEmpty());
+
+		TripEventHandler.Trip other = trips.get(person2).get(0);
+		assertEquals("facility-2", other.getDepartureFacility().toString());
+		assertEquals(1, other.getLegs().size());
+		assertEquals(80, other.getLegs().get(0).getTravelTime(), 0.0);
+	}
+
+	@Test
+	public void removeTrips() {
+
+		Id<Person> person = Id.createPersonId("person");
+		TripStore store = new TripStore();
+
+		store.startTrip(person, 10, Id.createLinkId("home"), null);
+		assertTrue(store.hasTrips(person));
+
+		store.removeTrips(person);
+		assertFalse(store.hasTrips(person));
+		assertTrue(store.toTripMap().isEmpty());
+
+		// the person may record trips again
+		store.startTrip(person, 20, Id.createLinkId("home"), null);
+		assertEquals(1, store.toTripMap().get(person).size());
+	}
+
+	@Test
+	public void removedRowsAreReused() {
+
+		Id<Person> person = Id.createPersonId("person");
+		TripStore store = new TripStore();
+
+		int trip = store.startTrip(person, 10, Id.createLinkId("home"), null);
+		store.addLeg(trip, TransportMode.car, 10);
+		store.removeTrips(person);
+
+		int reused = store.startTrip(person, 20, Id.createLinkId("work"), null);
+		assertEquals(trip, reused);
+
+		// the legs of the removed trip must not show up in the new trip
+		TripEventHandler.Trip view = store.toTripMap().get(person).get(0);
+		assertTrue(view.getLegs().isEmpty());
+		assertEquals(Id.createLinkId("work"), view.getDepartureLink());
+	}
+}
@@ -0,0 +1,118 @@
+package org.matsim.nemo.runners;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.RoutingModule;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.FacilitiesUtils;
+import org.matsim.facilities.Facility;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class AccessEgressCacheTest {
+
+	private static final Id<Link> STOP_LINK = Id.createLinkId("stop");
+
+	private final AtomicInteger drtRequests = new AtomicInteger();
+	private final TransitStopFacility stop = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getTransitSchedule().getFactory()
+			.createTransitStopFacility(Id.create("stop", TransitStopFacility.class), new Coord(1000, 1000), false);
+
+	@Test
+	public void originsInSameCellKeepTheirStartLinks() {
+
+		AccessEgressCache cache = new AccessEgressCache.Builder().modes(TransportMode.drt).build();
+		RoutingModule pt = cache.wrapPt(createRaptor(cache.wrap(TransportMode.drt, this::routeDrt)));
+
+		// both origins are in the same cell and depart in the same time bin
+		Facility first = FacilitiesUtils.wrapLinkAndCoord(Id.createLinkId("first"), new Coord(10, 10));
+		Facility second = FacilitiesUtils.wrapLinkAndCoord(Id.createLinkId("second"), new Coord(20, 20));
+
+		List<? extends PlanElement> firstRoute = pt.calcRoute(first, stop, 8 * 3600, null);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertRoute(firstRoute, "first", 8 * 3600);
+
+		List<? extends PlanElement> secondRoute = pt.calcRoute(second, stop, 8 * 3600 + 300, null);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertRoute(secondRoute, "second", 8 * 3600 + 300);
+
+		// the hit was routed exactly once the stop was chosen
+		assertEquals(2, drtRequests.get());
+	}
+
+	@Test
+	public void exactOutsideOfPtRoutes() {
+
+		AccessEgressCache cache = new AccessEgressCache.Builder().modes(TransportMode.drt).build();
+		RoutingModule drt = cache.wrap(TransportMode.drt, this::routeDrt);
+		Facility origin = FacilitiesUtils.wrapLinkAndCoord(Id.createLinkId("origin"), new Coord(10, 10));
+
+		drt.calcRoute(origin, stop, 8 * 3600, null);
+		drt.calcRoute(origin, stop, 8 * 3600, null);
+
+		assertEquals(2, drtRequests.get());
+		assertEquals(0, cache.getHits() + cache.getMisses());
+		assertEquals(0, cache.size());
+	}
+
+	private static void assertRoute(List<? extends PlanElement> route, String startLink, double departureTime) {
+
+		// walk, drt interaction, drt, pt interaction, pt
+		assertEquals(5, route.size());
+		Leg walk = (Leg) route.get(0);
+		assertEquals(TransportMode.walk, walk.getMode());
+		assertEquals(Id.createLinkId(startLink), walk.getRoute().getStartLinkId());
+		assertEquals(departureTime, walk.getDepartureTime(), 0);
+		assertEquals(TransportMode.drt, ((Leg) route.get(2)).getMode());
+		assertEquals(TransportMode.pt, ((Leg) route.get(4)).getMode());
+	}
+
+	/**
+	 * Stands in for the SwissRailRaptor, which requests the access route to a stop from the stop finder and puts it in
+	 * front of the pt legs
+	 */
+	private RoutingModule createRaptor(RoutingModule access) {
+		return (fromFacility, toFacility, departureTime, person) -> {
+			List<PlanElement> route = new ArrayList<>(access.calcRoute(fromFacility, stop, departureTime, person));
+			route.add(PopulationUtils.createActivityFromLinkId("pt interaction", STOP_LINK));
+			route.add(PopulationUtils.createLeg(TransportMode.pt));
+			return route;
+		};
+	}
+
+	private List<? extends PlanElement> routeDrt(Facility fromFacility, Facility toFacility, double departureTime, Object person) {
+
+		drtRequests.incrementAndGet();
+		Id<Link> drtStart = Id.createLinkId("drt-" + fromFacility.getLinkId());
+
+		Leg walk = PopulationUtils.createLeg(TransportMode.walk);
+		walk.setRoute(RouteUtils.createGenericRouteImpl(fromFacility.getLinkId(), drtStart));
+		walk.setDepartureTime(departureTime);
+		walk.setTravelTime(60);
+
+		Leg drt = PopulationUtils.createLeg(TransportMode.drt);
+		drt.setRoute(RouteUtils.createGenericRouteImpl(drtStart, toFacility.getLinkId()));
+		drt.setDepartureTime(departureTime + 60);
+		drt.setTravelTime(600);
+
+		List<PlanElement> route = new ArrayList<>();
+		route.add(walk);
+		route.add(PopulationUtils.createActivityFromLinkId("drt interaction", drtStart));
+		route.add(drt);
+		return route;
+	}
+}
@@ -0,0 +1,199 @@
+package org.matsim.nemo.runners;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ModeParams;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ScoringParameterSet;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.scoring.SumScoringFunction;
+import org.matsim.core.scoring.functions.CharyparNagelActivityScoring;
+import org.matsim.core.scoring.functions.CharyparNagelLegScoring;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+import org.matsim.core.scoring.functions.SubpopulationScoringParameters;
+import org.matsim.nemo.util.NEMOUtils;
+import org.matsim.pt.PtConstants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ActivityDurationScoringParametersTest {
+
+	private static final String FREIGHT = "freight";
+
+	@Test
+	public void sameScoresAsGeneratedParams() {
+
+		Scenario generated = createScenario(true);
+		Scenario resolved = createScenario(false);
+		addPersons(generated);
+		addPersons(resolved);
+
+		assertSameScores(generated, new SubpopulationScoringParameters(generated),
+				resolved, new ActivityDurationScoringParameters(resolved, ActivityDurationTypes.NEMO));
+	}
+
+	@Test
+	public void personsAddedLater() {
+
+		Scenario generated = createScenario(true);
+		addPersons(generated);
+
+		// the population is empty at first, so the types of the persons are resolved once their parameters are requested
+		Scenario resolved = createScenario(false);
+		ScoringParametersForPerson parameters = new ActivityDurationScoringParameters(resolved, ActivityDurationTypes.NEMO);
+		addPersons(resolved);
+
+		assertSameScores(generated, new SubpopulationScoringParameters(generated), resolved, parameters);
+	}
+
+	@Test
+	public void plansAddedLater() {
+
+		Scenario generated = createScenario(true);
+		Scenario resolved = createScenario(false);
+		addPersons(generated);
+		addPersons(resolved);
+
+		ScoringParametersForPerson generatedParameters = new SubpopulationScoringParameters(generated);
+		ScoringParametersForPerson resolvedParameters = new ActivityDurationScoringParameters(resolved, ActivityDurationTypes.NEMO);
+		assertSameScores(generated, generatedParameters, resolved, resolvedParameters);
+
+		// a new plan with a type which isn't in the population yet, as if replanning had created it
+		for (Scenario scenario : new Scenario[]{generated, resolved}) {
+			for (Person person : scenario.getPopulation().getPersons().values()) {
+				Plan plan = scenario.getPopulation().getFactory().createPlan();
+				PopulationUtils.copyFromTo(person.getSelectedPlan(), plan);
+				((Activity) plan.getPlanElements().get(6)).setType("leisure_2400.0");
+				person.addPlan(plan);
+				person.setSelectedPlan(plan);
+			}
+		}
+		assertSameScores(generated, generatedParameters, resolved, resolvedParameters);
+	}
+
+	private static void assertSameScores(Scenario generated, ScoringParametersForPerson generatedParameters,
+										 Scenario resolved, ScoringParametersForPerson resolvedParameters) {
+
+		for (Person person : generated.getPopulation().getPersons().values()) {
+
+			Person other = resolved.getPopulation().getPersons().get(person.getId());
+			double expected = score(generated, generatedParameters.getScoringParameters(person), person.getSelectedPlan());
+			double actual = score(resolved, resolvedParameters.getScoringParameters(other), other.getSelectedPlan());
+			assertEquals("score of " + person.getId(), expected, actual, 1e-10);
+		}
+
+		// both persons have the same plan, so only the subpopulation makes the difference
+		Person defaultPerson = resolved.getPopulation().getPersons().get(Id.createPersonId("default"));
+		Person freightPerson = resolved.getPopulation().getPersons().get(Id.createPersonId(FREIGHT));
+		assertNotEquals(score(resolved, resolvedParameters.getScoringParameters(defaultPerson), defaultPerson.getSelectedPlan()),
+				score(resolved, resolvedParameters.getScoringParameters(freightPerson), freightPerson.getSelectedPlan()), 1e-10);
+	}
+
+	private static double score(Scenario scenario, ScoringParameters parameters, Plan plan) {
+
+		SumScoringFunction scoringFunction = new SumScoringFunction();
+		scoringFunction.addScoringFunction(new CharyparNagelActivityScoring(parameters));
+		scoringFunction.addScoringFunction(new CharyparNagelLegScoring(parameters, scenario.getNetwork()));
+
+		for (PlanElement element : plan.getPlanElements()) {
+			if (element instanceof Activity) scoringFunction.handleActivity((Activity) element);
+			else scoringFunction.handleLeg((Leg) element);
+		}
+		scoringFunction.finish();
+		return scoringFunction.getScore();
+	}
+
+	/**
+	 * @param generatedParams whether the activity params are generated into the config, like the runners used to do
+	 */
+	private static Scenario createScenario(boolean generatedParams) {
+
+		Config config = ConfigUtils.createConfig();
+		config.transit().setUseTransit(true);
+
+		ScoringParameterSet freightParams = config.planCalcScore().getOrCreateScoringParameters(FREIGHT);
+		freightParams.setPerforming_utils_hr(3.0);
+		for (String mode : new String[]{TransportMode.car, TransportMode.walk, TransportMode.pt}) {
+			freightParams.addModeParams(new ModeParams(mode));
+		}
+
+		if (generatedParams) {
+			for (String baseType : new String[]{"home", "work", "education", "leisure", "shopping", "other"}) {
+				NEMOUtils.createTypicalDurations(baseType, 600, 3600 * 27, 600).forEach(params -> {
+					config.planCalcScore().addActivityParams(params);
+					freightParams.addActivityParams(NEMOUtils.createTypicalDuration(baseType, (long) params.getTypicalDuration()));
+				});
+			}
+		}
+		return ScenarioUtils.createScenario(config);
+	}
+
+	private static void addPersons(Scenario scenario) {
+
+		PopulationFactory factory = scenario.getPopulation().getFactory();
+		for (String subpopulation : new String[]{"default", FREIGHT}) {
+
+			Person person = factory.createPerson(Id.createPersonId(subpopulation));
+			if (subpopulation.equals(FREIGHT)) person.getAttributes().putAttribute("subpopulation", FREIGHT);
+
+			Plan plan = factory.createPlan();
+			Activity home = factory.createActivityFromCoord("home_32400.0", new Coord(0, 0));
+			home.setEndTime(7 * 3600);
+			plan.addActivity(home);
+			plan.addLeg(leg(factory, TransportMode.car, 7 * 3600, 1800, 12000));
+
+			Activity work = factory.createActivityFromCoord("work_28800.0", new Coord(10000, 5000));
+			work.setStartTime(7.5 * 3600);
+			work.setEndTime(16.5 * 3600);
+			plan.addActivity(work);
+			plan.addLeg(leg(factory, TransportMode.walk, 16.5 * 3600, 300, 400));
+
+			Activity interaction = factory.createActivityFromCoord(PtConstants.TRANSIT_ACTIVITY_TYPE, new Coord(10300, 5000));
+			interaction.setStartTime(16.5 * 3600 + 300);
+			interaction.setEndTime(16.5 * 3600 + 300);
+			plan.addActivity(interaction);
+			plan.addLeg(leg(factory, TransportMode.pt, 16.5 * 3600 + 300, 1500, 8000));
+
+			Activity shopping = factory.createActivityFromCoord("shopping_1800.0", new Coord(3000, 1000));
+			shopping.setStartTime(17 * 3600);
+			shopping.setEndTime(17.75 * 3600);
+			plan.addActivity(shopping);
+			plan.addLeg(leg(factory, TransportMode.car, 17.75 * 3600, 600, 3500));
+
+			Activity back = factory.createActivityFromCoord("home_32400.0", new Coord(0, 0));
+			back.setStartTime(17.75 * 3600 + 600);
+			plan.addActivity(back);
+
+			person.addPlan(plan);
+			person.setSelectedPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+	}
+
+	private static Leg leg(PopulationFactory factory, String mode, double departureTime, double travelTime, double distance) {
+
+		Leg leg = factory.createLeg(mode);
+		leg.setDepartureTime(departureTime);
+		leg.setTravelTime(travelTime);
+		Route route = RouteUtils.createGenericRouteImpl(Id.createLinkId("start"), Id.createLinkId("end"));
+		route.setDistance(distance);
+		route.setTravelTime(travelTime);
+		leg.setRoute(route);
+		return leg;
+	}
+}
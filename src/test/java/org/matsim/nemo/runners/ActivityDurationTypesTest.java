@@ -0,0 +1,52 @@
+package org.matsim.nemo.runners;
+
+import org.junit.Test;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ActivityParams;
+import org.matsim.nemo.util.NEMOUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ActivityDurationTypesTest {
+
+	@Test
+	public void sameParamsAsGenerated() {
+
+		int numberOfTypes = 0;
+		for (String baseType : new String[]{"home", "work", "education", "leisure", "shopping", "other"}) {
+			for (ActivityParams generated : NEMOUtils.createTypicalDurations(baseType, 600, 3600 * 27, 600)) {
+
+				ActivityParams params = ActivityDurationTypes.NEMO.createActivityParams(generated.getActivityType());
+				assertEquals(generated.getActivityType(), params.getActivityType());
+				assertEquals(generated.getTypicalDuration(), params.getTypicalDuration(), 0);
+				numberOfTypes++;
+			}
+		}
+		assertEquals(numberOfTypes, ActivityDurationTypes.NEMO.getNumberOfTypes());
+	}
+
+	@Test
+	public void otherTypes() {
+
+		ActivityDurationTypes types = new ActivityDurationTypes.Builder()
+				.durations(600, 3600, 600, "home")
+				.durations(1800, 3600, 1800, "work_fixed")
+				.build();
+
+		assertEquals(3600, types.getDuration("home_3600.0"));
+		assertEquals(1800, types.getDuration("work_fixed_1800.0"));
+
+		// names which were never generated
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("home"));
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("home_3600"));
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("home_03600.0"));
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("home_+3600.0"));
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("home_3600.5"));
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("home_900.0"));
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("home_4200.0"));
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("work_1800.0"));
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("pt interaction"));
+		assertEquals(ActivityDurationTypes.NO_DURATION, types.getDuration("home_.0"));
+		assertNull(types.createActivityParams("leisure_3600.0"));
+	}
+}
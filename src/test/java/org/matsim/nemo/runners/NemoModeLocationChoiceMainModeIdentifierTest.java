@@ -109,4 +109,28 @@ public class NemoModeLocationChoiceMainModeIdentifierTest {
 
 		assertEquals(mode, mainMode);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void identifyMainMode_customRanks() {
+
+		ModeRanks ranks = new ModeRanks.Builder()
+				.rank(TransportMode.walk, TransportMode.pt, TransportMode.bike)
+				.alias(TransportMode.bike, "e-bike")
+				.build();
+
+		List<PlanElement> elements = new ArrayList<>();
+		elements.add(PopulationUtils.createActivityFromLinkId("home", Id.createLinkId("home-link")));
+		elements.add(PopulationUtils.createLeg("some-mode"));
+		elements.add(PopulationUtils.createActivityFromLinkId("pt interaction", Id.createLinkId("home-link")));
+		elements.add(PopulationUtils.createLeg(TransportMode.pt));
+		elements.add(PopulationUtils.createActivityFromLinkId("bike interaction", Id.createLinkId("pt-link")));
+		elements.add(PopulationUtils.createLeg("e-bike"));
+		elements.add(PopulationUtils.createActivityFromLinkId("work", Id.createLinkId("work-link")));
+
+		MainModeIdentifier testObject = new NemoModeLocationChoiceMainModeIdentifier(ranks);
+
+		String mainMode = testObject.identifyMainMode(elements);
+
+		assertEquals(TransportMode.bike, mainMode);
+	}
+}
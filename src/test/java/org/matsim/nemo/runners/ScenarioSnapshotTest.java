@@ -0,0 +1,299 @@
+package org.matsim.nemo.runners;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.PopulationWriter;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.NetworkWriter;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScenarioSnapshotTest {
+
+	private static final AtomicInteger preparations = new AtomicInteger();
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void sameScenarioAsFromXml() {
+
+		Config config = createConfig();
+
+		Scenario fromXml = ScenarioUtils.loadScenario(config);
+		prepare(fromXml);
+
+		// the first load writes the snapshot, the second one reads it without preparing the scenario again
+		ScenarioSnapshot.load(config, ScenarioSnapshotTest::prepare);
+		assertTrue(Files.exists(getSnapshotFile(config)));
+		int numberOfPreparations = preparations.get();
+		Scenario fromSnapshot = ScenarioSnapshot.load(config, ScenarioSnapshotTest::prepare);
+		assertEquals(numberOfPreparations, preparations.get());
+
+		assertSameNetwork(fromXml.getNetwork(), fromSnapshot.getNetwork());
+		assertSamePersons(fromXml, fromSnapshot);
+	}
+
+	@Test
+	public void staleSnapshot() throws IOException {
+
+		Config config = createConfig();
+		ScenarioSnapshot.load(config, ScenarioSnapshotTest::prepare);
+
+		// an unchanged plans file keeps the snapshot
+		int numberOfPreparations = preparations.get();
+		ScenarioSnapshot.load(config, ScenarioSnapshotTest::prepare);
+		assertEquals(numberOfPreparations, preparations.get());
+
+		// a plans file with another modification time replaces it
+		Path plansFile = Paths.get(config.plans().getInputFile());
+		Files.setLastModifiedTime(plansFile, FileTime.fromMillis(Files.getLastModifiedTime(plansFile).toMillis() - 60000));
+		ScenarioSnapshot.load(config, ScenarioSnapshotTest::prepare);
+		assertEquals(numberOfPreparations + 1, preparations.get());
+
+		ScenarioSnapshot.load(config, ScenarioSnapshotTest::prepare);
+		assertEquals(numberOfPreparations + 1, preparations.get());
+	}
+
+	@Test
+	public void staleAfterOtherCoordinateSystems() {
+
+		Config config = createConfig();
+		ScenarioSnapshot.load(config, ScenarioSnapshotTest::prepare);
+		int numberOfPreparations = preparations.get();
+
+		// the coordinate systems decide whether coords are projected while loading, so the snapshot must be replaced
+		config.global().setCoordinateSystem("EPSG:25832");
+		config.network().setInputCRS("EPSG:25832");
+		config.plans().setInputCRS("EPSG:25832");
+		ScenarioSnapshot.load(config, ScenarioSnapshotTest::prepare);
+		assertEquals(numberOfPreparations + 1, preparations.get());
+
+		ScenarioSnapshot.load(config, ScenarioSnapshotTest::prepare);
+		assertEquals(numberOfPreparations + 1, preparations.get());
+	}
+
+	private static void prepare(Scenario scenario) {
+
+		preparations.incrementAndGet();
+		scenario.getNetwork().getLinks().values().forEach(link -> link.getAttributes().putAttribute("prepared", true));
+	}
+
+	private Config createConfig() {
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		createNetwork(scenario.getNetwork());
+		createPopulation(scenario);
+
+		String networkFile = Paths.get(utils.getOutputDirectory(), "network.xml.gz").toAbsolutePath().toString();
+		String plansFile = Paths.get(utils.getOutputDirectory(), "plans.xml.gz").toAbsolutePath().toString();
+		new NetworkWriter(scenario.getNetwork()).write(networkFile);
+		new PopulationWriter(scenario.getPopulation()).write(plansFile);
+
+		Config config = ConfigUtils.createConfig();
+		config.network().setInputFile(networkFile);
+		config.plans().setInputFile(plansFile);
+		ConfigUtils.addOrGetModule(config, ScenarioSnapshotConfigGroup.class)
+				.setSnapshotFile(Paths.get(utils.getOutputDirectory(), "scenario.snapshot").toString());
+		return config;
+	}
+
+	private static Path getSnapshotFile(Config config) {
+		return Paths.get(ConfigUtils.addOrGetModule(config, ScenarioSnapshotConfigGroup.class).getSnapshotFile());
+	}
+
+	private static void createNetwork(Network network) {
+
+		Node first = NetworkUtils.createAndAddNode(network, Id.createNodeId("first"), new Coord(0, 0));
+		Node second = NetworkUtils.createAndAddNode(network, Id.createNodeId("second"), new Coord(1000, 0));
+		Node third = NetworkUtils.createAndAddNode(network, Id.createNodeId("third"), new Coord(1000, 1000));
+		second.getAttributes().putAttribute("signalized", true);
+
+		Link firstLink = NetworkUtils.createAndAddLink(network, Id.createLinkId("first"), first, second, 1000, 13.89, 1800, 2);
+		Link secondLink = NetworkUtils.createAndAddLink(network, Id.createLinkId("second"), second, third, 1200.5, 8.33, 600, 1);
+		firstLink.setAllowedModes(Set.of(TransportMode.car, TransportMode.bike));
+		secondLink.setAllowedModes(Set.of(TransportMode.car));
+		firstLink.getAttributes().putAttribute("bike_speed_factor", 0.8);
+		firstLink.getAttributes().putAttribute("type", "primary");
+		secondLink.getAttributes().putAttribute("lanes", 3);
+	}
+
+	private static void createPopulation(Scenario scenario) {
+
+		PopulationFactory factory = scenario.getPopulation().getFactory();
+
+		for (int i = 0; i < 3; i++) {
+			Person person = factory.createPerson(Id.createPersonId("person_" + i));
+			person.getAttributes().putAttribute("subpopulation", i == 0 ? "freight" : "persons");
+			person.getAttributes().putAttribute("age", 30 + i);
+
+			for (int planIndex = 0; planIndex < 2; planIndex++) {
+				Plan plan = factory.createPlan();
+				plan.setScore(planIndex == 0 ? 120.5 + i : null);
+				plan.getAttributes().putAttribute("innovation", planIndex);
+
+				Activity home = factory.createActivityFromCoord("home_3600.0", new Coord(10 + i, 20));
+				home.setLinkId(Id.createLinkId("first"));
+				home.setFacilityId(Id.create("home_" + i, ActivityFacility.class));
+				home.setEndTime(8 * 3600 + i * 60);
+				home.getAttributes().putAttribute("note", "morning");
+				plan.addActivity(home);
+
+				Leg car = factory.createLeg(TransportMode.car);
+				car.setDepartureTime(8 * 3600 + i * 60);
+				car.setTravelTime(240);
+				NetworkRoute networkRoute = RouteUtils.createLinkNetworkRouteImpl(Id.createLinkId("first"), List.of(), Id.createLinkId("second"));
+				networkRoute.setDistance(1200.5);
+				networkRoute.setTravelTime(240);
+				networkRoute.setVehicleId(Id.createVehicleId("person_" + i));
+				car.setRoute(networkRoute);
+				plan.addLeg(car);
+
+				Activity work = factory.createActivityFromLinkId("work_28800.0", Id.createLinkId("second"));
+				work.setMaximumDuration(8 * 3600);
+				plan.addActivity(work);
+
+				Leg walk = factory.createLeg(TransportMode.walk);
+				Route genericRoute = RouteUtils.createGenericRouteImpl(Id.createLinkId("second"), Id.createLinkId("second"));
+				genericRoute.setDistance(300);
+				genericRoute.setTravelTime(360);
+				walk.setRoute(genericRoute);
+				plan.addLeg(walk);
+
+				plan.addActivity(factory.createActivityFromCoord("pt interaction", new Coord(1000, 900)));
+				plan.addLeg(factory.createLeg(TransportMode.pt));
+
+				Activity back = factory.createActivityFromCoord("home_3600.0", new Coord(10 + i, 20));
+				back.setStartTime(17 * 3600);
+				plan.addActivity(back);
+
+				person.addPlan(plan);
+			}
+			person.setSelectedPlan(person.getPlans().get(i % 2));
+			scenario.getPopulation().addPerson(person);
+		}
+	}
+
+	private static void assertSameNetwork(Network expected, Network actual) {
+
+		assertEquals(expected.getNodes().keySet(), actual.getNodes().keySet());
+		for (Node node : expected.getNodes().values()) {
+			Node other = actual.getNodes().get(node.getId());
+			assertEquals(node.getCoord(), other.getCoord());
+			assertEquals(node.getAttributes().getAsMap(), other.getAttributes().getAsMap());
+		}
+
+		assertEquals(expected.getLinks().keySet(), actual.getLinks().keySet());
+		for (Link link : expected.getLinks().values()) {
+			Link other = actual.getLinks().get(link.getId());
+			assertEquals(link.getFromNode().getId(), other.getFromNode().getId());
+			assertEquals(link.getToNode().getId(), other.getToNode().getId());
+			assertEquals(link.getLength(), other.getLength(), 0);
+			assertEquals(link.getFreespeed(), other.getFreespeed(), 0);
+			assertEquals(link.getCapacity(), other.getCapacity(), 0);
+			assertEquals(link.getNumberOfLanes(), other.getNumberOfLanes(), 0);
+			assertEquals(link.getAllowedModes(), other.getAllowedModes());
+			assertEquals(link.getAttributes().getAsMap(), other.getAttributes().getAsMap());
+		}
+	}
+
+	private static void assertSamePersons(Scenario expected, Scenario actual) {
+
+		assertEquals(expected.getPopulation().getPersons().keySet(), actual.getPopulation().getPersons().keySet());
+		for (Person person : expected.getPopulation().getPersons().values()) {
+
+			Person other = actual.getPopulation().getPersons().get(person.getId());
+			assertEquals(person.getAttributes().getAsMap(), other.getAttributes().getAsMap());
+			assertEquals(person.getPlans().size(), other.getPlans().size());
+			assertEquals(person.getPlans().indexOf(person.getSelectedPlan()), other.getPlans().indexOf(other.getSelectedPlan()));
+
+			for (int i = 0; i < person.getPlans().size(); i++) {
+				Plan plan = person.getPlans().get(i);
+				Plan otherPlan = other.getPlans().get(i);
+				assertEquals(plan.getScore(), otherPlan.getScore());
+				assertEquals(plan.getType(), otherPlan.getType());
+				assertEquals(plan.getAttributes().getAsMap(), otherPlan.getAttributes().getAsMap());
+
+				assertEquals(plan.getPlanElements().size(), otherPlan.getPlanElements().size());
+				for (int element = 0; element < plan.getPlanElements().size(); element++) {
+					assertSameElement(plan.getPlanElements().get(element), otherPlan.getPlanElements().get(element));
+				}
+			}
+		}
+	}
+
+	private static void assertSameElement(PlanElement expected, PlanElement actual) {
+
+		assertEquals(expected.getClass(), actual.getClass());
+		if (expected instanceof Activity) {
+			Activity activity = (Activity) expected;
+			Activity other = (Activity) actual;
+			assertEquals(activity.getType(), other.getType());
+			assertEquals(activity.getCoord(), other.getCoord());
+			assertEquals(activity.getLinkId(), other.getLinkId());
+			assertEquals(activity.getFacilityId(), other.getFacilityId());
+			assertEquals(activity.getStartTime(), other.getStartTime(), 0);
+			assertEquals(activity.getEndTime(), other.getEndTime(), 0);
+			assertEquals(activity.getMaximumDuration(), other.getMaximumDuration(), 0);
+			assertEquals(activity.getAttributes().getAsMap(), other.getAttributes().getAsMap());
+			return;
+		}
+
+		Leg leg = (Leg) expected;
+		Leg other = (Leg) actual;
+		assertEquals(leg.getMode(), other.getMode());
+		assertEquals(leg.getDepartureTime(), other.getDepartureTime(), 0);
+		assertEquals(leg.getTravelTime(), other.getTravelTime(), 0);
+		assertEquals(leg.getAttributes().getAsMap(), other.getAttributes().getAsMap());
+
+		Route route = leg.getRoute();
+		Route otherRoute = other.getRoute();
+		if (route == null) {
+			assertEquals(null, otherRoute);
+			return;
+		}
+		assertNotNull(otherRoute);
+		assertEquals(route.getClass(), otherRoute.getClass());
+		assertEquals(route.getStartLinkId(), otherRoute.getStartLinkId());
+		assertEquals(route.getEndLinkId(), otherRoute.getEndLinkId());
+		assertEquals(route.getDistance(), otherRoute.getDistance(), 0);
+		assertEquals(route.getTravelTime(), otherRoute.getTravelTime(), 0);
+		assertEquals(route.getRouteDescription(), otherRoute.getRouteDescription());
+		if (route instanceof NetworkRoute) {
+			assertEquals(((NetworkRoute) route).getLinkIds(), ((NetworkRoute) otherRoute).getLinkIds());
+			assertEquals(((NetworkRoute) route).getVehicleId(), ((NetworkRoute) otherRoute).getVehicleId());
+		}
+	}
+}
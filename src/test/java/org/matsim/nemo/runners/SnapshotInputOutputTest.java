@@ -0,0 +1,80 @@
+package org.matsim.nemo.runners;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotInputOutputTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void writeAndReadAcrossWindows() throws IOException {
+
+		Path file = Paths.get(utils.getOutputDirectory(), "values.snapshot");
+
+		try (SnapshotOutput out = new SnapshotOutput(file)) {
+			for (int i = 0; i < 100; i++) {
+				out.writeInt(i);
+				out.writeString("some-id-" + (i % 10));
+				out.writeString(null);
+				out.writeLong(Long.MAX_VALUE - i);
+				out.writeDouble(i / 3.0);
+				out.writeBoolean(i % 2 == 0);
+				out.writeString("\u00fcmlaut");
+			}
+		}
+
+		// a window of 7 bytes splits most values and all strings across two windows
+		try (SnapshotInput in = new SnapshotInput(file, 7)) {
+			for (int i = 0; i < 100; i++) {
+				assertEquals(i, in.readInt());
+				assertEquals("some-id-" + (i % 10), in.readString());
+				assertNull(in.readString());
+				assertEquals(Long.MAX_VALUE - i, in.readLong());
+				assertEquals(i / 3.0, in.readDouble(), 0);
+				assertEquals(i % 2 == 0, in.readBoolean());
+				assertEquals("\u00fcmlaut", in.readString());
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void readPastEnd() throws IOException {
+
+		Path file = Paths.get(utils.getOutputDirectory(), "short.snapshot");
+
+		try (SnapshotOutput out = new SnapshotOutput(file)) {
+			out.writeInt(1);
+		}
+
+		try (SnapshotInput in = new SnapshotInput(file, 7)) {
+			assertEquals(1, in.readInt());
+			assertFalse(in.readBoolean());
+		}
+	}
+
+	@Test
+	public void largeWindow() throws IOException {
+
+		Path file = Paths.get(utils.getOutputDirectory(), "single.snapshot");
+
+		try (SnapshotOutput out = new SnapshotOutput(file)) {
+			out.writeBoolean(true);
+		}
+
+		try (SnapshotInput in = new SnapshotInput(file)) {
+			assertTrue(in.readBoolean());
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package org.matsim.nemo.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockGzipOutputStreamTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void writeAndRead() throws IOException {
+
+		// compressible records which span block boundaries, followed by random bytes which don't compress
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		for (int i = 0; i < 20000; i++) {
+			content.write(("<event time=\"" + i + "\" type=\"actend\" person=\"" + i % 97 + "\" />\n").getBytes(StandardCharsets.UTF_8));
+		}
+		byte[] random = new byte[3 * 0x10000];
+		new Random(42).nextBytes(random);
+		content.write(random);
+		byte[] expected = content.toByteArray();
+
+		Path file = Paths.get(utils.getOutputDirectory(), "content.xml.gz");
+		try (OutputStream out = new BlockGzipOutputStream(file, 3)) {
+			out.write(expected, 0, 1000);
+			out.write(expected[1000]);
+			out.write(expected, 1001, expected.length - 1001);
+		}
+
+		assertTrue(BlockGzipInputStream.isBlockGzipFile(file));
+		try (InputStream in = new BlockGzipInputStream(file, 3)) {
+			assertArrayEquals(expected, readAll(in));
+		}
+		// any gzip reader can read the file
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+			assertArrayEquals(expected, readAll(in));
+		}
+	}
+
+	@Test
+	public void openPlainGzip() throws IOException {
+
+		byte[] expected = "<events>\n</events>\n".getBytes(StandardCharsets.UTF_8);
+		Path file = Paths.get(utils.getOutputDirectory(), "plain.xml.gz");
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+			out.write(expected);
+		}
+
+		assertFalse(BlockGzipInputStream.isBlockGzipFile(file));
+		try (InputStream in = BlockGzipInputStream.open(file, 2)) {
+			assertArrayEquals(expected, readAll(in));
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			result.write(buffer, 0, read);
+		}
+		return result.toByteArray();
+	}
+}
@@ -0,0 +1,54 @@
+package org.matsim.nemo.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ColumnarTableWriterTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void writeAndRead() {
+
+		List<String> ids = Arrays.asList("a", "b", "c", "d", "e");
+		Path file = Paths.get(utils.getOutputDirectory(), "table.nemt");
+
+		// each id but "c" becomes two rows, with a row group size of 2 the rows end up in three row groups
+		new ColumnarTableWriter.Builder<String>()
+				.stringColumn("id", id -> id.equals("e") ? null : id)
+				.longColumn("length", String::length)
+				.doubleColumn("code", id -> id.charAt(0))
+				.booleanColumn("vowel", id -> "ae".contains(id))
+				.compression(true)
+				.rowGroupSize(2)
+				.numberOfThreads(2)
+				.build()
+				.write(file, ids, id -> id.equals("c") ? Stream.empty() : Stream.of(id, id));
+
+		try (ColumnarTableReader reader = new ColumnarTableReader(file)) {
+
+			assertEquals(Arrays.asList("id", "length", "code", "vowel"), reader.getColumnNames());
+			assertEquals(3, reader.getNumberOfRowGroups());
+			assertEquals(8, reader.getNumberOfRows());
+
+			assertArrayEquals(new String[]{"a", "a", "b", "b"}, reader.readStrings(0, "id"));
+			assertArrayEquals(new String[]{"d", "d"}, reader.readStrings(1, "id"));
+			assertArrayEquals(new String[]{null, null}, reader.readStrings(2, "id"));
+			assertArrayEquals(new long[]{1, 1, 1, 1}, reader.readLongs(0, "length"));
+			assertArrayEquals(new double[]{'d', 'd'}, reader.readDoubles(1, "code"), 0);
+			assertArrayEquals(new boolean[]{true, true, false, false}, reader.readBooleans(0, "vowel"));
+			assertArrayEquals(new boolean[]{true, true}, reader.readBooleans(2, "vowel"));
+		}
+	}
+}